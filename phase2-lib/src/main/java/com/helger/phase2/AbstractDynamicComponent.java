@@ -90,6 +90,15 @@ public abstract class AbstractDynamicComponent implements IDynamicComponent
     return nValue;
   }
 
+  /**
+   * @return <code>true</code> if this component was already initialized with a session.
+   * @since 6.0.1
+   */
+  protected final boolean hasSession ()
+  {
+    return m_aSession != null;
+  }
+
   @Nonnull
   public final IAS2Session getSession ()
   {
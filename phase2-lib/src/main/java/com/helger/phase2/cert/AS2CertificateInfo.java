@@ -0,0 +1,207 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HexFormat;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Pre-computed information of an X509 certificate: the certificate itself, the validity window and
+ * the SHA-256 fingerprint. Instances are managed by {@link AS2CertificateInfoCache}.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@Immutable
+public final class AS2CertificateInfo
+{
+  private final X509Certificate m_aCert;
+  private final long m_nNotBefore;
+  private final long m_nNotAfter;
+  private final byte [] m_aFingerprintSHA256;
+  private final String m_sFingerprintSHA256Hex;
+
+  AS2CertificateInfo (@Nonnull final X509Certificate aCert, @Nonnull final byte [] aFingerprintSHA256)
+  {
+    ValueEnforcer.notNull (aCert, "Cert");
+    ValueEnforcer.notNull (aFingerprintSHA256, "FingerprintSHA256");
+    m_aCert = aCert;
+    m_nNotBefore = aCert.getNotBefore ().getTime ();
+    m_nNotAfter = aCert.getNotAfter ().getTime ();
+    m_aFingerprintSHA256 = aFingerprintSHA256;
+    m_sFingerprintSHA256Hex = HexFormat.of ().formatHex (aFingerprintSHA256);
+  }
+
+  @Nonnull
+  static byte [] createFingerprintSHA256 (@Nonnull final byte [] aEncoded)
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256").digest (aEncoded);
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      // Every JDK must support SHA-256
+      throw new IllegalStateException (ex);
+    }
+  }
+
+  /**
+   * @return The certificate. Never <code>null</code>.
+   */
+  @Nonnull
+  public X509Certificate getCertificate ()
+  {
+    return m_aCert;
+  }
+
+  /**
+   * @return The "not before" date of the certificate in milliseconds since the epoch.
+   */
+  public long getNotBeforeMillis ()
+  {
+    return m_nNotBefore;
+  }
+
+  /**
+   * @return The "not after" date of the certificate in milliseconds since the epoch.
+   */
+  public long getNotAfterMillis ()
+  {
+    return m_nNotAfter;
+  }
+
+  /**
+   * @return The "not after" date of the certificate as a new {@link Date}. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Date getNotAfter ()
+  {
+    return new Date (m_nNotAfter);
+  }
+
+  /**
+   * @param nNow
+   *        The reference time in milliseconds since the epoch.
+   * @return <code>true</code> if the certificate is expired at the provided time.
+   */
+  public boolean isExpiredAt (final long nNow)
+  {
+    return nNow > m_nNotAfter;
+  }
+
+  /**
+   * @return <code>true</code> if the certificate is expired now.
+   */
+  public boolean isExpired ()
+  {
+    return isExpiredAt (System.currentTimeMillis ());
+  }
+
+  /**
+   * Same as {@link X509Certificate#checkValidity()} but without touching the certificate.
+   *
+   * @throws CertificateExpiredException
+   *         if the certificate has expired.
+   * @throws CertificateNotYetValidException
+   *         if the certificate is not yet valid.
+   */
+  public void checkValidity () throws CertificateExpiredException, CertificateNotYetValidException
+  {
+    final long nNow = System.currentTimeMillis ();
+    if (isExpiredAt (nNow))
+      throw new CertificateExpiredException ("NotAfter: " + new Date (m_nNotAfter));
+    if (nNow < m_nNotBefore)
+      throw new CertificateNotYetValidException ("NotBefore: " + new Date (m_nNotBefore));
+  }
+
+  /**
+   * @return A copy of the SHA-256 fingerprint of the encoded certificate. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public byte [] getFingerprintSHA256 ()
+  {
+    return m_aFingerprintSHA256.clone ();
+  }
+
+  /**
+   * @return The SHA-256 fingerprint of the encoded certificate as lower case hex string. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getFingerprintSHA256Hex ()
+  {
+    return m_sFingerprintSHA256Hex;
+  }
+
+  /**
+   * Check if this and the passed information refer to the same certificate, based on the
+   * fingerprint. This is equivalent to {@link X509Certificate#equals(Object)}.
+   *
+   * @param aOther
+   *        The other information to compare to. May not be <code>null</code>.
+   * @return <code>true</code> if both are the same certificate.
+   */
+  public boolean isSameCertificate (@Nonnull final AS2CertificateInfo aOther)
+  {
+    return this == aOther || Arrays.equals (m_aFingerprintSHA256, aOther.m_aFingerprintSHA256);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Subject", m_aCert.getSubjectX500Principal ().getName ())
+                                       .append ("NotBefore", m_nNotBefore)
+                                       .append ("NotAfter", m_nNotAfter)
+                                       .append ("FingerprintSHA256", m_sFingerprintSHA256Hex)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.annotation.style.ReturnsMutableObject;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.phase2.util.AS2BoundedCache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A global cache for {@link AS2CertificateInfo} objects. This avoids repeated conversion of
+ * certificates contained in signatures and repeated fingerprint calculation. Certificate objects
+ * are looked up directly, relying on the cached hash code of the certificate implementation, so
+ * that a hit does not need to encode the certificate. All other lookups are keyed by the security
+ * provider name and the SHA-256 fingerprint, which is calculated only once per lookup. Expired
+ * certificates are removed upon lookup, so that they are re-evaluated.<br>
+ * The cache is cleared whenever a key store of an {@link AbstractCertificateFactory} changes.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@ThreadSafe
+public final class AS2CertificateInfoCache
+{
+  /** The default maximum number of cached certificates */
+  public static final int DEFAULT_MAX_SIZE = 1_000;
+
+  // Key: security provider name and SHA-256 fingerprint
+  private static final AS2BoundedCache <String, AS2CertificateInfo> CACHE = new AS2BoundedCache <> ("AS2CertificateInfoCache",
+                                                                                                       DEFAULT_MAX_SIZE);
+  // Key: the certificate object itself
+  private static final AS2BoundedCache <X509Certificate, AS2CertificateInfo> CERT_CACHE = new AS2BoundedCache <> ("AS2CertificateInfoCache.Certificate",
+                                                                                                                     DEFAULT_MAX_SIZE);
+
+  private AS2CertificateInfoCache ()
+  {}
+
+  /**
+   * @return The underlying cache keyed by security provider name and fingerprint, e.g. for
+   *         monitoring. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public static AS2BoundedCache <String, AS2CertificateInfo> getCache ()
+  {
+    return CACHE;
+  }
+
+  /**
+   * @return The underlying cache keyed by certificate objects, e.g. for monitoring. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public static AS2BoundedCache <X509Certificate, AS2CertificateInfo> getCertificateCache ()
+  {
+    return CERT_CACHE;
+  }
+
+  @Nonnull
+  private static String _getKey (@Nullable final String sSecurityProviderName, @Nonnull final byte [] aFingerprint)
+  {
+    return (sSecurityProviderName == null ? "" : sSecurityProviderName) + ':' + HexFormat.of ().formatHex (aFingerprint);
+  }
+
+  @Nullable
+  private static <K> AS2CertificateInfo _getValid (@Nonnull final AS2BoundedCache <K, AS2CertificateInfo> aCache,
+                                                   @Nonnull final K aKey)
+  {
+    final AS2CertificateInfo ret = aCache.get (aKey);
+    if (ret != null && ret.isExpired ())
+    {
+      // Don't keep expired certificates
+      aCache.remove (aKey);
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Get the information for the passed certificate. The certificate is only encoded if it is not
+   * yet cached.
+   *
+   * @param aCert
+   *        The certificate to get the information from. May not be <code>null</code>.
+   * @return The cached or newly created information. Never <code>null</code>.
+   * @throws CertificateEncodingException
+   *         If the certificate cannot be encoded
+   */
+  @Nonnull
+  public static AS2CertificateInfo getCertificateInfo (@Nonnull final X509Certificate aCert) throws CertificateEncodingException
+  {
+    ValueEnforcer.notNull (aCert, "Cert");
+
+    AS2CertificateInfo ret = _getValid (CERT_CACHE, aCert);
+    if (ret == null)
+    {
+      final byte [] aFingerprint = AS2CertificateInfo.createFingerprintSHA256 (aCert.getEncoded ());
+      // The certificate is already converted - no specific provider
+      final String sKey = _getKey (null, aFingerprint);
+      ret = _getValid (CACHE, sKey);
+      if (ret == null)
+      {
+        ret = new AS2CertificateInfo (aCert, aFingerprint);
+        if (!ret.isExpired ())
+          CACHE.put (sKey, ret);
+      }
+      if (!ret.isExpired ())
+        CERT_CACHE.put (aCert, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Get the information for the passed BouncyCastle certificate holder. The holder is only
+   * converted to an {@link X509Certificate} if it is not yet cached for the passed security
+   * provider.
+   *
+   * @param aCertHolder
+   *        The certificate holder to get the information from. May not be <code>null</code>.
+   * @param sSecurityProviderName
+   *        The security provider name to be used for the conversion. May be <code>null</code> to
+   *        use the default.
+   * @return The cached or newly created information. Never <code>null</code>.
+   * @throws CertificateException
+   *         If the certificate cannot be encoded or converted
+   */
+  @Nonnull
+  public static AS2CertificateInfo getCertificateInfo (@Nonnull final X509CertificateHolder aCertHolder,
+                                                       @Nullable final String sSecurityProviderName) throws CertificateException
+  {
+    ValueEnforcer.notNull (aCertHolder, "CertHolder");
+
+    final byte [] aFingerprint;
+    try
+    {
+      aFingerprint = AS2CertificateInfo.createFingerprintSHA256 (aCertHolder.getEncoded ());
+    }
+    catch (final IOException ex)
+    {
+      throw new CertificateEncodingException ("Failed to encode certificate holder", ex);
+    }
+    final String sKey = _getKey (sSecurityProviderName, aFingerprint);
+    AS2CertificateInfo ret = _getValid (CACHE, sKey);
+    if (ret == null)
+    {
+      final JcaX509CertificateConverter aConverter = new JcaX509CertificateConverter ();
+      if (sSecurityProviderName != null)
+        aConverter.setProvider (sSecurityProviderName);
+      ret = new AS2CertificateInfo (aConverter.getCertificate (aCertHolder), aFingerprint);
+      if (!ret.isExpired ())
+        CACHE.put (sKey, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Remove all cached entries. This is automatically called when a key store changes.
+   */
+  public static void clear ()
+  {
+    CACHE.clear ();
+    CERT_CACHE.clear ();
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.CommonsHashMap;
+import com.helger.collection.commons.CommonsLinkedHashMap;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsMap;
+import com.helger.collection.commons.ICommonsOrderedMap;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * An immutable snapshot of the content of a {@link KeyStore}: all certificates by alias, all
+ * unwrapped private keys by alias and an index from the certificate fingerprint to the aliases. It
+ * is used by {@link AbstractCertificateFactory} for lock-free lookups, and is replaced as a whole
+ * whenever the key store changes.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@Immutable
+public final class AS2KeyStoreSnapshot
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS2KeyStoreSnapshot.class);
+
+  /** The empty snapshot, that is used until a key store is present. */
+  public static final AS2KeyStoreSnapshot EMPTY = new AS2KeyStoreSnapshot (new CommonsLinkedHashMap <> (),
+                                                                           new CommonsHashMap <> (),
+                                                                           new CommonsHashMap <> (),
+                                                                           0,
+                                                                           false);
+
+  private final ICommonsOrderedMap <String, X509Certificate> m_aCerts;
+  private final ICommonsMap <String, PrivateKey> m_aKeys;
+  private final ICommonsMap <String, ICommonsList <String>> m_aFingerprintIndex;
+  private final int m_nKeyEntryCount;
+  private final boolean m_bComplete;
+  private final long m_nCreationMillis;
+
+  private AS2KeyStoreSnapshot (@Nonnull final ICommonsOrderedMap <String, X509Certificate> aCerts,
+                               @Nonnull final ICommonsMap <String, PrivateKey> aKeys,
+                               @Nonnull final ICommonsMap <String, ICommonsList <String>> aFingerprintIndex,
+                               final int nKeyEntryCount,
+                               final boolean bComplete)
+  {
+    m_aCerts = aCerts;
+    m_aKeys = aKeys;
+    m_aFingerprintIndex = aFingerprintIndex;
+    m_nKeyEntryCount = nKeyEntryCount;
+    m_bComplete = bComplete;
+    m_nCreationMillis = System.currentTimeMillis ();
+  }
+
+  @Nonnull
+  private static String _getFingerprint (@Nonnull final X509Certificate aCert) throws CertificateEncodingException
+  {
+    return AS2CertificateInfoCache.getCertificateInfo (aCert).getFingerprintSHA256Hex ();
+  }
+
+  /**
+   * @return <code>true</code> if the key store could be read completely, <code>false</code> if
+   *         reading failed or if this is the {@link #EMPTY} snapshot. Only complete snapshots can
+   *         answer "not found" authoritatively.
+   */
+  public boolean isComplete ()
+  {
+    return m_bComplete;
+  }
+
+  /**
+   * @return The time in milliseconds since the epoch, at which this snapshot was created.
+   */
+  public long getCreationMillis ()
+  {
+    return m_nCreationMillis;
+  }
+
+  /**
+   * @return The number of aliases with a certificate. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getCertificateCount ()
+  {
+    return m_aCerts.size ();
+  }
+
+  /**
+   * @return The number of private keys that could be unwrapped. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getPrivateKeyCount ()
+  {
+    return m_aKeys.size ();
+  }
+
+  /**
+   * @return The number of key entries in the key store. If this is larger than
+   *         {@link #getPrivateKeyCount()}, some keys could not be unwrapped, e.g. because of a wrong
+   *         password. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getKeyEntryCount ()
+  {
+    return m_nKeyEntryCount;
+  }
+
+  /**
+   * @param sAlias
+   *        The alias as contained in the key store. May be <code>null</code>.
+   * @return The certificate of the alias or <code>null</code> if not contained.
+   */
+  @Nullable
+  public X509Certificate getCertificate (@Nullable final String sAlias)
+  {
+    return m_aCerts.get (sAlias);
+  }
+
+  /**
+   * @return A copy of all certificates by alias, in key store order. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <String, X509Certificate> getAllCertificates ()
+  {
+    return m_aCerts.getClone ();
+  }
+
+  /**
+   * Get the private key of the passed certificate, using the fingerprint index.
+   *
+   * @param aCert
+   *        The certificate to search the private key for. May be <code>null</code>.
+   * @return <code>null</code> if no private key is present for the certificate.
+   */
+  @Nullable
+  public PrivateKey getPrivateKey (@Nullable final X509Certificate aCert)
+  {
+    if (aCert == null || m_aKeys.isEmpty ())
+      return null;
+
+    final ICommonsList <String> aAliases;
+    try
+    {
+      aAliases = m_aFingerprintIndex.get (_getFingerprint (aCert));
+    }
+    catch (final CertificateEncodingException ex)
+    {
+      return null;
+    }
+
+    if (aAliases != null)
+      for (final String sAlias : aAliases)
+      {
+        final PrivateKey aKey = m_aKeys.get (sAlias);
+        if (aKey != null)
+          return aKey;
+      }
+    return null;
+  }
+
+  /**
+   * Create a new snapshot of the passed key store. The caller is responsible for ensuring that the
+   * key store is not modified concurrently.
+   *
+   * @param aKeyStore
+   *        The key store to read. May not be <code>null</code>.
+   * @param aPassword
+   *        The password to unwrap the private keys. May be <code>null</code>.
+   * @param aAliasUnifier
+   *        The function to unify the aliases before accessing a private key. May not be
+   *        <code>null</code>.
+   * @return The new snapshot. Never <code>null</code>.
+   */
+  @Nonnull
+  static AS2KeyStoreSnapshot create (@Nonnull final KeyStore aKeyStore,
+                                     @Nullable final char [] aPassword,
+                                     @Nonnull final UnaryOperator <String> aAliasUnifier)
+  {
+    final ICommonsOrderedMap <String, X509Certificate> aCerts = new CommonsLinkedHashMap <> ();
+    final ICommonsMap <String, PrivateKey> aKeys = new CommonsHashMap <> ();
+    final ICommonsMap <String, ICommonsList <String>> aFingerprintIndex = new CommonsHashMap <> ();
+    int nKeyEntryCount = 0;
+
+    final Enumeration <String> aAliases;
+    try
+    {
+      aAliases = aKeyStore.aliases ();
+    }
+    catch (final KeyStoreException ex)
+    {
+      // The key store was not yet loaded
+      return EMPTY;
+    }
+
+    try
+    {
+      while (aAliases.hasMoreElements ())
+      {
+        final String sAlias = aAliases.nextElement ();
+        if (aKeyStore.getCertificate (sAlias) instanceof final X509Certificate aCert)
+        {
+          aCerts.put (sAlias, aCert);
+          aFingerprintIndex.computeIfAbsent (_getFingerprint (aCert), k -> new CommonsArrayList <> ()).add (sAlias);
+
+          final String sRealAlias = aAliasUnifier.apply (sAlias);
+          if (aKeyStore.isKeyEntry (sRealAlias))
+          {
+            nKeyEntryCount++;
+            try
+            {
+              // Unwrap only once per snapshot
+              final Key aKey = aKeyStore.getKey (sRealAlias, aPassword);
+              if (aKey instanceof final PrivateKey aPrivateKey)
+                aKeys.put (sAlias, aPrivateKey);
+            }
+            catch (final GeneralSecurityException ex)
+            {
+              // E.g. a different password - resolved when the key is requested
+              if (LOGGER.isDebugEnabled ())
+                LOGGER.debug ("Failed to unwrap private key of alias '" + sRealAlias + "': " + ex.getMessage ());
+            }
+          }
+        }
+      }
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      // Incomplete snapshot - callers fall back to the key store itself
+      LOGGER.warn ("Failed to create a snapshot of the keystore", ex);
+      return EMPTY;
+    }
+    return new AS2KeyStoreSnapshot (aCerts, aKeys, aFingerprintIndex, nKeyEntryCount, true);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("CertificateCount", m_aCerts.size ())
+                                       .append ("PrivateKeyCount", m_aKeys.size ())
+                                       .append ("KeyEntryCount", m_nKeyEntryCount)
+                                       .append ("Complete", m_bComplete)
+                                       .append ("CreationMillis", m_nCreationMillis)
+                                       .getToString ();
+  }
+}
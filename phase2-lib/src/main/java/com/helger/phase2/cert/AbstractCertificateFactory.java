@@ -79,7 +79,10 @@ import jakarta.annotation.Nullable;
  * Abstract base implementation of a read-only Certificate factory that operates on a
  * {@link KeyStore} object. The only method to be implemented is {@link #reinitKeyStore()} which is
  * responsible for setting the keystore. The protected method <code>setKeyStore(KeyStore)</code> may
- * be used to work around the default behaviour and provide an arbitrary implementation.
+ * be used to work around the default behaviour and provide an arbitrary implementation.<br>
+ * Since 6.0.1 lookups are served lock-free from an immutable {@link AS2KeyStoreSnapshot}. Each
+ * change of the key store only invalidates the snapshot, and it is recreated once on the next
+ * lookup, so that bulk modifications don't unwrap all keys over and over again.
  *
  * @author Philip Helger
  * @since 4.6.4
@@ -99,20 +102,22 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
 
   @GuardedBy ("m_aRWLock")
   private KeyStore m_aKeyStore;
-  @GuardedBy ("m_aRWLock")
-  private boolean m_bDebugLog = false;
+  // Volatile, as it is checked in every lookup
+  private volatile boolean m_bDebugLog = false;
+  // Set to null under the write lock on every change; read without lock and recreated on demand
+  private volatile AS2KeyStoreSnapshot m_aSnapshot = AS2KeyStoreSnapshot.EMPTY;
 
   public AbstractCertificateFactory ()
   {}
 
   public final boolean isDebugLogEnabled ()
   {
-    return m_aRWLock.readLockedBoolean ( () -> m_bDebugLog);
+    return m_bDebugLog;
   }
 
   public final void setDebugLogEnaled (final boolean bDebugLog)
   {
-    m_aRWLock.writeLockedBoolean ( () -> m_bDebugLog = bDebugLog);
+    m_bDebugLog = bDebugLog;
   }
 
   protected final void debugLog (@Nonnull final Supplier <String> aSupplier)
@@ -150,7 +155,11 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
   public void setPassword (@Nullable final String sPassword)
   {
     debugLog ( () -> "setPassword (***)");
-    m_aRWLock.writeLockedGet ( () -> attrs ().putIn (ATTR_PASSWORD, sPassword));
+    m_aRWLock.writeLocked ( () -> {
+      attrs ().putIn (ATTR_PASSWORD, sPassword);
+      // The keys may need to be unwrapped with a different password
+      _invalidateSnapshot ();
+    });
   }
 
   @Nullable
@@ -202,10 +211,24 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
     debugLog ( () -> "initDynamicComponent -> done");
   }
 
+  /**
+   * Get the key store in use. As the returned key store may be modified by the caller, the
+   * snapshot used for lookups is invalidated by this call. Modifications made via a key store
+   * reference retrieved earlier are not reflected in the snapshot until the next call to this
+   * method or the next modification via this factory.
+   *
+   * @return The key store in use. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If no key store is present
+   */
   @Nonnull
   public KeyStore getKeyStore ()
   {
-    final KeyStore ret = m_aRWLock.readLockedGet ( () -> m_aKeyStore);
+    final KeyStore ret = m_aRWLock.writeLockedGet ( () -> {
+      if (m_aKeyStore != null)
+        _invalidateSnapshot ();
+      return m_aKeyStore;
+    });
     if (ret == null)
       throw new IllegalStateException ("No keystore present");
     return ret;
@@ -222,10 +245,150 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
     ValueEnforcer.notNull (aKeyStore, "KeyStore");
 
     debugLog ( () -> "setKeyStore (" + aKeyStore + ")");
-    m_aRWLock.writeLockedGet ( () -> m_aKeyStore = aKeyStore);
+    m_aRWLock.writeLocked ( () -> {
+      m_aKeyStore = aKeyStore;
+      _invalidateSnapshot ();
+    });
+    debugLog ( () -> "setKeyStore -> done");
+  }
+
+  /**
+   * Mark the snapshot as outdated. Must be called with the write lock held, each time the key store
+   * changed. The new snapshot is created by the next call to {@link #_getSnapshot()}.
+   */
+  private void _invalidateSnapshot ()
+  {
+    m_aSnapshot = null;
+  }
+
+  /**
+   * Get the current snapshot and create it if it was invalidated. Must not be called with the read
+   * lock held, as the write lock is required for creating the snapshot.
+   *
+   * @return The current snapshot. Never <code>null</code>.
+   */
+  @Nonnull
+  private AS2KeyStoreSnapshot _getSnapshot ()
+  {
+    AS2KeyStoreSnapshot ret = m_aSnapshot;
+    if (ret == null)
+    {
+      m_aRWLock.writeLock ().lock ();
+      try
+      {
+        // Check again - another thread may have created it in the meantime
+        ret = m_aSnapshot;
+        if (ret == null)
+        {
+          ret = m_aKeyStore == null ? AS2KeyStoreSnapshot.EMPTY
+                                    : AS2KeyStoreSnapshot.create (m_aKeyStore,
+                                                                  attrs ().getAsCharArray (ATTR_PASSWORD),
+                                                                  this::getUnifiedAlias);
+          m_aSnapshot = ret;
+          final AS2KeyStoreSnapshot aSnapshot = ret;
+          debugLog ( () -> "_getSnapshot -> " + aSnapshot);
+        }
+      }
+      finally
+      {
+        m_aRWLock.writeLock ().unlock ();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Atomically replace the key store and its snapshot. The snapshot must have been created with
+   * {@link #createKeyStoreSnapshot(KeyStore)} from the same key store.
+   *
+   * @param aKeyStore
+   *        The key store to use. May not be <code>null</code>.
+   * @param aSnapshot
+   *        The snapshot of the key store. May not be <code>null</code>.
+   * @since 6.0.1
+   */
+  protected final void setKeyStore (@Nonnull final KeyStore aKeyStore, @Nonnull final AS2KeyStoreSnapshot aSnapshot)
+  {
+    ValueEnforcer.notNull (aKeyStore, "KeyStore");
+    ValueEnforcer.notNull (aSnapshot, "Snapshot");
+
+    debugLog ( () -> "setKeyStore (" + aKeyStore + ", " + aSnapshot + ")");
+    m_aRWLock.writeLocked ( () -> {
+      m_aKeyStore = aKeyStore;
+      m_aSnapshot = aSnapshot;
+    });
     debugLog ( () -> "setKeyStore -> done");
   }
 
+  /**
+   * Create a new snapshot of the passed key store, that is not yet in use by this factory. No lock
+   * is held while the snapshot is created.
+   *
+   * @param aKeyStore
+   *        The key store to create the snapshot from. May not be <code>null</code>.
+   * @return The new snapshot. Never <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nonnull
+  protected final AS2KeyStoreSnapshot createKeyStoreSnapshot (@Nonnull final KeyStore aKeyStore)
+  {
+    ValueEnforcer.notNull (aKeyStore, "KeyStore");
+
+    return AS2KeyStoreSnapshot.create (aKeyStore, getPassword (), this::getUnifiedAlias);
+  }
+
+  /**
+   * Read a new key store from the passed stream, without modifying the key store currently in use.
+   * No lock is held while reading, so that lookups are not blocked. If a key store type is
+   * configured, it is used, else the type of the current key store is used.
+   *
+   * @param aIS
+   *        The input stream to read from. Will be closed. May not be <code>null</code>.
+   * @param aPassword
+   *        The key store password. May not be <code>null</code>.
+   * @return The new key store. Never <code>null</code>.
+   * @throws AS2Exception
+   *         In case reading fails
+   * @since 6.0.1
+   */
+  @Nonnull
+  protected final KeyStore readKeyStore (@Nonnull @WillClose final InputStream aIS,
+                                         @Nonnull final char [] aPassword) throws AS2Exception
+  {
+    try
+    {
+      final String sKeyStoreType = getKeyStoreType ();
+      final KeyStore aCurrentKeyStore = m_aRWLock.readLockedGet ( () -> m_aKeyStore);
+      final KeyStore ret;
+      if (sKeyStoreType == null && aCurrentKeyStore != null)
+        ret = KeyStore.getInstance (aCurrentKeyStore.getType (), aCurrentKeyStore.getProvider ());
+      else
+        ret = createNewKeyStore (EKeyStoreType.getFromIDCaseInsensitiveOrDefault (sKeyStoreType,
+                                                                                DEFAULT_KEY_STORE_TYPE));
+      ret.load (aIS, aPassword);
+      return ret;
+    }
+    catch (final IOException | GeneralSecurityException ex)
+    {
+      debugLog ( () -> "readKeyStore -> " + _debug (ex));
+      throw WrappedAS2Exception.wrap (ex);
+    }
+    finally
+    {
+      StreamHelper.close (aIS);
+    }
+  }
+
+  /**
+   * @return The current immutable snapshot of the key store content. Never <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2KeyStoreSnapshot getKeyStoreSnapshot ()
+  {
+    return _getSnapshot ();
+  }
+
   /**
    * This method is responsible to create a new empty keystore based on the configured type.
    *
@@ -316,6 +479,15 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
 
     final String sRealAlias = getUnifiedAlias (sAlias);
 
+    // Lock-free lookup
+    final X509Certificate aSnapshotCert = _getSnapshot ().getCertificate (sRealAlias);
+    if (aSnapshotCert != null)
+    {
+      debugLog ( () -> "internalGetCertificate -> " + _debug (aSnapshotCert));
+      return aSnapshotCert;
+    }
+
+    // Fallback to the key store, e.g. for case insensitive aliases
     m_aRWLock.readLock ().lock ();
     try
     {
@@ -363,6 +535,16 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
   {
     debugLog ( () -> "getCertificates ()");
 
+    final AS2KeyStoreSnapshot aSnapshot = _getSnapshot ();
+    if (aSnapshot.isComplete ())
+    {
+      // Lock-free lookup
+      final ICommonsOrderedMap <String, X509Certificate> ret = aSnapshot.getAllCertificates ();
+      debugLog ( () -> "getCertificates -> " +
+                       new CommonsLinkedHashMap <> (ret, x -> x, AbstractCertificateFactory::_debug).toString ());
+      return ret;
+    }
+
     final ICommonsOrderedMap <String, X509Certificate> ret = new CommonsLinkedHashMap <> ();
     m_aRWLock.readLock ().lock ();
     try
@@ -431,6 +613,15 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
     if (aCert == null)
       throw new AS2CertificateNotFoundException (aCert);
 
+    // Lock-free lookup via the fingerprint index
+    final PrivateKey aSnapshotKey = _getSnapshot ().getPrivateKey (aCert);
+    if (aSnapshotKey != null)
+    {
+      debugLog ( () -> "getPrivateKey -> " + aSnapshotKey);
+      return aSnapshotKey;
+    }
+
+    // Fallback: scan all aliases, e.g. if the key store was modified via getKeyStore ()
     final ICommonsList <String> aAllAliases = _getAllAliases ();
     String sRealAlias = null;
 
@@ -494,6 +685,7 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
         throw new AS2CertificateExistsException (sRealAlias);
 
       m_aKeyStore.setCertificateEntry (sRealAlias, aCert);
+      _invalidateSnapshot ();
     }
     catch (final GeneralSecurityException ex)
     {
@@ -531,6 +723,7 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
 
       final Certificate [] aCertChain = m_aKeyStore.getCertificateChain (sRealAlias);
       m_aKeyStore.setKeyEntry (sRealAlias, aKey, sPassword.toCharArray (), aCertChain);
+      _invalidateSnapshot ();
     }
     catch (final GeneralSecurityException ex)
     {
@@ -563,6 +756,8 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
         m_aKeyStore.deleteEntry (sAlias);
         nDeleted++;
       }
+      if (nDeleted > 0)
+        _invalidateSnapshot ();
     }
     catch (final GeneralSecurityException ex)
     {
@@ -630,6 +825,7 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
         throw new AS2CertificateNotFoundException (null, sRealAlias);
 
       m_aKeyStore.deleteEntry (sRealAlias);
+      _invalidateSnapshot ();
     }
     catch (final GeneralSecurityException ex)
     {
@@ -651,27 +847,9 @@ public abstract class AbstractCertificateFactory extends AbstractDynamicComponen
   {
     debugLog ( () -> "load (" + aIS + ", ***)");
 
-    m_aRWLock.writeLock ().lock ();
-    try
-    {
-      try
-      {
-        m_aKeyStore.load (aIS, aPassword);
-      }
-      catch (final IOException | GeneralSecurityException ex)
-      {
-        debugLog ( () -> "load -> " + _debug (ex));
-        throw WrappedAS2Exception.wrap (ex);
-      }
-      finally
-      {
-        StreamHelper.close (aIS);
-      }
-    }
-    finally
-    {
-      m_aRWLock.writeLock ().unlock ();
-    }
+    // Read and index the new key store without holding the lock and swap it in afterwards
+    final KeyStore aNewKeyStore = readKeyStore (aIS, aPassword);
+    setKeyStore (aNewKeyStore, createKeyStoreSnapshot (aNewKeyStore));
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Finished loading keystore from an InputStream");
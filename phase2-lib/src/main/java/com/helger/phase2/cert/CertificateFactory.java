@@ -32,19 +32,44 @@
  */
 package com.helger.phase2.cert;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.annotation.concurrent.GuardedBy;
 import com.helger.annotation.concurrent.ThreadSafe;
 import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.base.io.stream.StreamHelper;
 import com.helger.base.string.StringHelper;
 import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.session.IAS2Session;
+import com.helger.security.keystore.KeyStoreHelper;
+import com.helger.typeconvert.collection.IStringMap;
 
+import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 /**
  * An implementation of a file-based certificate factory using a custom key store type. Since v4.6.4
- * this class is derived from {@link AbstractCertificateFactory}.
+ * this class is derived from {@link AbstractCertificateFactory}.<br>
+ * Since 6.0.1 the key store file can be watched for changes (see {@link #ATTR_RELOAD_ON_CHANGE}).
+ * Changed files are read and validated in the background, and only swapped in if they are valid.
  *
  * @author Philip Helger
  */
@@ -53,12 +78,53 @@ public class CertificateFactory extends AbstractCertificateFactory implements IS
 {
   public static final String ATTR_FILENAME = "filename";
   public static final String ATTR_SAVE_CHANGES_TO_FILE = "autosave";
+  /**
+   * Watch the key store file and reload it in the background if it changes.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_RELOAD_ON_CHANGE = "reloadonchange";
+  /** @since 6.0.1 */
+  public static final boolean DEFAULT_RELOAD_ON_CHANGE = false;
+
+  /**
+   * The time to wait after a change of the key store file, before it is reloaded. This avoids
+   * reading a partially written file.
+   */
+  private static final long RELOAD_DELAY_MILLIS = 500;
+  /** The maximum time to wait for the watching thread to end. */
+  private static final long WATCHER_STOP_TIMEOUT_MILLIS = 5_000;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (CertificateFactory.class);
 
+  @GuardedBy ("m_aRWLock")
+  private WatchService m_aWatchService;
+  @GuardedBy ("m_aRWLock")
+  private Thread m_aWatchThread;
+  // The SHA-256 digest of the file content, when it was last saved by this factory
+  private volatile byte [] m_aLastSavedDigest;
+  // The number of saves by this factory currently running
+  private final AtomicInteger m_aSavesInProgress = new AtomicInteger (0);
+
+  // Reload metrics
+  private final AtomicLong m_aReloadCount = new AtomicLong (0);
+  private final AtomicLong m_aReloadFailureCount = new AtomicLong (0);
+  private volatile long m_nLastReloadDurationMillis;
+  private volatile long m_nLastReloadMillis;
+
   public CertificateFactory ()
   {}
 
+  @Override
+  public void initDynamicComponent (@Nonnull final IAS2Session aSession, @Nullable final IStringMap aOptions)
+                                                                                                              throws AS2Exception
+  {
+    super.initDynamicComponent (aSession, aOptions);
+
+    if (isReloadOnChange ())
+      startKeyStoreWatcher ();
+  }
+
   public void setFilename (@Nullable final String sFilename)
   {
     debugLog ( () -> "setFilename (" + sFilename + ")");
@@ -89,21 +155,338 @@ public class CertificateFactory extends AbstractCertificateFactory implements IS
     return ret;
   }
 
+  /**
+   * Enable or disable the background reloading of the key store file. This only takes effect in
+   * {@link #initDynamicComponent(IAS2Session, IStringMap)} - use {@link #startKeyStoreWatcher()} and
+   * {@link #stopKeyStoreWatcher()} to change it afterwards.
+   *
+   * @param bReloadOnChange
+   *        <code>true</code> to watch the key store file for changes, <code>false</code> to not
+   *        watch it.
+   * @since 6.0.1
+   */
+  public void setReloadOnChange (final boolean bReloadOnChange)
+  {
+    debugLog ( () -> "setReloadOnChange (" + bReloadOnChange + ")");
+    m_aRWLock.writeLocked ( () -> attrs ().putIn (ATTR_RELOAD_ON_CHANGE, bReloadOnChange));
+  }
+
+  /**
+   * @return <code>true</code> if the key store file should be watched for changes. The default
+   *         value is {@link #DEFAULT_RELOAD_ON_CHANGE}.
+   * @since 6.0.1
+   */
+  public boolean isReloadOnChange ()
+  {
+    return m_aRWLock.readLockedBoolean ( () -> attrs ().getAsBoolean (ATTR_RELOAD_ON_CHANGE,
+                                                                      DEFAULT_RELOAD_ON_CHANGE));
+  }
+
+  /**
+   * @return The number of successful reloads via {@link #reloadKeyStore()}.
+   * @since 6.0.1
+   */
+  public final long getReloadCount ()
+  {
+    return m_aReloadCount.get ();
+  }
+
+  /**
+   * @return The number of failed reloads via {@link #reloadKeyStore()}. In case of a failure, the
+   *         previous key store stays in use.
+   * @since 6.0.1
+   */
+  public final long getReloadFailureCount ()
+  {
+    return m_aReloadFailureCount.get ();
+  }
+
+  /**
+   * @return The duration in milliseconds of the last successful reload, or 0 if no reload happened
+   *         so far.
+   * @since 6.0.1
+   */
+  public final long getLastReloadDurationMillis ()
+  {
+    return m_nLastReloadDurationMillis;
+  }
+
+  /**
+   * @return The time in milliseconds since the epoch of the last successful reload, or 0 if no
+   *         reload happened so far.
+   * @since 6.0.1
+   */
+  public final long getLastReloadMillis ()
+  {
+    return m_nLastReloadMillis;
+  }
+
+  /**
+   * @return The number of certificates in the key store currently in use.
+   * @since 6.0.1
+   */
+  public final int getEntryCount ()
+  {
+    return getKeyStoreSnapshot ().getCertificateCount ();
+  }
+
   public void reinitKeyStore () throws AS2Exception
   {
     debugLog ( () -> "reinitKeyStore ()");
 
-    // Ensure it is empty
-    initEmptyKeyStore ();
-
-    // And than load by filename
     final String sFilename = getFilename ();
     if (StringHelper.isNotEmpty (sFilename))
+    {
+      // Load by filename - the current key store is replaced, once the new one was read
       load (sFilename, getPassword ());
+    }
+    else
+    {
+      // Ensure it is empty
+      initEmptyKeyStore ();
+    }
 
     debugLog ( () -> "reinitKeyStore -> done");
   }
 
+  /**
+   * Reload the key store from the file. The file is read and validated without blocking any
+   * lookups, and the key store is only replaced if it is valid. A key store is considered valid, if
+   * all private keys can be unwrapped with the configured password.
+   *
+   * @throws AS2Exception
+   *         If the file cannot be read or is invalid. The previous key store stays in use.
+   * @since 6.0.1
+   */
+  public void reloadKeyStore () throws AS2Exception
+  {
+    debugLog ( () -> "reloadKeyStore ()");
+
+    final String sFilename = getFilename ();
+    if (StringHelper.isEmpty (sFilename))
+      throw new AS2Exception ("No keystore filename is present");
+
+    final long nStart = System.nanoTime ();
+    final AS2KeyStoreSnapshot aSnapshot;
+    try
+    {
+      final InputStream aIS = KeyStoreHelper.getResourceProvider ().getInputStream (sFilename);
+      if (aIS == null)
+        throw new AS2Exception ("Failed to to open input stream from '" + sFilename + "'");
+
+      final KeyStore aNewKeyStore = readKeyStore (aIS, getPassword ());
+      aSnapshot = createKeyStoreSnapshot (aNewKeyStore);
+      if (!aSnapshot.isComplete ())
+        throw new AS2Exception ("Failed to read all entries of keystore '" + sFilename + "'");
+      if (aSnapshot.getPrivateKeyCount () != aSnapshot.getKeyEntryCount ())
+        throw new AS2Exception ("Only " +
+                                aSnapshot.getPrivateKeyCount () +
+                                " of " +
+                                aSnapshot.getKeyEntryCount () +
+                                " private keys of keystore '" +
+                                sFilename +
+                                "' can be used with the configured password");
+
+      setKeyStore (aNewKeyStore, aSnapshot);
+    }
+    catch (final AS2Exception ex)
+    {
+      m_aReloadFailureCount.incrementAndGet ();
+      debugLog ( () -> "reloadKeyStore -> " + ex.getMessage ());
+      throw ex;
+    }
+
+    final long nDurationMillis = (System.nanoTime () - nStart) / 1_000_000;
+    m_nLastReloadDurationMillis = nDurationMillis;
+    m_nLastReloadMillis = System.currentTimeMillis ();
+    m_aReloadCount.incrementAndGet ();
+
+    LOGGER.info ("Reloaded keystore '" +
+                 sFilename +
+                 "' with " +
+                 aSnapshot.getCertificateCount () +
+                 " entries in " +
+                 nDurationMillis +
+                 " ms");
+    debugLog ( () -> "reloadKeyStore -> done");
+  }
+
+  /**
+   * @return The SHA-256 digest of the file content or <code>null</code> if the file cannot be read.
+   */
+  @Nullable
+  private static byte [] _getFileDigest (@Nonnull final File aFile)
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256").digest (Files.readAllBytes (aFile.toPath ()));
+    }
+    catch (final IOException ex)
+    {
+      return null;
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      // Every JDK must support SHA-256
+      throw new IllegalStateException (ex);
+    }
+  }
+
+  private boolean _isSavedByThisFactory (@Nonnull final File aFile)
+  {
+    if (m_aSavesInProgress.get () > 0)
+      return true;
+    final byte [] aLastSavedDigest = m_aLastSavedDigest;
+    return aLastSavedDigest != null && Arrays.equals (aLastSavedDigest, _getFileDigest (aFile));
+  }
+
+  private void _watch (@Nonnull final WatchService aWatchService, @Nonnull final File aFile)
+  {
+    final Path aFileName = aFile.toPath ().getFileName ();
+    try
+    {
+      while (true)
+      {
+        final WatchKey aKey = aWatchService.take ();
+        boolean bChanged = false;
+        for (final WatchEvent <?> aEvent : aKey.pollEvents ())
+          if (aFileName.equals (aEvent.context ()))
+            bChanged = true;
+        if (!aKey.reset ())
+          break;
+
+        if (bChanged)
+        {
+          // Wait until the file was written completely and ignore all events in between
+          Thread.sleep (RELOAD_DELAY_MILLIS);
+          WatchKey aPendingKey;
+          while ((aPendingKey = aWatchService.poll ()) != null)
+          {
+            aPendingKey.pollEvents ();
+            aPendingKey.reset ();
+          }
+
+          if (_isSavedByThisFactory (aFile))
+          {
+            // No need to reload our own changes
+            continue;
+          }
+
+          try
+          {
+            reloadKeyStore ();
+          }
+          catch (final AS2Exception ex)
+          {
+            LOGGER.warn ("Failed to reload changed keystore '" + aFile.getAbsolutePath () + "' - keeping the previous one",
+                         ex);
+          }
+        }
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    catch (final ClosedWatchServiceException ex)
+    {
+      // Stopped
+    }
+    LOGGER.info ("Stopped watching keystore '" + aFile.getAbsolutePath () + "'");
+  }
+
+  /**
+   * Start watching the key store file for changes in a background thread. Each change triggers
+   * {@link #reloadKeyStore()}. If the watcher is already running, nothing happens.
+   *
+   * @throws AS2Exception
+   *         If the key store is not a file or cannot be watched
+   * @since 6.0.1
+   */
+  public void startKeyStoreWatcher () throws AS2Exception
+  {
+    final String sFilename = getFilename ();
+    final File aFile = StringHelper.isEmpty (sFilename) ? null : new File (sFilename).getAbsoluteFile ();
+    if (aFile == null || !aFile.isFile ())
+      throw new AS2Exception ("The keystore '" + sFilename + "' is not a file and cannot be watched");
+
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      if (m_aWatchService != null)
+        return;
+
+      final Path aDir = aFile.getParentFile ().toPath ();
+      final WatchService aWatchService = aDir.getFileSystem ().newWatchService ();
+      aDir.register (aWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+      final Thread aThread = new Thread ( () -> _watch (aWatchService, aFile), "AS2KeyStoreWatcher");
+      aThread.setDaemon (true);
+      aThread.start ();
+      m_aWatchService = aWatchService;
+      m_aWatchThread = aThread;
+    }
+    catch (final IOException ex)
+    {
+      throw new AS2Exception ("Failed to watch keystore '" + aFile.getAbsolutePath () + "'", ex);
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+    LOGGER.info ("Started watching keystore '" + aFile.getAbsolutePath () + "' for changes");
+  }
+
+  /**
+   * Stop watching the key store file and wait for the watching thread to end. If the watcher is not
+   * running, nothing happens. This is automatically called by
+   * {@link com.helger.phase2.processor.AbstractMessageProcessor#stopActiveModules()}.
+   *
+   * @since 6.0.1
+   */
+  public void stopKeyStoreWatcher ()
+  {
+    final Thread aWatchThread;
+    final WatchService aWatchService;
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      aWatchThread = m_aWatchThread;
+      aWatchService = m_aWatchService;
+      m_aWatchThread = null;
+      m_aWatchService = null;
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    if (aWatchService != null)
+    {
+      // Ends the watching thread
+      StreamHelper.close (aWatchService);
+      // Interrupts a pending reload delay
+      aWatchThread.interrupt ();
+      try
+      {
+        aWatchThread.join (WATCHER_STOP_TIMEOUT_MILLIS);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the key store file is currently watched for changes.
+   * @since 6.0.1
+   */
+  public boolean isKeyStoreWatcherRunning ()
+  {
+    return m_aRWLock.readLockedBoolean ( () -> m_aWatchService != null);
+  }
+
   /**
    * Custom callback method that is invoked if something changes in the key store. By default the
    * changes are written back to disk.
@@ -122,7 +505,19 @@ public class CertificateFactory extends AbstractCertificateFactory implements IS
     {
       final String sFilename = getFilename ();
       if (StringHelper.isNotEmpty (sFilename))
-        save (sFilename, getPassword ());
+      {
+        // Avoid reloading our own changes
+        m_aSavesInProgress.incrementAndGet ();
+        try
+        {
+          save (sFilename, getPassword ());
+          m_aLastSavedDigest = _getFileDigest (new File (sFilename));
+        }
+        finally
+        {
+          m_aSavesInProgress.decrementAndGet ();
+        }
+      }
       else
       {
         if (LOGGER.isDebugEnabled ())
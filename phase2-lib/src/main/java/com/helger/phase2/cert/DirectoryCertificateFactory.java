@@ -0,0 +1,612 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.annotation.style.ReturnsMutableObject;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.CommonsHashMap;
+import com.helger.collection.commons.CommonsLinkedHashMap;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsMap;
+import com.helger.collection.commons.ICommonsOrderedMap;
+import com.helger.io.file.FileHelper;
+import com.helger.phase2.AbstractDynamicComponent;
+import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.exception.WrappedAS2Exception;
+import com.helger.phase2.message.IBaseMessage;
+import com.helger.phase2.partner.Partnership;
+import com.helger.phase2.session.IAS2Session;
+import com.helger.phase2.util.AS2BoundedCache;
+import com.helger.phase2.util.AS2Helper;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.security.certificate.CertificateHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.typeconvert.collection.IStringMap;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A certificate factory that stores one certificate file per alias in a directory, for very large
+ * sets of partner certificates. Certificates are read on demand into a bounded LRU cache, and each
+ * change only writes or deletes the file of the affected alias.<br>
+ * Certificates are stored as <code>&lt;alias&gt;.pem</code>. DER or PEM encoded files with the
+ * extensions <code>.cer</code>, <code>.crt</code> and <code>.der</code> are read as well. The
+ * alias is URL encoded to build the filename. Private keys are stored as
+ * <code>&lt;alias&gt;.p12</code> PKCS#12 files protected with the configured password. As there
+ * are usually only a few own private keys, they are all kept in memory.<br>
+ * Note: {@link #getCertificates()}, {@link #removeCertificate(X509Certificate)} and
+ * {@link #clearCertificates()} need to read the whole directory and are therefore expensive.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@ThreadSafe
+public class DirectoryCertificateFactory extends AbstractDynamicComponent implements IAliasedCertificateFactory
+{
+  /** The directory containing the certificate files. Required. */
+  public static final String ATTR_DIRECTORY = "directory";
+  /** The password of the private key files. */
+  public static final String ATTR_PASSWORD = "password";
+  /** The maximum number of certificates kept in memory. */
+  public static final String ATTR_CACHE_SIZE = "cachesize";
+  public static final int DEFAULT_CACHE_SIZE = 1_000;
+
+  /** The extension used for new certificate files */
+  public static final String CERTIFICATE_EXTENSION = ".pem";
+  /** The extension of private key files */
+  public static final String PRIVATE_KEY_EXTENSION = ".p12";
+
+  private static final String [] READ_CERTIFICATE_EXTENSIONS = { CERTIFICATE_EXTENSION, ".cer", ".crt", ".der" };
+  private static final Logger LOGGER = LoggerFactory.getLogger (DirectoryCertificateFactory.class);
+
+  private volatile AS2BoundedCache <String, X509Certificate> m_aCache = new AS2BoundedCache <> ("DirectoryCertificateFactory",
+                                                                                                 DEFAULT_CACHE_SIZE);
+  /** Unified alias to private key - guarded for writing only */
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, PrivateKey> m_aKeys = new CommonsHashMap <> ();
+  /** Certificate fingerprint to the unified alias of the private key */
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, String> m_aKeyAliases = new CommonsHashMap <> ();
+  /** Incremented on every certificate modification, to avoid caching outdated certificates */
+  @GuardedBy ("m_aRWLock")
+  private long m_nCertificateGeneration = 0;
+
+  public DirectoryCertificateFactory ()
+  {}
+
+  @Override
+  public void initDynamicComponent (@Nonnull final IAS2Session aSession, @Nullable final IStringMap aOptions)
+                                                                                                              throws AS2Exception
+  {
+    super.initDynamicComponent (aSession, aOptions);
+
+    // Ensure it is present
+    getAttributeAsStringRequired (ATTR_DIRECTORY);
+
+    final int nCacheSize = m_aRWLock.readLockedInt ( () -> attrs ().getAsInt (ATTR_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+    if (nCacheSize > 0 && nCacheSize != m_aCache.getMaxSize ())
+      m_aCache = new AS2BoundedCache <> ("DirectoryCertificateFactory", nCacheSize);
+
+    reloadPrivateKeys ();
+  }
+
+  @Nullable
+  public String getDirectory ()
+  {
+    return m_aRWLock.readLockedGet ( () -> attrs ().getAsString (ATTR_DIRECTORY));
+  }
+
+  public void setDirectory (@Nullable final String sDirectory)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      attrs ().putIn (ATTR_DIRECTORY, sDirectory);
+      m_nCertificateGeneration++;
+    });
+    m_aCache.clear ();
+  }
+
+  @Nullable
+  public char [] getPassword ()
+  {
+    return m_aRWLock.readLockedGet ( () -> attrs ().getAsCharArray (ATTR_PASSWORD));
+  }
+
+  public void setPassword (@Nullable final String sPassword)
+  {
+    m_aRWLock.writeLocked ( () -> attrs ().putIn (ATTR_PASSWORD, sPassword));
+  }
+
+  /**
+   * @return The cache of certificates, e.g. for monitoring. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public final AS2BoundedCache <String, X509Certificate> getCache ()
+  {
+    return m_aCache;
+  }
+
+  @Nonnull
+  private File _getDirectory () throws AS2Exception
+  {
+    final String sDirectory = getDirectory ();
+    if (sDirectory == null)
+      throw new AS2Exception ("No certificate directory is configured");
+    return AS2IOHelper.getDirectoryFile (sDirectory);
+  }
+
+  @Nonnull
+  private static File [] _getAllFiles (@Nonnull final File aDir) throws AS2Exception
+  {
+    final File [] ret = aDir.listFiles (File::isFile);
+    if (ret == null)
+      throw new AS2Exception ("Failed to list certificate directory '" + aDir.getAbsolutePath () + "'");
+    return ret;
+  }
+
+  /**
+   * Overridable method to perform unifications on aliases, e.g. for lower casing.
+   *
+   * @param sAlias
+   *        Source alias. May be <code>null</code>.
+   * @return <code>null</code> if the source was <code>null</code>.
+   */
+  @Nullable
+  @OverrideOnDemand
+  protected String getUnifiedAlias (@Nullable final String sAlias)
+  {
+    return sAlias;
+  }
+
+  @Nonnull
+  private static String _getFilenamePart (@Nonnull final String sAlias)
+  {
+    // "*" and "." are not encoded by URLEncoder
+    return URLEncoder.encode (sAlias, StandardCharsets.UTF_8).replace ("*", "%2A").replace (".", "%2E");
+  }
+
+  @Nullable
+  private static String _getAlias (@Nonnull final String sFilename, @Nonnull final String sExtension)
+  {
+    if (!sFilename.toLowerCase (Locale.ROOT).endsWith (sExtension))
+      return null;
+    try
+    {
+      return URLDecoder.decode (sFilename.substring (0, sFilename.length () - sExtension.length ()),
+                                StandardCharsets.UTF_8);
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // Not created by us
+      return null;
+    }
+  }
+
+  @Nullable
+  private File _findCertificateFile (@Nonnull final File aDir, @Nonnull final String sAlias)
+  {
+    final String sFilenamePart = _getFilenamePart (sAlias);
+    for (final String sExt : READ_CERTIFICATE_EXTENSIONS)
+    {
+      final File aFile = new File (aDir, sFilenamePart + sExt);
+      if (aFile.isFile ())
+        return aFile;
+    }
+    return null;
+  }
+
+  @Nonnull
+  private static X509Certificate _readCertificate (@Nonnull final File aFile) throws AS2Exception
+  {
+    try (final InputStream aIS = FileHelper.getBufferedInputStream (aFile))
+    {
+      if (aIS == null)
+        throw new AS2Exception ("Failed to open certificate file '" + aFile.getAbsolutePath () + "'");
+      return (X509Certificate) java.security.cert.CertificateFactory.getInstance ("X.509").generateCertificate (aIS);
+    }
+    catch (final IOException | CertificateException ex)
+    {
+      throw new AS2Exception ("Failed to read certificate file '" + aFile.getAbsolutePath () + "'", ex);
+    }
+  }
+
+  private static void _writeAtomic (@Nonnull final File aFile, @Nonnull final byte [] aBytes) throws AS2Exception
+  {
+    final Path aTarget = aFile.toPath ();
+    final Path aTemp = aTarget.resolveSibling (aTarget.getFileName () + ".tmp");
+    try
+    {
+      Files.write (aTemp, aBytes);
+      try
+      {
+        Files.move (aTemp, aTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (final AtomicMoveNotSupportedException ex)
+      {
+        Files.move (aTemp, aTarget, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new AS2Exception ("Failed to write file '" + aFile.getAbsolutePath () + "'", ex);
+    }
+  }
+
+  @Nonnull
+  private static String _getFingerprint (@Nonnull final X509Certificate aCert) throws AS2Exception
+  {
+    try
+    {
+      return AS2CertificateInfoCache.getCertificateInfo (aCert).getFingerprintSHA256Hex ();
+    }
+    catch (final CertificateEncodingException ex)
+    {
+      throw WrappedAS2Exception.wrap (ex);
+    }
+  }
+
+  /**
+   * Read all private key files of the directory. Called upon initialization.
+   *
+   * @throws AS2Exception
+   *         In case the directory cannot be accessed
+   */
+  public void reloadPrivateKeys () throws AS2Exception
+  {
+    final File aDir = _getDirectory ();
+    final char [] aPassword = getPassword ();
+
+    final ICommonsMap <String, PrivateKey> aKeys = new CommonsHashMap <> ();
+    final ICommonsMap <String, String> aKeyAliases = new CommonsHashMap <> ();
+    for (final File aFile : _getAllFiles (aDir))
+    {
+      final String sAlias = _getAlias (aFile.getName (), PRIVATE_KEY_EXTENSION);
+      if (sAlias == null)
+        continue;
+
+      try (final InputStream aIS = FileHelper.getBufferedInputStream (aFile))
+      {
+        final KeyStore aKS = AS2Helper.getCryptoHelper ().loadKeyStore (EKeyStoreType.PKCS12, aIS, aPassword);
+        if (aKS.getKey (sAlias, aPassword) instanceof final PrivateKey aKey &&
+            aKS.getCertificate (sAlias) instanceof final X509Certificate aCert)
+        {
+          aKeys.put (sAlias, aKey);
+          aKeyAliases.put (_getFingerprint (aCert), sAlias);
+        }
+        else
+          LOGGER.warn ("Private key file '" + aFile.getAbsolutePath () + "' contains no private key for alias '" + sAlias + "'");
+      }
+      catch (final Exception ex)
+      {
+        LOGGER.warn ("Failed to read private key file '" + aFile.getAbsolutePath () + "'", ex);
+      }
+    }
+
+    m_aRWLock.writeLocked ( () -> {
+      m_aKeys.setAll (aKeys);
+      m_aKeyAliases.setAll (aKeyAliases);
+    });
+    LOGGER.info ("Read " + aKeys.size () + " private key(s) from certificate directory '" + aDir.getAbsolutePath () + "'");
+  }
+
+  @Nonnull
+  public String getAlias (@Nonnull final Partnership aPartnership,
+                          @Nonnull final ECertificatePartnershipType ePartnershipType) throws AS2Exception
+  {
+    ValueEnforcer.notNull (aPartnership, "Partnership");
+    ValueEnforcer.notNull (ePartnershipType, "PartnershipType");
+
+    final String sAlias = switch (ePartnershipType)
+    {
+      case RECEIVER -> aPartnership.getReceiverX509Alias ();
+      case SENDER -> aPartnership.getSenderX509Alias ();
+    };
+    if (sAlias == null)
+      throw new AS2CertificateNotFoundException (ePartnershipType, aPartnership);
+    return getUnifiedAlias (sAlias);
+  }
+
+  @Nonnull
+  protected X509Certificate internalGetCertificate (@Nullable final String sAlias,
+                                                    @Nullable final ECertificatePartnershipType ePartnershipType) throws AS2Exception
+  {
+    final String sRealAlias = getUnifiedAlias (sAlias);
+    if (sRealAlias == null)
+      throw new AS2CertificateNotFoundException (ePartnershipType, sRealAlias);
+
+    final X509Certificate aCached = m_aCache.get (sRealAlias);
+    if (aCached != null)
+      return aCached;
+
+    // Read outside of the lock
+    final long nGeneration = m_aRWLock.readLockedLong ( () -> m_nCertificateGeneration);
+    final File aDir = _getDirectory ();
+    final File aFile = _findCertificateFile (aDir, sRealAlias);
+    if (aFile == null)
+      throw new AS2CertificateNotFoundException (ePartnershipType, sRealAlias);
+    final X509Certificate ret = _readCertificate (aFile);
+
+    // Don't cache it, if a certificate was added or removed in the meantime
+    m_aRWLock.readLocked ( () -> {
+      if (m_nCertificateGeneration == nGeneration)
+        m_aCache.put (sRealAlias, ret);
+    });
+    return ret;
+  }
+
+  @Nonnull
+  public X509Certificate getCertificate (@Nullable final String sAlias) throws AS2Exception
+  {
+    return internalGetCertificate (sAlias, null);
+  }
+
+  @Nonnull
+  public X509Certificate getCertificate (@Nonnull final IBaseMessage aMsg,
+                                         @Nonnull final ECertificatePartnershipType ePartnershipType) throws AS2Exception
+  {
+    final String sAlias = getAlias (aMsg.partnership (), ePartnershipType);
+    return internalGetCertificate (sAlias, ePartnershipType);
+  }
+
+  /**
+   * Read all certificates from the directory. This is expensive for large directories and does not
+   * fill the cache.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <String, X509Certificate> getCertificates () throws AS2Exception
+  {
+    final File aDir = _getDirectory ();
+    final ICommonsOrderedMap <String, X509Certificate> ret = new CommonsLinkedHashMap <> ();
+    for (final File aFile : _getAllFiles (aDir))
+      for (final String sExt : READ_CERTIFICATE_EXTENSIONS)
+      {
+        final String sAlias = _getAlias (aFile.getName (), sExt);
+        if (sAlias != null)
+        {
+          if (!ret.containsKey (sAlias))
+            ret.put (sAlias, _readCertificate (aFile));
+          break;
+        }
+      }
+    return ret;
+  }
+
+  @Nonnull
+  public PrivateKey getPrivateKey (@Nullable final X509Certificate aCert) throws AS2Exception
+  {
+    if (aCert == null)
+      throw new AS2CertificateNotFoundException (aCert);
+
+    final String sFingerprint = _getFingerprint (aCert);
+    final PrivateKey ret = m_aRWLock.readLockedGet ( () -> {
+      final String sAlias = m_aKeyAliases.get (sFingerprint);
+      return sAlias == null ? null : m_aKeys.get (sAlias);
+    });
+    if (ret == null)
+    {
+      final ICommonsList <String> aAllAliases = m_aRWLock.readLockedGet ( () -> new CommonsArrayList <> (m_aKeys.keySet ()));
+      throw new AS2KeyNotFoundException (aCert, null, aAllAliases, null);
+    }
+    return ret;
+  }
+
+  public void addCertificate (@Nonnull @Nonempty final String sAlias,
+                              @Nonnull final X509Certificate aCert,
+                              final boolean bOverwrite) throws AS2Exception
+  {
+    ValueEnforcer.notEmpty (sAlias, "Alias");
+    ValueEnforcer.notNull (aCert, "Cert");
+
+    final String sRealAlias = getUnifiedAlias (sAlias);
+    final File aDir = _getDirectory ();
+
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      final File aExistingFile = _findCertificateFile (aDir, sRealAlias);
+      if (aExistingFile != null && !bOverwrite)
+        throw new AS2CertificateExistsException (sRealAlias);
+
+      final File aFile = new File (aDir, _getFilenamePart (sRealAlias) + CERTIFICATE_EXTENSION);
+      _writeAtomic (aFile, CertificateHelper.getPEMEncodedCertificate (aCert).getBytes (StandardCharsets.US_ASCII));
+      if (aExistingFile != null && !aExistingFile.equals (aFile))
+        AS2IOHelper.getFileOperationManager ().deleteFile (aExistingFile);
+      m_nCertificateGeneration++;
+      m_aCache.put (sRealAlias, aCert);
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    LOGGER.info ("Added certificate alias '" + sRealAlias + "' to certificate directory");
+  }
+
+  public void addPrivateKey (@Nonnull @Nonempty final String sAlias,
+                             @Nonnull final Key aKey,
+                             @Nonnull final String sPassword) throws AS2Exception
+  {
+    ValueEnforcer.notEmpty (sAlias, "Alias");
+    ValueEnforcer.notNull (aKey, "Key");
+    ValueEnforcer.notNull (sPassword, "Password");
+
+    if (!(aKey instanceof final PrivateKey aPrivateKey))
+      throw new AS2Exception ("Only private keys are supported");
+
+    final String sRealAlias = getUnifiedAlias (sAlias);
+    final X509Certificate aCert = internalGetCertificate (sRealAlias, null);
+    final File aFile = new File (_getDirectory (), _getFilenamePart (sRealAlias) + PRIVATE_KEY_EXTENSION);
+    // The file must be readable with the factory password upon the next start
+    final char [] aFactoryPassword = getPassword ();
+    final char [] aFilePassword = aFactoryPassword != null ? aFactoryPassword : sPassword.toCharArray ();
+
+    m_aRWLock.writeLock ().lock ();
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      final KeyStore aKS = AS2Helper.getCryptoHelper ().createNewKeyStore (EKeyStoreType.PKCS12);
+      aKS.load (null, null);
+      aKS.setKeyEntry (sRealAlias, aPrivateKey, aFilePassword, new Certificate [] { aCert });
+      aKS.store (aBAOS, aFilePassword);
+      _writeAtomic (aFile, aBAOS.toByteArray ());
+
+      m_aKeys.put (sRealAlias, aPrivateKey);
+      m_aKeyAliases.put (_getFingerprint (aCert), sRealAlias);
+    }
+    catch (final IOException | GeneralSecurityException ex)
+    {
+      throw WrappedAS2Exception.wrap (ex);
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    LOGGER.info ("Added private key alias '" + sRealAlias + "' to certificate directory");
+  }
+
+  private void _removeKey (@Nonnull final String sRealAlias)
+  {
+    if (m_aKeys.remove (sRealAlias) != null)
+      m_aKeyAliases.entrySet ().removeIf (e -> e.getValue ().equals (sRealAlias));
+  }
+
+  public void clearCertificates () throws AS2Exception
+  {
+    final File aDir = _getDirectory ();
+    int nDeleted = 0;
+
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      for (final File aFile : _getAllFiles (aDir))
+      {
+        boolean bOwnFile = _getAlias (aFile.getName (), PRIVATE_KEY_EXTENSION) != null;
+        for (final String sExt : READ_CERTIFICATE_EXTENSIONS)
+          if (_getAlias (aFile.getName (), sExt) != null)
+            bOwnFile = true;
+        if (bOwnFile && AS2IOHelper.getFileOperationManager ().deleteFile (aFile).isSuccess ())
+          nDeleted++;
+      }
+      m_aKeys.clear ();
+      m_aKeyAliases.clear ();
+      m_nCertificateGeneration++;
+      m_aCache.clear ();
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    LOGGER.info ("Removed all files (" + nDeleted + ") in certificate directory");
+  }
+
+  /**
+   * Remove the passed certificate. This needs to read the whole directory to find the alias of the
+   * certificate.
+   */
+  public void removeCertificate (@Nonnull final X509Certificate aCert) throws AS2Exception
+  {
+    ValueEnforcer.notNull (aCert, "Cert");
+
+    for (final var aEntry : getCertificates ().entrySet ())
+      if (aEntry.getValue ().equals (aCert))
+      {
+        removeCertificate (aEntry.getKey ());
+        return;
+      }
+    throw new AS2CertificateNotFoundException (aCert);
+  }
+
+  public void removeCertificate (@Nullable final String sAlias) throws AS2Exception
+  {
+    final String sRealAlias = getUnifiedAlias (sAlias);
+    final File aDir = _getDirectory ();
+
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      final File aFile = sRealAlias == null ? null : _findCertificateFile (aDir, sRealAlias);
+      if (aFile == null)
+        throw new AS2CertificateNotFoundException (null, sRealAlias);
+
+      if (AS2IOHelper.getFileOperationManager ().deleteFile (aFile).isFailure ())
+        throw new AS2Exception ("Failed to delete certificate file '" + aFile.getAbsolutePath () + "'");
+      m_nCertificateGeneration++;
+      m_aCache.remove (sRealAlias);
+
+      // Remove the private key as well
+      final File aKeyFile = new File (aDir, _getFilenamePart (sRealAlias) + PRIVATE_KEY_EXTENSION);
+      if (aKeyFile.isFile ())
+        AS2IOHelper.getFileOperationManager ().deleteFile (aKeyFile);
+      _removeKey (sRealAlias);
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    LOGGER.info ("Removed certificate alias '" + sRealAlias + "' from certificate directory");
+  }
+}
@@ -32,19 +32,32 @@
  */
 package com.helger.phase2.client;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 
 import com.helger.annotation.Nonempty;
 import com.helger.annotation.WillClose;
+import com.helger.base.CGlobal;
 import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.HasInputStream;
 import com.helger.base.io.stream.StreamHelper;
 import com.helger.base.string.StringHelper;
 import com.helger.http.CHttpHeader;
 import com.helger.io.file.FileHelper;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.mail.datasource.IExtendedDataSource;
+import com.helger.mail.datasource.InputStreamProviderDataSource;
 import com.helger.mime.CMimeType;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.http.TempSharedFileInputStream;
 
 import jakarta.activation.DataHandler;
 import jakarta.annotation.Nonnull;
@@ -53,15 +66,19 @@ import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeBodyPart;
 
 /**
- * This class represents the content of an AS2 client request.
+ * This class represents the content of an AS2 client request. Since v6.0.1 large payloads are not
+ * kept in memory. The resources used for them are released, when the request is closed.
  *
  * @author oleo Date: May 12, 2010 Time: 5:48:26 PM
  * @author Philip Helger
  */
-public class AS2ClientRequest
+public class AS2ClientRequest implements Closeable
 {
   public static final String DEFAULT_CONTENT_TYPE = CMimeType.APPLICATION_XML.getAsString ();
 
+  // Keeps the resources of large payloads
+  private final AS2ResourceHelper m_aResHelper = new AS2ResourceHelper ();
+
   // Content type
   private String m_sContentType = DEFAULT_CONTENT_TYPE;
   private final String m_sSubject;
@@ -129,15 +146,33 @@ public class AS2ClientRequest
    * @param aFile
    *        {@link File} to read the content from. Never <code>null</code>.
    * @param aCharset
-   *        Charset to use. If it is <code>null</code> the content is set as a byte array, if not
-   *        <code>null</code> the content is set as a String.
+   *        Charset to use. If it is <code>null</code> the content is set as binary data, if not
+   *        <code>null</code> the content is set as a String. Binary data larger than
+   *        {@link HTTPHelper#getMaxInMemoryPayloadSize()} is not kept in memory. The file stays open
+   *        until this request is closed.
    * @return this
    */
   @Nonnull
   public AS2ClientRequest setData (@Nonnull final File aFile, @Nullable final Charset aCharset)
   {
     ValueEnforcer.notNull (aFile, "File");
-    setData (FileHelper.getInputStream (aFile), aCharset);
+    if (aCharset == null)
+    {
+      // Large files are not read into memory
+      try
+      {
+        setData (AS2IOHelper.getFileDataSource (aFile,
+                                                CMimeType.APPLICATION_OCTET_STREAM.getAsStringWithoutParameters (),
+                                                m_aResHelper)
+                            .getAsDataHandler ());
+      }
+      catch (final IOException ex)
+      {
+        throw new UncheckedIOException ("Failed to read " + aFile.getAbsolutePath (), ex);
+      }
+    }
+    else
+      setData (FileHelper.getInputStream (aFile), aCharset);
 
     // Set filename by default
     setFilename (aFile.getName ());
@@ -165,25 +200,67 @@ public class AS2ClientRequest
    * @param aIS
    *        {@link InputStream} to read the content from. Never <code>null</code>.
    * @param aCharset
-   *        Charset to use. If it is <code>null</code> the content is set as a byte array, if not
-   *        <code>null</code> the content is set as a String.
+   *        Charset to use. If it is <code>null</code> the content is set as binary data, if not
+   *        <code>null</code> the content is set as a String. Binary data larger than
+   *        {@link HTTPHelper#getMaxInMemoryPayloadSize()} is spooled to a temporary
+   *        file, that is deleted when this request is closed.
    * @return this
    */
   @Nonnull
   public AS2ClientRequest setData (@Nonnull @WillClose final InputStream aIS, @Nullable final Charset aCharset)
   {
     ValueEnforcer.notNull (aIS, "InputStream");
-    final byte [] aBytes = StreamHelper.getAllBytes (aIS);
     if (aCharset == null)
     {
-      // Set pure byte array
-      return setData (aBytes);
+      try
+      {
+        return _setBinaryData (aIS);
+      }
+      catch (final IOException ex)
+      {
+        throw new UncheckedIOException ("Failed to read payload InputStream", ex);
+      }
     }
 
     // Convert to String and remember charset
+    final byte [] aBytes = StreamHelper.getAllBytes (aIS);
     return setData (new String (aBytes, aCharset), aCharset);
   }
 
+  /**
+   * Read binary data from the passed stream. Up to {@link HTTPHelper#getMaxInMemoryPayloadSize()}
+   * bytes are kept in memory, larger payloads are spooled to a temporary file, that is deleted
+   * when this request is closed.
+   */
+  @Nonnull
+  private AS2ClientRequest _setBinaryData (@Nonnull @WillClose final InputStream aIS) throws IOException
+  {
+    final long nMaxInMemory = HTTPHelper.getMaxInMemoryPayloadSize ();
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+    int nRead = 0;
+    while (aBAOS.size () <= nMaxInMemory && (nRead = aIS.read (aBuffer)) >= 0)
+      aBAOS.write (aBuffer, 0, nRead);
+
+    if (nRead < 0)
+    {
+      // Everything was read - set pure byte array
+      StreamHelper.close (aIS);
+      return setData (aBAOS.toByteArray ());
+    }
+
+    // Too large - continue with the rest of the stream in a temporary file
+    final TempSharedFileInputStream aSharedIS = TempSharedFileInputStream.getTempSharedFileInputStream (new SequenceInputStream (aBAOS.getAsInputStream (),
+                                                                                                                                aIS),
+                                                                                                        "clientrequest");
+    m_aResHelper.addCloseable (aSharedIS::closeAndDelete);
+    final IExtendedDataSource aDS = new InputStreamProviderDataSource (HasInputStream.multiple ( () -> aSharedIS.newStream (0,
+                                                                                                                         -1)),
+                                                                       "",
+                                                                       CMimeType.APPLICATION_OCTET_STREAM.getAsStringWithoutParameters ());
+    return setData (aDS.getAsDataHandler ());
+  }
+
   /**
    * Set the provided byte array as data. The "Content-Type" is set to "application/octet-stream".
    *
@@ -357,4 +434,15 @@ public class AS2ClientRequest
     if (StringHelper.isNotEmpty (m_sContentDescription))
       aPart.setHeader (CHttpHeader.CONTENT_DESCRIPTION, m_sContentDescription);
   }
+
+  /**
+   * Release all resources of large payloads, like open files. The data of this request can no
+   * longer be read afterwards.
+   *
+   * @since 6.0.1
+   */
+  public void close ()
+  {
+    m_aResHelper.close ();
+  }
 }
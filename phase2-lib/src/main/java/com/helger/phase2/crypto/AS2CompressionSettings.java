@@ -0,0 +1,237 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.crypto;
+
+import java.util.zip.Deflater;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.CGlobal;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The settings for compressing and decompressing AS2 messages.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class AS2CompressionSettings
+{
+  /** The default compression level as defined by zlib */
+  public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  /** The default compression strategy */
+  public static final ECompressionStrategy DEFAULT_STRATEGY = ECompressionStrategy.DEFAULT;
+  /** The default buffer size used for compression */
+  public static final int DEFAULT_COMPRESSION_BUFFER_SIZE = 8 * CGlobal.BYTES_PER_KILOBYTE;
+  /** The default buffer size used for decompression */
+  public static final int DEFAULT_DECOMPRESSION_BUFFER_SIZE = 8 * CGlobal.BYTES_PER_KILOBYTE;
+  /** The default number of parallel compression threads: 0 meaning parallel compression is off */
+  public static final int DEFAULT_PARALLEL_THREADS = 0;
+  /** The default size of a single block for parallel compression */
+  public static final int DEFAULT_PARALLEL_BLOCK_SIZE = 128 * CGlobal.BYTES_PER_KILOBYTE;
+
+  private int m_nLevel = DEFAULT_LEVEL;
+  private ECompressionStrategy m_eStrategy = DEFAULT_STRATEGY;
+  private int m_nCompressionBufferSize = DEFAULT_COMPRESSION_BUFFER_SIZE;
+  private int m_nDecompressionBufferSize = DEFAULT_DECOMPRESSION_BUFFER_SIZE;
+  private int m_nParallelThreads = DEFAULT_PARALLEL_THREADS;
+  private int m_nParallelBlockSize = DEFAULT_PARALLEL_BLOCK_SIZE;
+
+  public AS2CompressionSettings ()
+  {}
+
+  /**
+   * @return The compression level between 0 (no compression) and 9 (best compression) or -1 for
+   *         the zlib default.
+   */
+  public final int getLevel ()
+  {
+    return m_nLevel;
+  }
+
+  /**
+   * @param nLevel
+   *        The compression level between 0 (no compression) and 9 (best compression) or -1 for
+   *        the zlib default.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setLevel (final int nLevel)
+  {
+    ValueEnforcer.isBetweenInclusive (nLevel, "Level", Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION);
+    m_nLevel = nLevel;
+    return this;
+  }
+
+  /**
+   * @return The compression strategy. Never <code>null</code>.
+   */
+  @Nonnull
+  public final ECompressionStrategy getStrategy ()
+  {
+    return m_eStrategy;
+  }
+
+  /**
+   * @param eStrategy
+   *        The compression strategy to use. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setStrategy (@Nonnull final ECompressionStrategy eStrategy)
+  {
+    ValueEnforcer.notNull (eStrategy, "Strategy");
+    m_eStrategy = eStrategy;
+    return this;
+  }
+
+  /**
+   * @return The buffer size in bytes used for compression. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getCompressionBufferSize ()
+  {
+    return m_nCompressionBufferSize;
+  }
+
+  /**
+   * @param nCompressionBufferSize
+   *        The buffer size in bytes used for compression. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setCompressionBufferSize (@Nonnegative final int nCompressionBufferSize)
+  {
+    ValueEnforcer.isGT0 (nCompressionBufferSize, "CompressionBufferSize");
+    m_nCompressionBufferSize = nCompressionBufferSize;
+    return this;
+  }
+
+  /**
+   * @return The buffer size in bytes used for decompression. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getDecompressionBufferSize ()
+  {
+    return m_nDecompressionBufferSize;
+  }
+
+  /**
+   * @param nDecompressionBufferSize
+   *        The buffer size in bytes used for decompression. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setDecompressionBufferSize (@Nonnegative final int nDecompressionBufferSize)
+  {
+    ValueEnforcer.isGT0 (nDecompressionBufferSize, "DecompressionBufferSize");
+    m_nDecompressionBufferSize = nDecompressionBufferSize;
+    return this;
+  }
+
+  /**
+   * @return The number of threads used for parallel compression. 0 means that parallel
+   *         compression is disabled. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getParallelThreads ()
+  {
+    return m_nParallelThreads;
+  }
+
+  /**
+   * @return <code>true</code> if parallel compression is enabled, <code>false</code> if not.
+   */
+  public final boolean isParallel ()
+  {
+    return m_nParallelThreads > 0;
+  }
+
+  /**
+   * Set the number of threads to be used for parallel compression. If enabled, the data is split
+   * into blocks that are compressed independently and joined into a single valid zlib stream. This
+   * results in a slightly lower compression ratio. The blocks of all messages are compressed by a
+   * shared pool with one thread per available processor.
+   *
+   * @param nParallelThreads
+   *        The maximum number of blocks of a message compressed in parallel. Values larger than the
+   *        number of available processors are reduced. Must be &ge; 0. Use 0 to disable parallel
+   *        compression.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setParallelThreads (@Nonnegative final int nParallelThreads)
+  {
+    ValueEnforcer.isGE0 (nParallelThreads, "ParallelThreads");
+    m_nParallelThreads = nParallelThreads;
+    return this;
+  }
+
+  /**
+   * @return The size in bytes of the uncompressed blocks for parallel compression. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getParallelBlockSize ()
+  {
+    return m_nParallelBlockSize;
+  }
+
+  /**
+   * @param nParallelBlockSize
+   *        The size in bytes of the uncompressed blocks for parallel compression. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS2CompressionSettings setParallelBlockSize (@Nonnegative final int nParallelBlockSize)
+  {
+    ValueEnforcer.isGT0 (nParallelBlockSize, "ParallelBlockSize");
+    m_nParallelBlockSize = nParallelBlockSize;
+    return this;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Level", m_nLevel)
+                                       .append ("Strategy", m_eStrategy)
+                                       .append ("CompressionBufferSize", m_nCompressionBufferSize)
+                                       .append ("DecompressionBufferSize", m_nDecompressionBufferSize)
+                                       .append ("ParallelThreads", m_nParallelThreads)
+                                       .append ("ParallelBlockSize", m_nParallelBlockSize)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.OutputCompressor;
+
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.phase2.util.AS2ParallelDeflaterOutputStream;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * A configurable zlib {@link OutputCompressor} as a replacement for
+ * {@link org.bouncycastle.cms.jcajce.ZlibCompressor} which only supports the default settings.
+ * Depending on the settings, the compression happens sequentially or in parallel. The settings are
+ * copied in the constructor, so one instance can be used for many streams.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@Immutable
+public class AS2ZlibCompressor implements OutputCompressor
+{
+  private static final AlgorithmIdentifier ALGORITHM = new AlgorithmIdentifier (CMSObjectIdentifiers.zlibCompress);
+
+  private final int m_nLevel;
+  private final int m_nStrategy;
+  private final int m_nBufferSize;
+  private final int m_nParallelThreads;
+  private final int m_nParallelBlockSize;
+
+  public AS2ZlibCompressor (@Nonnull final AS2CompressionSettings aSettings)
+  {
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_nLevel = aSettings.getLevel ();
+    m_nStrategy = aSettings.getStrategy ().getDeflaterStrategy ();
+    m_nBufferSize = aSettings.getCompressionBufferSize ();
+    m_nParallelThreads = aSettings.getParallelThreads ();
+    m_nParallelBlockSize = aSettings.getParallelBlockSize ();
+  }
+
+  @Nonnull
+  public AlgorithmIdentifier getAlgorithmIdentifier ()
+  {
+    return ALGORITHM;
+  }
+
+  @Nonnull
+  public OutputStream getOutputStream (@Nonnull final OutputStream aOS)
+  {
+    if (m_nParallelThreads > 0)
+      return new AS2ParallelDeflaterOutputStream (aOS, m_nLevel, m_nStrategy, m_nParallelThreads, m_nParallelBlockSize);
+
+    final Deflater aDeflater = new Deflater (m_nLevel);
+    aDeflater.setStrategy (m_nStrategy);
+    return new DeflaterOutputStream (aOS, aDeflater, m_nBufferSize)
+    {
+      @Override
+      public void close () throws IOException
+      {
+        try
+        {
+          super.close ();
+        }
+        finally
+        {
+          // Not done automatically for a custom Deflater
+          def.end ();
+        }
+      }
+    };
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Level", m_nLevel)
+                                       .append ("Strategy", m_nStrategy)
+                                       .append ("BufferSize", m_nBufferSize)
+                                       .append ("ParallelThreads", m_nParallelThreads)
+                                       .append ("ParallelBlockSize", m_nParallelBlockSize)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.InputExpander;
+import org.bouncycastle.operator.InputExpanderProvider;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * A zlib {@link InputExpanderProvider} with a configurable buffer size, as a replacement for
+ * {@link org.bouncycastle.cms.jcajce.ZlibExpanderProvider}. Instances are immutable and can be
+ * shared between messages.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@Immutable
+public class AS2ZlibExpanderProvider implements InputExpanderProvider
+{
+  /** The shared instance with the default buffer size */
+  public static final AS2ZlibExpanderProvider DEFAULT = new AS2ZlibExpanderProvider (AS2CompressionSettings.DEFAULT_DECOMPRESSION_BUFFER_SIZE);
+
+  private final int m_nBufferSize;
+
+  public AS2ZlibExpanderProvider (@Nonnegative final int nBufferSize)
+  {
+    ValueEnforcer.isGT0 (nBufferSize, "BufferSize");
+    m_nBufferSize = nBufferSize;
+  }
+
+  /**
+   * @return The buffer size in bytes used for decompression. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getBufferSize ()
+  {
+    return m_nBufferSize;
+  }
+
+  /**
+   * Get the provider matching the passed settings. The shared {@link #DEFAULT} instance is returned
+   * if the default buffer size is used.
+   *
+   * @param aSettings
+   *        The compression settings to use. May not be <code>null</code>.
+   * @return The expander provider to use. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS2ZlibExpanderProvider getInstance (@Nonnull final AS2CompressionSettings aSettings)
+  {
+    ValueEnforcer.notNull (aSettings, "Settings");
+    final int nBufferSize = aSettings.getDecompressionBufferSize ();
+    return nBufferSize == DEFAULT.m_nBufferSize ? DEFAULT : new AS2ZlibExpanderProvider (nBufferSize);
+  }
+
+  @Nonnull
+  public InputExpander get (@Nonnull final AlgorithmIdentifier aAlgorithm)
+  {
+    return new InputExpander ()
+    {
+      public AlgorithmIdentifier getAlgorithmIdentifier ()
+      {
+        return aAlgorithm;
+      }
+
+      public InputStream getInputStream (@Nonnull final InputStream aIS)
+      {
+        return new InflaterInputStream (aIS, new Inflater (), m_nBufferSize)
+        {
+          @Override
+          public void close () throws IOException
+          {
+            try
+            {
+              super.close ();
+            }
+            finally
+            {
+              // Not done automatically for a custom Inflater
+              inf.end ();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BufferSize", m_nBufferSize).getToString ();
+  }
+}
@@ -44,6 +44,7 @@ import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.Security;
 import java.security.SignatureException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Collections;
@@ -51,27 +52,33 @@ import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 import org.bouncycastle.asn1.cms.CMSAttributes;
 import org.bouncycastle.asn1.smime.SMIMECapabilitiesAttribute;
 import org.bouncycastle.asn1.smime.SMIMECapabilityVector;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaCertStore;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
 import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataStreamGenerator;
 import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
 import org.bouncycastle.cms.RecipientId;
 import org.bouncycastle.cms.RecipientInformation;
 import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInfoGenerator;
 import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
 import org.bouncycastle.cms.SignerInformationVerifier;
-import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
 import org.bouncycastle.cms.jcajce.JceKeyTransEnvelopedRecipient;
@@ -84,17 +91,23 @@ import org.bouncycastle.mail.smime.SMIMESignedGenerator;
 import org.bouncycastle.mail.smime.SMIMESignedParser;
 import org.bouncycastle.mail.smime.SMIMEUtil;
 import org.bouncycastle.mail.smime.util.FileBackedMimeBodyPart;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.OutputEncryptor;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.Store;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.annotation.Nonempty;
 import com.helger.annotation.WillNotClose;
+import com.helger.annotation.style.ReturnsMutableCopy;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.equals.EqualsHelper;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.NonClosingOutputStream;
 import com.helger.base.io.stream.NullOutputStream;
 import com.helger.base.lang.clazz.ClassHelper;
 import com.helger.base.string.StringHelper;
@@ -102,16 +115,24 @@ import com.helger.base.system.SystemProperties;
 import com.helger.bc.PBCProvider;
 import com.helger.collection.CollectionFind;
 import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.CommonsLinkedHashMap;
+import com.helger.collection.commons.CommonsLinkedHashSet;
 import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsOrderedMap;
+import com.helger.collection.commons.ICommonsOrderedSet;
 import com.helger.datetime.helper.PDTFactory;
 import com.helger.http.CHttp;
 import com.helger.http.CHttpHeader;
 import com.helger.io.file.FileHelper;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.cert.AS2CertificateInfo;
+import com.helger.phase2.cert.AS2CertificateInfoCache;
 import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.util.AS2BoundedCache;
 import com.helger.phase2.util.AS2HttpHelper;
 import com.helger.phase2.util.AS2IOHelper;
 import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.phase2.util.javamail.AS2SpooledMimeBodyPart;
 import com.helger.security.keystore.IKeyStoreType;
 
 import jakarta.activation.CommandMap;
@@ -188,7 +209,34 @@ public class BCCryptoHelper implements ICryptoHelper
       DUMP_DECRYPTED_DIR_PATH = null;
   }
 
+  /**
+   * The default maximum number of entries in the certificate based caches for signing and
+   * verification.
+   *
+   * @since 6.0.1
+   */
+  public static final int DEFAULT_CERTIFICATE_CACHE_SIZE = 1_000;
+
+  /**
+   * The Content-Type of S/MIME enveloped data as created by the encryption.
+   *
+   * @since 6.0.1
+   */
+  public static final String CONTENT_TYPE_ENVELOPED_DATA = "application/pkcs7-mime; name=\"smime.p7m\"; smime-type=enveloped-data";
+
   private String m_sSecurityProviderName = DEFAULT_SECURITY_PROVIDER_NAME;
+  // All caches contain only immutable or thread-safe objects
+  // Key: security provider name
+  private final AS2BoundedCache <String, DigestCalculatorProvider> m_aDigestCalculatorProviderCache = new AS2BoundedCache <> ("BCCryptoHelper.DigestCalculatorProvider",
+                                                                                                                                16);
+  // Key: algorithm OID
+  private final AS2BoundedCache <ASN1ObjectIdentifier, CMSAttributeTableGenerator> m_aSignedAttributeCache = new AS2BoundedCache <> ("BCCryptoHelper.SignedAttributes",
+                                                                                                                                       64);
+  // Key: security provider name and certificate fingerprint
+  private final AS2BoundedCache <String, JcaCertStore> m_aCertStoreCache = new AS2BoundedCache <> ("BCCryptoHelper.CertStore",
+                                                                                                    DEFAULT_CERTIFICATE_CACHE_SIZE);
+  private final AS2BoundedCache <String, SignerInformationVerifier> m_aVerifierCache = new AS2BoundedCache <> ("BCCryptoHelper.SignerInformationVerifier",
+                                                                                                               DEFAULT_CERTIFICATE_CACHE_SIZE);
 
   public BCCryptoHelper ()
   {
@@ -233,6 +281,105 @@ public class BCCryptoHelper implements ICryptoHelper
     return this;
   }
 
+  /**
+   * @return The cache of digest calculator providers, per security provider. Never
+   *         <code>null</code>. Can be used to read the hit and miss counts.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2BoundedCache <String, DigestCalculatorProvider> getDigestCalculatorProviderCache ()
+  {
+    return m_aDigestCalculatorProviderCache;
+  }
+
+  /**
+   * @return The cache of signed attributes (S/MIME capabilities) per signing algorithm. Never
+   *         <code>null</code>. Can be used to read the hit and miss counts.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2BoundedCache <ASN1ObjectIdentifier, CMSAttributeTableGenerator> getSignedAttributeCache ()
+  {
+    return m_aSignedAttributeCache;
+  }
+
+  /**
+   * @return The cache of certificate stores that are included in signatures, per certificate.
+   *         Never <code>null</code>. Can be used to read the hit and miss counts.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2BoundedCache <String, JcaCertStore> getCertStoreCache ()
+  {
+    return m_aCertStoreCache;
+  }
+
+  /**
+   * @return The cache of signature verifiers, per certificate. Never <code>null</code>. Can be used
+   *         to read the hit and miss counts.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2BoundedCache <String, SignerInformationVerifier> getVerifierCache ()
+  {
+    return m_aVerifierCache;
+  }
+
+  /**
+   * Remove all entries from all caches. The statistics are kept.
+   *
+   * @since 6.0.1
+   */
+  public void clearCaches ()
+  {
+    m_aDigestCalculatorProviderCache.clear ();
+    m_aSignedAttributeCache.clear ();
+    m_aCertStoreCache.clear ();
+    m_aVerifierCache.clear ();
+  }
+
+  @Nonnull
+  private DigestCalculatorProvider _getDigestCalculatorProvider () throws OperatorCreationException
+  {
+    final String sProviderName = m_sSecurityProviderName;
+    return m_aDigestCalculatorProviderCache.getOrCreate (sProviderName,
+                                                        k -> new JcaDigestCalculatorProviderBuilder ().setProvider (sProviderName)
+                                                                                                      .build ());
+  }
+
+  /**
+   * Get the cache key for certificate related objects. It consists of the security provider name
+   * and the SHA-256 fingerprint of the encoded certificate. The fingerprint is taken from the
+   * {@link AS2CertificateInfoCache}, so for known certificate objects neither the encoding nor the
+   * digest are calculated again.
+   */
+  @Nonnull
+  private String _getCacheKey (@Nonnull final X509Certificate aCert) throws CertificateEncodingException
+  {
+    return m_sSecurityProviderName + ':' + AS2CertificateInfoCache.getCertificateInfo (aCert).getFingerprintSHA256Hex ();
+  }
+
+  @Nonnull
+  private static CMSAttributeTableGenerator _createSignedAttributeGenerator (@Nonnull final ASN1ObjectIdentifier aAlgorithmOID)
+  {
+    // create some smime capabilities in case someone wants to respond
+    final ASN1EncodableVector aSignedAttrs = new ASN1EncodableVector ();
+    final SMIMECapabilityVector aCapabilities = new SMIMECapabilityVector ();
+    aCapabilities.addCapability (aAlgorithmOID);
+    aSignedAttrs.add (new SMIMECapabilitiesAttribute (aCapabilities));
+    return new DefaultSignedAttributeTableGenerator (new AttributeTable (aSignedAttrs));
+  }
+
+  @Nonnull
+  private SignerInformationVerifier _getSignerInformationVerifier (@Nonnull final X509Certificate aCert) throws CertificateEncodingException,
+                                                                                                          OperatorCreationException
+  {
+    final String sProviderName = m_sSecurityProviderName;
+    return m_aVerifierCache.getOrCreate (_getCacheKey (aCert),
+                                         k -> new JcaSimpleSignerInfoVerifierBuilder ().setProvider (sProviderName)
+                                                                                       .build (aCert.getPublicKey ()));
+  }
+
   @Nonnull
   public KeyStore createNewKeyStore (@Nonnull final IKeyStoreType aKeyStoreType) throws GeneralSecurityException
   {
@@ -304,34 +451,13 @@ public class BCCryptoHelper implements ICryptoHelper
     return sSmimeType != null && sSmimeType.equalsIgnoreCase ("compressed-data");
   }
 
-  @Nonnull
-  public MIC calculateMIC (@Nonnull final MimeBodyPart aPart,
-                           @Nonnull final ECryptoAlgorithmSign eDigestAlgorithm,
-                           final boolean bIncludeHeaders) throws GeneralSecurityException,
-                                                          MessagingException,
-                                                          IOException
+  /**
+   * Feed the passed MIME part into all provided message digests, reading the part only once.
+   */
+  private static void _updateDigests (@Nonnull final MimeBodyPart aPart,
+                                      @Nonnull final ICommonsList <MessageDigest> aMessageDigests,
+                                      final boolean bIncludeHeaders) throws MessagingException, IOException
   {
-    ValueEnforcer.notNull (aPart, "MimeBodyPart");
-    ValueEnforcer.notNull (eDigestAlgorithm, "DigestAlgorithm");
-
-    if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("BCCryptoHelper.calculateMIC (" +
-                    eDigestAlgorithm +
-                    " [" +
-                    eDigestAlgorithm.getOID ().getId () +
-                    "], " +
-                    bIncludeHeaders +
-                    ")");
-
-    final ASN1ObjectIdentifier aMICAlg = eDigestAlgorithm.getOID ();
-
-    MessageDigest aMessageDigest = MessageDigest.getInstance (aMICAlg.getId (), m_sSecurityProviderName);
-    if (false)
-    {
-      // Enable for development debugging only
-      aMessageDigest = new LoggingMessageDigest (aMessageDigest);
-    }
-
     if (bIncludeHeaders)
     {
       // Start hashing the header
@@ -339,16 +465,20 @@ public class BCCryptoHelper implements ICryptoHelper
       while (aHeaderLines.hasMoreElements ())
       {
         final String sHeaderLine = aHeaderLines.nextElement ();
-
-        aMessageDigest.update (AS2IOHelper.getAllAsciiBytes (sHeaderLine));
-        aMessageDigest.update (EOL_BYTES);
+        final byte [] aHeaderBytes = AS2IOHelper.getAllAsciiBytes (sHeaderLine);
+        for (final MessageDigest aMessageDigest : aMessageDigests)
+        {
+          aMessageDigest.update (aHeaderBytes);
+          aMessageDigest.update (EOL_BYTES);
+        }
 
         if (LOGGER.isDebugEnabled ())
           LOGGER.debug ("Using header line '" + sHeaderLine + "' for MIC calculation");
       }
 
       // The CRLF separator between header and content
-      aMessageDigest.update (EOL_BYTES);
+      for (final MessageDigest aMessageDigest : aMessageDigests)
+        aMessageDigest.update (EOL_BYTES);
     }
 
     final String sMICEncoding = aPart.getEncoding ();
@@ -358,13 +488,48 @@ public class BCCryptoHelper implements ICryptoHelper
                                          : "Using no specific Content-Transfer-Encoding for MIC calculation");
     }
 
+    // Chain one DigestOutputStream per digest, so that each written byte updates all digests
+    OutputStream aDigestOS = new NullOutputStream ();
+    for (final MessageDigest aMessageDigest : aMessageDigests)
+      aDigestOS = new DigestOutputStream (aDigestOS, aMessageDigest);
+
     // No need to canonicalize here - see issue #12
-    try (final DigestOutputStream aDigestOS = new DigestOutputStream (new NullOutputStream (), aMessageDigest);
-         final OutputStream aEncodedOS = AS2IOHelper.getContentTransferEncodingAwareOutputStream (aDigestOS,
+    try (final OutputStream aEncodedOS = AS2IOHelper.getContentTransferEncodingAwareOutputStream (aDigestOS,
                                                                                                   sMICEncoding))
     {
       aPart.getDataHandler ().writeTo (aEncodedOS);
     }
+  }
+
+  @Nonnull
+  public MIC calculateMIC (@Nonnull final MimeBodyPart aPart,
+                           @Nonnull final ECryptoAlgorithmSign eDigestAlgorithm,
+                           final boolean bIncludeHeaders) throws GeneralSecurityException,
+                                                          MessagingException,
+                                                          IOException
+  {
+    ValueEnforcer.notNull (aPart, "MimeBodyPart");
+    ValueEnforcer.notNull (eDigestAlgorithm, "DigestAlgorithm");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.calculateMIC (" +
+                    eDigestAlgorithm +
+                    " [" +
+                    eDigestAlgorithm.getOID ().getId () +
+                    "], " +
+                    bIncludeHeaders +
+                    ")");
+
+    final ASN1ObjectIdentifier aMICAlg = eDigestAlgorithm.getOID ();
+
+    MessageDigest aMessageDigest = MessageDigest.getInstance (aMICAlg.getId (), m_sSecurityProviderName);
+    if (false)
+    {
+      // Enable for development debugging only
+      aMessageDigest = new LoggingMessageDigest (aMessageDigest);
+    }
+
+    _updateDigests (aPart, new CommonsArrayList <> (aMessageDigest), bIncludeHeaders);
 
     // Build result digest array
     final byte [] aMIC = aMessageDigest.digest ();
@@ -378,6 +543,49 @@ public class BCCryptoHelper implements ICryptoHelper
     return ret;
   }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> calculateMICs (@Nonnull final MimeBodyPart aPart,
+                                                                      @Nonnull final Iterable <ECryptoAlgorithmSign> aDigestAlgorithms,
+                                                                      final boolean bIncludeHeaders) throws GeneralSecurityException,
+                                                                                                     MessagingException,
+                                                                                                     IOException
+  {
+    ValueEnforcer.notNull (aPart, "MimeBodyPart");
+    ValueEnforcer.notNull (aDigestAlgorithms, "DigestAlgorithms");
+
+    // Unique algorithms in the provided order
+    final ICommonsOrderedSet <ECryptoAlgorithmSign> aUniqueAlgorithms = new CommonsLinkedHashSet <> ();
+    for (final ECryptoAlgorithmSign eDigestAlgorithm : aDigestAlgorithms)
+      if (eDigestAlgorithm != null)
+        aUniqueAlgorithms.add (eDigestAlgorithm);
+
+    final ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> ret = new CommonsLinkedHashMap <> ();
+    if (aUniqueAlgorithms.isEmpty ())
+      return ret;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.calculateMICs (" + aUniqueAlgorithms + ", " + bIncludeHeaders + ")");
+
+    final ICommonsList <MessageDigest> aMessageDigests = new CommonsArrayList <> (aUniqueAlgorithms.size ());
+    for (final ECryptoAlgorithmSign eDigestAlgorithm : aUniqueAlgorithms)
+      aMessageDigests.add (MessageDigest.getInstance (eDigestAlgorithm.getOID ().getId (), m_sSecurityProviderName));
+
+    // Read the part only once
+    _updateDigests (aPart, aMessageDigests, bIncludeHeaders);
+
+    int nIndex = 0;
+    for (final ECryptoAlgorithmSign eDigestAlgorithm : aUniqueAlgorithms)
+    {
+      final MIC aMIC = new MIC (aMessageDigests.get (nIndex++).digest (), eDigestAlgorithm);
+      ret.put (eDigestAlgorithm, aMIC);
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("  Calculated MIC = " + aMIC.getAsAS2String ());
+    }
+    return ret;
+  }
+
   private static void _dumpDecrypted (@Nonnull final byte [] aPayload)
   {
     // Ensure a unique filename
@@ -494,7 +702,7 @@ public class BCCryptoHelper implements ICryptoHelper
                     eCTE);
 
     // Check if the certificate is expired or active.
-    aX509Cert.checkValidity ();
+    AS2CertificateInfoCache.getCertificateInfo (aX509Cert).checkValidity ();
 
     final ASN1ObjectIdentifier aEncAlg = eAlgorithm.getOID ();
 
@@ -509,6 +717,124 @@ public class BCCryptoHelper implements ICryptoHelper
     return aGen.generate (aPart, aEncryptor);
   }
 
+  /**
+   * Encrypt a MIME body part and write the binary CMS enveloped data directly to the provided
+   * output stream. In contrast to
+   * {@link #encrypt(MimeBodyPart, X509Certificate, ECryptoAlgorithmCrypt, EContentTransferEncoding)}
+   * nothing is buffered, so the memory consumption is independent of the payload size. The
+   * Content-Type of the written data is {@link #CONTENT_TYPE_ENVELOPED_DATA}.<br>
+   * Note: the source part might be modified by adding the "Content-Type" and
+   * "Content-Transfer-Encoding" headers if they are missing.
+   *
+   * @param aPart
+   *        MIME body part to be encrypted. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate of the receiver. May not be <code>null</code>.
+   * @param eAlgorithm
+   *        The encryption algorithm to be used. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used for the source part, if none is present. May
+   *        not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write the enveloped data to. May not be <code>null</code>. The
+   *        stream is not closed.
+   * @throws GeneralSecurityException
+   *         In case of a certificate error
+   * @throws CMSException
+   *         In case encryption fails
+   * @throws MessagingException
+   *         In case of a MIME error
+   * @throws IOException
+   *         In case writing fails
+   * @since 6.0.1
+   */
+  public void encryptToStream (@Nonnull final MimeBodyPart aPart,
+                               @Nonnull final X509Certificate aX509Cert,
+                               @Nonnull final ECryptoAlgorithmCrypt eAlgorithm,
+                               @Nonnull final EContentTransferEncoding eCTE,
+                               @Nonnull @WillNotClose final OutputStream aOS) throws GeneralSecurityException,
+                                                                              CMSException,
+                                                                              MessagingException,
+                                                                              IOException
+  {
+    ValueEnforcer.notNull (aPart, "MimeBodyPart");
+    ValueEnforcer.notNull (aX509Cert, "X509Cert");
+    ValueEnforcer.notNull (eAlgorithm, "Algorithm");
+    ValueEnforcer.notNull (eCTE, "ContentTransferEncoding");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.encryptToStream; X509 subject=" +
+                    aX509Cert.getSubjectX500Principal ().getName () +
+                    "; algorithm=" +
+                    eAlgorithm +
+                    " [" +
+                    eAlgorithm.getOID ().getId () +
+                    "], CTE=" +
+                    eCTE);
+
+    // Check if the certificate is expired or active.
+    AS2CertificateInfoCache.getCertificateInfo (aX509Cert).checkValidity ();
+
+    final CMSEnvelopedDataStreamGenerator aGen = new CMSEnvelopedDataStreamGenerator ();
+    aGen.addRecipientInfoGenerator (new JceKeyTransRecipientInfoGenerator (aX509Cert).setProvider (m_sSecurityProviderName));
+
+    final OutputEncryptor aEncryptor = new JceCMSContentEncryptorBuilder (eAlgorithm.getOID ()).setProvider (m_sSecurityProviderName)
+                                                                                               .build ();
+
+    _ensureContentHeaders (aPart, eCTE);
+    try (final OutputStream aEncryptingOS = aGen.open (new NonClosingOutputStream (aOS), aEncryptor))
+    {
+      AS2IOHelper.writeMimeBodyPart (aPart, aEncryptingOS);
+    }
+    aOS.flush ();
+  }
+
+  /**
+   * Encrypt a MIME body part like
+   * {@link #encryptToStream(MimeBodyPart, X509Certificate, ECryptoAlgorithmCrypt, EContentTransferEncoding, OutputStream)}
+   * and spool the result into exactly one temporary file.
+   *
+   * @param aPart
+   *        MIME body part to be encrypted. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate of the receiver. May not be <code>null</code>.
+   * @param eAlgorithm
+   *        The encryption algorithm to be used. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to create the temporary file. May not be <code>null</code>.
+   * @return The file backed encrypted MIME body part. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public AS2SpooledMimeBodyPart encryptStreaming (@Nonnull final MimeBodyPart aPart,
+                                                  @Nonnull final X509Certificate aX509Cert,
+                                                  @Nonnull final ECryptoAlgorithmCrypt eAlgorithm,
+                                                  @Nonnull final EContentTransferEncoding eCTE,
+                                                  @Nonnull final AS2ResourceHelper aResHelper) throws Exception
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final File aSpoolFile = aResHelper.createTempFile ();
+    try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile))
+    {
+      encryptToStream (aPart, aX509Cert, eAlgorithm, eCTE, aOS);
+    }
+
+    // Same headers as SMIMEEnvelopedGenerator
+    final AS2SpooledMimeBodyPart aEncryptedPart = new AS2SpooledMimeBodyPart (aSpoolFile,
+                                                                              CONTENT_TYPE_ENVELOPED_DATA,
+                                                                              aResHelper);
+    aEncryptedPart.setHeader (CHttpHeader.CONTENT_DISPOSITION, "attachment; filename=\"smime.p7m\"");
+    aEncryptedPart.setHeader ("Content-Description", "S/MIME Encrypted Message");
+    aEncryptedPart.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+    return aEncryptedPart;
+  }
+
   private static Map <ASN1ObjectIdentifier, String> NEW_SIGN_ALGOS;
 
   static
@@ -529,6 +855,40 @@ public class BCCryptoHelper implements ICryptoHelper
       LOGGER.debug ("The current algorithms for RFC 5751 mode are " + NEW_SIGN_ALGOS);
   }
 
+  @Nonnull
+  private SignerInfoGenerator _createSignerInfoGenerator (@Nonnull final X509Certificate aX509Cert,
+                                                          @Nonnull final PrivateKey aPrivateKey,
+                                                          @Nonnull final ECryptoAlgorithmSign eAlgorithm,
+                                                          final boolean bRemoveCmsAlgorithmProtect) throws OperatorCreationException,
+                                                                                                     CertificateEncodingException
+  {
+    // The content signer is stateful and bound to the private key, so it
+    // cannot be cached
+    final ContentSigner aContentSigner = new JcaContentSignerBuilder (eAlgorithm.getSignAlgorithmName ()).setProvider (m_sSecurityProviderName)
+                                                                                                        .build (aPrivateKey);
+    SignerInfoGenerator aSigInfoGen = new JcaSignerInfoGeneratorBuilder (_getDigestCalculatorProvider ()).setSignedAttributeGenerator (m_aSignedAttributeCache.getOrCreate (eAlgorithm.getOID (),
+                                                                                                                                                                           BCCryptoHelper::_createSignedAttributeGenerator))
+                                                                                                        .build (aContentSigner,
+                                                                                                                aX509Cert);
+    if (bRemoveCmsAlgorithmProtect)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Removing CMS AlgorithmProtect attribute, if it is present");
+
+      final CMSAttributeTableGenerator aAttrGen = aSigInfoGen.getSignedAttributeTableGenerator ();
+      aSigInfoGen = new SignerInfoGenerator (aSigInfoGen, new DefaultSignedAttributeTableGenerator ()
+      {
+        @Override
+        public AttributeTable getAttributes (final Map parameters)
+        {
+          final AttributeTable ret = aAttrGen.getAttributes (parameters);
+          return ret.remove (CMSAttributes.cmsAlgorithmProtect);
+        }
+      }, aSigInfoGen.getUnsignedAttributeTableGenerator ());
+    }
+    return aSigInfoGen;
+  }
+
   @Nonnull
   public MimeBodyPart sign (@Nonnull final MimeBodyPart aPart,
                             @Nonnull final X509Certificate aX509Cert,
@@ -559,18 +919,10 @@ public class BCCryptoHelper implements ICryptoHelper
                     eCTE);
 
     // Check if the certificate is expired or active.
-    aX509Cert.checkValidity ();
+    AS2CertificateInfoCache.getCertificateInfo (aX509Cert).checkValidity ();
 
-    // create a CertStore containing the certificates we want carried
-    // in the signature
-    final ICommonsList <X509Certificate> aCertList = new CommonsArrayList <> (aX509Cert);
-    final JcaCertStore aCertStore = new JcaCertStore (aCertList);
-
-    // create some smime capabilities in case someone wants to respond
-    final ASN1EncodableVector aSignedAttrs = new ASN1EncodableVector ();
-    final SMIMECapabilityVector aCapabilities = new SMIMECapabilityVector ();
-    aCapabilities.addCapability (eAlgorithm.getOID ());
-    aSignedAttrs.add (new SMIMECapabilitiesAttribute (aCapabilities));
+    // The smime capabilities in case someone wants to respond are cached per
+    // algorithm - see _createSignedAttributeGenerator
 
     // add an encryption key preference for encrypted responses -
     // normally this would be different from the signing certificate...
@@ -593,34 +945,18 @@ public class BCCryptoHelper implements ICryptoHelper
     // adding the smime attributes above to the signed attributes that
     // will be generated as part of the signature. The encryption algorithm
     // used is taken from the key
-    {
-      SignerInfoGenerator aSigInfoGen = new JcaSimpleSignerInfoGeneratorBuilder ().setProvider (m_sSecurityProviderName)
-                                                                                  .setSignedAttributeGenerator (new AttributeTable (aSignedAttrs))
-                                                                                  .build (eAlgorithm.getSignAlgorithmName (),
-                                                                                          aPrivateKey,
-                                                                                          aX509Cert);
-      if (bRemoveCmsAlgorithmProtect)
-      {
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Removing CMS AlgorithmProtect attribute, if it is present");
-
-        final CMSAttributeTableGenerator aAttrGen = aSigInfoGen.getSignedAttributeTableGenerator ();
-        aSigInfoGen = new SignerInfoGenerator (aSigInfoGen, new DefaultSignedAttributeTableGenerator ()
-        {
-          @Override
-          public AttributeTable getAttributes (final Map parameters)
-          {
-            final AttributeTable ret = aAttrGen.getAttributes (parameters);
-            return ret.remove (CMSAttributes.cmsAlgorithmProtect);
-          }
-        }, aSigInfoGen.getUnsignedAttributeTableGenerator ());
-      }
-      aSGen.addSignerInfoGenerator (aSigInfoGen);
-    }
+    aSGen.addSignerInfoGenerator (_createSignerInfoGenerator (aX509Cert,
+                                                              aPrivateKey,
+                                                              eAlgorithm,
+                                                              bRemoveCmsAlgorithmProtect));
 
     if (bIncludeCertificateInSignedContent)
     {
       // add our pool of certs and crls (if any) to go with the signature
+      // create a CertStore containing the certificates we want carried
+      // in the signature
+      final JcaCertStore aCertStore = m_aCertStoreCache.getOrCreate (_getCacheKey (aX509Cert),
+                                                                      k -> new JcaCertStore (new CommonsArrayList <> (aX509Cert)));
       aSGen.addCertificates (aCertStore);
     }
 
@@ -636,18 +972,392 @@ public class BCCryptoHelper implements ICryptoHelper
     return aSignedPart;
   }
 
+  /**
+   * Same as the SMIME generators: ensure the content headers of the part to be secured are present.
+   */
+  private static void _ensureContentHeaders (@Nonnull final MimeBodyPart aPart,
+                                             @Nonnull final EContentTransferEncoding eCTE) throws MessagingException
+  {
+    if (aPart.getHeader (CHttpHeader.CONTENT_TYPE) == null)
+      aPart.setHeader (CHttpHeader.CONTENT_TYPE, aPart.getDataHandler ().getContentType ());
+    if (aPart.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING) == null)
+      aPart.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+  }
+
+  /**
+   * Write binary data as quoted-printable, encoding every byte that is not printable ASCII. Lines
+   * are wrapped with soft line breaks.
+   */
+  private static void _writeQuotedPrintableBinary (@Nonnull final byte [] aBytes,
+                                                   final int nLength,
+                                                   @Nonnull final OutputStream aOS) throws IOException
+  {
+    final byte [] aSoftBreak = AS2IOHelper.getAllAsciiBytes ("=" + CHttp.EOL);
+    int nLineLen = 0;
+    for (int i = 0; i < nLength; ++i)
+    {
+      final int c = aBytes[i] & 0xff;
+      final boolean bEncode = c < 33 || c > 126 || c == '=';
+      final int nCharLen = bEncode ? 3 : 1;
+      if (nLineLen + nCharLen > 75)
+      {
+        aOS.write (aSoftBreak);
+        nLineLen = 0;
+      }
+      if (bEncode)
+      {
+        aOS.write ('=');
+        aOS.write (Character.toUpperCase (Character.forDigit (c >> 4, 16)));
+        aOS.write (Character.toUpperCase (Character.forDigit (c & 0xf, 16)));
+      }
+      else
+        aOS.write (c);
+      nLineLen += nCharLen;
+    }
+  }
+
+  /**
+   * @return A new unique MIME boundary for a <code>multipart/signed</code>. Neither
+   *         <code>null</code> nor empty.
+   * @since 6.0.1
+   */
+  @Nonnull
+  @Nonempty
+  public static String createBoundary ()
+  {
+    return "----=_Part_" + UUID.randomUUID ().toString ();
+  }
+
+  /**
+   * Get the Content-Type of a <code>multipart/signed</code> as created by
+   * {@link #signToStream(MimeBodyPart, X509Certificate, PrivateKey, ECryptoAlgorithmSign, boolean, boolean, boolean, EContentTransferEncoding, String, OutputStream)}.
+   *
+   * @param eAlgorithm
+   *        The signing algorithm. May not be <code>null</code>.
+   * @param bUseOldRFC3851MicAlgs
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param sBoundary
+   *        The MIME boundary. May neither be <code>null</code> nor empty.
+   * @return The Content-Type string. Never <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public static String getSignedContentType (@Nonnull final ECryptoAlgorithmSign eAlgorithm,
+                                             final boolean bUseOldRFC3851MicAlgs,
+                                             @Nonnull @Nonempty final String sBoundary)
+  {
+    ValueEnforcer.notNull (eAlgorithm, "Algorithm");
+    ValueEnforcer.notEmpty (sBoundary, "Boundary");
+
+    // BouncyCastle declares the algorithm map as a raw type
+    @SuppressWarnings ("unchecked")
+    final Map <ASN1ObjectIdentifier, String> aMicAlgs = bUseOldRFC3851MicAlgs ? SMIMESignedGenerator.RFC3851_MICALGS
+                                                                              : NEW_SIGN_ALGOS;
+    String sMicAlg = aMicAlgs.get (eAlgorithm.getOID ());
+    if (sMicAlg == null)
+      sMicAlg = "unknown";
+    // Same layout as created by SMIMESignedGenerator
+    return "multipart/signed; protocol=\"application/pkcs7-signature\"; micalg=" +
+           sMicAlg +
+           "; \r\n\tboundary=\"" +
+           sBoundary +
+           "\"";
+  }
+
+  /**
+   * Sign a MIME body part and write the resulting <code>multipart/signed</code> body directly to
+   * the provided output stream. In contrast to
+   * {@link #sign(MimeBodyPart, X509Certificate, PrivateKey, ECryptoAlgorithmSign, boolean, boolean, boolean, EContentTransferEncoding)}
+   * the signed content is not buffered but written and digested in a single pass. Only the
+   * signature itself is kept in memory.<br>
+   * The boundary is created internally.<br>
+   * Note: the source part might be modified by adding the "Content-Type" and
+   * "Content-Transfer-Encoding" headers if they are missing.
+   *
+   * @param aPart
+   *        MIME body part to be signed. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate that should be added to the signed information. May not be
+   *        <code>null</code>.
+   * @param aPrivateKey
+   *        Private key to be used for signing. May not be <code>null</code>.
+   * @param eAlgorithm
+   *        The algorithm to be used for signing. May not be <code>null</code>.
+   * @param bIncludeCertificateInSignedContent
+   *        <code>true</code> if the passed certificate should be part of the signed content.
+   * @param bUseOldRFC3851MicAlgs
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param bRemoveCmsAlgorithmProtect
+   *        if <code>true</code>, the CMS attribute "AlgorithmProtect" will be removed.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used for the signature. May not be
+   *        <code>null</code>.
+   * @param aOS
+   *        The output stream to write the body of the <code>multipart/signed</code> to. May not be
+   *        <code>null</code>. The stream is not closed.
+   * @return The Content-Type of the written <code>multipart/signed</code> including the boundary.
+   *         Never <code>null</code>.
+   * @throws GeneralSecurityException
+   *         In case of a certificate error
+   * @throws OperatorCreationException
+   *         In case the signer cannot be created
+   * @throws CMSException
+   *         In case signing fails
+   * @throws MessagingException
+   *         In case of a MIME error
+   * @throws IOException
+   *         In case writing fails
+   * @since 6.0.1
+   */
+  @Nonnull
+  public String signToStream (@Nonnull final MimeBodyPart aPart,
+                              @Nonnull final X509Certificate aX509Cert,
+                              @Nonnull final PrivateKey aPrivateKey,
+                              @Nonnull final ECryptoAlgorithmSign eAlgorithm,
+                              final boolean bIncludeCertificateInSignedContent,
+                              final boolean bUseOldRFC3851MicAlgs,
+                              final boolean bRemoveCmsAlgorithmProtect,
+                              @Nonnull final EContentTransferEncoding eCTE,
+                              @Nonnull @WillNotClose final OutputStream aOS) throws GeneralSecurityException,
+                                                                             OperatorCreationException,
+                                                                             CMSException,
+                                                                             MessagingException,
+                                                                             IOException
+  {
+    final String sBoundary = createBoundary ();
+    signToStream (aPart,
+                  aX509Cert,
+                  aPrivateKey,
+                  eAlgorithm,
+                  bIncludeCertificateInSignedContent,
+                  bUseOldRFC3851MicAlgs,
+                  bRemoveCmsAlgorithmProtect,
+                  eCTE,
+                  sBoundary,
+                  aOS);
+    return getSignedContentType (eAlgorithm, bUseOldRFC3851MicAlgs, sBoundary);
+  }
+
+  /**
+   * Sign a MIME body part and write the resulting <code>multipart/signed</code> body using the
+   * provided boundary directly to the provided output stream. In contrast to
+   * {@link #sign(MimeBodyPart, X509Certificate, PrivateKey, ECryptoAlgorithmSign, boolean, boolean, boolean, EContentTransferEncoding)}
+   * the signed content is not buffered but written and digested in a single pass. Only the
+   * signature itself is kept in memory.<br>
+   * Note: the source part might be modified by adding the "Content-Type" and
+   * "Content-Transfer-Encoding" headers if they are missing.
+   *
+   * @param aPart
+   *        MIME body part to be signed. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate that should be added to the signed information. May not be
+   *        <code>null</code>.
+   * @param aPrivateKey
+   *        Private key to be used for signing. May not be <code>null</code>.
+   * @param eAlgorithm
+   *        The algorithm to be used for signing. May not be <code>null</code>.
+   * @param bIncludeCertificateInSignedContent
+   *        <code>true</code> if the passed certificate should be part of the signed content.
+   * @param bUseOldRFC3851MicAlgs
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param bRemoveCmsAlgorithmProtect
+   *        if <code>true</code>, the CMS attribute "AlgorithmProtect" will be removed.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used for the signature. May not be
+   *        <code>null</code>.
+   * @param sBoundary
+   *        The MIME boundary to use. May neither be <code>null</code> nor empty. Use
+   *        {@link #createBoundary()} to create a new one and
+   *        {@link #getSignedContentType(ECryptoAlgorithmSign, boolean, String)} to get the matching
+   *        Content-Type in advance.
+   * @param aOS
+   *        The output stream to write the body of the <code>multipart/signed</code> to. May not be
+   *        <code>null</code>. The stream is not closed.
+   * @throws GeneralSecurityException
+   *         In case of a certificate error
+   * @throws OperatorCreationException
+   *         In case the signer cannot be created
+   * @throws CMSException
+   *         In case signing fails
+   * @throws MessagingException
+   *         In case of a MIME error
+   * @throws IOException
+   *         In case writing fails
+   * @since 6.0.1
+   */
+  public void signToStream (@Nonnull final MimeBodyPart aPart,
+                            @Nonnull final X509Certificate aX509Cert,
+                            @Nonnull final PrivateKey aPrivateKey,
+                            @Nonnull final ECryptoAlgorithmSign eAlgorithm,
+                            final boolean bIncludeCertificateInSignedContent,
+                            final boolean bUseOldRFC3851MicAlgs,
+                            final boolean bRemoveCmsAlgorithmProtect,
+                            @Nonnull final EContentTransferEncoding eCTE,
+                            @Nonnull @Nonempty final String sBoundary,
+                            @Nonnull @WillNotClose final OutputStream aOS) throws GeneralSecurityException,
+                                                                           OperatorCreationException,
+                                                                           CMSException,
+                                                                           MessagingException,
+                                                                           IOException
+  {
+    ValueEnforcer.notNull (aPart, "MimeBodyPart");
+    ValueEnforcer.notNull (aX509Cert, "X509Cert");
+    ValueEnforcer.notNull (aPrivateKey, "PrivateKey");
+    ValueEnforcer.notNull (eAlgorithm, "Algorithm");
+    ValueEnforcer.notNull (eCTE, "ContentTransferEncoding");
+    ValueEnforcer.notEmpty (sBoundary, "Boundary");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.signToStream; X509 subject=" +
+                    aX509Cert.getSubjectX500Principal ().getName () +
+                    "; algorithm=" +
+                    eAlgorithm +
+                    "; includeCertificateInSignedContent=" +
+                    bIncludeCertificateInSignedContent +
+                    "; CTE=" +
+                    eCTE);
+
+    // Check if the certificate is expired or active.
+    AS2CertificateInfoCache.getCertificateInfo (aX509Cert).checkValidity ();
+
+    final SignerInfoGenerator aSigInfoGen = _createSignerInfoGenerator (aX509Cert,
+                                                                        aPrivateKey,
+                                                                        eAlgorithm,
+                                                                        bRemoveCmsAlgorithmProtect);
+    final CMSSignedDataStreamGenerator aSGen = new CMSSignedDataStreamGenerator ();
+    aSGen.addSignerInfoGenerator (aSigInfoGen);
+    if (bIncludeCertificateInSignedContent)
+    {
+      final JcaCertStore aCertStore = m_aCertStoreCache.getOrCreate (_getCacheKey (aX509Cert),
+                                                                      k -> new JcaCertStore (new CommonsArrayList <> (aX509Cert)));
+      aSGen.addCertificates (aCertStore);
+    }
+
+    _ensureContentHeaders (aPart, eCTE);
+
+    final byte [] aBoundaryLine = AS2IOHelper.getAllAsciiBytes ("--" + sBoundary);
+
+    // First part: the signed content, digested while written
+    aOS.write (aBoundaryLine);
+    aOS.write (EOL_BYTES);
+    final NonBlockingByteArrayOutputStream aSignatureOS = new NonBlockingByteArrayOutputStream ();
+    try (final OutputStream aSigningOS = aSGen.open (CMSObjectIdentifiers.data,
+                                                     aSignatureOS,
+                                                     false,
+                                                     new NonClosingOutputStream (aOS)))
+    {
+      AS2IOHelper.writeMimeBodyPart (aPart, aSigningOS);
+    }
+    aOS.write (EOL_BYTES);
+
+    // Second part: the detached signature
+    aOS.write (aBoundaryLine);
+    aOS.write (EOL_BYTES);
+    aOS.write (AS2IOHelper.getAllAsciiBytes (CHttpHeader.CONTENT_TYPE +
+                                             ": application/pkcs7-signature; name=smime.p7s; smime-type=signed-data" +
+                                             CHttp.EOL +
+                                             CHttpHeader.CONTENT_TRANSFER_ENCODING +
+                                             ": " +
+                                             eCTE.getID () +
+                                             CHttp.EOL +
+                                             CHttpHeader.CONTENT_DISPOSITION +
+                                             ": attachment; filename=\"smime.p7s\"" +
+                                             CHttp.EOL +
+                                             "Content-Description: S/MIME Cryptographic Signature" +
+                                             CHttp.EOL +
+                                             CHttp.EOL));
+    if (eCTE == EContentTransferEncoding.QUOTED_PRINTABLE)
+    {
+      // The QP encoder treats CR and LF as line breaks, which breaks binary data
+      _writeQuotedPrintableBinary (aSignatureOS.getBufferOrCopy (), aSignatureOS.size (), aOS);
+    }
+    else
+      try (final OutputStream aEncodedOS = AS2IOHelper.getContentTransferEncodingAwareOutputStream (new NonClosingOutputStream (aOS),
+                                                                                                    eCTE.getID ()))
+      {
+        aSignatureOS.writeTo (aEncodedOS);
+      }
+    aOS.write (EOL_BYTES);
+    aOS.write (aBoundaryLine);
+    aOS.write (AS2IOHelper.getAllAsciiBytes ("--"));
+    aOS.write (EOL_BYTES);
+    aOS.flush ();
+  }
+
+  /**
+   * Sign a MIME body part like
+   * {@link #signToStream(MimeBodyPart, X509Certificate, PrivateKey, ECryptoAlgorithmSign, boolean, boolean, boolean, EContentTransferEncoding, OutputStream)}
+   * and spool the result into exactly one temporary file.
+   *
+   * @param aPart
+   *        MIME body part to be signed. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate that should be added to the signed information. May not be
+   *        <code>null</code>.
+   * @param aPrivateKey
+   *        Private key to be used for signing. May not be <code>null</code>.
+   * @param eAlgorithm
+   *        The algorithm to be used for signing. May not be <code>null</code>.
+   * @param bIncludeCertificateInSignedContent
+   *        <code>true</code> if the passed certificate should be part of the signed content.
+   * @param bUseOldRFC3851MicAlgs
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param bRemoveCmsAlgorithmProtect
+   *        if <code>true</code>, the CMS attribute "AlgorithmProtect" will be removed.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used for the signature. May not be
+   *        <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to create the temporary file. May not be <code>null</code>.
+   * @return The file backed signed MIME body part. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public AS2SpooledMimeBodyPart signStreaming (@Nonnull final MimeBodyPart aPart,
+                                               @Nonnull final X509Certificate aX509Cert,
+                                               @Nonnull final PrivateKey aPrivateKey,
+                                               @Nonnull final ECryptoAlgorithmSign eAlgorithm,
+                                               final boolean bIncludeCertificateInSignedContent,
+                                               final boolean bUseOldRFC3851MicAlgs,
+                                               final boolean bRemoveCmsAlgorithmProtect,
+                                               @Nonnull final EContentTransferEncoding eCTE,
+                                               @Nonnull final AS2ResourceHelper aResHelper) throws Exception
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final File aSpoolFile = aResHelper.createTempFile ();
+    final String sContentType;
+    try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile))
+    {
+      sContentType = signToStream (aPart,
+                                   aX509Cert,
+                                   aPrivateKey,
+                                   eAlgorithm,
+                                   bIncludeCertificateInSignedContent,
+                                   bUseOldRFC3851MicAlgs,
+                                   bRemoveCmsAlgorithmProtect,
+                                   eCTE,
+                                   aOS);
+    }
+
+    return new AS2SpooledMimeBodyPart (aSpoolFile, sContentType, aResHelper);
+  }
+
   @Nonnull
   private X509Certificate _verifyFindCertificate (@Nullable final X509Certificate aX509Cert,
                                                   final boolean bUseCertificateInBodyPart,
-                                                  @Nonnull final SMIMESignedParser aSignedParser) throws CMSException,
-                                                                                                  GeneralSecurityException
+                                                  @Nonnull final SignerInformationStore aSignerInfos,
+                                                  @Nonnull final Store <X509CertificateHolder> aCertStore) throws GeneralSecurityException
   {
     X509Certificate aRealX509Cert = aX509Cert;
     if (bUseCertificateInBodyPart)
     {
       // get signing certificates contained in the body part
       SignerId aSignerID = null;
-      final Collection <SignerInformation> aSigners = aSignedParser.getSignerInfos ().getSigners ();
+      final Collection <SignerInformation> aSigners = aSignerInfos.getSigners ();
       if (!aSigners.isEmpty ())
       {
         // Use the first signer
@@ -658,20 +1368,24 @@ public class BCCryptoHelper implements ICryptoHelper
         aSignerID = aSigner.getSID ();
       }
 
-      // Java 11 complains here, because getCertificates() has no generics
-      // parameter
+      // SignerId implements the raw Selector type
       // Null signer ID returns empty ArrayList
-      final Collection <?> aContainedCerts = aSignedParser.getCertificates ().getMatches (aSignerID);
+      @SuppressWarnings ("unchecked")
+      final Collection <X509CertificateHolder> aContainedCerts = aCertStore.getMatches (aSignerID);
       if (!aContainedCerts.isEmpty ())
       {
         // E.g. for Peppol the certificate is passed in
         if (aContainedCerts.size () > 1)
           LOGGER.warn ("Signed part contains " + aContainedCerts.size () + " certificates - using the first one!");
 
-        final X509CertificateHolder aCertHolder = (X509CertificateHolder) CollectionFind.getFirstElement (aContainedCerts);
-        final X509Certificate aCert = new JcaX509CertificateConverter ().setProvider (m_sSecurityProviderName)
-                                                                        .getCertificate (aCertHolder);
-        if (aX509Cert != null && !aX509Cert.equals (aCert))
+        final X509CertificateHolder aCertHolder = CollectionFind.getFirstElement (aContainedCerts);
+        // Avoid the repeated conversion of the same certificate
+        final AS2CertificateInfo aCertInfo = AS2CertificateInfoCache.getCertificateInfo (aCertHolder,
+                                                                                         m_sSecurityProviderName);
+        final X509Certificate aCert = aCertInfo.getCertificate ();
+        if (aX509Cert != null &&
+            aX509Cert != aCert &&
+            !AS2CertificateInfoCache.getCertificateInfo (aX509Cert).isSameCertificate (aCertInfo))
           LOGGER.warn ("Certificate mismatch! Provided certificate\n" +
                        aX509Cert +
                        "\ndiffers from certficate contained in message\n" +
@@ -721,14 +1435,37 @@ public class BCCryptoHelper implements ICryptoHelper
     final MimeMultipart aMainPart = (MimeMultipart) aContent;
 
     // SMIMESignedParser uses "7bit" as the default - AS2 wants "binary"
-    final SMIMESignedParser aSignedParser = new SMIMESignedParser (new JcaDigestCalculatorProviderBuilder ().setProvider (m_sSecurityProviderName)
-                                                                                                            .build (),
+    final SMIMESignedParser aSignedParser = new SMIMESignedParser (_getDigestCalculatorProvider (),
                                                                    aMainPart,
                                                                    EContentTransferEncoding.AS2_DEFAULT.getID (),
                                                                    aResHelper.createTempFile ());
 
+    // The parser returns the raw Store type, although it only contains certificate holders
+    @SuppressWarnings ("unchecked")
+    final Store <X509CertificateHolder> aCertStore = aSignedParser.getCertificates ();
+    _verifySignerInfos (aX509Cert,
+                        bUseCertificateInBodyPart,
+                        aSignedParser.getSignerInfos (),
+                        aCertStore,
+                        aEffectiveCertificateConsumer);
+
+    return aSignedParser.getContent ();
+  }
+
+  @Nonnull
+  private X509Certificate _verifySignerInfos (@Nullable final X509Certificate aX509Cert,
+                                              final boolean bUseCertificateInBodyPart,
+                                              @Nonnull final SignerInformationStore aSignerInfos,
+                                              @Nonnull final Store <X509CertificateHolder> aCertStore,
+                                              @Nullable final Consumer <X509Certificate> aEffectiveCertificateConsumer) throws GeneralSecurityException,
+                                                                                                                      CMSException,
+                                                                                                                      OperatorCreationException
+  {
     // If no certificate is found, an exception is thrown
-    final X509Certificate aRealX509Cert = _verifyFindCertificate (aX509Cert, bUseCertificateInBodyPart, aSignedParser);
+    final X509Certificate aRealX509Cert = _verifyFindCertificate (aX509Cert,
+                                                                  bUseCertificateInBodyPart,
+                                                                  aSignerInfos,
+                                                                  aCertStore);
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug (EqualsHelper.identityEqual (aRealX509Cert, aX509Cert)
@@ -741,18 +1478,140 @@ public class BCCryptoHelper implements ICryptoHelper
       aEffectiveCertificateConsumer.accept (aRealX509Cert);
 
     // Check if the certificate is expired or active.
-    aRealX509Cert.checkValidity ();
+    AS2CertificateInfoCache.getCertificateInfo (aRealX509Cert).checkValidity ();
 
     // Verify certificate
-    final SignerInformationVerifier aSIV = new JcaSimpleSignerInfoVerifierBuilder ().setProvider (m_sSecurityProviderName)
-                                                                                    .build (aRealX509Cert.getPublicKey ());
+    final SignerInformationVerifier aSIV = _getSignerInformationVerifier (aRealX509Cert);
 
-    for (final SignerInformation aSignerInfo : aSignedParser.getSignerInfos ().getSigners ())
+    for (final SignerInformation aSignerInfo : aSignerInfos.getSigners ())
     {
       if (!aSignerInfo.verify (aSIV))
         throw new SignatureException ("Verification failed for SignerInfo " + aSignerInfo);
     }
+    return aRealX509Cert;
+  }
 
-    return aSignedParser.getContent ();
+  /**
+   * Get the OIDs of all digest algorithms used by the signers of a detached signature.
+   *
+   * @param aSignature
+   *        The DER encoded CMS signature, as contained in the second part of a
+   *        <code>multipart/signed</code>. May not be <code>null</code>.
+   * @return A non-<code>null</code> but maybe empty list.
+   * @throws CMSException
+   *         If the signature cannot be parsed
+   * @since 6.0.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <ASN1ObjectIdentifier> getAllSignatureDigestAlgorithms (@Nonnull final byte [] aSignature) throws CMSException
+  {
+    ValueEnforcer.notNull (aSignature, "Signature");
+
+    final ICommonsList <ASN1ObjectIdentifier> ret = new CommonsArrayList <> ();
+    for (final SignerInformation aSignerInfo : new CMSSignedData (aSignature).getSignerInfos ().getSigners ())
+    {
+      final ASN1ObjectIdentifier aOID = aSignerInfo.getDigestAlgorithmID ().getAlgorithm ();
+      if (!ret.contains (aOID))
+        ret.add (aOID);
+    }
+    return ret;
+  }
+
+  /**
+   * Verify a detached signature, for which the digests of the signed content were already
+   * calculated - e.g. while the content was streamed. The same checks as in
+   * {@link #verify(MimeBodyPart, X509Certificate, boolean, boolean, Consumer, AS2ResourceHelper)}
+   * are applied.
+   *
+   * @param aSignature
+   *        The DER encoded CMS signature. May not be <code>null</code>.
+   * @param aContentDigests
+   *        The digests of the signed content for all algorithms returned by
+   *        {@link #getAllSignatureDigestAlgorithms(byte[])}. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The certificate to verify against. May be <code>null</code> if the certificate contained
+   *        in the signature should be used.
+   * @param bUseCertificateInBodyPart
+   *        <code>true</code> to use the certificate contained in the signature
+   * @param aEffectiveCertificateConsumer
+   *        Consumer for the certificate effectively used. May be <code>null</code>.
+   * @return The certificate effectively used for verification. Never <code>null</code>.
+   * @throws GeneralSecurityException
+   *         If the verification failed or no certificate is available
+   * @throws CMSException
+   *         If the signature cannot be parsed
+   * @throws OperatorCreationException
+   *         If the verifier cannot be created
+   * @since 6.0.1
+   */
+  @Nonnull
+  public X509Certificate verifyDetached (@Nonnull final byte [] aSignature,
+                                         @Nonnull final Map <ASN1ObjectIdentifier, byte []> aContentDigests,
+                                         @Nullable final X509Certificate aX509Cert,
+                                         final boolean bUseCertificateInBodyPart,
+                                         @Nullable final Consumer <X509Certificate> aEffectiveCertificateConsumer) throws GeneralSecurityException,
+                                                                                                                  CMSException,
+                                                                                                                  OperatorCreationException
+  {
+    ValueEnforcer.notNull (aSignature, "Signature");
+    ValueEnforcer.notNull (aContentDigests, "ContentDigests");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.verifyDetached; X509 subject=" +
+                    (aX509Cert == null ? "null" : aX509Cert.getSubjectX500Principal ().getName ()) +
+                    "; useCertificateInBodyPart=" +
+                    bUseCertificateInBodyPart);
+
+    final CMSSignedData aSignedData = new CMSSignedData (aContentDigests, aSignature);
+    return _verifySignerInfos (aX509Cert,
+                               bUseCertificateInBodyPart,
+                               aSignedData.getSignerInfos (),
+                               aSignedData.getCertificates (),
+                               aEffectiveCertificateConsumer);
+  }
+
+  /**
+   * Get a stream that decrypts the passed enveloped data while it is read. Nothing is buffered or
+   * written to disk.
+   *
+   * @param aEnvelopedIS
+   *        The stream with the DER encoded CMS enveloped data. May not be <code>null</code>.
+   * @param aX509Cert
+   *        The receiver certificate. May not be <code>null</code>.
+   * @param aPrivateKey
+   *        The private key of the receiver. May not be <code>null</code>.
+   * @return The stream with the decrypted MIME entity (headers and content). Never
+   *         <code>null</code>.
+   * @throws GeneralSecurityException
+   *         If the certificate does not match any recipient
+   * @throws CMSException
+   *         If the enveloped data cannot be parsed or decrypted
+   * @throws IOException
+   *         In case of read error
+   * @since 6.0.1
+   */
+  @Nonnull
+  public InputStream getDecryptedContentStream (@Nonnull final InputStream aEnvelopedIS,
+                                                @Nonnull final X509Certificate aX509Cert,
+                                                @Nonnull final PrivateKey aPrivateKey) throws GeneralSecurityException,
+                                                                                       CMSException,
+                                                                                       IOException
+  {
+    ValueEnforcer.notNull (aEnvelopedIS, "EnvelopedIS");
+    ValueEnforcer.notNull (aX509Cert, "X509Cert");
+    ValueEnforcer.notNull (aPrivateKey, "PrivateKey");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("BCCryptoHelper.getDecryptedContentStream; X509 subject=" +
+                    aX509Cert.getSubjectX500Principal ().getName ());
+
+    final CMSEnvelopedDataParser aEnvelope = new CMSEnvelopedDataParser (aEnvelopedIS);
+    final RecipientInformation aRecipient = aEnvelope.getRecipientInfos ().get (new JceKeyTransRecipientId (aX509Cert));
+    if (aRecipient == null)
+      throw new GeneralSecurityException ("Certificate does not match part signature");
+
+    return aRecipient.getContentStream (new JceKeyTransEnvelopedRecipient (aPrivateKey).setProvider (m_sSecurityProviderName))
+                     .getContentStream ();
   }
 }
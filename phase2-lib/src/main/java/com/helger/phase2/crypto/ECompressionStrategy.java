@@ -0,0 +1,95 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.crypto;
+
+import java.util.zip.Deflater;
+
+import com.helger.annotation.Nonempty;
+import com.helger.base.id.IHasID;
+import com.helger.base.lang.EnumHelper;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Define the supported zlib compression strategies.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+public enum ECompressionStrategy implements IHasID <String>
+{
+  /** The default strategy, suitable for most data */
+  DEFAULT ("default", Deflater.DEFAULT_STRATEGY),
+  /** Better for data with many small values with a random distribution */
+  FILTERED ("filtered", Deflater.FILTERED),
+  /** Huffman coding only - very fast but with a lower compression ratio */
+  HUFFMAN_ONLY ("huffman-only", Deflater.HUFFMAN_ONLY);
+
+  private final String m_sID;
+  private final int m_nDeflaterStrategy;
+
+  ECompressionStrategy (@Nonnull @Nonempty final String sID, final int nDeflaterStrategy)
+  {
+    m_sID = sID;
+    m_nDeflaterStrategy = nDeflaterStrategy;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The strategy constant to be used with {@link Deflater#setStrategy(int)}.
+   */
+  public int getDeflaterStrategy ()
+  {
+    return m_nDeflaterStrategy;
+  }
+
+  @Nullable
+  public static ECompressionStrategy getFromIDCaseInsensitiveOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDCaseInsensitiveOrNull (ECompressionStrategy.class, sID);
+  }
+
+  @Nullable
+  public static ECompressionStrategy getFromIDCaseInsensitiveOrDefault (@Nullable final String sID,
+                                                                        @Nullable final ECompressionStrategy eDefault)
+  {
+    return EnumHelper.getFromIDCaseInsensitiveOrDefault (ECompressionStrategy.class, sID, eDefault);
+  }
+}
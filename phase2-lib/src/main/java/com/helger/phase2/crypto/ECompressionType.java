@@ -33,6 +33,7 @@
 package com.helger.phase2.crypto;
 
 import org.bouncycastle.cms.jcajce.ZlibCompressor;
+import org.bouncycastle.operator.InputExpanderProvider;
 import org.bouncycastle.operator.OutputCompressor;
 
 import com.helger.annotation.Nonempty;
@@ -58,6 +59,20 @@ public enum ECompressionType implements IHasID <String>
     {
       return new ZlibCompressor ();
     }
+
+    @Override
+    @Nonnull
+    public AS2ZlibCompressor createOutputCompressor (@Nonnull final AS2CompressionSettings aSettings)
+    {
+      return new AS2ZlibCompressor (aSettings);
+    }
+
+    @Override
+    @Nonnull
+    public AS2ZlibExpanderProvider getInputExpanderProvider (@Nonnull final AS2CompressionSettings aSettings)
+    {
+      return AS2ZlibExpanderProvider.getInstance (aSettings);
+    }
   };
 
   private final String m_sID;
@@ -80,6 +95,26 @@ public enum ECompressionType implements IHasID <String>
   @Nonnull
   public abstract OutputCompressor createOutputCompressor ();
 
+  /**
+   * @param aSettings
+   *        The compression settings to be used. May not be <code>null</code>.
+   * @return The {@link OutputCompressor} instance suitable for this compression type and the
+   *         provided settings.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public abstract OutputCompressor createOutputCompressor (@Nonnull AS2CompressionSettings aSettings);
+
+  /**
+   * @param aSettings
+   *        The compression settings to be used. May not be <code>null</code>.
+   * @return The {@link InputExpanderProvider} suitable for this compression type and the provided
+   *         settings. Instances might be shared.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public abstract InputExpanderProvider getInputExpanderProvider (@Nonnull AS2CompressionSettings aSettings);
+
   @Nullable
   public static ECompressionType getFromIDCaseInsensitiveOrNull (@Nullable final String sID)
   {
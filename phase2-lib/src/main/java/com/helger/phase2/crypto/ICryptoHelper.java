@@ -40,6 +40,9 @@ import java.security.cert.X509Certificate;
 import java.util.function.Consumer;
 
 import com.helger.annotation.WillNotClose;
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.collection.commons.CommonsLinkedHashMap;
+import com.helger.collection.commons.ICommonsOrderedMap;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.util.AS2ResourceHelper;
@@ -140,6 +143,39 @@ public interface ICryptoHelper
                     @Nonnull ECryptoAlgorithmSign eDigestAlgorithm,
                     boolean bIncludeHeaders) throws Exception;
 
+  /**
+   * Calculate the MICs for multiple digest algorithms at once. Duplicate and <code>null</code>
+   * algorithms are ignored. The default implementation calls
+   * {@link #calculateMIC(MimeBodyPart, ECryptoAlgorithmSign, boolean)} for each algorithm and
+   * therefore reads the part once per algorithm - implementations should override this method and
+   * read the part only once.
+   *
+   * @param aPart
+   *        MIME part to calculate the MICs from. May not be <code>null</code>.
+   * @param aDigestAlgorithms
+   *        The digest algorithms to be used. May not be <code>null</code>.
+   * @param bIncludeHeaders
+   *        <code>true</code> if the MIME headers should be included, <code>false</code> if only the
+   *        content should be used.
+   * @return The calculated MICs in the order of the provided algorithms. Never <code>null</code>
+   *         but maybe empty.
+   * @throws Exception
+   *         In case something goes wrong.
+   * @since 6.0.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> calculateMICs (@Nonnull final MimeBodyPart aPart,
+                                                                       @Nonnull final Iterable <ECryptoAlgorithmSign> aDigestAlgorithms,
+                                                                       final boolean bIncludeHeaders) throws Exception
+  {
+    final ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> ret = new CommonsLinkedHashMap <> ();
+    for (final ECryptoAlgorithmSign eDigestAlgorithm : aDigestAlgorithms)
+      if (eDigestAlgorithm != null && !ret.containsKey (eDigestAlgorithm))
+        ret.put (eDigestAlgorithm, calculateMIC (aPart, eDigestAlgorithm, bIncludeHeaders));
+    return ret;
+  }
+
   @Nonnull
   MimeBodyPart encrypt (@Nonnull MimeBodyPart aPart,
                         @Nonnull X509Certificate aCert,
@@ -33,7 +33,9 @@
 package com.helger.phase2.partner;
 
 import com.helger.annotation.concurrent.Immutable;
+import com.helger.phase2.crypto.ECompressionStrategy;
 import com.helger.phase2.crypto.ECompressionType;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
 
 /**
  * Partnership IDs and attribute names. The IDs (starting with PID_) are using for
@@ -200,6 +202,55 @@ public final class CPartnershipIDs
    */
   public static final String PA_REMOVE_CMS_ALOGIRTHM_PROTECT = "remove_cms_algorithm_protect_attr";
 
+  /**
+   * Optional zlib compression level for outgoing messages. Must be a number between 0 (no
+   * compression) and 9 (best compression) or -1 for the zlib default.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_COMPRESSION_LEVEL = "compression_level";
+  /**
+   * Optional zlib compression strategy for outgoing messages. Check {@link ECompressionStrategy}
+   * constants for values (using the value of the <code>getID()</code> method)
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_COMPRESSION_STRATEGY = "compression_strategy";
+  /**
+   * Optional buffer size in bytes used for compressing outgoing messages.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_COMPRESSION_BUFFER_SIZE = "compression_buffer_size";
+  /**
+   * Optional buffer size in bytes used for decompressing incoming messages.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_DECOMPRESSION_BUFFER_SIZE = "decompression_buffer_size";
+  /**
+   * Optional number of threads to compress outgoing messages in parallel. If not set or 0,
+   * parallel compression is disabled.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_COMPRESSION_PARALLEL_THREADS = "compression_parallel_threads";
+  /**
+   * Optional size in bytes of the uncompressed blocks that are compressed in parallel. Only used if
+   * {@link #PA_COMPRESSION_PARALLEL_THREADS} is set.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_COMPRESSION_PARALLEL_BLOCK_SIZE = "compression_parallel_block_size";
+  /**
+   * Optional comma separated list of MIC algorithms (see {@link ECryptoAlgorithmSign}), for which
+   * the MIC of each received message is calculated additionally for auditing purposes. All MICs are
+   * calculated while reading the received data only once.
+   *
+   * @since 6.0.1
+   */
+  public static final String PA_AUDIT_MIC_ALGORITHMS = "audit_mic_algorithms";
+
   private CPartnershipIDs ()
   {}
 }
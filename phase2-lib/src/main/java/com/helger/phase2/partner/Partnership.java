@@ -34,14 +34,21 @@ package com.helger.phase2.partner;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import com.helger.annotation.style.ReturnsMutableCopy;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.equals.EqualsHelper;
 import com.helger.base.state.EChange;
 import com.helger.base.state.ETriState;
+import com.helger.base.string.StringHelper;
+import com.helger.base.string.StringImplode;
 import com.helger.base.tostring.ToStringGenerator;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.crypto.AS2CompressionSettings;
+import com.helger.phase2.crypto.ECompressionStrategy;
 import com.helger.phase2.crypto.ECompressionType;
 import com.helger.phase2.crypto.ECryptoAlgorithmCrypt;
 import com.helger.phase2.crypto.ECryptoAlgorithmSign;
@@ -934,6 +941,240 @@ public class Partnership implements Serializable
     return setAttribute (CPartnershipIDs.PA_REMOVE_CMS_ALOGIRTHM_PROTECT, Boolean.toString (bValue));
   }
 
+  /**
+   * @return The zlib compression level for outgoing messages. Defaults to
+   *         {@link AS2CompressionSettings#DEFAULT_LEVEL}.
+   * @since 6.0.1
+   */
+  public int getCompressionLevel ()
+  {
+    return m_aAttributes.getAsInt (CPartnershipIDs.PA_COMPRESSION_LEVEL, AS2CompressionSettings.DEFAULT_LEVEL);
+  }
+
+  /**
+   * @param nValue
+   *        The zlib compression level between 0 and 9 or -1 for the default.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setCompressionLevel (final int nValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_COMPRESSION_LEVEL, Integer.toString (nValue));
+  }
+
+  /**
+   * @return The zlib compression strategy for outgoing messages. May be <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nullable
+  public String getCompressionStrategy ()
+  {
+    return getAttribute (CPartnershipIDs.PA_COMPRESSION_STRATEGY);
+  }
+
+  /**
+   * @param eValue
+   *        The zlib compression strategy to use. May be <code>null</code>.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setCompressionStrategy (@Nullable final ECompressionStrategy eValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_COMPRESSION_STRATEGY, eValue == null ? null : eValue.getID ());
+  }
+
+  /**
+   * @return The buffer size in bytes for compressing outgoing messages. Defaults to
+   *         {@link AS2CompressionSettings#DEFAULT_COMPRESSION_BUFFER_SIZE}.
+   * @since 6.0.1
+   */
+  public int getCompressionBufferSize ()
+  {
+    return m_aAttributes.getAsInt (CPartnershipIDs.PA_COMPRESSION_BUFFER_SIZE,
+                                   AS2CompressionSettings.DEFAULT_COMPRESSION_BUFFER_SIZE);
+  }
+
+  /**
+   * @param nValue
+   *        The buffer size in bytes for compressing outgoing messages.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setCompressionBufferSize (final int nValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_COMPRESSION_BUFFER_SIZE, Integer.toString (nValue));
+  }
+
+  /**
+   * @return The buffer size in bytes for decompressing incoming messages. Defaults to
+   *         {@link AS2CompressionSettings#DEFAULT_DECOMPRESSION_BUFFER_SIZE}.
+   * @since 6.0.1
+   */
+  public int getDecompressionBufferSize ()
+  {
+    return m_aAttributes.getAsInt (CPartnershipIDs.PA_DECOMPRESSION_BUFFER_SIZE,
+                                   AS2CompressionSettings.DEFAULT_DECOMPRESSION_BUFFER_SIZE);
+  }
+
+  /**
+   * @param nValue
+   *        The buffer size in bytes for decompressing incoming messages.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setDecompressionBufferSize (final int nValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_DECOMPRESSION_BUFFER_SIZE, Integer.toString (nValue));
+  }
+
+  /**
+   * @return The number of threads for parallel compression of outgoing messages. 0 means parallel
+   *         compression is disabled. Defaults to
+   *         {@link AS2CompressionSettings#DEFAULT_PARALLEL_THREADS}.
+   * @since 6.0.1
+   */
+  public int getCompressionParallelThreads ()
+  {
+    return m_aAttributes.getAsInt (CPartnershipIDs.PA_COMPRESSION_PARALLEL_THREADS,
+                                   AS2CompressionSettings.DEFAULT_PARALLEL_THREADS);
+  }
+
+  /**
+   * @param nValue
+   *        The number of threads for parallel compression of outgoing messages. Use 0 to disable
+   *        parallel compression.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setCompressionParallelThreads (final int nValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_COMPRESSION_PARALLEL_THREADS, Integer.toString (nValue));
+  }
+
+  /**
+   * @return The size in bytes of the blocks for parallel compression of outgoing messages.
+   *         Defaults to {@link AS2CompressionSettings#DEFAULT_PARALLEL_BLOCK_SIZE}.
+   * @since 6.0.1
+   */
+  public int getCompressionParallelBlockSize ()
+  {
+    return m_aAttributes.getAsInt (CPartnershipIDs.PA_COMPRESSION_PARALLEL_BLOCK_SIZE,
+                                   AS2CompressionSettings.DEFAULT_PARALLEL_BLOCK_SIZE);
+  }
+
+  /**
+   * @param nValue
+   *        The size in bytes of the blocks for parallel compression of outgoing messages.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setCompressionParallelBlockSize (final int nValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_COMPRESSION_PARALLEL_BLOCK_SIZE, Integer.toString (nValue));
+  }
+
+  /**
+   * Get the compression settings of this partnership. Invalid values are ignored and the
+   * respective default value is used instead.
+   *
+   * @return A new {@link AS2CompressionSettings} object. Never <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public AS2CompressionSettings getCompressionSettings ()
+  {
+    final AS2CompressionSettings ret = new AS2CompressionSettings ();
+    final int nLevel = getCompressionLevel ();
+    if (nLevel >= Deflater.DEFAULT_COMPRESSION && nLevel <= Deflater.BEST_COMPRESSION)
+      ret.setLevel (nLevel);
+    ret.setStrategy (ECompressionStrategy.getFromIDCaseInsensitiveOrDefault (getCompressionStrategy (),
+                                                                             AS2CompressionSettings.DEFAULT_STRATEGY));
+    final int nCompressionBufferSize = getCompressionBufferSize ();
+    if (nCompressionBufferSize > 0)
+      ret.setCompressionBufferSize (nCompressionBufferSize);
+    final int nDecompressionBufferSize = getDecompressionBufferSize ();
+    if (nDecompressionBufferSize > 0)
+      ret.setDecompressionBufferSize (nDecompressionBufferSize);
+    final int nParallelThreads = getCompressionParallelThreads ();
+    if (nParallelThreads > 0)
+      ret.setParallelThreads (nParallelThreads);
+    final int nParallelBlockSize = getCompressionParallelBlockSize ();
+    if (nParallelBlockSize > 0)
+      ret.setParallelBlockSize (nParallelBlockSize);
+    return ret;
+  }
+
+  /**
+   * @return The comma separated list of MIC algorithms to calculate additionally for received
+   *         messages. May be <code>null</code>.
+   * @see #getAllAuditMICAlgorithms()
+   * @since 6.0.1
+   */
+  @Nullable
+  public String getAuditMICAlgorithms ()
+  {
+    return getAttribute (CPartnershipIDs.PA_AUDIT_MIC_ALGORITHMS);
+  }
+
+  /**
+   * @param sValue
+   *        The comma separated list of MIC algorithms to calculate additionally for received
+   *        messages. May be <code>null</code>.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setAuditMICAlgorithms (@Nullable final String sValue)
+  {
+    return setAttribute (CPartnershipIDs.PA_AUDIT_MIC_ALGORITHMS, sValue);
+  }
+
+  /**
+   * @param aValues
+   *        The MIC algorithms to calculate additionally for received messages. May be
+   *        <code>null</code>.
+   * @return {@link EChange}.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public EChange setAuditMICAlgorithms (@Nullable final ECryptoAlgorithmSign... aValues)
+  {
+    final ICommonsList <String> aIDs = new CommonsArrayList <> ();
+    if (aValues != null)
+      for (final ECryptoAlgorithmSign eValue : aValues)
+        if (eValue != null)
+          aIDs.add (eValue.getID ());
+    return setAuditMICAlgorithms (aIDs.isEmpty () ? null : StringImplode.getImploded (",", aIDs));
+  }
+
+  /**
+   * @return All MIC algorithms to calculate additionally for received messages. Unknown algorithm
+   *         names are ignored. Never <code>null</code> but maybe empty.
+   * @since 6.0.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ECryptoAlgorithmSign> getAllAuditMICAlgorithms ()
+  {
+    final ICommonsList <ECryptoAlgorithmSign> ret = new CommonsArrayList <> ();
+    final String sValue = getAuditMICAlgorithms ();
+    if (StringHelper.isNotEmpty (sValue))
+      for (final String sAlg : StringHelper.getExploded (',', sValue))
+      {
+        final ECryptoAlgorithmSign eAlg = ECryptoAlgorithmSign.getFromIDOrNull (sAlg.trim ());
+        if (eAlg != null && !ret.contains (eAlg))
+          ret.add (eAlg);
+      }
+    return ret;
+  }
+
   /**
    * @return A copy of all contained attributes. Never <code>null</code>.
    */
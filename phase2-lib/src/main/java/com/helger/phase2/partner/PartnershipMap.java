@@ -36,11 +36,15 @@ import java.util.Map;
 
 import com.helger.annotation.concurrent.NotThreadSafe;
 import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.annotation.style.VisibleForTesting;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.equals.EqualsHelper;
 import com.helger.base.state.EChange;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.CommonsHashMap;
 import com.helger.collection.commons.CommonsLinkedHashMap;
 import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsMap;
 import com.helger.collection.commons.ICommonsOrderedMap;
 import com.helger.collection.commons.ICommonsOrderedSet;
 import com.helger.typeconvert.collection.IStringMap;
@@ -49,18 +53,94 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 /**
- * The default implementation of {@link IPartnershipMap}.
+ * The default implementation of {@link IPartnershipMap}.<br>
+ * Lookups by ID use an index on the sender and receiver values of the common IDs (AS2 ID, X.509
+ * alias and email address). If the index has no match, all partnerships are scanned, so
+ * partnerships whose IDs were modified directly are still found. Use
+ * {@link #setPartnership(Partnership)} to update the IDs of a contained partnership, to keep the
+ * lookup fast.
  *
  * @author Philip Helger
  */
 @NotThreadSafe
 public final class PartnershipMap implements IPartnershipMap
 {
+  /** The ID keys for which an index is maintained, in lookup order */
+  private static final String [] INDEXED_ID_KEYS = { CPartnershipIDs.PID_AS2,
+                                                     CPartnershipIDs.PID_X509_ALIAS,
+                                                     CPartnershipIDs.PID_EMAIL };
+
+  /**
+   * The sender and receiver value of a single partner ID.
+   */
+  private record IDPair (@Nonnull String senderID, @Nonnull String receiverID)
+  {}
+
+  /**
+   * The index state of a single contained partnership. The ID pairs are remembered, so that the
+   * index can be cleaned up even if the IDs of the partnership were modified directly.
+   */
+  private static final class IndexEntry
+  {
+    private final Partnership m_aPartnership;
+    // The position in m_aMap
+    private final long m_nOrder;
+    private final ICommonsMap <String, IDPair> m_aIDPairs = new CommonsHashMap <> ();
+
+    IndexEntry (@Nonnull final Partnership aPartnership, final long nOrder)
+    {
+      m_aPartnership = aPartnership;
+      m_nOrder = nOrder;
+    }
+  }
+
   private final ICommonsOrderedMap <String, Partnership> m_aMap = new CommonsLinkedHashMap <> ();
+  /**
+   * ID key to ID pair to all partnerships with these IDs, in the order of {@link #m_aMap}
+   */
+  private final ICommonsMap <String, ICommonsMap <IDPair, ICommonsList <IndexEntry>>> m_aIndex = new CommonsHashMap <> ();
+  /** Partnership name to its index state */
+  private final ICommonsMap <String, IndexEntry> m_aIndexEntries = new CommonsHashMap <> ();
+  private long m_nNextOrder = 0;
 
   public PartnershipMap ()
   {}
 
+  private void _index (@Nonnull final Partnership aPartnership, final long nOrder)
+  {
+    final IndexEntry aEntry = new IndexEntry (aPartnership, nOrder);
+    for (final String sKey : INDEXED_ID_KEYS)
+    {
+      final String sSenderID = aPartnership.getSenderID (sKey);
+      final String sReceiverID = aPartnership.getReceiverID (sKey);
+      if (sSenderID != null && sReceiverID != null)
+      {
+        final IDPair aPair = new IDPair (sSenderID, sReceiverID);
+        final ICommonsList <IndexEntry> aList = m_aIndex.computeIfAbsent (sKey, k -> new CommonsHashMap <> ())
+                                                        .computeIfAbsent (aPair, k -> new CommonsArrayList <> ());
+        // Keep the order of the map - usually this appends at the end
+        int nIndex = aList.size ();
+        while (nIndex > 0 && aList.get (nIndex - 1).m_nOrder > nOrder)
+          nIndex--;
+        aList.add (nIndex, aEntry);
+        aEntry.m_aIDPairs.put (sKey, aPair);
+      }
+    }
+    m_aIndexEntries.put (aPartnership.getName (), aEntry);
+  }
+
+  private void _unindex (@Nonnull final IndexEntry aEntry)
+  {
+    for (final var aIDPair : aEntry.m_aIDPairs.entrySet ())
+    {
+      final ICommonsMap <IDPair, ICommonsList <IndexEntry>> aKeyIndex = m_aIndex.get (aIDPair.getKey ());
+      final ICommonsList <IndexEntry> aList = aKeyIndex.get (aIDPair.getValue ());
+      aList.removeIf (x -> x == aEntry);
+      if (aList.isEmpty ())
+        aKeyIndex.remove (aIDPair.getValue ());
+    }
+  }
+
   /**
    * Set all partnerships from the passed map. All existing partnerships are removed.
    *
@@ -71,6 +151,10 @@ public final class PartnershipMap implements IPartnershipMap
   {
     ValueEnforcer.notNull (aPartnerships, "Partnerships");
     m_aMap.setAll (aPartnerships.m_aMap);
+    m_aIndex.clear ();
+    m_aIndexEntries.clear ();
+    for (final Partnership aPartnership : m_aMap.values ())
+      _index (aPartnership, m_nNextOrder++);
   }
 
   /**
@@ -89,6 +173,7 @@ public final class PartnershipMap implements IPartnershipMap
     if (m_aMap.containsKey (sName))
       return EChange.UNCHANGED;
     m_aMap.put (sName, aPartnership);
+    _index (aPartnership, m_nNextOrder++);
     return EChange.CHANGED;
   }
 
@@ -103,6 +188,15 @@ public final class PartnershipMap implements IPartnershipMap
     ValueEnforcer.notNull (aPartnership, "Partnership");
     // overwrite if already present
     m_aMap.put (aPartnership.getName (), aPartnership);
+    final IndexEntry aOld = m_aIndexEntries.get (aPartnership.getName ());
+    if (aOld == null)
+      _index (aPartnership, m_nNextOrder++);
+    else
+    {
+      // The position in the map is retained
+      _unindex (aOld);
+      _index (aPartnership, aOld.m_nOrder);
+    }
   }
 
   /**
@@ -117,7 +211,23 @@ public final class PartnershipMap implements IPartnershipMap
   public EChange removePartnership (@Nonnull final Partnership aPartnership)
   {
     ValueEnforcer.notNull (aPartnership, "Partnership");
-    return EChange.valueOf (m_aMap.remove (aPartnership.getName ()) != null);
+    final String sName = aPartnership.getName ();
+    if (m_aMap.remove (sName) == null)
+      return EChange.UNCHANGED;
+    _unindex (m_aIndexEntries.remove (sName));
+    return EChange.CHANGED;
+  }
+
+  /**
+   * @return The number of ID pairs in the index. Only for testing.
+   */
+  @VisibleForTesting
+  int getIndexedIDPairCount ()
+  {
+    int ret = 0;
+    for (final ICommonsMap <IDPair, ICommonsList <IndexEntry>> aKeyIndex : m_aIndex.values ())
+      ret += aKeyIndex.size ();
+    return ret;
   }
 
   @Nullable
@@ -150,9 +260,39 @@ public final class PartnershipMap implements IPartnershipMap
     return true;
   }
 
+  private static boolean _arePartnerIDsPresent (@Nonnull final IStringMap aSenderIDs,
+                                                @Nonnull final IStringMap aReceiverIDs,
+                                                @Nonnull final Partnership aPartnership)
+  {
+    return _arePartnerIDsPresent (aSenderIDs, aPartnership.getAllSenderIDs ()) &&
+           _arePartnerIDsPresent (aReceiverIDs, aPartnership.getAllReceiverIDs ());
+  }
+
   @Nullable
   public Partnership getPartnershipByID (@Nonnull final IStringMap aSenderIDs, @Nonnull final IStringMap aReceiverIDs)
   {
+    // Every match must contain the searched values of an indexed ID, so the index delivers all
+    // candidates in the original order. Only the first indexed ID is used.
+    for (final String sKey : INDEXED_ID_KEYS)
+    {
+      final String sSenderID = aSenderIDs.getAsString (sKey);
+      final String sReceiverID = aReceiverIDs.getAsString (sKey);
+      if (sSenderID != null && sReceiverID != null)
+      {
+        final ICommonsMap <IDPair, ICommonsList <IndexEntry>> aKeyIndex = m_aIndex.get (sKey);
+        final ICommonsList <IndexEntry> aCandidates = aKeyIndex == null ? null
+                                                                        : aKeyIndex.get (new IDPair (sSenderID,
+                                                                                                     sReceiverID));
+        if (aCandidates != null)
+          for (final IndexEntry aCandidate : aCandidates)
+            if (_arePartnerIDsPresent (aSenderIDs, aReceiverIDs, aCandidate.m_aPartnership))
+              return aCandidate.m_aPartnership;
+        // The IDs of a partnership may have been modified without updating the index
+        break;
+      }
+    }
+
+    // Fallback for other ID combinations and index misses
     // For all partnerships
     for (final Partnership aPartnership : m_aMap.values ())
     {
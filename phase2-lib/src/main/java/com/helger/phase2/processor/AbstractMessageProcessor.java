@@ -44,10 +44,12 @@ import com.helger.base.state.EChange;
 import com.helger.collection.commons.CommonsArrayList;
 import com.helger.collection.commons.ICommonsList;
 import com.helger.phase2.AbstractDynamicComponent;
+import com.helger.phase2.cert.CertificateFactory;
 import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.message.IMessage;
 import com.helger.phase2.processor.module.IProcessorActiveModule;
 import com.helger.phase2.processor.module.IProcessorModule;
+import com.helger.phase2.session.AS2ComponentNotFoundException;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -140,6 +142,18 @@ public abstract class AbstractMessageProcessor extends AbstractDynamicComponent
       {
         ex.terminate ();
       }
+
+    // The key store watcher is the only background thread outside of the modules
+    if (hasSession ())
+      try
+      {
+        if (getSession ().getCertificateFactory () instanceof final CertificateFactory aCertFactory)
+          aCertFactory.stopKeyStoreWatcher ();
+      }
+      catch (final AS2ComponentNotFoundException ex)
+      {
+        // No certificate factory - nothing to stop
+      }
   }
 
   /**
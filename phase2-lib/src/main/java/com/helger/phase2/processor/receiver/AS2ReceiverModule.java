@@ -43,13 +43,33 @@ import jakarta.annotation.Nonnull;
  */
 public class AS2ReceiverModule extends AbstractActiveNetModule
 {
+  /**
+   * Attribute name to decrypt, decompress and verify received messages in a single streaming pass
+   * (boolean).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_STREAMING_PIPELINE = "streamingpipeline";
+  /** Default streaming pipeline: false */
+  public static final boolean DEFAULT_STREAMING_PIPELINE = AS2ReceiverHandler.DEFAULT_STREAMING_PIPELINE;
+
   public AS2ReceiverModule ()
   {}
 
+  public final boolean isStreamingPipeline ()
+  {
+    return attrs ().getAsBoolean (ATTR_STREAMING_PIPELINE, DEFAULT_STREAMING_PIPELINE);
+  }
+
+  public final void setStreamingPipeline (final boolean bStreamingPipeline)
+  {
+    attrs ().putIn (ATTR_STREAMING_PIPELINE, bStreamingPipeline);
+  }
+
   @Override
   @Nonnull
   public AS2ReceiverHandler createHandler ()
   {
-    return new AS2ReceiverHandler (this);
+    return new AS2ReceiverHandler (this).setStreamingPipeline (isStreamingPipeline ());
   }
 }
@@ -34,10 +34,38 @@ package com.helger.phase2.processor.receiver;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,11 +74,20 @@ import com.helger.annotation.Nonnegative;
 import com.helger.annotation.WillClose;
 import com.helger.annotation.style.OverrideOnDemand;
 import com.helger.base.concurrent.BasicThreadFactory;
+import com.helger.base.concurrent.BasicThreadFactoryBuilder;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.stream.NonClosingOutputStream;
 import com.helger.base.io.stream.StreamHelper;
 import com.helger.base.lang.clazz.ClassHelper;
 import com.helger.base.string.StringHelper;
+import com.helger.base.timing.StopWatch;
+import com.helger.http.CHttp;
+import com.helger.http.CHttpHeader;
+import com.helger.http.header.HttpHeaderMap;
 import com.helger.io.file.FileHelper;
 import com.helger.io.file.FilenameHelper;
+import com.helger.phase2.cert.AbstractCertificateFactory;
+import com.helger.phase2.cert.ICertificateFactory;
 import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.exception.WrappedAS2Exception;
 import com.helger.phase2.message.IMessage;
@@ -61,6 +98,10 @@ import com.helger.phase2.partner.CPartnershipIDs;
 import com.helger.phase2.processor.CNetAttribute;
 import com.helger.phase2.processor.receiver.net.INetModuleHandler;
 import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ThreadHelper;
+import com.helger.phase2.util.http.AS2HttpRequestHeaderParser;
+import com.helger.phase2.util.http.AS2HttpResponseHandlerSocket;
+import com.helger.phase2.util.http.HTTPHelper;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -78,6 +119,166 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
   public static final String ATTR_QUOTE_HEADER_VALUES = "quoteheadervalues";
   /** Default quote header values: false */
   public static final boolean DEFAULT_QUOTE_HEADER_VALUES = false;
+  /**
+   * Attribute name for the maximum number of connections that are handled in parallel (int). Values
+   * &le; 0 mean unlimited.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_MAX_CONNECTIONS = "maxconnections";
+  /** Default maximum number of parallel connections: unlimited */
+  public static final int DEFAULT_MAX_CONNECTIONS = 0;
+  /**
+   * Attribute name for the number of accepted connections that may wait for a free worker (int).
+   * Only used if the number of connections is limited.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_CONNECTION_QUEUE_SIZE = "connectionqueuesize";
+  /** Default connection queue size: 100 */
+  public static final int DEFAULT_CONNECTION_QUEUE_SIZE = 100;
+  /**
+   * Attribute name for the policy to apply if the connection queue is full (String). See
+   * {@link EConnectionRejectPolicy} for the possible values.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_CONNECTION_REJECT_POLICY = "connectionrejectpolicy";
+  /** Default connection reject policy: HTTP 503 */
+  public static final EConnectionRejectPolicy DEFAULT_CONNECTION_REJECT_POLICY = EConnectionRejectPolicy.SERVICE_UNAVAILABLE;
+  /**
+   * Attribute name for the value of the <code>Retry-After</code> HTTP header in seconds, if a
+   * connection is rejected with HTTP 503 (int).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_CONNECTION_RETRY_AFTER = "connectionretryafter";
+  /** Default <code>Retry-After</code> value in seconds */
+  public static final int DEFAULT_CONNECTION_RETRY_AFTER = 60;
+  /**
+   * Attribute name for using virtual threads instead of platform threads for handling connections
+   * (boolean). Requires Java 21 or later - if the runtime does not support virtual threads, platform
+   * threads are used.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_VIRTUAL_THREADS = "virtualthreads";
+  /** Default use virtual threads: false */
+  public static final boolean DEFAULT_VIRTUAL_THREADS = false;
+  /**
+   * Attribute name for using the NIO selector based acceptor (boolean). It reads the HTTP request
+   * line and headers without blocking and hands over a connection to a worker only after all
+   * headers were received.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_NIO = "nio";
+  /** Default use NIO: false */
+  public static final boolean DEFAULT_NIO = false;
+  /**
+   * Attribute name for the maximum number of milliseconds the NIO acceptor waits for the complete
+   * HTTP request headers, before the connection is closed (long).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_NIO_HEADER_TIMEOUT = "nioheadertimeout";
+  /** Default NIO header timeout: 30 seconds */
+  public static final long DEFAULT_NIO_HEADER_TIMEOUT = 30_000;
+  /**
+   * Attribute name for the maximum size in bytes of the HTTP request line and headers (int).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_MAX_HEADER_SIZE = "maxheadersize";
+  /** Default maximum header size: 64 KB */
+  public static final int DEFAULT_MAX_HEADER_SIZE = AS2HttpRequestHeaderParser.DEFAULT_MAX_HEADER_SIZE;
+  /**
+   * Attribute name for the maximum number of HTTP request headers (int).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_MAX_HEADER_COUNT = "maxheadercount";
+  /** Default maximum header count: 100 */
+  public static final int DEFAULT_MAX_HEADER_COUNT = AS2HttpRequestHeaderParser.DEFAULT_MAX_HEADER_COUNT;
+  /**
+   * Attribute name for handling multiple HTTP requests on the same connection (HTTP/1.1 persistent
+   * connections) (boolean).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_KEEP_ALIVE = "keepalive";
+  /** Default keep-alive: false */
+  public static final boolean DEFAULT_KEEP_ALIVE = false;
+  /**
+   * Attribute name for the number of milliseconds an idle persistent connection waits for the next
+   * request, before it is closed (int).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_KEEP_ALIVE_TIMEOUT = "keepalivetimeout";
+  /** Default keep-alive timeout: 15 seconds */
+  public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 15_000;
+  /**
+   * Attribute name for the maximum number of requests handled on a single persistent connection
+   * (int).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_KEEP_ALIVE_MAX_REQUESTS = "keepalivemaxrequests";
+  /** Default maximum requests per connection: 100 */
+  public static final int DEFAULT_KEEP_ALIVE_MAX_REQUESTS = 100;
+  /**
+   * Attribute name for accepting TLS connections instead of plain TCP connections (boolean). The
+   * server key is taken from the key store of the certificate factory of the session.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_TLS = "tls";
+  /** Default TLS: false */
+  public static final boolean DEFAULT_TLS = false;
+  /**
+   * Attribute name for the SSLContext protocol to use (String).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_TLS_PROTOCOL = "tlsprotocol";
+  /** Default TLS protocol: "TLS" */
+  public static final String DEFAULT_TLS_PROTOCOL = "TLS";
+  /**
+   * Attribute name for the alias of the key in the certificate factory to be used as the TLS server
+   * key (String). If not set, the key manager picks a matching key.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_TLS_KEY_ALIAS = "tlskeyalias";
+  /**
+   * Attribute name for the maximum number of TLS sessions to be cached for resumption (int). 0
+   * means unlimited.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_TLS_SESSION_CACHE_SIZE = "tlssessioncachesize";
+  /** Default TLS session cache size - same as the JDK default */
+  public static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 20_480;
+  /**
+   * Attribute name for the number of seconds a cached TLS session may be resumed (int). 0 means no
+   * limit.
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_TLS_SESSION_TIMEOUT = "tlssessiontimeout";
+  /** Default TLS session timeout: 24 hours - same as the JDK default */
+  public static final int DEFAULT_TLS_SESSION_TIMEOUT = 86_400;
+  /** The number of seconds an idle worker thread is kept alive */
+  private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+  /** The maximum number of threads answering rejected connections */
+  private static final int REJECT_MAX_THREADS = 2;
+  /** The maximum number of rejected connections waiting for an answer - others are just closed */
+  private static final int REJECT_QUEUE_SIZE = 64;
+  /** The maximum time in milliseconds to drain the request of a rejected connection */
+  private static final int REJECT_DRAIN_TIMEOUT_MILLIS = 2_000;
+  /** The maximum number of bytes to drain from a rejected connection */
+  private static final int REJECT_DRAIN_MAX_BYTES = 64 * 1024;
 
   // Macros for responses
   public static final String MSG_SENDER = "$" + MessageParameters.KEY_SENDER + "." + CPartnershipIDs.PID_AS2 + "$";
@@ -128,7 +329,13 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
 
   private static final Logger LOGGER = LoggerFactory.getLogger (AbstractActiveNetModule.class);
 
-  private MainThread m_aMainThread;
+  private final AtomicLong m_aRejectedConnectionCount = new AtomicLong (0);
+  private ThreadPoolExecutor m_aConnectionExecutor;
+  private ThreadPoolExecutor m_aRejectExecutor;
+  private AbstractMainThread m_aMainThread;
+  /** Rejected connections must not be handled by the NIO selector thread */
+  private volatile boolean m_bNioAcceptor;
+  private SSLContext m_aServerSSLContext;
 
   public AbstractActiveNetModule ()
   {}
@@ -208,6 +415,547 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
     attrs ().putIn (ATTR_QUOTE_HEADER_VALUES, bQuoteHeaderValues);
   }
 
+  public final int getMaxConnections ()
+  {
+    return attrs ().getAsInt (ATTR_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+  }
+
+  public final void setMaxConnections (final int nMaxConnections)
+  {
+    attrs ().putIn (ATTR_MAX_CONNECTIONS, nMaxConnections);
+  }
+
+  public final int getConnectionQueueSize ()
+  {
+    return attrs ().getAsInt (ATTR_CONNECTION_QUEUE_SIZE, DEFAULT_CONNECTION_QUEUE_SIZE);
+  }
+
+  public final void setConnectionQueueSize (final int nConnectionQueueSize)
+  {
+    attrs ().putIn (ATTR_CONNECTION_QUEUE_SIZE, nConnectionQueueSize);
+  }
+
+  @Nonnull
+  public final EConnectionRejectPolicy getConnectionRejectPolicy ()
+  {
+    final String sPolicy = attrs ().getAsString (ATTR_CONNECTION_REJECT_POLICY);
+    final EConnectionRejectPolicy ret = EConnectionRejectPolicy.getFromIDCaseInsensitiveOrNull (sPolicy);
+    if (ret == null)
+    {
+      if (sPolicy != null)
+        LOGGER.warn ("Unsupported connection reject policy '" +
+                     sPolicy +
+                     "' - using '" +
+                     DEFAULT_CONNECTION_REJECT_POLICY.getID () +
+                     "' instead");
+      return DEFAULT_CONNECTION_REJECT_POLICY;
+    }
+    return ret;
+  }
+
+  public final void setConnectionRejectPolicy (@Nullable final EConnectionRejectPolicy eConnectionRejectPolicy)
+  {
+    if (eConnectionRejectPolicy == null)
+      attrs ().remove (ATTR_CONNECTION_REJECT_POLICY);
+    else
+      attrs ().putIn (ATTR_CONNECTION_REJECT_POLICY, eConnectionRejectPolicy.getID ());
+  }
+
+  public final int getConnectionRetryAfter ()
+  {
+    return attrs ().getAsInt (ATTR_CONNECTION_RETRY_AFTER, DEFAULT_CONNECTION_RETRY_AFTER);
+  }
+
+  public final void setConnectionRetryAfter (final int nConnectionRetryAfter)
+  {
+    attrs ().putIn (ATTR_CONNECTION_RETRY_AFTER, nConnectionRetryAfter);
+  }
+
+  public final boolean isVirtualThreads ()
+  {
+    return attrs ().getAsBoolean (ATTR_VIRTUAL_THREADS, DEFAULT_VIRTUAL_THREADS);
+  }
+
+  public final void setVirtualThreads (final boolean bVirtualThreads)
+  {
+    attrs ().putIn (ATTR_VIRTUAL_THREADS, bVirtualThreads);
+  }
+
+  public final boolean isNio ()
+  {
+    return attrs ().getAsBoolean (ATTR_NIO, DEFAULT_NIO);
+  }
+
+  public final void setNio (final boolean bNio)
+  {
+    attrs ().putIn (ATTR_NIO, bNio);
+  }
+
+  public final long getNioHeaderTimeout ()
+  {
+    return attrs ().getAsLong (ATTR_NIO_HEADER_TIMEOUT, DEFAULT_NIO_HEADER_TIMEOUT);
+  }
+
+  public final void setNioHeaderTimeout (final long nNioHeaderTimeout)
+  {
+    attrs ().putIn (ATTR_NIO_HEADER_TIMEOUT, nNioHeaderTimeout);
+  }
+
+  public final int getMaxHeaderSize ()
+  {
+    return attrs ().getAsInt (ATTR_MAX_HEADER_SIZE, DEFAULT_MAX_HEADER_SIZE);
+  }
+
+  public final void setMaxHeaderSize (final int nMaxHeaderSize)
+  {
+    attrs ().putIn (ATTR_MAX_HEADER_SIZE, nMaxHeaderSize);
+  }
+
+  public final int getMaxHeaderCount ()
+  {
+    return attrs ().getAsInt (ATTR_MAX_HEADER_COUNT, DEFAULT_MAX_HEADER_COUNT);
+  }
+
+  public final void setMaxHeaderCount (final int nMaxHeaderCount)
+  {
+    attrs ().putIn (ATTR_MAX_HEADER_COUNT, nMaxHeaderCount);
+  }
+
+  public final boolean isKeepAlive ()
+  {
+    return attrs ().getAsBoolean (ATTR_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+  }
+
+  public final void setKeepAlive (final boolean bKeepAlive)
+  {
+    attrs ().putIn (ATTR_KEEP_ALIVE, bKeepAlive);
+  }
+
+  public final int getKeepAliveTimeout ()
+  {
+    return attrs ().getAsInt (ATTR_KEEP_ALIVE_TIMEOUT, DEFAULT_KEEP_ALIVE_TIMEOUT);
+  }
+
+  public final void setKeepAliveTimeout (final int nKeepAliveTimeout)
+  {
+    attrs ().putIn (ATTR_KEEP_ALIVE_TIMEOUT, nKeepAliveTimeout);
+  }
+
+  public final int getKeepAliveMaxRequests ()
+  {
+    return attrs ().getAsInt (ATTR_KEEP_ALIVE_MAX_REQUESTS, DEFAULT_KEEP_ALIVE_MAX_REQUESTS);
+  }
+
+  public final void setKeepAliveMaxRequests (final int nKeepAliveMaxRequests)
+  {
+    attrs ().putIn (ATTR_KEEP_ALIVE_MAX_REQUESTS, nKeepAliveMaxRequests);
+  }
+
+  public final boolean isTls ()
+  {
+    return attrs ().getAsBoolean (ATTR_TLS, DEFAULT_TLS);
+  }
+
+  public final void setTls (final boolean bTls)
+  {
+    attrs ().putIn (ATTR_TLS, bTls);
+  }
+
+  @Nonnull
+  public final String getTlsProtocol ()
+  {
+    return attrs ().getAsString (ATTR_TLS_PROTOCOL, DEFAULT_TLS_PROTOCOL);
+  }
+
+  public final void setTlsProtocol (@Nullable final String sTlsProtocol)
+  {
+    if (sTlsProtocol == null)
+      attrs ().remove (ATTR_TLS_PROTOCOL);
+    else
+      attrs ().putIn (ATTR_TLS_PROTOCOL, sTlsProtocol);
+  }
+
+  @Nullable
+  public final String getTlsKeyAlias ()
+  {
+    return attrs ().getAsString (ATTR_TLS_KEY_ALIAS);
+  }
+
+  public final void setTlsKeyAlias (@Nullable final String sTlsKeyAlias)
+  {
+    if (sTlsKeyAlias == null)
+      attrs ().remove (ATTR_TLS_KEY_ALIAS);
+    else
+      attrs ().putIn (ATTR_TLS_KEY_ALIAS, sTlsKeyAlias);
+  }
+
+  public final int getTlsSessionCacheSize ()
+  {
+    return attrs ().getAsInt (ATTR_TLS_SESSION_CACHE_SIZE, DEFAULT_TLS_SESSION_CACHE_SIZE);
+  }
+
+  public final void setTlsSessionCacheSize (final int nTlsSessionCacheSize)
+  {
+    attrs ().putIn (ATTR_TLS_SESSION_CACHE_SIZE, nTlsSessionCacheSize);
+  }
+
+  public final int getTlsSessionTimeout ()
+  {
+    return attrs ().getAsInt (ATTR_TLS_SESSION_TIMEOUT, DEFAULT_TLS_SESSION_TIMEOUT);
+  }
+
+  public final void setTlsSessionTimeout (final int nTlsSessionTimeout)
+  {
+    attrs ().putIn (ATTR_TLS_SESSION_TIMEOUT, nTlsSessionTimeout);
+  }
+
+  /**
+   * @return The SSL context used to accept TLS connections. Only present while the module is
+   *         running with TLS enabled. The server session context may be used to inspect the TLS
+   *         session cache.
+   * @since 6.0.1
+   */
+  @Nullable
+  public final SSLContext getServerSSLContext ()
+  {
+    return m_aServerSSLContext;
+  }
+
+  /**
+   * @return The number of threads currently present in the connection pool. Always 0 if the module
+   *         is not running.
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public final int getConnectionPoolSize ()
+  {
+    final ThreadPoolExecutor aExecutor = m_aConnectionExecutor;
+    return aExecutor == null ? 0 : aExecutor.getPoolSize ();
+  }
+
+  /**
+   * @return The number of connections currently being handled. Always 0 if the module is not
+   *         running.
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public final int getActiveConnectionCount ()
+  {
+    final ThreadPoolExecutor aExecutor = m_aConnectionExecutor;
+    return aExecutor == null ? 0 : aExecutor.getActiveCount ();
+  }
+
+  /**
+   * @return The number of accepted connections waiting for a free worker. Always 0 if the module is
+   *         not running.
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public final int getQueuedConnectionCount ()
+  {
+    final ThreadPoolExecutor aExecutor = m_aConnectionExecutor;
+    return aExecutor == null ? 0 : aExecutor.getQueue ().size ();
+  }
+
+  /**
+   * @return The total number of connections rejected because all workers were busy and the queue
+   *         was full.
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public final long getRejectedConnectionCount ()
+  {
+    return m_aRejectedConnectionCount.get ();
+  }
+
+  /**
+   * @return <code>true</code> if all workers are busy and the connection queue is full, so that a
+   *         new connection would be rejected. Always <code>false</code> if the number of connections
+   *         is unlimited.
+   * @since 6.0.1
+   */
+  public final boolean isConnectionPoolSaturated ()
+  {
+    final ThreadPoolExecutor aExecutor = m_aConnectionExecutor;
+    if (aExecutor == null || getMaxConnections () <= 0)
+      return false;
+    return aExecutor.getActiveCount () >= aExecutor.getMaximumPoolSize () &&
+           aExecutor.getQueue ().remainingCapacity () == 0;
+  }
+
+  /**
+   * Reject a connection that could not be queued, according to the configured
+   * {@link EConnectionRejectPolicy}. The HTTP 503 response is sent by a small, bounded executor, so
+   * that a slow client cannot block the accepting thread. If that executor is saturated as well, the
+   * connection is closed without a response.
+   *
+   * @param aTask
+   *        The connection task that was rejected. May not be <code>null</code>.
+   * @param aExecutor
+   *        The executor that rejected the task. May not be <code>null</code>.
+   */
+  @OverrideOnDemand
+  protected void rejectConnection (@Nonnull final ConnectionTask aTask, @Nonnull final ThreadPoolExecutor aExecutor)
+  {
+    m_aRejectedConnectionCount.incrementAndGet ();
+
+    final Socket aSocket = aTask.getSocket ();
+    EConnectionRejectPolicy ePolicy = aExecutor.isShutdown () ? EConnectionRejectPolicy.CLOSE
+                                                               : getConnectionRejectPolicy ();
+    if (ePolicy == EConnectionRejectPolicy.CALLER_RUNS && m_bNioAcceptor)
+    {
+      // Handling the connection would block the selector thread for all other connections
+      ePolicy = EConnectionRejectPolicy.SERVICE_UNAVAILABLE;
+    }
+    LOGGER.warn ("Rejecting connection from " +
+                 aSocket.getInetAddress ().getHostAddress () +
+                 ":" +
+                 aSocket.getPort () +
+                 " using policy '" +
+                 ePolicy.getID () +
+                 "' - " +
+                 aExecutor.getActiveCount () +
+                 " active connections and " +
+                 aExecutor.getQueue ().size () +
+                 " queued connections");
+
+    switch (ePolicy)
+    {
+      case CALLER_RUNS:
+        aTask.run ();
+        return;
+      case SERVICE_UNAVAILABLE:
+      {
+        // Writing may block, so it must not happen on the accepting thread
+        final ThreadPoolExecutor aRejectExecutor = m_aRejectExecutor;
+        if (aRejectExecutor != null && !aRejectExecutor.isShutdown ())
+          try
+          {
+            aRejectExecutor.execute ( () -> _sendServiceUnavailableAndClose (aSocket));
+            return;
+          }
+          catch (final RejectedExecutionException ex)
+          {
+            LOGGER.warn ("Too many rejected connections - closing the connection without a response");
+          }
+        break;
+      }
+      default:
+        break;
+    }
+    StreamHelper.close (aSocket);
+  }
+
+  /**
+   * Send the HTTP 503 response to a rejected connection and close it gracefully. The output is
+   * half-closed first and the pending request data is drained for a limited time, so that the
+   * client is not reset before it could read the response.
+   *
+   * @param aSocket
+   *        The socket to answer. May not be <code>null</code>.
+   */
+  private void _sendServiceUnavailableAndClose (@Nonnull @WillClose final Socket aSocket)
+  {
+    try
+    {
+      final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+      aHeaders.setIntHeader (CHttpHeader.RETRY_AFTER, getConnectionRetryAfter ());
+      aHeaders.setHeader (CHttpHeader.CONNECTION, "close");
+      // Closing the socket output stream would close the socket before it was drained
+      final AS2HttpResponseHandlerSocket aResponseHandler = new AS2HttpResponseHandlerSocket (aSocket,
+                                                                                              isQuoteHeaderValues ())
+      {
+        @Override
+        @Nonnull
+        public OutputStream createOutputStream () throws IOException
+        {
+          return new NonClosingOutputStream (super.createOutputStream ());
+        }
+      };
+      HTTPHelper.sendSimpleHTTPResponse (aResponseHandler, CHttp.HTTP_SERVICE_UNAVAILABLE, aHeaders);
+
+      aSocket.shutdownOutput ();
+      aSocket.setSoTimeout (REJECT_DRAIN_TIMEOUT_MILLIS);
+      final long nDrainEnd = System.currentTimeMillis () + REJECT_DRAIN_TIMEOUT_MILLIS;
+      final InputStream aIS = aSocket.getInputStream ();
+      final byte [] aBuf = new byte [4096];
+      int nDrained = 0;
+      int nRead;
+      while (nDrained < REJECT_DRAIN_MAX_BYTES &&
+             System.currentTimeMillis () < nDrainEnd &&
+             (nRead = aIS.read (aBuf)) >= 0)
+        nDrained += nRead;
+    }
+    catch (final IOException ex)
+    {
+      // Includes the read timeout while draining
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Failed to gracefully answer rejected connection with HTTP " +
+                      CHttp.HTTP_SERVICE_UNAVAILABLE,
+                      ex);
+    }
+    finally
+    {
+      StreamHelper.close (aSocket);
+    }
+  }
+
+  @Nonnull
+  private ThreadPoolExecutor _createRejectExecutor ()
+  {
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (REJECT_MAX_THREADS,
+                                                           REJECT_MAX_THREADS,
+                                                           WORKER_KEEP_ALIVE_SECONDS,
+                                                           TimeUnit.SECONDS,
+                                                           new ArrayBlockingQueue <> (REJECT_QUEUE_SIZE),
+                                                           BasicThreadFactory.builder ()
+                                                                             .namingPattern ("AS2RejectThread-" +
+                                                                                             ClassHelper.getClassLocalName (this) +
+                                                                                             "-%d")
+                                                                             .daemon (true)
+                                                                             .build ());
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  @Nonnull
+  protected ThreadPoolExecutor createConnectionExecutor ()
+  {
+    final int nMaxConnections = getMaxConnections ();
+    final int nCorePoolSize;
+    final int nMaxPoolSize;
+    final BlockingQueue <Runnable> aQueue;
+    if (nMaxConnections <= 0)
+    {
+      // Unlimited - one thread per connection as before
+      nCorePoolSize = 0;
+      nMaxPoolSize = Integer.MAX_VALUE;
+      aQueue = new SynchronousQueue <> ();
+    }
+    else
+    {
+      nCorePoolSize = nMaxConnections;
+      nMaxPoolSize = nMaxConnections;
+      final int nQueueSize = getConnectionQueueSize ();
+      aQueue = nQueueSize > 0 ? new ArrayBlockingQueue <> (nQueueSize) : new SynchronousQueue <> ();
+    }
+
+    final RejectedExecutionHandler aRejectHandler = (r, aExecutor) -> {
+      if (r instanceof final ConnectionTask aTask)
+        rejectConnection (aTask, aExecutor);
+      else
+        throw new RejectedExecutionException ("Unexpected task " + r);
+    };
+    final BasicThreadFactoryBuilder aTFBuilder = BasicThreadFactory.builder ()
+                                                                   .namingPattern ("AS2ConnectionThread-" +
+                                                                                   ClassHelper.getClassLocalName (this) +
+                                                                                   "-%d");
+    if (isVirtualThreads ())
+    {
+      if (AS2ThreadHelper.isVirtualThreadSupported ())
+      {
+        // The executor still limits the number of parallel connections
+        aTFBuilder.wrappedFactory (AS2ThreadHelper.getVirtualThreadFactory ());
+        LOGGER.info ("Using virtual threads for handling connections of " + getName ());
+      }
+      else
+        LOGGER.warn ("Virtual threads are not supported by this Java runtime - using platform threads instead");
+    }
+
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (nCorePoolSize,
+                                                           nMaxPoolSize,
+                                                           WORKER_KEEP_ALIVE_SECONDS,
+                                                           TimeUnit.SECONDS,
+                                                           aQueue,
+                                                           aTFBuilder.build (),
+                                                           aRejectHandler);
+    if (nCorePoolSize > 0)
+      ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  /**
+   * Hand over an accepted socket to the connection executor.
+   *
+   * @param aSocket
+   *        The accepted socket. May not be <code>null</code>.
+   * @since 6.0.1
+   */
+  protected void dispatchConnection (@Nonnull @WillClose final Socket aSocket)
+  {
+    dispatchConnection (aSocket, null);
+  }
+
+  /**
+   * Hand over an accepted socket from which parts of the request were already read to the
+   * connection executor.
+   *
+   * @param aSocket
+   *        The accepted socket. May not be <code>null</code>.
+   * @param aPrefetchedBytes
+   *        The bytes already read from the socket. May be <code>null</code>.
+   * @since 6.0.1
+   */
+  protected void dispatchConnection (@Nonnull @WillClose final Socket aSocket, @Nullable final byte [] aPrefetchedBytes)
+  {
+    m_aConnectionExecutor.execute (new ConnectionTask (this, aSocket, aPrefetchedBytes));
+  }
+
+  /**
+   * Create the SSL context for accepting TLS connections. The key material is taken from the key
+   * store of the certificate factory of the session. The server session cache is configured from
+   * the "tlssessioncachesize" and "tlssessiontimeout" attributes so that reconnecting clients can
+   * resume their sessions instead of doing a full handshake.
+   *
+   * @return The SSL context to use. Never <code>null</code>.
+   * @throws AS2Exception
+   *         If the certificate factory is not key store based or the context cannot be created
+   * @since 6.0.1
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected SSLContext createServerSSLContext () throws AS2Exception
+  {
+    final ICertificateFactory aCertFactory = getSession ().getCertificateFactory ();
+    if (!(aCertFactory instanceof final AbstractCertificateFactory aKSCertFactory))
+      throw new AS2Exception ("The certificate factory " +
+                              ClassHelper.getClassLocalName (aCertFactory) +
+                              " is not key store based and cannot be used for TLS");
+
+    try
+    {
+      final char [] aPassword = aKSCertFactory.getPassword ();
+      KeyStore aKeyStore = aKSCertFactory.getKeyStore ();
+      final String sKeyAlias = getTlsKeyAlias ();
+      if (StringHelper.isNotEmpty (sKeyAlias))
+      {
+        // Use only the selected key, as the key store usually contains more than one key
+        final Key aKey = aKeyStore.getKey (sKeyAlias, aPassword);
+        if (!(aKey instanceof PrivateKey))
+          throw new AS2Exception ("The TLS key alias '" + sKeyAlias + "' does not denote a private key");
+        final KeyStore aTlsKeyStore = KeyStore.getInstance (aKeyStore.getType ());
+        aTlsKeyStore.load (null, null);
+        aTlsKeyStore.setKeyEntry (sKeyAlias, aKey, aPassword, aKeyStore.getCertificateChain (sKeyAlias));
+        aKeyStore = aTlsKeyStore;
+      }
+
+      final KeyManagerFactory aKMF = KeyManagerFactory.getInstance (KeyManagerFactory.getDefaultAlgorithm ());
+      aKMF.init (aKeyStore, aPassword);
+
+      final SSLContext aSSLContext = SSLContext.getInstance (getTlsProtocol ());
+      aSSLContext.init (aKMF.getKeyManagers (), null, null);
+
+      final SSLSessionContext aSessionContext = aSSLContext.getServerSessionContext ();
+      aSessionContext.setSessionCacheSize (getTlsSessionCacheSize ());
+      aSessionContext.setSessionTimeout (getTlsSessionTimeout ());
+      return aSSLContext;
+    }
+    catch (final GeneralSecurityException | IOException ex)
+    {
+      throw WrappedAS2Exception.wrap (ex);
+    }
+  }
+
   @Override
   public void doStart () throws AS2Exception
   {
@@ -215,7 +963,26 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
     {
       final String sAddress = getAddress ();
       final int nPort = getPort ();
-      m_aMainThread = new MainThread (this, sAddress, nPort);
+      m_aServerSSLContext = isTls () ? createServerSSLContext () : null;
+      m_aConnectionExecutor = createConnectionExecutor ();
+      m_aRejectExecutor = _createRejectExecutor ();
+      m_bNioAcceptor = isNio () && m_aServerSSLContext == null;
+      if (m_bNioAcceptor)
+      {
+        if (getConnectionRejectPolicy () == EConnectionRejectPolicy.CALLER_RUNS)
+          LOGGER.warn ("The NIO acceptor does not support the connection reject policy '" +
+                       EConnectionRejectPolicy.CALLER_RUNS.getID () +
+                       "' - using '" +
+                       EConnectionRejectPolicy.SERVICE_UNAVAILABLE.getID () +
+                       "' instead");
+        m_aMainThread = new NioMainThread (this, sAddress, nPort);
+      }
+      else
+      {
+        if (isNio ())
+          LOGGER.warn ("The NIO acceptor does not support TLS - using the blocking acceptor instead");
+        m_aMainThread = new MainThread (this, sAddress, nPort, m_aServerSSLContext);
+      }
       m_aMainThread.setUncaughtExceptionHandler (BasicThreadFactory.getDefaultUncaughtExceptionHandler ());
       m_aMainThread.start ();
     }
@@ -233,6 +1000,19 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
       m_aMainThread.terminate ();
       m_aMainThread = null;
     }
+    if (m_aConnectionExecutor != null)
+    {
+      // Connections already accepted are still handled
+      m_aConnectionExecutor.shutdown ();
+      m_aConnectionExecutor = null;
+    }
+    if (m_aRejectExecutor != null)
+    {
+      // Pending 503 responses are still sent
+      m_aRejectExecutor.shutdown ();
+      m_aRejectExecutor = null;
+    }
+    m_aServerSSLContext = null;
   }
 
   @Nonnull
@@ -304,24 +1084,93 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
     return super.hashCode ();
   }
 
-  protected static final class ConnectionThread extends Thread
+  protected static final class ConnectionTask implements Runnable
   {
     private final AbstractActiveNetModule m_aOwner;
     private final Socket m_aSocket;
+    private final byte [] m_aPrefetchedBytes;
 
-    public ConnectionThread (@Nonnull final AbstractActiveNetModule aOwner, @Nonnull @WillClose final Socket aSocket)
+    public ConnectionTask (@Nonnull final AbstractActiveNetModule aOwner,
+                           @Nonnull @WillClose final Socket aSocket,
+                           @Nullable final byte [] aPrefetchedBytes)
     {
-      super ("AS2ConnectionThread-" + ClassHelper.getClassLocalName (aOwner));
       m_aOwner = aOwner;
       m_aSocket = aSocket;
+      m_aPrefetchedBytes = aPrefetchedBytes;
+    }
+
+    @Nonnull
+    public Socket getSocket ()
+    {
+      return m_aSocket;
+    }
+
+    /**
+     * Perform the TLS handshake explicitly, so that its duration can be measured separately from
+     * the request handling.
+     */
+    private static boolean _handshake (@Nonnull final SSLSocket aSSLSocket)
+    {
+      final long nStartMillis = System.currentTimeMillis ();
+      final StopWatch aSW = StopWatch.createdStarted ();
+      try
+      {
+        aSSLSocket.startHandshake ();
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.warn ("TLS handshake with " +
+                     aSSLSocket.getInetAddress ().getHostAddress () +
+                     " failed: " +
+                     ex.getMessage ());
+        return false;
+      }
+      aSW.stop ();
+
+      if (LOGGER.isDebugEnabled ())
+      {
+        final SSLSession aSession = aSSLSocket.getSession ();
+        // A resumed session was created before this handshake started
+        final boolean bResumed = aSession.getCreationTime () < nStartMillis;
+        LOGGER.debug ("TLS handshake with " +
+                      aSSLSocket.getInetAddress ().getHostAddress () +
+                      " took " +
+                      aSW.getMillis () +
+                      " ms using " +
+                      aSession.getProtocol () +
+                      " and " +
+                      aSession.getCipherSuite () +
+                      (bResumed ? " (resumed session)" : " (full handshake)"));
+      }
+      return true;
     }
 
-    @Override
     public void run ()
     {
       LOGGER.info ("AS2ConnectionThread: run");
 
-      m_aOwner.createHandler ().handle (m_aOwner, m_aSocket);
+      final INetModuleHandler aHandler = m_aOwner.createHandler ();
+      // TLS connections are only handled after a successful handshake
+      final boolean bHandle = !(m_aSocket instanceof final SSLSocket aSSLSocket) || _handshake (aSSLSocket);
+      if (bHandle)
+      {
+        if (m_aPrefetchedBytes == null)
+          aHandler.handle (m_aOwner, m_aSocket);
+        else
+        {
+          try
+          {
+            // Continue with the remaining socket data after the prefetched bytes
+            final InputStream aIS = new SequenceInputStream (new NonBlockingByteArrayInputStream (m_aPrefetchedBytes),
+                                                             m_aSocket.getInputStream ());
+            aHandler.handle (m_aOwner, m_aSocket, aIS);
+          }
+          catch (final IOException ex)
+          {
+            WrappedAS2Exception.wrap (ex).terminate ();
+          }
+        }
+      }
 
       try
       {
@@ -338,7 +1187,25 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
     }
   }
 
-  protected static class MainThread extends Thread
+  /**
+   * Base class for the thread accepting new connections.
+   *
+   * @since 6.0.1
+   */
+  protected abstract static class AbstractMainThread extends Thread
+  {
+    protected AbstractMainThread (@Nonnull final String sName)
+    {
+      super (sName);
+    }
+
+    /**
+     * Stop accepting new connections.
+     */
+    public abstract void terminate ();
+  }
+
+  protected static class MainThread extends AbstractMainThread
   {
     private final AbstractActiveNetModule m_aOwner;
     private final ServerSocket m_aServerSocket;
@@ -347,10 +1214,34 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
     public MainThread (@Nonnull final AbstractActiveNetModule aOwner,
                        @Nullable final String sAddress,
                        @Nonnegative final int nPort) throws IOException
+    {
+      this (aOwner, sAddress, nPort, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param aOwner
+     *        Owning module. May not be <code>null</code>.
+     * @param sAddress
+     *        Address to bind to. May be <code>null</code> for all addresses.
+     * @param nPort
+     *        Port to bind to.
+     * @param aSSLContext
+     *        If not <code>null</code>, TLS connections are accepted using this context.
+     * @throws IOException
+     *         If binding fails
+     * @since 6.0.1
+     */
+    public MainThread (@Nonnull final AbstractActiveNetModule aOwner,
+                       @Nullable final String sAddress,
+                       @Nonnegative final int nPort,
+                       @Nullable final SSLContext aSSLContext) throws IOException
     {
       super ("AS2MainThread-" + ClassHelper.getClassLocalName (aOwner));
       m_aOwner = aOwner;
-      m_aServerSocket = new ServerSocket ();
+      m_aServerSocket = aSSLContext != null ? aSSLContext.getServerSocketFactory ().createServerSocket ()
+                                            : new ServerSocket ();
       final InetSocketAddress aAddr = sAddress == null ? new InetSocketAddress (nPort) : new InetSocketAddress (
                                                                                                                 sAddress,
                                                                                                                 nPort);
@@ -376,7 +1267,7 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
         try
         {
           final Socket aSocket = createAcceptSocket ();
-          new ConnectionThread (m_aOwner, aSocket).start ();
+          m_aOwner.dispatchConnection (aSocket);
         }
         catch (final Exception ex)
         {
@@ -388,6 +1279,7 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
       LOGGER.info ("AS2MainThread: done running");
     }
 
+    @Override
     public void terminate ()
     {
       if (!m_bTerminated)
@@ -405,4 +1297,360 @@ public abstract class AbstractActiveNetModule extends AbstractActiveReceiverModu
       }
     }
   }
+
+  /**
+   * NIO based acceptor: the request line and the HTTP headers are read without blocking by a single
+   * selector thread. A connection is handed over to a worker only after the headers are complete,
+   * so that slow clients don't occupy a worker. While all workers are busy, neither new connections
+   * are accepted nor data is read, so that TCP flow control pushes back on the clients.
+   *
+   * @since 6.0.1
+   */
+  protected static class NioMainThread extends AbstractMainThread
+  {
+    /** Maximum time to block in select, so that timeouts and pool saturation are re-checked */
+    private static final long SELECT_TIMEOUT_MILLIS = 250;
+    /** Interval for checking the header timeouts of all pending connections */
+    private static final long TIMEOUT_CHECK_INTERVAL_MILLIS = 1_000;
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    /**
+     * State of a connection for which the headers are not yet complete.
+     */
+    private static final class PendingConnection
+    {
+      private final SocketChannel m_aChannel;
+      private long m_nDeadline;
+      private ByteBuffer m_aBuffer;
+      private int m_nLineLength;
+      private boolean m_bRequestLineFound;
+
+      PendingConnection (@Nonnull final SocketChannel aChannel, final long nDeadline)
+      {
+        m_aChannel = aChannel;
+        m_nDeadline = nDeadline;
+        m_aBuffer = ByteBuffer.allocate (INITIAL_BUFFER_SIZE);
+      }
+
+      /**
+       * Scan the newly read bytes for the empty line terminating the headers. Leading empty lines
+       * before the request line are ignored.
+       *
+       * @param nStart
+       *        The first new byte in the buffer
+       * @return <code>true</code> if the headers are complete
+       */
+      boolean scanForHeaderEnd (final int nStart)
+      {
+        final byte [] aArray = m_aBuffer.array ();
+        final int nEnd = m_aBuffer.position ();
+        for (int i = nStart; i < nEnd; ++i)
+        {
+          final byte b = aArray[i];
+          if (b == '\n')
+          {
+            if (m_nLineLength == 0)
+            {
+              if (m_bRequestLineFound)
+                return true;
+            }
+            else
+              m_bRequestLineFound = true;
+            m_nLineLength = 0;
+          }
+          else
+            if (b != '\r')
+              m_nLineLength++;
+        }
+        return false;
+      }
+
+      @Nonnull
+      byte [] getReadBytes ()
+      {
+        final byte [] ret = new byte [m_aBuffer.position ()];
+        System.arraycopy (m_aBuffer.array (), 0, ret, 0, ret.length);
+        return ret;
+      }
+    }
+
+    private final AbstractActiveNetModule m_aOwner;
+    private final ServerSocketChannel m_aServerChannel;
+    private final Selector m_aSelector;
+    private final int m_nMaxHeaderSize;
+    private final long m_nHeaderTimeoutMillis;
+    private volatile boolean m_bTerminated;
+    private boolean m_bPaused = false;
+    private long m_nPausedSince = 0;
+    private long m_nNextTimeoutCheck = 0;
+
+    public NioMainThread (@Nonnull final AbstractActiveNetModule aOwner,
+                          @Nullable final String sAddress,
+                          @Nonnegative final int nPort) throws IOException
+    {
+      super ("AS2NioMainThread-" + ClassHelper.getClassLocalName (aOwner));
+      m_aOwner = aOwner;
+      m_nMaxHeaderSize = Math.max (aOwner.getMaxHeaderSize (), INITIAL_BUFFER_SIZE);
+      m_nHeaderTimeoutMillis = aOwner.getNioHeaderTimeout ();
+      m_aSelector = Selector.open ();
+      m_aServerChannel = ServerSocketChannel.open ();
+      final InetSocketAddress aAddr = sAddress == null ? new InetSocketAddress (nPort)
+                                                       : new InetSocketAddress (sAddress, nPort);
+      m_aServerChannel.bind (aAddr);
+      m_aServerChannel.configureBlocking (false);
+      m_aServerChannel.register (m_aSelector, SelectionKey.OP_ACCEPT);
+
+      LOGGER.info ("Inited " + getName () + " at " + aAddr);
+    }
+
+    private static void _close (@Nonnull final SelectionKey aKey)
+    {
+      aKey.cancel ();
+      StreamHelper.close (aKey.channel ());
+    }
+
+    private static void _sendErrorAndClose (@Nonnull final SelectionKey aKey, final int nHttpStatusCode)
+    {
+      final String sResponse = "HTTP/1.1 " +
+                               nHttpStatusCode +
+                               " " +
+                               CHttp.getHttpResponseMessage (nHttpStatusCode) +
+                               CHttp.EOL +
+                               CHttpHeader.CONNECTION +
+                               ": close" +
+                               CHttp.EOL +
+                               CHttpHeader.CONTENT_LENGTH +
+                               ": 0" +
+                               CHttp.EOL +
+                               CHttp.EOL;
+      try
+      {
+        // Best effort only - the channel is non-blocking
+        ((SocketChannel) aKey.channel ()).write (ByteBuffer.wrap (sResponse.getBytes (CHttp.HTTP_CHARSET)));
+      }
+      catch (final IOException ex)
+      {
+        // Ignore
+      }
+      _close (aKey);
+    }
+
+    private void _setPaused (final boolean bPaused)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug (bPaused ? "All connection workers are busy - pausing reading from sockets"
+                              : "Connection workers are available again - resuming reading from sockets");
+
+      final long nNow = System.currentTimeMillis ();
+      // No data was read while paused - don't count that time against the clients
+      final long nPausedMillis = bPaused ? 0 : Math.max (nNow - m_nPausedSince, 0);
+      for (final SelectionKey aKey : m_aSelector.keys ())
+        if (aKey.isValid ())
+        {
+          final int nOps = aKey.attachment () == null ? SelectionKey.OP_ACCEPT : SelectionKey.OP_READ;
+          aKey.interestOps (bPaused ? 0 : nOps);
+          if (nPausedMillis > 0 && aKey.attachment () instanceof final PendingConnection aPending)
+            aPending.m_nDeadline += nPausedMillis;
+        }
+      m_bPaused = bPaused;
+      if (bPaused)
+        m_nPausedSince = nNow;
+    }
+
+    private void _accept () throws IOException
+    {
+      SocketChannel aChannel;
+      while ((aChannel = m_aServerChannel.accept ()) != null)
+      {
+        try
+        {
+          aChannel.configureBlocking (false);
+          aChannel.socket ().setSoLinger (true, 60);
+          final PendingConnection aPending = new PendingConnection (aChannel,
+                                                                    System.currentTimeMillis () +
+                                                                              m_nHeaderTimeoutMillis);
+          aChannel.register (m_aSelector, m_bPaused ? 0 : SelectionKey.OP_READ, aPending);
+        }
+        catch (final IOException ex)
+        {
+          LOGGER.warn ("Failed to register accepted connection", ex);
+          StreamHelper.close (aChannel);
+        }
+      }
+    }
+
+    /**
+     * Read available data from the connection.
+     *
+     * @return <code>true</code> if the headers are complete and the connection can be handed over
+     */
+    private boolean _read (@Nonnull final SelectionKey aKey)
+    {
+      final PendingConnection aPending = (PendingConnection) aKey.attachment ();
+      try
+      {
+        while (true)
+        {
+          if (!aPending.m_aBuffer.hasRemaining ())
+          {
+            if (aPending.m_aBuffer.capacity () >= m_nMaxHeaderSize)
+            {
+              LOGGER.warn ("HTTP request headers exceed the maximum size of " + m_nMaxHeaderSize + " bytes");
+              _sendErrorAndClose (aKey, CHttp.HTTP_REQUEST_HEADER_FIELDS_TOO_LARGE);
+              return false;
+            }
+            // Grow the buffer
+            final ByteBuffer aNewBuffer = ByteBuffer.allocate (Math.min (aPending.m_aBuffer.capacity () * 2,
+                                                                         m_nMaxHeaderSize));
+            aPending.m_aBuffer.flip ();
+            aNewBuffer.put (aPending.m_aBuffer);
+            aPending.m_aBuffer = aNewBuffer;
+          }
+
+          final int nStart = aPending.m_aBuffer.position ();
+          final int nRead = aPending.m_aChannel.read (aPending.m_aBuffer);
+          if (nRead < 0)
+          {
+            // Client closed the connection before the headers were complete
+            _close (aKey);
+            return false;
+          }
+          if (nRead == 0)
+            return false;
+          if (aPending.scanForHeaderEnd (nStart))
+            return true;
+        }
+      }
+      catch (final IOException ex)
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Error reading HTTP request headers", ex);
+        _close (aKey);
+        return false;
+      }
+    }
+
+    private void _closeTimedOutConnections (final long nNow)
+    {
+      for (final SelectionKey aKey : m_aSelector.keys ())
+        if (aKey.isValid () && aKey.attachment () instanceof final PendingConnection aPending)
+          if (nNow > aPending.m_nDeadline)
+          {
+            LOGGER.warn ("Closing connection that did not send the complete HTTP request headers within " +
+                         m_nHeaderTimeoutMillis +
+                         " ms");
+            _sendErrorAndClose (aKey, CHttp.HTTP_REQUEST_TIMEOUT);
+          }
+    }
+
+    private void _handOver (@Nonnull final List <PendingConnection> aCompleted) throws IOException
+    {
+      // Flush the cancelled keys, so that the channels can be switched to blocking mode
+      m_aSelector.selectNow ();
+      for (final PendingConnection aPending : aCompleted)
+      {
+        final SocketChannel aChannel = aPending.m_aChannel;
+        try
+        {
+          aChannel.configureBlocking (true);
+          m_aOwner.dispatchConnection (aChannel.socket (), aPending.getReadBytes ());
+        }
+        catch (final IOException ex)
+        {
+          LOGGER.warn ("Failed to hand over connection", ex);
+          StreamHelper.close (aChannel);
+        }
+      }
+    }
+
+    @Override
+    public void run ()
+    {
+      LOGGER.info ("AS2NioMainThread: run");
+      final List <PendingConnection> aCompleted = new ArrayList <> ();
+      try
+      {
+        while (!m_bTerminated && !isInterrupted ())
+        {
+          try
+          {
+            final boolean bSaturated = m_aOwner.isConnectionPoolSaturated ();
+            if (bSaturated != m_bPaused)
+              _setPaused (bSaturated);
+
+            m_aSelector.select (SELECT_TIMEOUT_MILLIS);
+            if (m_bTerminated)
+              break;
+
+            final Iterator <SelectionKey> it = m_aSelector.selectedKeys ().iterator ();
+            while (it.hasNext ())
+            {
+              final SelectionKey aKey = it.next ();
+              it.remove ();
+              if (!aKey.isValid ())
+                continue;
+
+              if (aKey.isAcceptable ())
+                _accept ();
+              else
+                if (aKey.isReadable () && _read (aKey))
+                {
+                  aKey.cancel ();
+                  aCompleted.add ((PendingConnection) aKey.attachment ());
+                }
+            }
+
+            if (!aCompleted.isEmpty ())
+            {
+              _handOver (aCompleted);
+              aCompleted.clear ();
+            }
+
+            // Don't penalize clients for our own saturation
+            if (!m_bPaused)
+            {
+              final long nNow = System.currentTimeMillis ();
+              if (nNow >= m_nNextTimeoutCheck)
+              {
+                _closeTimedOutConnections (nNow);
+                m_nNextTimeoutCheck = nNow + TIMEOUT_CHECK_INTERVAL_MILLIS;
+              }
+            }
+          }
+          catch (final Exception ex)
+          {
+            if (!m_bTerminated)
+              m_aOwner.forceStop (ex);
+          }
+        }
+      }
+      finally
+      {
+        // Close all connections that did not make it to a worker
+        for (final SelectionKey aKey : m_aSelector.keys ())
+          StreamHelper.close (aKey.channel ());
+        StreamHelper.close (m_aSelector);
+      }
+
+      LOGGER.info ("AS2NioMainThread: done running");
+    }
+
+    @Override
+    public void terminate ()
+    {
+      if (!m_bTerminated)
+      {
+        m_bTerminated = true;
+        try
+        {
+          m_aServerChannel.close ();
+        }
+        catch (final IOException ex)
+        {
+          m_aOwner.forceStop (ex);
+        }
+        m_aSelector.wakeup ();
+      }
+    }
+  }
 }
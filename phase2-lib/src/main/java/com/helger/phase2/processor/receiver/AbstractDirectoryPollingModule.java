@@ -47,9 +47,8 @@ import com.helger.collection.commons.ICommonsMap;
 import com.helger.http.CHttpHeader;
 import com.helger.io.file.FileIOError;
 import com.helger.io.file.FilenameHelper;
-import com.helger.io.file.SimpleFileIO;
 import com.helger.mail.cte.EContentTransferEncoding;
-import com.helger.mail.datasource.ByteArrayDataSource;
+import com.helger.mail.datasource.IExtendedDataSource;
 import com.helger.mime.CMimeType;
 import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.exception.WrappedAS2Exception;
@@ -62,6 +61,7 @@ import com.helger.phase2.processor.CFileAttribute;
 import com.helger.phase2.processor.sender.IProcessorSenderModule;
 import com.helger.phase2.session.IAS2Session;
 import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ResourceHelper;
 import com.helger.typeconvert.collection.IStringMap;
 
 import jakarta.annotation.Nonnull;
@@ -195,18 +195,22 @@ public abstract class AbstractDirectoryPollingModule extends AbstractActivePolli
 
     try
     {
-      updateMessage (aMsg, aFile);
-      LOGGER.info ("file assigned to message " + aFile.getAbsolutePath () + aMsg.getLoggingText ());
+      // The file must be closed before it is moved or deleted
+      try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+      {
+        updateMessage (aMsg, aFile, aResHelper);
+        LOGGER.info ("file assigned to message " + aFile.getAbsolutePath () + aMsg.getLoggingText ());
 
-      if (aMsg.getData () == null)
-        throw new AS2InvalidMessageException ("No Data");
+        if (aMsg.getData () == null)
+          throw new AS2InvalidMessageException ("No Data");
 
-      // Transmit the message - requires a module installed that implements the
-      // "send" action (like com.helger.phase2.processor.sender.AS2SenderModule)
-      getSession ().getMessageProcessor ().handle (IProcessorSenderModule.DO_SEND, aMsg, null);
+        // Transmit the message - requires a module installed that implements the
+        // "send" action (like com.helger.phase2.processor.sender.AS2SenderModule)
+        getSession ().getMessageProcessor ().handle (IProcessorSenderModule.DO_SEND, aMsg, null);
 
-      if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("AS2Message was successfully handled my the MessageProcessor");
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("AS2Message was successfully handled my the MessageProcessor");
+      }
 
       /*
        * asynch mdn logic 2007-03-12 If the return status is pending in msg's attribute "status"
@@ -334,7 +338,23 @@ public abstract class AbstractDirectoryPollingModule extends AbstractActivePolli
     }
   }
 
-  public void updateMessage (@Nonnull final IMessage aMsg, @Nonnull final File aFile) throws AS2Exception
+  /**
+   * Fill the passed message with the content of the passed file.
+   *
+   * @param aMsg
+   *        The message to be filled. May not be <code>null</code>.
+   * @param aFile
+   *        The file to be read. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper that keeps the file open. The message data is only readable until the
+   *        resource helper is closed. May not be <code>null</code>.
+   * @throws AS2Exception
+   *         In case of an error
+   * @since 6.0.1
+   */
+  public void updateMessage (@Nonnull final IMessage aMsg,
+                             @Nonnull final File aFile,
+                             @Nonnull final AS2ResourceHelper aResHelper) throws AS2Exception
   {
     final MessageParameters aParams = new MessageParameters (aMsg);
 
@@ -352,7 +372,6 @@ public abstract class AbstractDirectoryPollingModule extends AbstractActivePolli
 
     try
     {
-      final byte [] aData = SimpleFileIO.getAllFileBytes (aFile);
       String sContentType = attrs ().getAsString (ATTR_MIMETYPE);
       if (sContentType == null)
       {
@@ -373,9 +392,10 @@ public abstract class AbstractDirectoryPollingModule extends AbstractActivePolli
         }
       }
 
-      final ByteArrayDataSource aByteSource = new ByteArrayDataSource (aData, sContentType, null);
+      // Large files are not read into memory
+      final IExtendedDataSource aDataSource = AS2IOHelper.getFileDataSource (aFile, sContentType, aResHelper);
       final MimeBodyPart aBody = new MimeBodyPart ();
-      aBody.setDataHandler (aByteSource.getAsDataHandler ());
+      aBody.setDataHandler (aDataSource.getAsDataHandler ());
 
       // Headers must be set AFTER the DataHandler
       final String sCTE = aMsg.partnership ()
@@ -400,7 +420,7 @@ public abstract class AbstractDirectoryPollingModule extends AbstractActivePolli
 
       aMsg.setData (aBody);
     }
-    catch (final MessagingException ex)
+    catch (final IOException | MessagingException ex)
     {
       throw WrappedAS2Exception.wrap (ex);
     }
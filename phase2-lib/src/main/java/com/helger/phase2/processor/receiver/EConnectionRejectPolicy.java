@@ -0,0 +1,91 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.receiver;
+
+import com.helger.annotation.Nonempty;
+import com.helger.base.id.IHasID;
+import com.helger.base.lang.EnumHelper;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Defines what {@link AbstractActiveNetModule} does with an accepted connection, if all workers are
+ * busy and the connection queue is full.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+public enum EConnectionRejectPolicy implements IHasID <String>
+{
+  /** Close the connection without sending anything */
+  CLOSE ("close"),
+  /**
+   * Send an HTTP 503 (Service Unavailable) response including a <code>Retry-After</code> header
+   * and close the connection
+   */
+  SERVICE_UNAVAILABLE ("serviceunavailable"),
+  /**
+   * Handle the connection in the accepting thread. This blocks the acceptance of new connections
+   * until the connection is handled. Not supported by the NIO acceptor, which uses
+   * {@link #SERVICE_UNAVAILABLE} instead.
+   */
+  CALLER_RUNS ("callerruns");
+
+  private final String m_sID;
+
+  EConnectionRejectPolicy (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EConnectionRejectPolicy getFromIDCaseInsensitiveOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDCaseInsensitiveOrNull (EConnectionRejectPolicy.class, sID);
+  }
+
+  @Nullable
+  public static EConnectionRejectPolicy getFromIDCaseInsensitiveOrDefault (@Nullable final String sID,
+                                                                            @Nullable final EConnectionRejectPolicy eDefault)
+  {
+    return EnumHelper.getFromIDCaseInsensitiveOrDefault (EConnectionRejectPolicy.class, sID, eDefault);
+  }
+}
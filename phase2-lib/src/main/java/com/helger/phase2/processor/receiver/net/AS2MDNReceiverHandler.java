@@ -82,11 +82,12 @@ import com.helger.phase2.util.AS2IOHelper;
 import com.helger.phase2.util.AS2ResourceHelper;
 import com.helger.phase2.util.dump.IHTTPIncomingDumper;
 import com.helger.phase2.util.http.AS2HttpClient;
-import com.helger.phase2.util.http.AS2HttpRequestDataProviderInputStream;
 import com.helger.phase2.util.http.AS2HttpResponseHandlerSocket;
 import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.http.IAS2HttpRequestDataProvider;
 import com.helger.phase2.util.http.IAS2HttpResponseHandler;
 import com.helger.phase2.util.http.IAS2IncomingMDNCallback;
+import com.helger.phase2.util.http.TempSharedFileInputStream;
 
 import jakarta.activation.DataSource;
 import jakarta.annotation.Nonnull;
@@ -558,16 +559,35 @@ public class AS2MDNReceiverHandler extends AbstractReceiverHandler
     {
       m_aReceiverModule.handleError (aMsg, WrappedAS2Exception.wrap (ex));
     }
+    finally
+    {
+      // close and delete the temporary shared stream if it exists
+      final TempSharedFileInputStream sis = aMsg.getTempSharedFileInputStream ();
+      if (sis != null)
+      {
+        try
+        {
+          sis.closeAndDelete ();
+        }
+        catch (final IOException e)
+        {
+          LOGGER.error ("Exception while closing TempSharedFileInputStream", e);
+        }
+      }
+    }
   }
 
-  public void handle (@Nonnull final AbstractActiveNetModule aOwner, @Nonnull final Socket aSocket)
+  @Override
+  @Nonnull
+  protected ESuccess handleRequest (@Nonnull final AbstractActiveNetModule aOwner,
+                                    @Nonnull final Socket aSocket,
+                                    @Nonnull final IAS2HttpRequestDataProvider aRDP,
+                                    @Nonnull final AS2HttpResponseHandlerSocket aResponseHandler)
   {
     final String sClientInfo = getClientInfo (aSocket);
     LOGGER.info ("incoming connection for receiving AsyncMDN [" + sClientInfo + "]");
 
     final AS2Message aMsg = new AS2Message ();
-    final boolean bQuoteHeaderValues = m_aReceiverModule.isQuoteHeaderValues ();
-    final IAS2HttpResponseHandler aResponseHandler = new AS2HttpResponseHandlerSocket (aSocket, bQuoteHeaderValues);
 
     // Time the transmission
     final StopWatch aSW = StopWatch.createdStarted ();
@@ -576,7 +596,7 @@ public class AS2MDNReceiverHandler extends AbstractReceiverHandler
     {
       // Read in the message request, headers, and data
       final IHTTPIncomingDumper aIncomingDumper = getEffectiveHttpIncomingDumper ();
-      aMdnDataSource = HTTPHelper.readAndDecodeHttpRequest (new AS2HttpRequestDataProviderInputStream (aSocket.getInputStream ()),
+      aMdnDataSource = HTTPHelper.readAndDecodeHttpRequest (aRDP,
                                                             aResponseHandler,
                                                             aMsg,
                                                             aIncomingDumper);
@@ -591,6 +611,7 @@ public class AS2MDNReceiverHandler extends AbstractReceiverHandler
     if (aMdnDataSource == null)
     {
       LOGGER.error ("Not having a data source to operate on");
+      return ESuccess.FAILURE;
     }
     else
     {
@@ -616,5 +637,6 @@ public class AS2MDNReceiverHandler extends AbstractReceiverHandler
 
       handleIncomingMessage (sClientInfo, aMdnDataSource, aMsg, aResponseHandler);
     }
+    return ESuccess.SUCCESS;
   }
 }
@@ -40,10 +40,10 @@ import java.util.Enumeration;
 import java.util.function.Consumer;
 
 import org.bouncycastle.cms.CMSException;
-import org.bouncycastle.cms.jcajce.ZlibExpanderProvider;
 import org.bouncycastle.mail.smime.SMIMECompressedParser;
 import org.bouncycastle.mail.smime.SMIMEException;
 import org.bouncycastle.mail.smime.SMIMEUtil;
+import org.bouncycastle.operator.InputExpanderProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +62,9 @@ import com.helger.http.header.HttpHeaderMap;
 import com.helger.mail.datasource.ByteArrayDataSource;
 import com.helger.phase2.cert.ECertificatePartnershipType;
 import com.helger.phase2.cert.ICertificateFactory;
+import com.helger.phase2.crypto.AS2CompressionSettings;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECompressionType;
 import com.helger.phase2.crypto.ICryptoHelper;
 import com.helger.phase2.crypto.MIC;
 import com.helger.phase2.disposition.AS2DispositionException;
@@ -86,9 +89,9 @@ import com.helger.phase2.util.AS2HttpHelper;
 import com.helger.phase2.util.AS2IOHelper;
 import com.helger.phase2.util.AS2ResourceHelper;
 import com.helger.phase2.util.dump.IHTTPIncomingDumper;
-import com.helger.phase2.util.http.AS2HttpRequestDataProviderInputStream;
 import com.helger.phase2.util.http.AS2HttpResponseHandlerSocket;
 import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.http.IAS2HttpRequestDataProvider;
 import com.helger.phase2.util.http.IAS2HttpResponseHandler;
 import com.helger.phase2.util.http.TempSharedFileInputStream;
 import com.helger.security.certificate.CertificateHelper;
@@ -109,11 +112,14 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
 {
   public static final boolean DEFAULT_SEND_EXCEPTIONS_IN_MDN = false;
   public static final boolean DEFAULT_SEND_EXCEPTION_STACKTRACE_IN_MDN = false;
+  /** @since 6.0.1 */
+  public static final boolean DEFAULT_STREAMING_PIPELINE = false;
   private static final Logger LOGGER = LoggerFactory.getLogger (AS2ReceiverHandler.class);
 
   private final AS2ReceiverModule m_aReceiverModule;
   private boolean m_bSendExceptionsInMDN = DEFAULT_SEND_EXCEPTIONS_IN_MDN;
   private boolean m_bSendExceptionStackTraceInMDN = DEFAULT_SEND_EXCEPTION_STACKTRACE_IN_MDN;
+  private boolean m_bStreamingPipeline = DEFAULT_STREAMING_PIPELINE;
 
   /**
    * @param aModule
@@ -186,6 +192,55 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
     return this;
   }
 
+  /**
+   * @return <code>true</code> if decrypt, decompress and verify of received messages should be
+   *         performed in a single streaming pass, <code>false</code> if not. Default is
+   *         {@link #DEFAULT_STREAMING_PIPELINE}.
+   * @since 6.0.1
+   */
+  public final boolean isStreamingPipeline ()
+  {
+    return m_bStreamingPipeline;
+  }
+
+  /**
+   * Enable or disable the streaming receive pipeline. It is only used, if the crypto helper is a
+   * {@link BCCryptoHelper}.
+   *
+   * @param bStreamingPipeline
+   *        <code>true</code> to use the {@link AS2ReceiverStreamingPipeline}, <code>false</code> to
+   *        use the step by step processing.
+   * @return this for chaining
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2ReceiverHandler setStreamingPipeline (final boolean bStreamingPipeline)
+  {
+    m_bStreamingPipeline = bStreamingPipeline;
+    return this;
+  }
+
+  /**
+   * Determine if the certificate contained in the signed body part should be used for verification.
+   * The partnership setting has precedence over the session setting.
+   *
+   * @param aMsg
+   *        The message to check. May not be <code>null</code>.
+   * @return <code>true</code> if the certificate in the body part should be used.
+   * @since 6.0.1
+   */
+  protected boolean isVerifyUseCertificateInBodyPart (@Nonnull final IMessage aMsg)
+  {
+    final ETriState eUseCertificateInBodyPart = aMsg.partnership ().getVerifyUseCertificateInBodyPart ();
+    if (eUseCertificateInBodyPart.isDefined ())
+    {
+      // Use per partnership
+      return eUseCertificateInBodyPart.getAsBooleanValue ();
+    }
+    // Use global value
+    return m_aReceiverModule.getSession ().isCryptoVerifyUseCertificateInBodyPart ();
+  }
+
   /**
    * Create a new message and record the source ip and port
    *
@@ -288,18 +343,7 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
 
           final X509Certificate aSenderCert = aCertFactory.getCertificateOrNull (aMsg,
                                                                                  ECertificatePartnershipType.SENDER);
-          final boolean bUseCertificateInBodyPart;
-          final ETriState eUseCertificateInBodyPart = aMsg.partnership ().getVerifyUseCertificateInBodyPart ();
-          if (eUseCertificateInBodyPart.isDefined ())
-          {
-            // Use per partnership
-            bUseCertificateInBodyPart = eUseCertificateInBodyPart.getAsBooleanValue ();
-          }
-          else
-          {
-            // Use global value
-            bUseCertificateInBodyPart = m_aReceiverModule.getSession ().isCryptoVerifyUseCertificateInBodyPart ();
-          }
+          final boolean bUseCertificateInBodyPart = isVerifyUseCertificateInBodyPart (aMsg);
 
           final Wrapper <X509Certificate> aCertHolder = new Wrapper <> ();
           final MimeBodyPart aVerifiedData = aCryptoHelper.verify (aMsg.getData (),
@@ -351,7 +395,9 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
           LOGGER.debug ("Decompressing a compressed AS2 message");
 
         MimeBodyPart aDecompressedPart;
-        final ZlibExpanderProvider aExpander = new ZlibExpanderProvider ();
+        final AS2CompressionSettings aCompressionSettings = aMsg.partnership ().getCompressionSettings ();
+        // Shared, if the default buffer size is used
+        final InputExpanderProvider aExpander = ECompressionType.ZLIB.getInputExpanderProvider (aCompressionSettings);
 
         // Compress using stream
         if (LOGGER.isDebugEnabled ())
@@ -368,9 +414,9 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
           LOGGER.debug (aSB.toString ());
         }
 
-        // The default buffer size in BufferedInputStream is 8192
-        final SMIMECompressedParser aCompressedParser = new SMIMECompressedParser (aMsg.getData ());
-        // TODO: get buffer from configuration
+        // Read the compressed data with the same buffer size as the expander
+        final SMIMECompressedParser aCompressedParser = new SMIMECompressedParser (aMsg.getData (),
+                                                                                   aCompressionSettings.getDecompressionBufferSize ());
         aDecompressedPart = SMIMEUtil.toMimeBodyPart (aCompressedParser.getContent (aExpander),
                                                       aResHelper.createTempFile ());
 
@@ -565,36 +611,47 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
                                               () -> AbstractActiveNetModule.DISP_PARTNERSHIP_NOT_FOUND);
         }
 
-        // Calculate MIC before decrypt and decompress (see #140)
-        try
-        {
-          aIncomingMIC = AS2Helper.createMICOnReception (aMsg);
-        }
-        catch (final Exception ex)
-        {
-          // Ignore error
-          throw WrappedAS2Exception.wrap (ex);
-        }
-
         // Per RFC5402 compression is always before encryption but can be before
         // or after signing of message but only in one place
         final ICryptoHelper aCryptoHelper = AS2Helper.getCryptoHelper ();
         boolean bIsDecompressed = false;
 
-        // Decrypt and verify signature of the data, and attach data to the
-        // message
-        decrypt (aMsg, aResHelper);
-
-        if (aCryptoHelper.isCompressed (aMsg.getContentType ()))
+        if (m_bStreamingPipeline && aCryptoHelper instanceof BCCryptoHelper)
         {
-          if (LOGGER.isTraceEnabled ())
-            LOGGER.trace ("Decompressing received message before checking signature...");
-          decompress (aMsg, aResHelper);
-          bIsDecompressed = true;
+          // MIC, decrypt, decompress and verify in one pass
+          final AS2ReceiverStreamingPipeline aPipeline = new AS2ReceiverStreamingPipeline (this,
+                                                                                           (BCCryptoHelper) aCryptoHelper);
+          aIncomingMIC = aPipeline.process (aMsg, aMsgData, aResHelper);
+          bIsDecompressed = aPipeline.isDecompressStepHandled ();
         }
+        else
+        {
+          // Calculate MIC before decrypt and decompress (see #140)
+          try
+          {
+            aIncomingMIC = AS2Helper.createMICOnReception (aMsg);
+          }
+          catch (final Exception ex)
+          {
+            // Ignore error
+            throw WrappedAS2Exception.wrap (ex);
+          }
 
-        // Verify may fail, if our certificate is expired
-        verify (aMsg, aResHelper);
+          // Decrypt and verify signature of the data, and attach data to the
+          // message
+          decrypt (aMsg, aResHelper);
+
+          if (aCryptoHelper.isCompressed (aMsg.getContentType ()))
+          {
+            if (LOGGER.isTraceEnabled ())
+              LOGGER.trace ("Decompressing received message before checking signature...");
+            decompress (aMsg, aResHelper);
+            bIsDecompressed = true;
+          }
+
+          // Verify may fail, if our certificate is expired
+          verify (aMsg, aResHelper);
+        }
 
         if (aCryptoHelper.isCompressed (aMsg.getContentType ()))
         {
@@ -755,14 +812,17 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
     }
   }
 
-  public void handle (@Nonnull final AbstractActiveNetModule aOwner, @Nonnull final Socket aSocket)
+  @Override
+  @Nonnull
+  protected ESuccess handleRequest (@Nonnull final AbstractActiveNetModule aOwner,
+                                    @Nonnull final Socket aSocket,
+                                    @Nonnull final IAS2HttpRequestDataProvider aRDP,
+                                    @Nonnull final AS2HttpResponseHandlerSocket aResponseHandler)
   {
     final String sClientInfo = getClientInfo (aSocket);
     LOGGER.info ("Incoming connection " + sClientInfo);
 
     final AS2Message aMsg = createMessage (aSocket);
-    final boolean bQuoteHeaderValues = m_aReceiverModule.isQuoteHeaderValues ();
-    final IAS2HttpResponseHandler aResponseHandler = new AS2HttpResponseHandlerSocket (aSocket, bQuoteHeaderValues);
 
     // Time the transmission
     final StopWatch aSW = StopWatch.createdStarted ();
@@ -771,7 +831,7 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
     {
       // Read in the message request, headers, and data
       final IHTTPIncomingDumper aIncomingDumper = getEffectiveHttpIncomingDumper ();
-      aMsgDataSource = HTTPHelper.readAndDecodeHttpRequest (new AS2HttpRequestDataProviderInputStream (aSocket.getInputStream ()),
+      aMsgDataSource = HTTPHelper.readAndDecodeHttpRequest (aRDP,
                                                             aResponseHandler,
                                                             aMsg,
                                                             aIncomingDumper);
@@ -786,6 +846,7 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
     if (aMsgDataSource == null)
     {
       LOGGER.error ("Not having a data source to operate on");
+      return ESuccess.FAILURE;
     }
     else
     {
@@ -809,5 +870,6 @@ public class AS2ReceiverHandler extends AbstractReceiverHandler
 
       handleIncomingMessage (sClientInfo, aMsgDataSource, aMsg, aResponseHandler);
     }
+    return ESuccess.SUCCESS;
   }
 }
@@ -0,0 +1,613 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.receiver.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.cms.CMSCompressedDataParser;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSTypedStream;
+import org.bouncycastle.mail.smime.SMIMEUtil;
+import org.bouncycastle.mail.smime.util.FileBackedMimeBodyPart;
+import org.bouncycastle.operator.InputExpanderProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.CGlobal;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.base.string.StringHelper;
+import com.helger.base.wrapper.Wrapper;
+import com.helger.collection.commons.CommonsHashMap;
+import com.helger.collection.commons.ICommonsMap;
+import com.helger.http.CHttp;
+import com.helger.http.CHttpHeader;
+import com.helger.io.file.FileHelper;
+import com.helger.phase2.cert.ECertificatePartnershipType;
+import com.helger.phase2.cert.ICertificateFactory;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECompressionType;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.crypto.MIC;
+import com.helger.phase2.disposition.AS2DispositionException;
+import com.helger.phase2.disposition.DispositionType;
+import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.exception.WrappedAS2Exception;
+import com.helger.phase2.message.AS2Message;
+import com.helger.phase2.partner.Partnership;
+import com.helger.phase2.processor.receiver.AbstractActiveNetModule;
+import com.helger.phase2.util.AS2Helper;
+import com.helger.phase2.util.AS2HttpHelper;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.phase2.util.javamail.MimeMultipartStreamReader;
+import com.helger.security.certificate.CertificateHelper;
+
+import jakarta.activation.DataSource;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * Streaming variant of the decrypt, decompress and verify steps of {@link AS2ReceiverHandler}. The
+ * received data is read exactly once: decryption and decompression are chained as stream
+ * transformers, the signature digests and the incoming MIC are calculated while the data passes
+ * through, and only the resulting content is written to a single spool file. The default processing
+ * instead creates a temporary file per step.<br>
+ * Only content that was compressed before it was signed needs a second spool file, because the
+ * signature covers the compressed data.<br>
+ * The overridable decrypt and verify methods of the handler are not called in this mode. A new
+ * instance is needed for each message.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class AS2ReceiverStreamingPipeline
+{
+  /** The maximum size of the MIME headers of a decrypted or decompressed entity */
+  public static final int MAX_ENTITY_HEADER_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  /** The maximum size of the signature part of a <code>multipart/signed</code> */
+  public static final int MAX_SIGNATURE_PART_SIZE = CGlobal.BYTES_PER_MEGABYTE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS2ReceiverStreamingPipeline.class);
+  private static final byte [] EOL_BYTES = AS2IOHelper.getAllAsciiBytes (CHttp.EOL);
+
+  /**
+   * A MIME entity that is read from a stream. The headers were already read, the content is still in
+   * the stream.
+   */
+  private static final class MimeEntity
+  {
+    private final String m_sContentType;
+    private final ContentType m_aContentType;
+    private final String m_sContentTransferEncoding;
+    private final byte [] m_aHeaderBytes;
+    private final InputStream m_aContentIS;
+
+    MimeEntity (@Nullable final String sContentType,
+                @Nullable final String sContentTransferEncoding,
+                @Nullable final byte [] aHeaderBytes,
+                @Nonnull final InputStream aContentIS)
+    {
+      m_sContentType = sContentType;
+      m_aContentType = sContentType == null ? null : AS2HttpHelper.parseContentType (sContentType);
+      m_sContentTransferEncoding = sContentTransferEncoding;
+      m_aHeaderBytes = aHeaderBytes;
+      m_aContentIS = aContentIS;
+    }
+
+    @Nullable
+    String getBaseType ()
+    {
+      return m_aContentType == null ? null : m_aContentType.getBaseType ().toLowerCase (Locale.US);
+    }
+
+    @Nullable
+    String getParameter (@Nonnull final String sName)
+    {
+      return m_aContentType == null ? null : m_aContentType.getParameter (sName);
+    }
+
+    boolean isEncrypted ()
+    {
+      // Same check as BCCryptoHelper.isEncrypted
+      final String sSmimeType = getParameter ("smime-type");
+      return "application/pkcs7-mime".equals (getBaseType ()) &&
+             sSmimeType != null &&
+             sSmimeType.equalsIgnoreCase ("enveloped-data");
+    }
+
+    boolean isSigned ()
+    {
+      // Same check as BCCryptoHelper.isSigned
+      return "multipart/signed".equals (getBaseType ());
+    }
+
+    @Nonnull
+    InputStream getDecodedContentStream () throws MessagingException
+    {
+      return AS2IOHelper.getContentTransferEncodingAwareInputStream (m_aContentIS, m_sContentTransferEncoding);
+    }
+
+    @Nonnull
+    InputStream getEntityStream ()
+    {
+      return new SequenceInputStream (new NonBlockingByteArrayInputStream (m_aHeaderBytes), m_aContentIS);
+    }
+
+    @Nonnull
+    static MimeEntity read (@Nonnull final InputStream aIS) throws IOException, MessagingException
+    {
+      final InputStream aBufferedIS = StreamHelper.getBuffered (aIS);
+
+      // Read all header bytes including the empty line
+      final byte [] aHeaderBytes;
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        int nLineLen = 0;
+        while (true)
+        {
+          final int b = aBufferedIS.read ();
+          if (b < 0)
+            break;
+          if (aBAOS.size () >= MAX_ENTITY_HEADER_SIZE)
+            throw new IOException ("MIME headers exceed the maximum size of " + MAX_ENTITY_HEADER_SIZE + " bytes");
+          aBAOS.write (b);
+          if (b == '\n')
+          {
+            if (nLineLen == 0)
+              break;
+            nLineLen = 0;
+          }
+          else
+            if (b != '\r')
+              nLineLen++;
+        }
+        aHeaderBytes = aBAOS.toByteArray ();
+      }
+
+      final InternetHeaders aHeaders = new InternetHeaders (new NonBlockingByteArrayInputStream (aHeaderBytes));
+      return new MimeEntity (aHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null),
+                             aHeaders.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, null),
+                             aHeaderBytes,
+                             aBufferedIS);
+    }
+  }
+
+  private final AS2ReceiverHandler m_aHandler;
+  private final BCCryptoHelper m_aCryptoHelper;
+  private boolean m_bDecompressStepHandled = false;
+
+  public AS2ReceiverStreamingPipeline (@Nonnull final AS2ReceiverHandler aHandler,
+                                       @Nonnull final BCCryptoHelper aCryptoHelper)
+  {
+    ValueEnforcer.notNull (aHandler, "Handler");
+    ValueEnforcer.notNull (aCryptoHelper, "CryptoHelper");
+    m_aHandler = aHandler;
+    m_aCryptoHelper = aCryptoHelper;
+  }
+
+  /**
+   * @return <code>true</code> if the received message was compressed before it was signed, and the
+   *         decompression step was therefore handled by {@link #process(AS2Message, DataSource,
+   *         AS2ResourceHelper)}. This is also <code>true</code> if decompression is disabled for the
+   *         partnership.
+   */
+  public final boolean isDecompressStepHandled ()
+  {
+    return m_bDecompressStepHandled;
+  }
+
+  private static void _readToEnd (@Nonnull final InputStream aIS) throws IOException
+  {
+    final byte [] aBuf = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+    while (aIS.read (aBuf) >= 0)
+    {
+      // Just read
+    }
+  }
+
+  @Nonnull
+  private MessageDigest _createDigest (@Nonnull final ASN1ObjectIdentifier aOID) throws Exception
+  {
+    return MessageDigest.getInstance (aOID.getId (), m_aCryptoHelper.getSecurityProviderName ());
+  }
+
+  @Nonnull
+  private MimeEntity _decrypt (@Nonnull final AS2Message aMsg, @Nonnull final MimeEntity aEntity) throws AS2Exception
+  {
+    try
+    {
+      final ICertificateFactory aCertFactory = m_aHandler.getReceiverModule ().getSession ().getCertificateFactory ();
+      final X509Certificate aReceiverCert = aCertFactory.getCertificate (aMsg, ECertificatePartnershipType.RECEIVER);
+      final PrivateKey aReceiverKey = aCertFactory.getPrivateKey (aReceiverCert);
+      final InputStream aDecryptedIS = m_aCryptoHelper.getDecryptedContentStream (aEntity.getDecodedContentStream (),
+                                                                                  aReceiverCert,
+                                                                                  aReceiverKey);
+      final MimeEntity ret = MimeEntity.read (aDecryptedIS);
+      // Remember that message was encrypted
+      aMsg.attrs ().putIn (AS2Message.ATTRIBUTE_RECEIVED_ENCRYPTED, true);
+      return ret;
+    }
+    catch (final AS2DispositionException ex)
+    {
+      // Re-throw "as is"
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.error ("Error decrypting " + aMsg.getLoggingText (), ex);
+
+      throw new AS2DispositionException (DispositionType.createError ("decryption-failed"),
+                                         AbstractActiveNetModule.DISP_DECRYPTION_ERROR,
+                                         ex);
+    }
+  }
+
+  @Nonnull
+  private static MimeEntity _decompress (@Nonnull final AS2Message aMsg, @Nonnull final MimeEntity aEntity)
+                                                                                                           throws AS2DispositionException
+  {
+    try
+    {
+      final CMSCompressedDataParser aCompressedParser = new CMSCompressedDataParser (aEntity.getDecodedContentStream ());
+      final InputExpanderProvider aExpander = ECompressionType.ZLIB.getInputExpanderProvider (aMsg.partnership ()
+                                                                                                  .getCompressionSettings ());
+      final MimeEntity ret = MimeEntity.read (aCompressedParser.getContent (aExpander).getContentStream ());
+      // Remember that message was decompressed
+      aMsg.attrs ().putIn (AS2Message.ATTRIBUTE_RECEIVED_COMPRESSED, true);
+      return ret;
+    }
+    catch (final CMSException | MessagingException | IOException ex)
+    {
+      LOGGER.error ("Error decompressing received message", ex);
+
+      throw new AS2DispositionException (DispositionType.createError ("unexpected-processing-error"),
+                                         AbstractActiveNetModule.DISP_DECOMPRESSION_ERROR,
+                                         ex);
+    }
+  }
+
+  @Nonnull
+  private MimeBodyPart _verify (@Nonnull final AS2Message aMsg,
+                                @Nonnull final MimeEntity aEntity,
+                                final boolean bForceVerify,
+                                @Nonnull final File aSpoolFile) throws AS2Exception
+  {
+    try
+    {
+      // Make sure the data is signed
+      if (!bForceVerify && !aEntity.isSigned ())
+        throw new GeneralSecurityException ("Content-Type indicates data isn't signed: " + aEntity.m_sContentType);
+
+      final String sBoundary = aEntity.getParameter ("boundary");
+      if (StringHelper.isEmpty (sBoundary))
+        throw new IllegalStateException ("Expected Part content to be multipart but it isn't. It is '" +
+                                         aEntity.m_sContentType +
+                                         "'");
+
+      final ICertificateFactory aCertFactory = m_aHandler.getReceiverModule ().getSession ().getCertificateFactory ();
+      final X509Certificate aSenderCert = aCertFactory.getCertificateOrNull (aMsg, ECertificatePartnershipType.SENDER);
+      final boolean bUseCertificateInBodyPart = m_aHandler.isVerifyUseCertificateInBodyPart (aMsg);
+
+      // Calculate the digests announced in "micalg" while the signed content is written
+      final ICommonsMap <ASN1ObjectIdentifier, MessageDigest> aDigests = new CommonsHashMap <> ();
+      final String sMicAlgs = aEntity.getParameter ("micalg");
+      if (sMicAlgs != null)
+        for (final String sMicAlg : StringHelper.getExploded (',', sMicAlgs))
+        {
+          final ECryptoAlgorithmSign eMicAlg = ECryptoAlgorithmSign.getFromIDOrNull (sMicAlg.trim ());
+          if (eMicAlg != null && !aDigests.containsKey (eMicAlg.getOID ()))
+            aDigests.put (eMicAlg.getOID (), _createDigest (eMicAlg.getOID ()));
+        }
+
+      final MimeMultipartStreamReader aReader = new MimeMultipartStreamReader (aEntity.getDecodedContentStream (),
+                                                                               sBoundary);
+      aReader.skipPreamble ();
+      OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile);
+      if (aOS == null)
+        throw new IOException ("Failed to open spool file " + aSpoolFile.getAbsolutePath ());
+      for (final MessageDigest aDigest : aDigests.values ())
+        aOS = new DigestOutputStream (aOS, aDigest);
+      try (final OutputStream aRealOS = aOS)
+      {
+        aReader.copyNextPart (aRealOS);
+      }
+      if (aReader.isLastPartRead ())
+        throw new IOException ("The signature part of the multipart/signed is missing");
+
+      final byte [] aSignaturePart = aReader.readNextPart (MAX_SIGNATURE_PART_SIZE);
+      while (!aReader.isLastPartRead ())
+        aReader.copyNextPart (null);
+      aReader.skipEpilogue ();
+
+      final MimeEntity aSignatureEntity = MimeEntity.read (new NonBlockingByteArrayInputStream (aSignaturePart));
+      final byte [] aSignature = StreamHelper.getAllBytes (aSignatureEntity.getDecodedContentStream ());
+
+      final ICommonsMap <ASN1ObjectIdentifier, byte []> aContentDigests = new CommonsHashMap <> ();
+      for (final ASN1ObjectIdentifier aOID : BCCryptoHelper.getAllSignatureDigestAlgorithms (aSignature))
+      {
+        MessageDigest aDigest = aDigests.get (aOID);
+        if (aDigest == null)
+        {
+          // Not announced in "micalg" - read the spooled content again
+          LOGGER.info ("Signature digest algorithm " +
+                       aOID.getId () +
+                       " was not announced in the 'micalg' parameter - reading the signed content again");
+          aDigest = _createDigest (aOID);
+          try (final InputStream aIS = new DigestInputStream (FileHelper.getBufferedInputStream (aSpoolFile), aDigest))
+          {
+            _readToEnd (aIS);
+          }
+        }
+        aContentDigests.put (aOID, aDigest.digest ());
+      }
+
+      final Wrapper <X509Certificate> aCertHolder = new Wrapper <> ();
+      m_aCryptoHelper.verifyDetached (aSignature,
+                                      aContentDigests,
+                                      aSenderCert,
+                                      bUseCertificateInBodyPart,
+                                      aCertHolder::set);
+      final Consumer <X509Certificate> aExternalConsumer = m_aHandler.getVerificationCertificateConsumer ();
+      if (aExternalConsumer != null)
+        aExternalConsumer.accept (aCertHolder.get ());
+
+      // Remember that message was signed and verified
+      aMsg.attrs ().putIn (AS2Message.ATTRIBUTE_RECEIVED_SIGNED, true);
+
+      // Remember the PEM encoded version of the X509 certificate that was
+      // used for verification
+      aMsg.attrs ()
+          .putIn (AS2Message.ATTRIBUTE_RECEIVED_SIGNATURE_CERTIFICATE,
+                  CertificateHelper.getPEMEncodedCertificate (aCertHolder.get ()));
+
+      return new FileBackedMimeBodyPart (aSpoolFile);
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.error ("Error verifying signature " + aMsg.getLoggingText () + ": " + ex.getMessage ());
+
+      throw AS2DispositionException.wrap (ex,
+                                          () -> DispositionType.createError ("integrity-check-failed"),
+                                          () -> AbstractActiveNetModule.DISP_VERIFY_SIGNATURE_FAILED);
+    }
+  }
+
+  /**
+   * Decrypt, decompress and verify the received message in one pass. Afterwards the data of the
+   * message is replaced with the resulting content, if any of the steps was applied. Decompressing
+   * after the signature verification is not part of this method.
+   *
+   * @param aMsg
+   *        The received message with the partnership already resolved. May not be
+   *        <code>null</code>.
+   * @param aMsgData
+   *        The received HTTP body. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to create the spool file. May not be <code>null</code>.
+   * @return The MIC of the received data. May be <code>null</code> if no MIC algorithm is
+   *         available.
+   * @throws AS2Exception
+   *         In case of error
+   */
+  @Nullable
+  public MIC process (@Nonnull final AS2Message aMsg,
+                      @Nonnull final DataSource aMsgData,
+                      @Nonnull final AS2ResourceHelper aResHelper) throws AS2Exception
+  {
+    ValueEnforcer.notNull (aMsg, "Msg");
+    ValueEnforcer.notNull (aMsgData, "MsgData");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final Partnership aPartnership = aMsg.partnership ();
+    final MimeBodyPart aReceivedPart = aMsg.getData ();
+
+    // The MIC is calculated while the received data is read
+    MIC aIncomingMIC = null;
+    ECryptoAlgorithmSign eMICAlg = null;
+    MessageDigest aMICDigest = null;
+    InputStream aReceivedIS;
+    final String sReceivedContentType;
+    final String sReceivedEncoding;
+    try
+    {
+      sReceivedContentType = aReceivedPart.getContentType ();
+      sReceivedEncoding = aReceivedPart.getEncoding ();
+      eMICAlg = AS2Helper.getMICAlgorithmOnReception (aMsg);
+      if (eMICAlg != null)
+      {
+        final boolean bIncludeHeaders = AS2Helper.isIncludeHeadersInMICOnReception (aPartnership);
+        // Maybe it was already calculated while reading the HTTP body
+        aIncomingMIC = AS2Helper.getReceivedMICIfMatching (aMsg, eMICAlg, bIncludeHeaders);
+        if (aIncomingMIC == null)
+        {
+          if (sReceivedEncoding == null)
+          {
+            aMICDigest = _createDigest (eMICAlg.getOID ());
+            if (bIncludeHeaders)
+            {
+              // Same as in BCCryptoHelper.calculateMIC
+              final Enumeration <String> aHeaderLines = aReceivedPart.getAllHeaderLines ();
+              while (aHeaderLines.hasMoreElements ())
+              {
+                aMICDigest.update (AS2IOHelper.getAllAsciiBytes (aHeaderLines.nextElement ()));
+                aMICDigest.update (EOL_BYTES);
+              }
+              aMICDigest.update (EOL_BYTES);
+            }
+          }
+          else
+          {
+            // The MIC is calculated over the encoded data - use the default way
+            aIncomingMIC = AS2Helper.createMICOnReception (aMsg);
+          }
+        }
+      }
+
+      aReceivedIS = aMsgData.getInputStream ();
+      if (aMICDigest != null)
+        aReceivedIS = new DigestInputStream (aReceivedIS, aMICDigest);
+    }
+    catch (final Exception ex)
+    {
+      throw WrappedAS2Exception.wrap (ex);
+    }
+
+    try (final InputStream aRealReceivedIS = aReceivedIS)
+    {
+      final MimeEntity aReceivedEntity = new MimeEntity (sReceivedContentType,
+                                                         sReceivedEncoding,
+                                                         null,
+                                                         StreamHelper.getBuffered (aRealReceivedIS));
+      MimeEntity aEntity = aReceivedEntity;
+
+      // Decrypt
+      final boolean bDisableDecrypt = aPartnership.isDisableDecrypt ();
+      final boolean bMsgIsEncrypted = aEntity.isEncrypted ();
+      final boolean bForceDecrypt = aPartnership.isForceDecrypt ();
+      if (bMsgIsEncrypted && bDisableDecrypt)
+      {
+        LOGGER.info ("Message claims to be encrypted but decryption is disabled" + aMsg.getLoggingText ());
+      }
+      else
+        if (bMsgIsEncrypted || bForceDecrypt)
+        {
+          if (bForceDecrypt && !bMsgIsEncrypted)
+            LOGGER.info ("Forced decrypting" + aMsg.getLoggingText ());
+          else
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug ("Decrypting while streaming" + aMsg.getLoggingText ());
+          aEntity = _decrypt (aMsg, aEntity);
+        }
+
+      // Decompress before verify
+      if (aEntity.m_sContentType != null && m_aCryptoHelper.isCompressed (aEntity.m_sContentType))
+      {
+        if (aPartnership.isDisableDecompress ())
+        {
+          LOGGER.info ("Message claims to be compressed but decompression is disabled" + aMsg.getLoggingText ());
+        }
+        else
+        {
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Decompressing while streaming" + aMsg.getLoggingText ());
+          aEntity = _decompress (aMsg, aEntity);
+        }
+        m_bDecompressStepHandled = true;
+      }
+
+      // Verify
+      MimeBodyPart aResultPart = null;
+      final boolean bDisableVerify = aPartnership.isDisableVerify ();
+      final boolean bMsgIsSigned = aEntity.isSigned ();
+      final boolean bForceVerify = aPartnership.isForceVerify ();
+      if (bMsgIsSigned && bDisableVerify)
+      {
+        LOGGER.info ("Message claims to be signed but signature validation is disabled" + aMsg.getLoggingText ());
+      }
+      else
+        if (bMsgIsSigned || bForceVerify)
+        {
+          if (bForceVerify && !bMsgIsSigned)
+            LOGGER.info ("Forced verify signature" + aMsg.getLoggingText ());
+          else
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug ("Verifying signature while streaming" + aMsg.getLoggingText ());
+          aResultPart = _verify (aMsg, aEntity, bForceVerify, aResHelper.createTempFile ());
+        }
+
+      if (aResultPart == null && aEntity != aReceivedEntity)
+      {
+        // Write the decrypted and/or decompressed content to the spool file
+        try
+        {
+          aResultPart = SMIMEUtil.toMimeBodyPart (new CMSTypedStream (aEntity.getEntityStream ()),
+                                                  aResHelper.createTempFile ());
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.error ("Error processing " + aMsg.getLoggingText (), ex);
+
+          final boolean bDecrypted = aMsg.attrs ().containsKey (AS2Message.ATTRIBUTE_RECEIVED_ENCRYPTED);
+          throw new AS2DispositionException (DispositionType.createError (bDecrypted ? "decryption-failed"
+                                                                                     : "unexpected-processing-error"),
+                                             bDecrypted ? AbstractActiveNetModule.DISP_DECRYPTION_ERROR
+                                                        : AbstractActiveNetModule.DISP_DECOMPRESSION_ERROR,
+                                             ex);
+        }
+      }
+
+      if (aMICDigest != null)
+      {
+        // Read the rest of the received data, so that the MIC covers everything
+        _readToEnd (aRealReceivedIS);
+        aIncomingMIC = new MIC (aMICDigest.digest (), eMICAlg);
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("  Calculated MIC while streaming = " + aIncomingMIC.getAsAS2String ());
+      }
+
+      if (aResultPart != null)
+      {
+        aMsg.setData (aResultPart);
+        LOGGER.info ("Successfully processed incoming AS2 message in streaming mode" + aMsg.getLoggingText ());
+      }
+      return aIncomingMIC;
+    }
+    catch (final IOException ex)
+    {
+      throw WrappedAS2Exception.wrap (ex);
+    }
+  }
+}
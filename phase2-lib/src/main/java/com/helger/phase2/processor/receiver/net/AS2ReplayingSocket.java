@@ -0,0 +1,205 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.receiver.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+import com.helger.base.enforce.ValueEnforcer;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * A socket that delegates to another socket, but returns a different input stream. This is used
+ * to hand a connection to an {@link INetModuleHandler} that only reads from the socket, if parts of
+ * the request were already read from it.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+final class AS2ReplayingSocket extends Socket
+{
+  private final Socket m_aSocket;
+  private final InputStream m_aIS;
+
+  AS2ReplayingSocket (@Nonnull final Socket aSocket, @Nonnull final InputStream aIS)
+  {
+    ValueEnforcer.notNull (aSocket, "Socket");
+    ValueEnforcer.notNull (aIS, "InputStream");
+    m_aSocket = aSocket;
+    m_aIS = aIS;
+  }
+
+  @Override
+  public InputStream getInputStream ()
+  {
+    return m_aIS;
+  }
+
+  @Override
+  public OutputStream getOutputStream () throws IOException
+  {
+    return m_aSocket.getOutputStream ();
+  }
+
+  @Override
+  public InetAddress getInetAddress ()
+  {
+    return m_aSocket.getInetAddress ();
+  }
+
+  @Override
+  public InetAddress getLocalAddress ()
+  {
+    return m_aSocket.getLocalAddress ();
+  }
+
+  @Override
+  public int getPort ()
+  {
+    return m_aSocket.getPort ();
+  }
+
+  @Override
+  public int getLocalPort ()
+  {
+    return m_aSocket.getLocalPort ();
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress ()
+  {
+    return m_aSocket.getRemoteSocketAddress ();
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress ()
+  {
+    return m_aSocket.getLocalSocketAddress ();
+  }
+
+  @Override
+  public void setSoTimeout (final int nTimeout) throws SocketException
+  {
+    m_aSocket.setSoTimeout (nTimeout);
+  }
+
+  @Override
+  public int getSoTimeout () throws SocketException
+  {
+    return m_aSocket.getSoTimeout ();
+  }
+
+  @Override
+  public void setTcpNoDelay (final boolean bOn) throws SocketException
+  {
+    m_aSocket.setTcpNoDelay (bOn);
+  }
+
+  @Override
+  public boolean getTcpNoDelay () throws SocketException
+  {
+    return m_aSocket.getTcpNoDelay ();
+  }
+
+  @Override
+  public void setKeepAlive (final boolean bOn) throws SocketException
+  {
+    m_aSocket.setKeepAlive (bOn);
+  }
+
+  @Override
+  public boolean getKeepAlive () throws SocketException
+  {
+    return m_aSocket.getKeepAlive ();
+  }
+
+  @Override
+  public void shutdownInput () throws IOException
+  {
+    m_aSocket.shutdownInput ();
+  }
+
+  @Override
+  public void shutdownOutput () throws IOException
+  {
+    m_aSocket.shutdownOutput ();
+  }
+
+  @Override
+  public boolean isConnected ()
+  {
+    return m_aSocket.isConnected ();
+  }
+
+  @Override
+  public boolean isBound ()
+  {
+    return m_aSocket.isBound ();
+  }
+
+  @Override
+  public boolean isClosed ()
+  {
+    return m_aSocket.isClosed ();
+  }
+
+  @Override
+  public boolean isInputShutdown ()
+  {
+    return m_aSocket.isInputShutdown ();
+  }
+
+  @Override
+  public boolean isOutputShutdown ()
+  {
+    return m_aSocket.isOutputShutdown ();
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    m_aSocket.close ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return m_aSocket.toString ();
+  }
+}
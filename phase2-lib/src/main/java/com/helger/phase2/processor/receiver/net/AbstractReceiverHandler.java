@@ -32,13 +32,36 @@
  */
 package com.helger.phase2.processor.receiver.net;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
+import java.util.Locale;
 import java.util.function.Consumer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.base.state.ESuccess;
+import com.helger.base.state.ETriState;
+import com.helger.base.string.StringHelper;
+import com.helger.http.CHttp;
+import com.helger.http.CHttpHeader;
+import com.helger.phase2.processor.receiver.AbstractActiveNetModule;
 import com.helger.phase2.util.dump.IHTTPIncomingDumper;
+import com.helger.phase2.util.http.AS2HttpRequestDataProviderInputStream;
+import com.helger.phase2.util.http.AS2HttpRequestHeaderParser;
+import com.helger.phase2.util.http.AS2HttpResponseHandlerSocket;
 import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.http.IAS2HttpRequestDataProvider;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -50,6 +73,8 @@ import jakarta.annotation.Nullable;
  */
 public abstract class AbstractReceiverHandler implements INetModuleHandler
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (AbstractReceiverHandler.class);
+
   private Consumer <X509Certificate> m_aVerificationCertificateConsumer;
   private IHTTPIncomingDumper m_aHttpIncomingDumper;
 
@@ -129,4 +154,214 @@ public abstract class AbstractReceiverHandler implements INetModuleHandler
     return aSocket.getInetAddress ().getHostAddress () + ":" + aSocket.getPort ();
   }
 
+  public void handle (@Nonnull final AbstractActiveNetModule aOwner, @Nonnull final Socket aSocket)
+  {
+    final InputStream aIS;
+    try
+    {
+      aIS = aSocket.getInputStream ();
+    }
+    catch (final IOException ex)
+    {
+      new AS2NetException (aSocket.getInetAddress (), aSocket.getPort (), ex).terminate ();
+      return;
+    }
+    handle (aOwner, aSocket, aIS);
+  }
+
+  /**
+   * Check if the client asked to keep the connection open after the response. HTTP/1.1 connections
+   * are persistent unless "Connection: close" is present, HTTP/1.0 connections are only persistent
+   * with an explicit "Connection: keep-alive".
+   *
+   * @param aRDP
+   *        The parsed request. May not be <code>null</code>.
+   * @return <code>true</code> if the client wants a persistent connection.
+   * @since 6.0.1
+   */
+  @OverrideOnDemand
+  protected boolean isKeepAliveRequested (@Nonnull final IAS2HttpRequestDataProvider aRDP)
+  {
+    final String sConnection = aRDP.getHttpHeaderMap ().getFirstHeaderValue (CHttpHeader.CONNECTION);
+    boolean bClose = false;
+    boolean bKeepAlive = false;
+    if (StringHelper.isNotEmpty (sConnection))
+      for (final String sToken : sConnection.split (","))
+      {
+        final String sLCToken = sToken.trim ().toLowerCase (Locale.ROOT);
+        if ("close".equals (sLCToken))
+          bClose = true;
+        else
+          if ("keep-alive".equals (sLCToken))
+            bKeepAlive = true;
+      }
+    if (bClose)
+      return false;
+    return bKeepAlive || "HTTP/1.1".equalsIgnoreCase (aRDP.getHttpRequestVersion ());
+  }
+
+  /**
+   * Wait until the next request on a persistent connection starts, without consuming any data.
+   *
+   * @return <code>true</code> if data is available, <code>false</code> if the connection was
+   *         closed by the peer or was idle for too long.
+   */
+  private static boolean _waitForNextRequest (@Nonnull final Socket aSocket,
+                                              @Nonnull final InputStream aIS,
+                                              final int nTimeoutMS)
+  {
+    try
+    {
+      final int nOldTimeout = aSocket.getSoTimeout ();
+      aSocket.setSoTimeout (nTimeoutMS);
+      try
+      {
+        aIS.mark (1);
+        if (aIS.read () < 0)
+          return false;
+        aIS.reset ();
+        return true;
+      }
+      finally
+      {
+        aSocket.setSoTimeout (nOldTimeout);
+      }
+    }
+    catch (final SocketTimeoutException ex)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Closing idle persistent connection after " + nTimeoutMS + " ms");
+      return false;
+    }
+    catch (final IOException ex)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Handle all requests of a single connection. If keep-alive is enabled on the owning module,
+   * multiple requests are read from the same connection, until the client asks to close it, the
+   * idle timeout is reached or the maximum number of requests per connection is exceeded.
+   */
+  @Override
+  public void handle (@Nonnull final AbstractActiveNetModule aOwner,
+                      @Nonnull final Socket aSocket,
+                      @Nonnull @WillNotClose final InputStream aIS)
+  {
+    final boolean bKeepAliveEnabled = aOwner.isKeepAlive ();
+    // Buffer only once, so that no bytes of a following request are lost
+    final InputStream aConnIS = StreamHelper.getBuffered (aIS);
+    final int nMaxRequests = aOwner.getKeepAliveMaxRequests ();
+    // The parser is reused for all requests of this connection
+    final int nMaxHeaderSize = aOwner.getMaxHeaderSize ();
+    final int nMaxHeaderCount = aOwner.getMaxHeaderCount ();
+    final AS2HttpRequestHeaderParser aHeaderParser = new AS2HttpRequestHeaderParser (nMaxHeaderSize > 0 ? nMaxHeaderSize
+                                                                                                          : AbstractActiveNetModule.DEFAULT_MAX_HEADER_SIZE,
+                                                                                      nMaxHeaderCount > 0 ? nMaxHeaderCount
+                                                                                                          : AbstractActiveNetModule.DEFAULT_MAX_HEADER_COUNT);
+
+    int nRequestCount = 0;
+    while (true)
+    {
+      final IAS2HttpRequestDataProvider aRDP;
+      try
+      {
+        aRDP = new AS2HttpRequestDataProviderInputStream (aConnIS, aHeaderParser);
+      }
+      catch (final Exception ex)
+      {
+        new AS2NetException (aSocket.getInetAddress (), aSocket.getPort (), ex).terminate ();
+        return;
+      }
+      nRequestCount++;
+
+      final AS2HttpResponseHandlerSocket aResponseHandler = new AS2HttpResponseHandlerSocket (aSocket,
+                                                                                              aOwner.isQuoteHeaderValues ());
+      final boolean bKeepAlive = bKeepAliveEnabled &&
+                                 (nMaxRequests <= 0 || nRequestCount < nMaxRequests) &&
+                                 isKeepAliveRequested (aRDP);
+      if (bKeepAliveEnabled)
+        aResponseHandler.setKeepAlive (ETriState.valueOf (bKeepAlive));
+
+      final ESuccess eSuccess = handleRequest (aOwner, aSocket, aRDP, aResponseHandler);
+
+      // Only continue if the request was read completely and answered
+      if (!bKeepAlive || eSuccess.isFailure () || !aResponseHandler.isResponseSent ())
+        break;
+
+      if (!_waitForNextRequest (aSocket, aConnIS, aOwner.getKeepAliveTimeout ()))
+        break;
+    }
+  }
+
+  /**
+   * Handle a single, already parsed HTTP request.<br>
+   * For compatibility with handlers written before persistent connections were supported, the
+   * default implementation replays the request to {@link #handle(AbstractActiveNetModule, Socket)},
+   * which must be overridden in that case. Such connections are never kept alive. New handlers
+   * should override this method instead.
+   *
+   * @param aOwner
+   *        The owning module. Never <code>null</code>.
+   * @param aSocket
+   *        The socket the request was received on. Never <code>null</code>.
+   * @param aRDP
+   *        The request with the parsed request line and headers. The body was not yet read. Never
+   *        <code>null</code>.
+   * @param aResponseHandler
+   *        The response handler to be used. Never <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the request body was read completely, so that another
+   *         request may follow on the same connection.
+   * @since 6.0.1
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected ESuccess handleRequest (@Nonnull final AbstractActiveNetModule aOwner,
+                                    @Nonnull final Socket aSocket,
+                                    @Nonnull final IAS2HttpRequestDataProvider aRDP,
+                                    @Nonnull final AS2HttpResponseHandlerSocket aResponseHandler)
+  {
+    // Avoid an endless recursion via handle(AbstractActiveNetModule, Socket)
+    try
+    {
+      if (getClass ().getMethod ("handle", AbstractActiveNetModule.class, Socket.class)
+                     .getDeclaringClass () == AbstractReceiverHandler.class)
+        throw new UnsupportedOperationException (getClass ().getName () +
+                                                 " must override either handleRequest or handle(AbstractActiveNetModule, Socket)");
+    }
+    catch (final NoSuchMethodException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Delegating request to the legacy handle method of " + getClass ().getName ());
+
+    // Replay the already parsed request line and headers, followed by the unread body
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append (aRDP.getHttpRequestMethod ())
+       .append (' ')
+       .append (aRDP.getHttpRequestUrl ())
+       .append (' ')
+       .append (aRDP.getHttpRequestVersion ())
+       .append (CHttp.EOL);
+    for (final String sHeaderLine : HTTPHelper.getAllHTTPHeaderLines (aRDP.getHttpHeaderMap ()))
+      aSB.append (sHeaderLine).append (CHttp.EOL);
+    aSB.append (CHttp.EOL);
+
+    try
+    {
+      final InputStream aReplayIS = new SequenceInputStream (new NonBlockingByteArrayInputStream (aSB.toString ()
+                                                                                                     .getBytes (StandardCharsets.ISO_8859_1)),
+                                                             aRDP.getHttpInputStream ());
+      handle (aOwner, new AS2ReplayingSocket (aSocket, aReplayIS));
+    }
+    catch (final IOException ex)
+    {
+      new AS2NetException (aSocket.getInetAddress (), aSocket.getPort (), ex).terminate ();
+    }
+    // The legacy method may have read arbitrary data - never reuse the connection
+    return ESuccess.FAILURE;
+  }
 }
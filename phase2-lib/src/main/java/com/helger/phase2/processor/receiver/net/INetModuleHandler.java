@@ -32,8 +32,10 @@
  */
 package com.helger.phase2.processor.receiver.net;
 
+import java.io.InputStream;
 import java.net.Socket;
 
+import com.helger.annotation.WillNotClose;
 import com.helger.phase2.processor.receiver.AbstractActiveNetModule;
 
 import jakarta.annotation.Nonnull;
@@ -47,4 +49,27 @@ import jakarta.annotation.Nonnull;
 public interface INetModuleHandler
 {
   void handle (@Nonnull AbstractActiveNetModule aOwner, @Nonnull Socket aSocket);
+
+  /**
+   * Handle a connection, but read the HTTP request from the provided input stream instead of the
+   * socket input stream. This is used if parts of the request were already read from the socket,
+   * e.g. by the NIO based acceptor.<br>
+   * The default implementation calls {@link #handle(AbstractActiveNetModule, Socket)} with a socket
+   * that returns the provided input stream.
+   *
+   * @param aOwner
+   *        The owning module. May not be <code>null</code>.
+   * @param aSocket
+   *        The socket of the connection. Used for writing the response. May not be
+   *        <code>null</code>.
+   * @param aIS
+   *        The input stream to read the HTTP request from. May not be <code>null</code>.
+   * @since 6.0.1
+   */
+  default void handle (@Nonnull final AbstractActiveNetModule aOwner,
+                       @Nonnull final Socket aSocket,
+                       @Nonnull @WillNotClose final InputStream aIS)
+  {
+    handle (aOwner, new AS2ReplayingSocket (aSocket, aIS));
+  }
 }
@@ -40,13 +40,17 @@ import org.slf4j.LoggerFactory;
 import com.helger.annotation.Nonnegative;
 import com.helger.annotation.concurrent.GuardedBy;
 import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.base.io.stream.StreamHelper;
 import com.helger.collection.commons.CommonsArrayList;
 import com.helger.collection.commons.CommonsHashMap;
 import com.helger.collection.commons.ICommonsList;
 import com.helger.collection.commons.ICommonsMap;
 import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.exception.WrappedAS2Exception;
 import com.helger.phase2.message.IMessage;
 import com.helger.phase2.processor.sender.IProcessorSenderModule;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.phase2.util.javamail.AS2SpooledMimeBodyPart;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -55,7 +59,10 @@ import jakarta.annotation.Nullable;
  * An asynchronous, in-memory, polling based resender module. Upon
  * {@link #handle(String, IMessage, Map)} the document is added to a queue there is a background
  * poller task that checks for resending (see {@link #resend()} ). If resending fails an exception
- * is thrown.
+ * is thrown.<br>
+ * The message data is copied into a temporary file when the message is queued, because the
+ * original data may be backed by resources (like a polled file) that are released before the
+ * message is resent.
  *
  * @author Philip Helger
  * @since 2.2.0
@@ -100,13 +107,31 @@ public class InMemoryResenderModule extends AbstractActiveResenderModule
       LOGGER.warn ("The resending retry count is missing - default to " + nRetries + "!");
     }
 
+    // The message data must outlive the resources of the original sender
+    final AS2ResourceHelper aResHelper = new AS2ResourceHelper ();
+    try
+    {
+      if (aMsg.getData () != null)
+        aMsg.setData (AS2SpooledMimeBodyPart.createCopy (aMsg.getData (), aResHelper));
+    }
+    catch (final Exception ex)
+    {
+      StreamHelper.close (aResHelper);
+      throw WrappedAS2Exception.wrap (ex).setSourceMsg (aMsg);
+    }
+
     // Build the item and add it to the vector
-    final ResendItem aItem = new ResendItem (sResendAction, nRetries, aMsg, getResendDelayMS ());
+    final ResendItem aItem = new ResendItem (sResendAction, nRetries, aMsg, getResendDelayMS (), aResHelper);
     m_aRWLock.writeLocked ( () -> m_aItems.add (aItem));
 
     LOGGER.info ("Message put in resend queue" + aMsg.getLoggingText ());
   }
 
+  private static void _close (@Nonnull final ResendItem aItem)
+  {
+    StreamHelper.close (aItem.getResourceHelper ());
+  }
+
   protected void resendItem (@Nonnull final ResendItem aItem) throws AS2Exception
   {
     if (LOGGER.isDebugEnabled ())
@@ -128,6 +153,7 @@ public class InMemoryResenderModule extends AbstractActiveResenderModule
 
       // Finally remove from list
       m_aRWLock.writeLocked ( () -> m_aItems.remove (aItem));
+      _close (aItem);
     }
     catch (final AS2Exception ex)
     {
@@ -166,11 +192,15 @@ public class InMemoryResenderModule extends AbstractActiveResenderModule
    */
   public void removeAllResendItems ()
   {
-    final int nItems = getResendItemCount ();
-    if (nItems > 0)
+    final ICommonsList <ResendItem> aRemovedItems = m_aRWLock.writeLockedGet ( () -> {
+      final ICommonsList <ResendItem> ret = m_aItems.getClone ();
+      m_aItems.clear ();
+      return ret;
+    });
+    if (aRemovedItems.isNotEmpty ())
     {
-      m_aRWLock.writeLocked (m_aItems::clear);
-      LOGGER.info ("Removed " + nItems + " items from InMemoryResenderModule");
+      aRemovedItems.forEach (InMemoryResenderModule::_close);
+      LOGGER.info ("Removed " + aRemovedItems.size () + " items from InMemoryResenderModule");
     }
   }
 
@@ -190,6 +220,10 @@ public class InMemoryResenderModule extends AbstractActiveResenderModule
       LOGGER.error ("InMemoryResenderModule is stopped but " +
                     nRemainingItems +
                     " items are still contained. They are discarded and will be lost!");
+      m_aRWLock.writeLocked ( () -> {
+        m_aItems.forEach (InMemoryResenderModule::_close);
+        m_aItems.clear ();
+      });
     }
 
     super.doStop ();
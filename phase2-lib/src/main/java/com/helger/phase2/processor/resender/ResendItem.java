@@ -41,8 +41,10 @@ import com.helger.annotation.concurrent.Immutable;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.datetime.helper.PDTFactory;
 import com.helger.phase2.message.IMessage;
+import com.helger.phase2.util.AS2ResourceHelper;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 
 /**
  * This class represents a single in-memory item to be resend.
@@ -57,17 +59,45 @@ public class ResendItem
   private final int m_nRetries;
   private final IMessage m_aMsg;
   private final LocalDateTime m_aEarliestResendDT;
+  private final AS2ResourceHelper m_aResHelper;
 
   public ResendItem (@Nonnull @Nonempty final String sResendAction,
                      @Nonnegative final int nRetries,
                      @Nonnull final IMessage aMsg,
                      @Nonnegative final long nResendDelayMS)
+  {
+    this (sResendAction, nRetries, aMsg, nResendDelayMS, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sResendAction
+   *        The internal action to be taken. May neither be <code>null</code> nor empty.
+   * @param nRetries
+   *        The number of retries. Must be &ge; 0.
+   * @param aMsg
+   *        The message to be resend. May not be <code>null</code>.
+   * @param nResendDelayMS
+   *        The delay in milliseconds before the message may be resend. Must be &ge; 0.
+   * @param aResHelper
+   *        The resource helper that owns the resources of the message data, e.g. a spool file. It
+   *        must be closed by the owner of this item, once it is no longer needed. May be
+   *        <code>null</code>.
+   * @since 6.0.1
+   */
+  public ResendItem (@Nonnull @Nonempty final String sResendAction,
+                     @Nonnegative final int nRetries,
+                     @Nonnull final IMessage aMsg,
+                     @Nonnegative final long nResendDelayMS,
+                     @Nullable final AS2ResourceHelper aResHelper)
   {
     m_sResendAction = ValueEnforcer.notEmpty (sResendAction, "ResendAction");
     m_nRetries = ValueEnforcer.isGE0 (nRetries, "Retries");
     m_aMsg = ValueEnforcer.notNull (aMsg, "Message");
     ValueEnforcer.isGE0 (nResendDelayMS, "ResendDelayMS");
     m_aEarliestResendDT = PDTFactory.getCurrentLocalDateTime ().plus (nResendDelayMS, ChronoUnit.MILLIS);
+    m_aResHelper = aResHelper;
   }
 
   /**
@@ -107,6 +137,17 @@ public class ResendItem
     return m_aEarliestResendDT;
   }
 
+  /**
+   * @return The resource helper that owns the resources of the message data. May be
+   *         <code>null</code>.
+   * @since 6.0.1
+   */
+  @Nullable
+  public AS2ResourceHelper getResourceHelper ()
+  {
+    return m_aResHelper;
+  }
+
   /**
    * @return <code>true</code> if this message can be resend now.
    */
@@ -43,15 +43,19 @@ import java.security.cert.X509Certificate;
 import java.util.Map;
 import java.util.function.Consumer;
 
+import org.bouncycastle.cms.CMSCompressedDataStreamGenerator;
 import org.bouncycastle.mail.smime.SMIMECompressedGenerator;
 import org.bouncycastle.mail.smime.SMIMEException;
+import org.bouncycastle.operator.OutputCompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
 import com.helger.annotation.style.OverrideOnDemand;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.NonClosingOutputStream;
 import com.helger.base.io.stream.StreamHelper;
 import com.helger.base.state.ETriState;
 import com.helger.base.string.StringHelper;
@@ -67,9 +71,12 @@ import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mime.CMimeType;
 import com.helger.phase2.cert.ECertificatePartnershipType;
 import com.helger.phase2.cert.ICertificateFactory;
+import com.helger.phase2.crypto.AS2CompressionSettings;
+import com.helger.phase2.crypto.BCCryptoHelper;
 import com.helger.phase2.crypto.ECompressionType;
 import com.helger.phase2.crypto.ECryptoAlgorithmCrypt;
 import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.crypto.ICryptoHelper;
 import com.helger.phase2.crypto.IMICMatchingHandler;
 import com.helger.phase2.crypto.LoggingMICMatchingHandler;
 import com.helger.phase2.crypto.MIC;
@@ -100,10 +107,13 @@ import com.helger.phase2.util.dump.IHTTPOutgoingDumper;
 import com.helger.phase2.util.http.AS2HttpClient;
 import com.helger.phase2.util.http.AS2HttpHeaderSetter;
 import com.helger.phase2.util.http.IAS2IncomingMDNCallback;
+import com.helger.phase2.util.javamail.AS2MimePipeline;
+import com.helger.phase2.util.javamail.AS2SpooledMimeBodyPart;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 
 /**
@@ -113,6 +123,31 @@ import jakarta.mail.internet.MimeBodyPart;
  */
 public class AS2SenderModule extends AbstractHttpSenderModule
 {
+  /**
+   * Attribute name to write the secured message parts in a streaming way into a single temporary
+   * file each, instead of building them in memory (boolean).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_STREAMING_SECURE = "streamingsecure";
+  /** Default streaming secure: false */
+  public static final boolean DEFAULT_STREAMING_SECURE = false;
+  /**
+   * Attribute name to run compression, signing and encryption as concurrent pipeline stages that
+   * directly feed the HTTP upload, without creating temporary files (boolean).
+   *
+   * @since 6.0.1
+   */
+  public static final String ATTR_PIPELINED_SECURE = "pipelinedsecure";
+  /** Default pipelined secure: false */
+  public static final boolean DEFAULT_PIPELINED_SECURE = false;
+  /**
+   * The Content-Type of the CMS compressed data, as created by the {@link SMIMECompressedGenerator}
+   *
+   * @since 6.0.1
+   */
+  public static final String CONTENT_TYPE_COMPRESSED_DATA = "application/pkcs7-mime; name=\"smime.p7z\"; smime-type=compressed-data";
+
   private static final Logger LOGGER = LoggerFactory.getLogger (AS2SenderModule.class);
 
   private IMICMatchingHandler m_aMICMatchingHandler = new LoggingMICMatchingHandler ();
@@ -122,6 +157,50 @@ public class AS2SenderModule extends AbstractHttpSenderModule
   public AS2SenderModule ()
   {}
 
+  /**
+   * @return <code>true</code> if signing and encryption are performed in a streaming way into a
+   *         temporary file, <code>false</code> if the secured MIME parts are created in memory.
+   * @since 6.0.1
+   */
+  public final boolean isStreamingSecure ()
+  {
+    return attrs ().getAsBoolean (ATTR_STREAMING_SECURE, DEFAULT_STREAMING_SECURE);
+  }
+
+  /**
+   * @param bStreamingSecure
+   *        <code>true</code> to enable streaming of the secured MIME parts, <code>false</code> to
+   *        disable it.
+   * @since 6.0.1
+   */
+  public final void setStreamingSecure (final boolean bStreamingSecure)
+  {
+    attrs ().putIn (ATTR_STREAMING_SECURE, bStreamingSecure);
+  }
+
+  /**
+   * @return <code>true</code> if compression, signing and encryption are performed as concurrent
+   *         pipeline stages while the message is sent, <code>false</code> if not. This setting
+   *         has precedence over {@link #isStreamingSecure()} and is only effective if the
+   *         {@link BCCryptoHelper} is used.
+   * @since 6.0.1
+   */
+  public final boolean isPipelinedSecure ()
+  {
+    return attrs ().getAsBoolean (ATTR_PIPELINED_SECURE, DEFAULT_PIPELINED_SECURE);
+  }
+
+  /**
+   * @param bPipelinedSecure
+   *        <code>true</code> to enable the pipelined processing while sending, <code>false</code>
+   *        to disable it.
+   * @since 6.0.1
+   */
+  public final void setPipelinedSecure (final boolean bPipelinedSecure)
+  {
+    attrs ().putIn (ATTR_PIPELINED_SECURE, bPipelinedSecure);
+  }
+
   /**
    * @return The current MIC matching handler. Never <code>null</code>.
    * @since 4.4.0
@@ -368,6 +447,28 @@ public class AS2SenderModule extends AbstractHttpSenderModule
    */
   @Nonnull
   protected MIC calculateAndStoreMIC (@Nonnull final AS2Message aMsg) throws Exception
+  {
+    return calculateAndStoreMIC (aMsg, aMsg.getData ());
+  }
+
+  /**
+   * Calculate the MIC over the passed MIME body part and store it in the message. This is needed
+   * if the signed content is not the message data, e.g. when compressing before signing in a
+   * pipeline.
+   *
+   * @param aMsg
+   *        Source message
+   * @param aMICSrcPart
+   *        The MIME body part to calculate the MIC from. May not be <code>null</code>.
+   * @return MIC value. Neither <code>null</code> nor empty.
+   * @throws Exception
+   *         On security or AS2 issues
+   * @see #calculateAndStoreMIC(AS2Message)
+   * @since 6.0.1
+   */
+  @Nonnull
+  protected MIC calculateAndStoreMIC (@Nonnull final AS2Message aMsg, @Nonnull final MimeBodyPart aMICSrcPart)
+                                                                                                             throws Exception
   {
     final Partnership aPartnership = aMsg.partnership ();
 
@@ -395,7 +496,7 @@ public class AS2SenderModule extends AbstractHttpSenderModule
     }
 
     final MIC aMIC = AS2Helper.getCryptoHelper ()
-                              .calculateMIC (aMsg.getData (), eSigningAlgorithm, bIncludeHeadersInMIC);
+                              .calculateMIC (aMICSrcPart, eSigningAlgorithm, bIncludeHeadersInMIC);
     aMsg.attrs ().putIn (AS2Message.ATTRIBUTE_MIC, aMIC.getAsAS2String ());
 
     if (aPartnership.getAS2ReceiptDeliveryOption () != null)
@@ -410,9 +511,43 @@ public class AS2SenderModule extends AbstractHttpSenderModule
     return aMIC;
   }
 
+  @Nonnull
+  private static OutputCompressor _createOutputCompressor (@Nonnull final ECompressionType eCompressionType,
+                                                           @Nullable final AS2CompressionSettings aCompressionSettings)
+  {
+    return eCompressionType.createOutputCompressor (aCompressionSettings != null ? aCompressionSettings
+                                                                                : new AS2CompressionSettings ());
+  }
+
+  @Nonnull
+  public static MimeBodyPart compressMimeBodyPart (@Nonnull final MimeBodyPart aData,
+                                                   @Nonnull final ECompressionType eCompressionType,
+                                                   @Nonnull final EContentTransferEncoding eCTE) throws SMIMEException
+  {
+    return compressMimeBodyPart (aData, eCompressionType, null, eCTE);
+  }
+
+  /**
+   * Compress the passed MIME body part using the provided settings. The compression happens lazily
+   * when the returned part is written.
+   *
+   * @param aData
+   *        The MIME body part to compress. May not be <code>null</code>.
+   * @param eCompressionType
+   *        The compression type to use. May not be <code>null</code>.
+   * @param aCompressionSettings
+   *        The compression settings to use. May be <code>null</code> to use the defaults.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to use. May not be <code>null</code>.
+   * @return The compressed MIME body part. Never <code>null</code>.
+   * @throws SMIMEException
+   *         In case of an error
+   * @since 6.0.1
+   */
   @Nonnull
   public static MimeBodyPart compressMimeBodyPart (@Nonnull final MimeBodyPart aData,
                                                    @Nonnull final ECompressionType eCompressionType,
+                                                   @Nullable final AS2CompressionSettings aCompressionSettings,
                                                    @Nonnull final EContentTransferEncoding eCTE) throws SMIMEException
   {
     ValueEnforcer.notNull (aData, "Data");
@@ -426,7 +561,74 @@ public class AS2SenderModule extends AbstractHttpSenderModule
 
     // This call might modify the original mime part and add "Content-Type" and
     // "Content-Transfer-Encoding" header
-    return aCompressedGenerator.generate (aData, eCompressionType.createOutputCompressor ());
+    return aCompressedGenerator.generate (aData, _createOutputCompressor (eCompressionType, aCompressionSettings));
+  }
+
+  /**
+   * Compress the passed MIME body part and write the binary CMS compressed data directly to the
+   * provided output stream. The Content-Type of the written data is
+   * {@link #CONTENT_TYPE_COMPRESSED_DATA}.<br>
+   * Note: the source part might be modified by adding the "Content-Type" and
+   * "Content-Transfer-Encoding" headers if they are missing.
+   *
+   * @param aData
+   *        The MIME body part to compress. May not be <code>null</code>.
+   * @param eCompressionType
+   *        The compression type to use. May not be <code>null</code>.
+   * @param aCompressionSettings
+   *        The compression settings to use. May be <code>null</code> to use the defaults.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to be used for the source part, if none is present. May
+   *        not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. The stream is not closed.
+   * @throws MessagingException
+   *         In case of a MIME error
+   * @throws IOException
+   *         In case writing fails
+   * @since 6.0.1
+   */
+  public static void compressMimeBodyPartToStream (@Nonnull final MimeBodyPart aData,
+                                                   @Nonnull final ECompressionType eCompressionType,
+                                                   @Nullable final AS2CompressionSettings aCompressionSettings,
+                                                   @Nonnull final EContentTransferEncoding eCTE,
+                                                   @Nonnull @WillNotClose final OutputStream aOS) throws MessagingException,
+                                                                                                  IOException
+  {
+    ValueEnforcer.notNull (aData, "Data");
+    ValueEnforcer.notNull (eCompressionType, "CompressionType");
+    ValueEnforcer.notNull (eCTE, "ContentTransferEncoding");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    // Same as SMIMECompressedGenerator
+    if (aData.getHeader (CHttpHeader.CONTENT_TYPE) == null)
+      aData.setHeader (CHttpHeader.CONTENT_TYPE, aData.getDataHandler ().getContentType ());
+    if (aData.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING) == null)
+      aData.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+
+    final CMSCompressedDataStreamGenerator aGen = new CMSCompressedDataStreamGenerator ();
+    try (final OutputStream aCompressingOS = aGen.open (new NonClosingOutputStream (aOS),
+                                                        _createOutputCompressor (eCompressionType,
+                                                                                 aCompressionSettings)))
+    {
+      AS2IOHelper.writeMimeBodyPart (aData, aCompressingOS);
+    }
+    aOS.flush ();
+  }
+
+  @Nonnull
+  private static InternetHeaders _createSMIMEHeaders (@Nonnull final String sContentType,
+                                                      @Nonnull final String sFilename,
+                                                      @Nonnull final String sDescription,
+                                                      @Nonnull final EContentTransferEncoding eCTE)
+  {
+    // Same headers as the SMIME generators
+    final InternetHeaders ret = new InternetHeaders ();
+    ret.addHeader (CHttpHeader.CONTENT_TYPE, sContentType);
+    ret.addHeader (CHttpHeader.CONTENT_DISPOSITION, "attachment; filename=\"" + sFilename + "\"");
+    ret.addHeader ("Content-Description", sDescription);
+    ret.addHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+    return ret;
   }
 
   private static void _logMimeBodyPart (@Nonnull final MimeBodyPart aMimePart, @Nonnull final String sContext)
@@ -461,6 +663,86 @@ public class AS2SenderModule extends AbstractHttpSenderModule
                                                  @Nullable final ECryptoAlgorithmCrypt eCryptAlgorithm,
                                                  @Nullable final X509Certificate aReceiverCert,
                                                  @Nonnull final String sLoggingText) throws Exception
+  {
+    return secureMimeBodyPart (aSrcPart,
+                               eCTE,
+                               eCompressionType,
+                               null,
+                               bCompressBeforeSign,
+                               aCompressBeforeSignCallback,
+                               eSignAlgorithm,
+                               aSenderCert,
+                               aSenderKey,
+                               bIncludeCertificateInSignedContent,
+                               bUseRFC3851MICAlg,
+                               bRemoveCmsAlgorithmProtect,
+                               eCryptAlgorithm,
+                               aReceiverCert,
+                               sLoggingText,
+                               null);
+  }
+
+  /**
+   * Compress, sign and encrypt the passed MIME body part as requested.
+   *
+   * @param aSrcPart
+   *        The source MIME body part. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to use. May not be <code>null</code>.
+   * @param eCompressionType
+   *        The compression type to use. May be <code>null</code> to not compress.
+   * @param aCompressionSettings
+   *        The compression settings to use. May be <code>null</code> to use the defaults.
+   * @param bCompressBeforeSign
+   *        <code>true</code> to compress before signing, <code>false</code> to compress after
+   *        signing.
+   * @param aCompressBeforeSignCallback
+   *        The callback to be invoked with the compressed part. Required if compressing before
+   *        signing.
+   * @param eSignAlgorithm
+   *        The signing algorithm to use. May be <code>null</code> to not sign.
+   * @param aSenderCert
+   *        The sender certificate. Required if signing.
+   * @param aSenderKey
+   *        The sender private key. Required if signing.
+   * @param bIncludeCertificateInSignedContent
+   *        <code>true</code> to include the certificate in the signature.
+   * @param bUseRFC3851MICAlg
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param bRemoveCmsAlgorithmProtect
+   *        <code>true</code> to remove the CMS AlgorithmProtect attribute.
+   * @param eCryptAlgorithm
+   *        The encryption algorithm to use. May be <code>null</code> to not encrypt.
+   * @param aReceiverCert
+   *        The receiver certificate. Required if encrypting.
+   * @param sLoggingText
+   *        The logging text. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to be used. If it is non-<code>null</code> and the crypto helper
+   *        is a {@link BCCryptoHelper}, signing and encryption are performed in a streaming way
+   *        into a single temporary file each. May be <code>null</code>.
+   * @return The secured MIME body part. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong
+   * @since 6.0.1
+   */
+  @Nonnull
+  public static MimeBodyPart secureMimeBodyPart (@Nonnull final MimeBodyPart aSrcPart,
+                                                 @Nonnull final EContentTransferEncoding eCTE,
+                                                 @Nullable final ECompressionType eCompressionType,
+                                                 @Nullable final AS2CompressionSettings aCompressionSettings,
+                                                 final boolean bCompressBeforeSign,
+                                                 @Nullable final Consumer <MimeBodyPart> aCompressBeforeSignCallback,
+                                                 @Nullable final ECryptoAlgorithmSign eSignAlgorithm,
+                                                 @Nullable final X509Certificate aSenderCert,
+                                                 @Nullable final PrivateKey aSenderKey,
+                                                 final boolean bIncludeCertificateInSignedContent,
+                                                 final boolean bUseRFC3851MICAlg,
+                                                 final boolean bRemoveCmsAlgorithmProtect,
+                                                 @Nullable final ECryptoAlgorithmCrypt eCryptAlgorithm,
+                                                 @Nullable final X509Certificate aReceiverCert,
+                                                 @Nonnull final String sLoggingText,
+                                                 @Nullable final AS2ResourceHelper aResHelper) throws Exception
   {
     ValueEnforcer.notNull (aSrcPart, "SrcPart");
     ValueEnforcer.notNull (eCTE, "ContentTransferEncoding");
@@ -487,7 +769,7 @@ public class AS2SenderModule extends AbstractHttpSenderModule
       // Compress before sign
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Compressing outbound message before signing...");
-      aDataBP = compressMimeBodyPart (aDataBP, eCompressionType, eCTE);
+      aDataBP = compressMimeBodyPart (aDataBP, eCompressionType, aCompressionSettings, eCTE);
       _logMimeBodyPart (aDataBP, "compressBeforeSign");
 
       // Invoke callback, so that source of MIC can be calculated later
@@ -503,15 +785,31 @@ public class AS2SenderModule extends AbstractHttpSenderModule
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Signing outbound message...");
 
-      aDataBP = AS2Helper.getCryptoHelper ()
-                         .sign (aDataBP,
-                                aSenderCert,
-                                aSenderKey,
-                                eSignAlgorithm,
-                                bIncludeCertificateInSignedContent,
-                                bUseRFC3851MICAlg,
-                                bRemoveCmsAlgorithmProtect,
-                                eCTE);
+      final ICryptoHelper aCryptoHelper = AS2Helper.getCryptoHelper ();
+      if (aResHelper != null && aCryptoHelper instanceof BCCryptoHelper)
+      {
+        // Write and digest the signed content in one pass
+        aDataBP = ((BCCryptoHelper) aCryptoHelper).signStreaming (aDataBP,
+                                                                   aSenderCert,
+                                                                   aSenderKey,
+                                                                   eSignAlgorithm,
+                                                                   bIncludeCertificateInSignedContent,
+                                                                   bUseRFC3851MICAlg,
+                                                                   bRemoveCmsAlgorithmProtect,
+                                                                   eCTE,
+                                                                   aResHelper);
+      }
+      else
+      {
+        aDataBP = aCryptoHelper.sign (aDataBP,
+                                      aSenderCert,
+                                      aSenderKey,
+                                      eSignAlgorithm,
+                                      bIncludeCertificateInSignedContent,
+                                      bUseRFC3851MICAlg,
+                                      bRemoveCmsAlgorithmProtect,
+                                      eCTE);
+      }
       _logMimeBodyPart (aDataBP, "signed");
 
       LOGGER.info ("Successfully signed outgoing AS2 message" + sLoggingText);
@@ -522,7 +820,7 @@ public class AS2SenderModule extends AbstractHttpSenderModule
       // Compress after sign
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Compressing outbound message after signing...");
-      aDataBP = compressMimeBodyPart (aDataBP, eCompressionType, eCTE);
+      aDataBP = compressMimeBodyPart (aDataBP, eCompressionType, aCompressionSettings, eCTE);
       _logMimeBodyPart (aDataBP, "compressAfterSign");
 
       LOGGER.info ("Successfully compressed outgoing AS2 message" + sLoggingText);
@@ -532,7 +830,18 @@ public class AS2SenderModule extends AbstractHttpSenderModule
     {
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Encrypting outbound message...");
-      aDataBP = AS2Helper.getCryptoHelper ().encrypt (aDataBP, aReceiverCert, eCryptAlgorithm, eCTE);
+      final ICryptoHelper aCryptoHelper = AS2Helper.getCryptoHelper ();
+      if (aResHelper != null && aCryptoHelper instanceof BCCryptoHelper)
+      {
+        // Encrypt directly into a single spool file
+        aDataBP = ((BCCryptoHelper) aCryptoHelper).encryptStreaming (aDataBP,
+                                                                      aReceiverCert,
+                                                                      eCryptAlgorithm,
+                                                                      eCTE,
+                                                                      aResHelper);
+      }
+      else
+        aDataBP = aCryptoHelper.encrypt (aDataBP, aReceiverCert, eCryptAlgorithm, eCTE);
       _logMimeBodyPart (aDataBP, "encrypted");
 
       LOGGER.info ("Successfully encrypted outgoing AS2 message" + sLoggingText);
@@ -541,51 +850,247 @@ public class AS2SenderModule extends AbstractHttpSenderModule
     return aDataBP;
   }
 
+  /**
+   * Create a pipeline that compresses, signs and encrypts the passed MIME body part as requested.
+   * This is the pipelined version of
+   * {@link #secureMimeBodyPart(MimeBodyPart, EContentTransferEncoding, ECompressionType, boolean, Consumer, ECryptoAlgorithmSign, X509Certificate, PrivateKey, boolean, boolean, boolean, ECryptoAlgorithmCrypt, X509Certificate, String)}
+   * and requires the {@link BCCryptoHelper} to be used. The output of the pipeline is the raw (not
+   * transfer encoded) content. Nothing is processed until the pipeline is written, except when
+   * compressing before signing: the compressed part is needed for both the MIC calculation and the
+   * signing, so it is compressed once into a temporary file that is the source of the pipeline.
+   *
+   * @param aSrcPart
+   *        The source MIME body part. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to use. May not be <code>null</code>.
+   * @param eCompressionType
+   *        The compression type to use. May be <code>null</code> to not compress.
+   * @param aCompressionSettings
+   *        The compression settings to use. May be <code>null</code> to use the defaults.
+   * @param bCompressBeforeSign
+   *        <code>true</code> to compress before signing, <code>false</code> to compress after
+   *        signing.
+   * @param aCompressBeforeSignCallback
+   *        The optional callback to be invoked with the compressed part if compressing before
+   *        signing. May be <code>null</code>. The compressed part is backed by a temporary file of
+   *        the passed resource helper and is therefore only valid until the resource helper is
+   *        closed. It is also available via {@link AS2MimePipeline#getSourcePart()}.
+   * @param eSignAlgorithm
+   *        The signing algorithm to use. May be <code>null</code> to not sign.
+   * @param aSenderCert
+   *        The sender certificate. Required if signing.
+   * @param aSenderKey
+   *        The sender private key. Required if signing.
+   * @param bIncludeCertificateInSignedContent
+   *        <code>true</code> to include the certificate in the signature.
+   * @param bUseRFC3851MICAlg
+   *        <code>true</code> to use the old RFC 3851 MIC algorithm names.
+   * @param bRemoveCmsAlgorithmProtect
+   *        <code>true</code> to remove the CMS AlgorithmProtect attribute.
+   * @param eCryptAlgorithm
+   *        The encryption algorithm to use. May be <code>null</code> to not encrypt.
+   * @param aReceiverCert
+   *        The receiver certificate. Required if encrypting.
+   * @param sLoggingText
+   *        The logging text. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to create the temporary file for compressing before signing. May
+   *        not be <code>null</code>.
+   * @return The pipeline. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong
+   * @since 6.0.1
+   */
+  @Nonnull
+  public static AS2MimePipeline createSecurePipeline (@Nonnull final MimeBodyPart aSrcPart,
+                                                      @Nonnull final EContentTransferEncoding eCTE,
+                                                      @Nullable final ECompressionType eCompressionType,
+                                                      @Nullable final AS2CompressionSettings aCompressionSettings,
+                                                      final boolean bCompressBeforeSign,
+                                                      @Nullable final Consumer <MimeBodyPart> aCompressBeforeSignCallback,
+                                                      @Nullable final ECryptoAlgorithmSign eSignAlgorithm,
+                                                      @Nullable final X509Certificate aSenderCert,
+                                                      @Nullable final PrivateKey aSenderKey,
+                                                      final boolean bIncludeCertificateInSignedContent,
+                                                      final boolean bUseRFC3851MICAlg,
+                                                      final boolean bRemoveCmsAlgorithmProtect,
+                                                      @Nullable final ECryptoAlgorithmCrypt eCryptAlgorithm,
+                                                      @Nullable final X509Certificate aReceiverCert,
+                                                      @Nonnull final String sLoggingText,
+                                                      @Nonnull final AS2ResourceHelper aResHelper) throws Exception
+  {
+    ValueEnforcer.notNull (aSrcPart, "SrcPart");
+    ValueEnforcer.notNull (eCTE, "ContentTransferEncoding");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    if (eSignAlgorithm != null)
+    {
+      ValueEnforcer.notNull (aSenderCert, "SenderCert");
+      ValueEnforcer.notNull (aSenderKey, "SenderKey");
+    }
+    if (eCryptAlgorithm != null)
+    {
+      ValueEnforcer.notNull (aReceiverCert, "ReceiverCert");
+    }
+
+    final ICryptoHelper aCryptoHelper = AS2Helper.getCryptoHelper ();
+    if (!(aCryptoHelper instanceof BCCryptoHelper))
+      throw new AS2Exception ("Pipelined securing requires the BCCryptoHelper but found " + aCryptoHelper);
+    final BCCryptoHelper aBCCryptoHelper = (BCCryptoHelper) aCryptoHelper;
+
+    // The headers of the source part must be final before the pipeline starts, because they are
+    // part of the MIC
+    if (eCompressionType != null || eSignAlgorithm != null || eCryptAlgorithm != null)
+    {
+      if (aSrcPart.getHeader (CHttpHeader.CONTENT_TYPE) == null)
+        aSrcPart.setHeader (CHttpHeader.CONTENT_TYPE, aSrcPart.getDataHandler ().getContentType ());
+      if (aSrcPart.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING) == null)
+        aSrcPart.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+    }
+
+    MimeBodyPart aPipelineSrcPart = aSrcPart;
+    if (eCompressionType != null && bCompressBeforeSign)
+    {
+      // Compress before sign
+      // The MIC is always about the content that is signed, so the compressed part is read twice:
+      // for the MIC calculation and for signing. Compress only once into a spool file instead of
+      // using a lazy SMIME part, that is compressed again on each read.
+      final File aSpoolFile = aResHelper.createTempFile ();
+      try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile))
+      {
+        compressMimeBodyPartToStream (aSrcPart, eCompressionType, aCompressionSettings, eCTE, aOS);
+      }
+
+      // Same headers as SMIMECompressedGenerator
+      final MimeBodyPart aCompressedBP = new AS2SpooledMimeBodyPart (aSpoolFile,
+                                                                     CONTENT_TYPE_COMPRESSED_DATA,
+                                                                     aResHelper);
+      aCompressedBP.setHeader (CHttpHeader.CONTENT_DISPOSITION, "attachment; filename=\"smime.p7z\"");
+      aCompressedBP.setHeader ("Content-Description", "S/MIME Compressed Message");
+      aCompressedBP.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
+      if (aCompressBeforeSignCallback != null)
+        aCompressBeforeSignCallback.accept (aCompressedBP);
+      aPipelineSrcPart = aCompressedBP;
+
+      LOGGER.info ("Successfully compressed outgoing AS2 message" + sLoggingText);
+    }
+
+    final AS2MimePipeline ret = new AS2MimePipeline (aPipelineSrcPart, AS2MimePipeline.DEFAULT_BUFFER_SIZE);
+
+    if (eSignAlgorithm != null)
+    {
+      final String sBoundary = BCCryptoHelper.createBoundary ();
+      final InternetHeaders aHeaders = new InternetHeaders ();
+      aHeaders.addHeader (CHttpHeader.CONTENT_TYPE,
+                          BCCryptoHelper.getSignedContentType (eSignAlgorithm, bUseRFC3851MICAlg, sBoundary));
+      ret.addStage ("sign", aHeaders, (aInput, aOS) -> {
+        aBCCryptoHelper.signToStream (aInput,
+                                      aSenderCert,
+                                      aSenderKey,
+                                      eSignAlgorithm,
+                                      bIncludeCertificateInSignedContent,
+                                      bUseRFC3851MICAlg,
+                                      bRemoveCmsAlgorithmProtect,
+                                      eCTE,
+                                      sBoundary,
+                                      aOS);
+        LOGGER.info ("Successfully signed outgoing AS2 message" + sLoggingText);
+      });
+    }
+
+    if (eCompressionType != null && !bCompressBeforeSign)
+    {
+      // Compress after sign
+      ret.addStage ("compressAfterSign",
+                    _createSMIMEHeaders (CONTENT_TYPE_COMPRESSED_DATA, "smime.p7z", "S/MIME Compressed Message", eCTE),
+                    (aInput, aOS) -> {
+                      compressMimeBodyPartToStream (aInput, eCompressionType, aCompressionSettings, eCTE, aOS);
+                      LOGGER.info ("Successfully compressed outgoing AS2 message" + sLoggingText);
+                    });
+    }
+
+    if (eCryptAlgorithm != null)
+    {
+      ret.addStage ("encrypt",
+                    _createSMIMEHeaders (BCCryptoHelper.CONTENT_TYPE_ENVELOPED_DATA,
+                                         "smime.p7m",
+                                         "S/MIME Encrypted Message",
+                                         eCTE),
+                    (aInput, aOS) -> {
+                      aBCCryptoHelper.encryptToStream (aInput, aReceiverCert, eCryptAlgorithm, eCTE, aOS);
+                      LOGGER.info ("Successfully encrypted outgoing AS2 message" + sLoggingText);
+                    });
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Created secure pipeline with " + ret.getStageCount () + " stage(s)" + sLoggingText);
+    return ret;
+  }
+
   @Nonnull
   protected MimeBodyPart secure (@Nonnull final IMessage aMsg, @Nonnull final EContentTransferEncoding eCTE)
                                                                                                              throws Exception
+  {
+    return secure (aMsg, eCTE, null);
+  }
+
+  /**
+   * The parameters required to secure a message, as determined from the partnership.
+   */
+  private static final class SecureParams
+  {
+    private ECompressionType m_eCompressionType;
+    private AS2CompressionSettings m_aCompressionSettings;
+    // If compression is enabled, by default is is compressed before signing
+    private boolean m_bCompressBeforeSign = true;
+    private Consumer <MimeBodyPart> m_aCompressBeforeSignCallback;
+    private ECryptoAlgorithmSign m_eSignAlgorithm;
+    private X509Certificate m_aSenderCert;
+    private PrivateKey m_aSenderKey;
+    private boolean m_bIncludeCertificateInSignedContent;
+    private boolean m_bUseRFC3851MICAlg;
+    private boolean m_bRemoveCmsAlgorithmProtect;
+    private ECryptoAlgorithmCrypt m_eCryptAlgorithm;
+    private X509Certificate m_aReceiverCert;
+  }
+
+  @Nonnull
+  private SecureParams _getSecureParams (@Nonnull final IMessage aMsg,
+                                         @Nonnull final EContentTransferEncoding eCTE) throws AS2Exception,
+                                                                                       MessagingException
   {
     final Partnership aPartnership = aMsg.partnership ();
     final ICertificateFactory aCertFactory = getSession ().getCertificateFactory ();
 
     // Get compression parameters
-    // If compression is enabled, by default is is compressed before signing
-    ECompressionType eCompressionType = null;
-    boolean bCompressBeforeSign = true;
-    Consumer <MimeBodyPart> aCompressBeforeSignCallback = null;
+    final SecureParams ret = new SecureParams ();
     {
       final String sCompressionType = aPartnership.getCompressionType ();
       if (sCompressionType != null)
       {
-        eCompressionType = ECompressionType.getFromIDCaseInsensitiveOrNull (sCompressionType);
-        if (eCompressionType == null)
+        ret.m_eCompressionType = ECompressionType.getFromIDCaseInsensitiveOrNull (sCompressionType);
+        if (ret.m_eCompressionType == null)
           throw new AS2Exception ("The compression type '" + sCompressionType + "' is not supported!");
 
-        bCompressBeforeSign = aPartnership.isCompressBeforeSign ();
+        ret.m_aCompressionSettings = aPartnership.getCompressionSettings ();
+        ret.m_bCompressBeforeSign = aPartnership.isCompressBeforeSign ();
 
-        if (bCompressBeforeSign)
+        if (ret.m_bCompressBeforeSign)
         {
           // Replace the message data, because it is the basis for the MIC
-          aCompressBeforeSignCallback = aMsg::setData;
+          ret.m_aCompressBeforeSignCallback = aMsg::setData;
         }
       }
     }
 
     // Get signing parameters
-    ECryptoAlgorithmSign eSignAlgorithm = null;
-    X509Certificate aSenderCert = null;
-    PrivateKey aSenderKey = null;
-    boolean bIncludeCertificateInSignedContent = false;
-    boolean bUseRFC3851MICAlg = false;
-    boolean bRemoveCmsAlgorithmProtect = false;
     {
       final String sSignAlgorithm = aPartnership.getSigningAlgorithm ();
       if (sSignAlgorithm != null)
       {
-        aSenderCert = aCertFactory.getCertificate (aMsg, ECertificatePartnershipType.SENDER);
-        aSenderKey = aCertFactory.getPrivateKey (aSenderCert);
-        eSignAlgorithm = ECryptoAlgorithmSign.getFromIDOrNull (sSignAlgorithm);
-        if (eSignAlgorithm == null)
+        ret.m_aSenderCert = aCertFactory.getCertificate (aMsg, ECertificatePartnershipType.SENDER);
+        ret.m_aSenderKey = aCertFactory.getPrivateKey (ret.m_aSenderCert);
+        ret.m_eSignAlgorithm = ECryptoAlgorithmSign.getFromIDOrNull (sSignAlgorithm);
+        if (ret.m_eSignAlgorithm == null)
           throw new AS2Exception ("The signing algorithm '" + sSignAlgorithm + "' is not supported!");
 
         // Include certificate in signed content?
@@ -594,65 +1099,136 @@ public class AS2SenderModule extends AbstractHttpSenderModule
         if (eIncludeCertificateInSignedContent.isDefined ())
         {
           // Use per partnership
-          bIncludeCertificateInSignedContent = eIncludeCertificateInSignedContent.getAsBooleanValue ();
+          ret.m_bIncludeCertificateInSignedContent = eIncludeCertificateInSignedContent.getAsBooleanValue ();
         }
         else
         {
           // Use global value
-          bIncludeCertificateInSignedContent = getSession ().isCryptoSignIncludeCertificateInBodyPart ();
+          ret.m_bIncludeCertificateInSignedContent = getSession ().isCryptoSignIncludeCertificateInBodyPart ();
         }
 
         // Use old MIC algorithms?
-        bUseRFC3851MICAlg = aPartnership.isRFC3851MICAlgs ();
+        ret.m_bUseRFC3851MICAlg = aPartnership.isRFC3851MICAlgs ();
 
         // Remove CMS attributes?
-        bRemoveCmsAlgorithmProtect = aPartnership.isRemoveCmsAlgorithmProtect ();
+        ret.m_bRemoveCmsAlgorithmProtect = aPartnership.isRemoveCmsAlgorithmProtect ();
       }
     }
 
     // Get encryption parameters
-    ECryptoAlgorithmCrypt eCryptAlgorithm = null;
-    X509Certificate aReceiverCert = null;
     {
       final String sCryptAlgorithm = aPartnership.getEncryptAlgorithm ();
       if (sCryptAlgorithm != null)
       {
-        aReceiverCert = aCertFactory.getCertificate (aMsg, ECertificatePartnershipType.RECEIVER);
-        eCryptAlgorithm = ECryptoAlgorithmCrypt.getFromIDOrNull (sCryptAlgorithm);
-        if (eCryptAlgorithm == null)
+        ret.m_aReceiverCert = aCertFactory.getCertificate (aMsg, ECertificatePartnershipType.RECEIVER);
+        ret.m_eCryptAlgorithm = ECryptoAlgorithmCrypt.getFromIDOrNull (sCryptAlgorithm);
+        if (ret.m_eCryptAlgorithm == null)
           throw new AS2Exception ("The crypting algorithm '" + sCryptAlgorithm + "' is not supported!");
       }
     }
 
     // Set CTE once here - required for stream creation later on!
     aMsg.headers ().setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
-    if (eCompressionType != null || eCryptAlgorithm != null)
+    if (ret.m_eCompressionType != null || ret.m_eCryptAlgorithm != null)
     {
       // Header is needed when compression or encryption is enabled
       if (aMsg.getData ().getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING) == null)
         aMsg.getData ().setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, eCTE.getID ());
     }
-    if (eCompressionType != null && eSignAlgorithm == null && eCryptAlgorithm == null)
+    if (ret.m_eCompressionType != null && ret.m_eSignAlgorithm == null && ret.m_eCryptAlgorithm == null)
     {
       // Compression only - set the respective content type
       aMsg.headers ()
           .setHeader (CHttpHeader.CONTENT_TYPE, CMimeType.APPLICATION_OCTET_STREAM.getAsStringWithoutParameters ());
     }
 
+    return ret;
+  }
+
+  /**
+   * Compress, sign and encrypt the message data according to the partnership.
+   *
+   * @param aMsg
+   *        The message to be secured. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to use. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to be used for streaming. May be <code>null</code> to create all
+   *        secured parts in memory.
+   * @return The secured MIME body part. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong
+   * @since 6.0.1
+   */
+  @Nonnull
+  protected MimeBodyPart secure (@Nonnull final IMessage aMsg,
+                                 @Nonnull final EContentTransferEncoding eCTE,
+                                 @Nullable final AS2ResourceHelper aResHelper) throws Exception
+  {
+    final SecureParams aParams = _getSecureParams (aMsg, eCTE);
     return secureMimeBodyPart (aMsg.getData (),
                                eCTE,
-                               eCompressionType,
-                               bCompressBeforeSign,
-                               aCompressBeforeSignCallback,
-                               eSignAlgorithm,
-                               aSenderCert,
-                               aSenderKey,
-                               bIncludeCertificateInSignedContent,
-                               bUseRFC3851MICAlg,
-                               bRemoveCmsAlgorithmProtect,
-                               eCryptAlgorithm,
-                               aReceiverCert,
-                               aMsg.getLoggingText ());
+                               aParams.m_eCompressionType,
+                               aParams.m_aCompressionSettings,
+                               aParams.m_bCompressBeforeSign,
+                               aParams.m_aCompressBeforeSignCallback,
+                               aParams.m_eSignAlgorithm,
+                               aParams.m_aSenderCert,
+                               aParams.m_aSenderKey,
+                               aParams.m_bIncludeCertificateInSignedContent,
+                               aParams.m_bUseRFC3851MICAlg,
+                               aParams.m_bRemoveCmsAlgorithmProtect,
+                               aParams.m_eCryptAlgorithm,
+                               aParams.m_aReceiverCert,
+                               aMsg.getLoggingText (),
+                               aResHelper);
+  }
+
+  /**
+   * Create the pipeline to compress, sign and encrypt the message data according to the
+   * partnership while it is sent. The message data is not modified, so that it can still be resent.
+   * If compressing before signing, the compressed part that is the basis for the MIC is available
+   * via {@link AS2MimePipeline#getSourcePart()}.
+   *
+   * @param aMsg
+   *        The message to be secured. May not be <code>null</code>.
+   * @param eCTE
+   *        The Content-Transfer-Encoding to use. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to be used for temporary files. May not be <code>null</code>.
+   * @return The pipeline. Never <code>null</code>.
+   * @throws Exception
+   *         In case something goes wrong
+   * @see #createSecurePipeline(MimeBodyPart, EContentTransferEncoding, ECompressionType,
+   *      AS2CompressionSettings, boolean, Consumer, ECryptoAlgorithmSign, X509Certificate,
+   *      PrivateKey, boolean, boolean, boolean, ECryptoAlgorithmCrypt, X509Certificate, String,
+   *      AS2ResourceHelper)
+   * @since 6.0.1
+   */
+  @Nonnull
+  protected AS2MimePipeline securePipeline (@Nonnull final IMessage aMsg,
+                                            @Nonnull final EContentTransferEncoding eCTE,
+                                            @Nonnull final AS2ResourceHelper aResHelper) throws Exception
+  {
+    final SecureParams aParams = _getSecureParams (aMsg, eCTE);
+    // The compressed part lives only as long as the resource helper, so don't replace the message
+    // data with it
+    return createSecurePipeline (aMsg.getData (),
+                                 eCTE,
+                                 aParams.m_eCompressionType,
+                                 aParams.m_aCompressionSettings,
+                                 aParams.m_bCompressBeforeSign,
+                                 null,
+                                 aParams.m_eSignAlgorithm,
+                                 aParams.m_aSenderCert,
+                                 aParams.m_aSenderKey,
+                                 aParams.m_bIncludeCertificateInSignedContent,
+                                 aParams.m_bUseRFC3851MICAlg,
+                                 aParams.m_bRemoveCmsAlgorithmProtect,
+                                 aParams.m_eCryptAlgorithm,
+                                 aParams.m_aReceiverCert,
+                                 aMsg.getLoggingText (),
+                                 aResHelper);
   }
 
   /**
@@ -875,8 +1451,34 @@ public class AS2SenderModule extends AbstractHttpSenderModule
     new AS2Exception ("Message was sent but an error occured while receiving the MDN", ex).terminate (aMsg);
   }
 
+  /**
+   * Internal abstraction for transferring the payload of the message.
+   */
+  @FunctionalInterface
+  private interface IPayloadSender
+  {
+    long sendPayload (@Nonnull AS2HttpClient aConn, @Nullable IHTTPOutgoingDumper aOutgoingDumper) throws IOException,
+                                                                                                   MessagingException;
+  }
+
+  @Nonnull
+  private static IPayloadSender _createPayloadSender (@Nonnull final MimeBodyPart aSecuredMimePart,
+                                                      @Nullable final EContentTransferEncoding eCTE,
+                                                      @Nonnull final AS2ResourceHelper aResHelper)
+  {
+    return (aConn, aOutgoingDumper) -> {
+      if (eCTE == null && aSecuredMimePart instanceof AS2SpooledMimeBodyPart)
+      {
+        // The content is already in a file - no need to copy it again
+        return aConn.send (((AS2SpooledMimeBodyPart) aSecuredMimePart).getSpoolFile (), aOutgoingDumper);
+      }
+      final InputStream aMsgIS = aSecuredMimePart.getInputStream ();
+      return aConn.send (aMsgIS, eCTE, aOutgoingDumper, aResHelper);
+    };
+  }
+
   private void _sendViaHTTP (@Nonnull final AS2Message aMsg,
-                             @Nonnull final MimeBodyPart aSecuredMimePart,
+                             @Nonnull final IPayloadSender aPayloadSender,
                              @Nullable final MIC aMIC,
                              @Nullable final EContentTransferEncoding eCTE,
                              @Nullable final IHTTPOutgoingDumper aOutgoingDumper,
@@ -911,11 +1513,9 @@ public class AS2SenderModule extends AbstractHttpSenderModule
       aMsg.attrs ().putIn (CNetAttribute.MA_DESTINATION_IP, aConn.getURL ().getHost ());
       aMsg.attrs ().putIn (CNetAttribute.MA_DESTINATION_PORT, aConn.getURL ().getPort ());
 
-      final InputStream aMsgIS = aSecuredMimePart.getInputStream ();
-
       // Transfer the data
       final StopWatch aSW = StopWatch.createdStarted ();
-      final long nBytes = aConn.send (aMsgIS, eCTE, aOutgoingDumper, aResHelper);
+      final long nBytes = aPayloadSender.sendPayload (aConn, aOutgoingDumper);
       aSW.stop ();
       LOGGER.info ("AS2 Message transferred " + AS2IOHelper.getTransferRate (nBytes, aSW) + aMsg.getLoggingText ());
 
@@ -1009,21 +1609,40 @@ public class AS2SenderModule extends AbstractHttpSenderModule
                                                                                                         EContentTransferEncoding.AS2_DEFAULT);
 
       // compress and/or sign and/or encrypt the message if needed
-      final MimeBodyPart aSecuredData = secure (aMsg, eCTE);
+      final String sContentType;
+      final IPayloadSender aPayloadSender;
+      final MimeBodyPart aMICSrcPart;
+      if (isPipelinedSecure () && AS2Helper.getCryptoHelper () instanceof BCCryptoHelper)
+      {
+        // Everything happens while sending
+        final AS2MimePipeline aPipeline = securePipeline (aMsg, eCTE, aResHelper);
+        sContentType = aPipeline.getContentType ();
+        aPayloadSender = (aConn, aOutgoingDumper) -> aConn.send (aPipeline::writeTo, aOutgoingDumper);
+        // The message data is unchanged - the MIC is about the (maybe compressed) pipeline source
+        aMICSrcPart = aPipeline.getSourcePart ();
+      }
+      else
+      {
+        final MimeBodyPart aSecuredData = isStreamingSecure () ? secure (aMsg, eCTE, aResHelper)
+                                                               : secure (aMsg, eCTE);
+        sContentType = aSecuredData.getContentType ();
+        // Use no CTE, because it was set on all MIME parts
+        aPayloadSender = _createPayloadSender (aSecuredData, null, aResHelper);
+        // Calculate MIC after compress/sign/crypt was handled, because the
+        // message data might change if compression before signing is active.
+        aMICSrcPart = aMsg.getData ();
+      }
 
-      // Calculate MIC after compress/sign/crypt was handled, because the
-      // message data might change if compression before signing is active.
-      final MIC aMIC = aMsg.isRequestingMDN () ? calculateAndStoreMIC (aMsg) : null;
+      final MIC aMIC = aMsg.isRequestingMDN () ? calculateAndStoreMIC (aMsg, aMICSrcPart) : null;
 
       if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("Setting message content type to '" + aSecuredData.getContentType () + "'");
-      aMsg.setContentType (aSecuredData.getContentType ());
+        LOGGER.debug ("Setting message content type to '" + sContentType + "'");
+      aMsg.setContentType (sContentType);
 
       try (final IHTTPOutgoingDumper aOutgoingDumper = getHttpOutgoingDumper (aMsg))
       {
         final IHTTPIncomingDumper aIncomingDumper = getEffectiveHttpIncomingDumper ();
-        // Use no CTE, because it was set on all MIME parts
-        _sendViaHTTP (aMsg, aSecuredData, aMIC, true ? null : eCTE, aOutgoingDumper, aIncomingDumper, aResHelper);
+        _sendViaHTTP (aMsg, aPayloadSender, aMIC, null, aOutgoingDumper, aIncomingDumper, aResHelper);
       }
     }
     catch (final AS2HttpResponseException ex)
@@ -0,0 +1,325 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A simple thread-safe cache with a maximum number of entries. If the maximum is exceeded, the least
+ * recently used entries are evicted - about 10% of the maximum at once. Hits, misses and
+ * evictions are counted, so that the effectiveness can be monitored.<br>
+ * Lookups don't lock - only the eviction is serialized. Under concurrent access the eviction order
+ * is therefore approximate.<br>
+ * Values are created without locking, so the same value may be created more than once under
+ * concurrent access. Only use it for values that are thread-safe or immutable.
+ *
+ * @author Philip Helger
+ * @param <K>
+ *        Cache key type
+ * @param <V>
+ *        Cache value type
+ * @since 6.0.1
+ */
+@ThreadSafe
+public class AS2BoundedCache <K, V>
+{
+  /**
+   * Callback to create a value that is not yet in the cache.
+   *
+   * @param <K>
+   *        Cache key type
+   * @param <V>
+   *        Cache value type
+   * @param <EX>
+   *        Exception type that may be thrown
+   */
+  @FunctionalInterface
+  public interface IValueCreator <K, V, EX extends Exception>
+  {
+    @Nonnull
+    V create (@Nonnull K aKey) throws EX;
+  }
+
+  /**
+   * A cached value together with the time of the last access.
+   *
+   * @param <V>
+   *        Cache value type
+   */
+  private static final class Entry <V>
+  {
+    private final V m_aValue;
+    private volatile long m_nLastAccess;
+
+    Entry (@Nonnull final V aValue, final long nLastAccess)
+    {
+      m_aValue = aValue;
+      m_nLastAccess = nLastAccess;
+    }
+  }
+
+  private record EvictionCandidate <K, V> (K key, Entry <V> entry, long lastAccess)
+  {}
+
+  private final String m_sName;
+  private final int m_nMaxSize;
+  private final Map <K, Entry <V>> m_aMap = new ConcurrentHashMap <> ();
+  // Logical clock for the access order
+  private final AtomicLong m_aAccessClock = new AtomicLong (0);
+  private final SimpleLock m_aEvictionLock = new SimpleLock ();
+  private final AtomicLong m_aHitCount = new AtomicLong (0);
+  private final AtomicLong m_aMissCount = new AtomicLong (0);
+  private final AtomicLong m_aEvictionCount = new AtomicLong (0);
+
+  /**
+   * @param sName
+   *        The name of the cache for logging and monitoring. May neither be <code>null</code> nor
+   *        empty.
+   * @param nMaxSize
+   *        The maximum number of entries. Must be &gt; 0.
+   */
+  public AS2BoundedCache (@Nonnull @Nonempty final String sName, final int nMaxSize)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_sName = sName;
+    m_nMaxSize = nMaxSize;
+  }
+
+  /**
+   * @return The name of the cache as provided in the constructor. Neither <code>null</code> nor
+   *         empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getName ()
+  {
+    return m_sName;
+  }
+
+  /**
+   * @return The maximum number of entries. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The current number of entries. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  /**
+   * Get the cached value for the passed key, without creating it.
+   *
+   * @param aKey
+   *        The key to look up. May not be <code>null</code>.
+   * @return <code>null</code> if no such value is cached.
+   */
+  @Nullable
+  public final V get (@Nonnull final K aKey)
+  {
+    ValueEnforcer.notNull (aKey, "Key");
+    final Entry <V> aEntry = m_aMap.get (aKey);
+    if (aEntry == null)
+    {
+      m_aMissCount.incrementAndGet ();
+      return null;
+    }
+    aEntry.m_nLastAccess = m_aAccessClock.incrementAndGet ();
+    m_aHitCount.incrementAndGet ();
+    return aEntry.m_aValue;
+  }
+
+  /**
+   * Get the cached value for the passed key, or create and cache it, if it is not contained.
+   *
+   * @param <EX>
+   *        The exception type of the value creator
+   * @param aKey
+   *        The key to look up. May not be <code>null</code>.
+   * @param aValueCreator
+   *        The value creator to be invoked if the key is not yet cached. May not be
+   *        <code>null</code> and may not return <code>null</code>.
+   * @return The cached or newly created value. Never <code>null</code>.
+   * @throws EX
+   *         If the value creator throws it
+   */
+  @Nonnull
+  public final <EX extends Exception> V getOrCreate (@Nonnull final K aKey,
+                                                     @Nonnull final IValueCreator <? super K, ? extends V, EX> aValueCreator) throws EX
+  {
+    ValueEnforcer.notNull (aValueCreator, "ValueCreator");
+
+    final V aCached = get (aKey);
+    if (aCached != null)
+      return aCached;
+
+    // Create outside of the lock
+    final V aNewValue = aValueCreator.create (aKey);
+    if (aNewValue == null)
+      throw new IllegalStateException ("The value creator of cache '" + m_sName + "' returned null");
+    put (aKey, aNewValue);
+    return aNewValue;
+  }
+
+  /**
+   * Put a value into the cache, replacing an eventually existing value.
+   *
+   * @param aKey
+   *        The key to use. May not be <code>null</code>.
+   * @param aValue
+   *        The value to use. May not be <code>null</code>.
+   */
+  public final void put (@Nonnull final K aKey, @Nonnull final V aValue)
+  {
+    ValueEnforcer.notNull (aKey, "Key");
+    ValueEnforcer.notNull (aValue, "Value");
+    m_aMap.put (aKey, new Entry <> (aValue, m_aAccessClock.incrementAndGet ()));
+    if (m_aMap.size () > m_nMaxSize)
+      m_aEvictionLock.locked (this::_evict);
+  }
+
+  @GuardedBy ("m_aEvictionLock")
+  private void _evict ()
+  {
+    // Another thread may have evicted already
+    final int nSize = m_aMap.size ();
+    if (nSize <= m_nMaxSize)
+      return;
+
+    // Evict some more entries at once, so that the scan is not needed on every insert
+    final int nEvictCount = nSize - (m_nMaxSize - m_nMaxSize / 10);
+
+    // Take the access times upfront, as they may change while sorting
+    final List <EvictionCandidate <K, V>> aCandidates = new ArrayList <> (nSize);
+    for (final Map.Entry <K, Entry <V>> aCur : m_aMap.entrySet ())
+      aCandidates.add (new EvictionCandidate <> (aCur.getKey (), aCur.getValue (), aCur.getValue ().m_nLastAccess));
+    aCandidates.sort (Comparator.comparingLong (EvictionCandidate::lastAccess));
+
+    final int nMax = Math.min (nEvictCount, aCandidates.size ());
+    for (int i = 0; i < nMax; ++i)
+    {
+      final EvictionCandidate <K, V> aCandidate = aCandidates.get (i);
+      // Only remove it, if it was not replaced in the meantime
+      if (m_aMap.remove (aCandidate.key (), aCandidate.entry ()))
+        m_aEvictionCount.incrementAndGet ();
+    }
+  }
+
+  /**
+   * Remove the value of the passed key.
+   *
+   * @param aKey
+   *        The key to remove. May be <code>null</code>.
+   * @return The removed value or <code>null</code> if no such value was cached.
+   */
+  @Nullable
+  public final V remove (@Nullable final K aKey)
+  {
+    if (aKey == null)
+      return null;
+    final Entry <V> aEntry = m_aMap.remove (aKey);
+    return aEntry == null ? null : aEntry.m_aValue;
+  }
+
+  /**
+   * Remove all entries. The statistics are not reset.
+   */
+  public final void clear ()
+  {
+    m_aMap.clear ();
+  }
+
+  /**
+   * @return The number of lookups that found a cached value. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getHitCount ()
+  {
+    return m_aHitCount.get ();
+  }
+
+  /**
+   * @return The number of lookups that found no cached value. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMissCount ()
+  {
+    return m_aMissCount.get ();
+  }
+
+  /**
+   * @return The number of entries that were evicted because the maximum size was reached. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public final long getEvictionCount ()
+  {
+    return m_aEvictionCount.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Name", m_sName)
+                                       .append ("MaxSize", m_nMaxSize)
+                                       .append ("Size", size ())
+                                       .append ("HitCount", getHitCount ())
+                                       .append ("MissCount", getMissCount ())
+                                       .append ("EvictionCount", getEvictionCount ())
+                                       .getToString ();
+  }
+}
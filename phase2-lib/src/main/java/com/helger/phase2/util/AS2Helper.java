@@ -35,7 +35,6 @@ package com.helger.phase2.util;
 import java.io.InputStream;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.function.Consumer;
 
@@ -47,11 +46,16 @@ import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.state.ETriState;
 import com.helger.base.wrapper.Wrapper;
 import com.helger.cache.regex.RegExHelper;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsOrderedMap;
 import com.helger.http.CHttp;
 import com.helger.http.CHttpHeader;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mime.CMimeType;
 import com.helger.phase2.CPhase2Info;
+import com.helger.phase2.cert.AS2CertificateInfo;
+import com.helger.phase2.cert.AS2CertificateInfoCache;
 import com.helger.phase2.cert.AS2CertificateNotFoundException;
 import com.helger.phase2.cert.AS2KeyNotFoundException;
 import com.helger.phase2.cert.ECertificatePartnershipType;
@@ -62,6 +66,7 @@ import com.helger.phase2.crypto.ICryptoHelper;
 import com.helger.phase2.crypto.MIC;
 import com.helger.phase2.disposition.DispositionOptions;
 import com.helger.phase2.disposition.DispositionType;
+import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.message.AS2Message;
 import com.helger.phase2.message.AS2MessageMDN;
 import com.helger.phase2.message.IMessage;
@@ -71,6 +76,7 @@ import com.helger.phase2.partner.AS2PartnershipNotFoundException;
 import com.helger.phase2.partner.Partnership;
 import com.helger.phase2.processor.CNetAttribute;
 import com.helger.phase2.session.IAS2Session;
+import com.helger.phase2.util.http.HTTPHelper;
 import com.helger.security.certificate.CertificateHelper;
 
 import jakarta.annotation.Nonnull;
@@ -91,6 +97,15 @@ public final class AS2Helper
   private static final String HEADER_ORIGINAL_RECIPIENT = "Original-Recipient";
   private static final String HEADER_REPORTING_UA = "Reporting-UA";
 
+  /**
+   * Message attribute name prefix for the audit MICs of a received message. The algorithm ID is
+   * appended, and the value is the MIC in the AS2 string representation. See
+   * {@link Partnership#getAllAuditMICAlgorithms()}.
+   *
+   * @since 6.0.1
+   */
+  public static final String MA_AUDIT_MIC_PREFIX = "AUDIT_MIC_";
+
   private static final class SingletonHolder
   {
     static final BCCryptoHelper INSTANCE = new BCCryptoHelper ();
@@ -193,11 +208,11 @@ public final class AS2Helper
         final X509Certificate aSenderCert = aCertFactory.getCertificate (aMdn, ECertificatePartnershipType.SENDER);
 
         // Check if certificate is expired per "now"
-        final Date aNotAfter = aSenderCert.getNotAfter ();
-        if (aNotAfter != null && aNotAfter.compareTo (new Date ()) < 0)
+        final AS2CertificateInfo aSenderCertInfo = AS2CertificateInfoCache.getCertificateInfo (aSenderCert);
+        if (aSenderCertInfo.isExpired ())
         {
           LOGGER.warn ("Because our signing certificate expired per " +
-                       aNotAfter +
+                       aSenderCertInfo.getNotAfter () +
                        " we cannot sign the MDN message" +
                        aMdn.getLoggingText ());
         }
@@ -239,8 +254,20 @@ public final class AS2Helper
     // (size));
   }
 
+  /**
+   * Determine the MIC algorithm to be used for a received message. It is taken from the
+   * <code>Disposition-Notification-Options</code> header, with a fallback to the signing algorithm
+   * of the partnership.
+   *
+   * @param aMsg
+   *        The received message. May not be <code>null</code>.
+   * @return <code>null</code> if no MIC algorithm can be determined.
+   * @throws AS2Exception
+   *         If the <code>Disposition-Notification-Options</code> header cannot be parsed
+   * @since 6.0.1
+   */
   @Nullable
-  public static MIC createMICOnReception (@Nonnull final AS2Message aMsg) throws Exception
+  public static ECryptoAlgorithmSign getMICAlgorithmOnReception (@Nonnull final AS2Message aMsg) throws AS2Exception
   {
     final Partnership aPartnership = aMsg.partnership ();
 
@@ -258,17 +285,127 @@ public final class AS2Helper
         LOGGER.warn ("The partnership signing algorithm name '" + sSigningAlgorithm + "' is unknown.");
       }
     }
+    return eSigningAlgorithm;
+  }
 
-    if (eSigningAlgorithm == null)
-      return null;
-
+  /**
+   * Check if the MIME headers must be part of the MIC of a received message.
+   *
+   * @param aPartnership
+   *        The partnership of the received message. May not be <code>null</code>.
+   * @return <code>true</code> if the headers must be included.
+   * @since 6.0.1
+   */
+  public static boolean isIncludeHeadersInMICOnReception (@Nonnull final Partnership aPartnership)
+  {
     // If the source message was signed or encrypted, include the headers -
     // see message sending for details
-    final boolean bIncludeHeadersInMIC = aPartnership.getSigningAlgorithm () != null ||
-                                         aPartnership.getEncryptAlgorithm () != null ||
-                                         aPartnership.getCompressionType () != null;
+    return aPartnership.getSigningAlgorithm () != null ||
+           aPartnership.getEncryptAlgorithm () != null ||
+           aPartnership.getCompressionType () != null;
+  }
+
+  /**
+   * Get the MIC of the received data, that was calculated while the HTTP body was read (see
+   * {@link HTTPHelper#MA_HTTP_RECEIVED_MIC}).
+   *
+   * @param aMsg
+   *        The received message. May not be <code>null</code>.
+   * @param eMICAlg
+   *        The required MIC algorithm. May not be <code>null</code>.
+   * @param bIncludeHeaders
+   *        <code>true</code> if the MIC must include the MIME headers.
+   * @return <code>null</code> if no MIC was calculated while reading, or if it was calculated with
+   *         a different algorithm or header handling.
+   * @since 6.0.1
+   */
+  @Nullable
+  public static MIC getReceivedMICIfMatching (@Nonnull final AS2Message aMsg,
+                                              @Nonnull final ECryptoAlgorithmSign eMICAlg,
+                                              final boolean bIncludeHeaders)
+  {
+    final MIC aReceivedMIC = MIC.parse (aMsg.attrs ().getAsString (HTTPHelper.MA_HTTP_RECEIVED_MIC));
+    if (aReceivedMIC == null ||
+        aReceivedMIC.getDigestAlgorithm () != eMICAlg ||
+        aMsg.attrs ().getAsBoolean (HTTPHelper.MA_HTTP_RECEIVED_MIC_INCLUDES_HEADERS) != bIncludeHeaders)
+      return null;
+    return aReceivedMIC;
+  }
 
-    return getCryptoHelper ().calculateMIC (aMsg.getData (), eSigningAlgorithm, bIncludeHeadersInMIC);
+  /**
+   * Get an audit MIC of a received message, as calculated by {@link #createMICOnReception(AS2Message)}.
+   *
+   * @param aMsg
+   *        The received message. May not be <code>null</code>.
+   * @param eMICAlg
+   *        The audit MIC algorithm. May not be <code>null</code>.
+   * @return <code>null</code> if no audit MIC with the provided algorithm was calculated.
+   * @since 6.0.1
+   */
+  @Nullable
+  public static MIC getAuditMIC (@Nonnull final IMessage aMsg, @Nonnull final ECryptoAlgorithmSign eMICAlg)
+  {
+    return MIC.parse (aMsg.attrs ().getAsString (MA_AUDIT_MIC_PREFIX + eMICAlg.getID ()));
+  }
+
+  /**
+   * Calculate the MIC of a received message. If the partnership defines audit MIC algorithms (see
+   * {@link Partnership#getAllAuditMICAlgorithms()}), these MICs are calculated in the same pass over
+   * the data and stored as message attributes (see {@link #MA_AUDIT_MIC_PREFIX}).
+   *
+   * @param aMsg
+   *        The received message. May not be <code>null</code>.
+   * @return <code>null</code> if no MIC algorithm can be determined.
+   * @throws Exception
+   *         In case of an error
+   */
+  @Nullable
+  public static MIC createMICOnReception (@Nonnull final AS2Message aMsg) throws Exception
+  {
+    final ECryptoAlgorithmSign eSigningAlgorithm = getMICAlgorithmOnReception (aMsg);
+    final boolean bIncludeHeadersInMIC = isIncludeHeadersInMICOnReception (aMsg.partnership ());
+
+    // Avoid reading the data again, if the MIC was calculated while reading
+    final MIC aReceivedMIC = eSigningAlgorithm == null ? null
+                                                       : getReceivedMICIfMatching (aMsg,
+                                                                                   eSigningAlgorithm,
+                                                                                   bIncludeHeadersInMIC);
+    if (aReceivedMIC != null)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Using the MIC calculated while reading the HTTP body");
+    }
+
+    // Audit MICs that were not yet calculated
+    final ICommonsList <ECryptoAlgorithmSign> aAuditAlgorithms = aMsg.partnership ()
+                                                                     .getAllAuditMICAlgorithms ()
+                                                                     .getAll (x -> getAuditMIC (aMsg, x) == null);
+    if (aAuditAlgorithms.isEmpty ())
+    {
+      if (eSigningAlgorithm == null || aReceivedMIC != null)
+        return aReceivedMIC;
+      return getCryptoHelper ().calculateMIC (aMsg.getData (), eSigningAlgorithm, bIncludeHeadersInMIC);
+    }
+
+    // Calculate the MIC and all audit MICs while reading the data once
+    final ICommonsList <ECryptoAlgorithmSign> aAllAlgorithms = new CommonsArrayList <> ();
+    if (eSigningAlgorithm != null && aReceivedMIC == null)
+      aAllAlgorithms.add (eSigningAlgorithm);
+    aAllAlgorithms.addAll (aAuditAlgorithms);
+    final ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> aMICs = getCryptoHelper ().calculateMICs (aMsg.getData (),
+                                                                                                   aAllAlgorithms,
+                                                                                                   bIncludeHeadersInMIC);
+    for (final ECryptoAlgorithmSign eAuditAlgorithm : aAuditAlgorithms)
+    {
+      final String sAuditMIC = aMICs.get (eAuditAlgorithm).getAsAS2String ();
+      aMsg.attrs ().putIn (MA_AUDIT_MIC_PREFIX + eAuditAlgorithm.getID (), sAuditMIC);
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Calculated audit MIC " + sAuditMIC);
+    }
+
+    if (eSigningAlgorithm == null)
+      return null;
+    return aReceivedMIC != null ? aReceivedMIC : aMICs.get (eSigningAlgorithm);
   }
 
   /**
@@ -36,17 +36,23 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
 
 import org.eclipse.angus.mail.util.QPDecoderStream;
 import org.eclipse.angus.mail.util.QPEncoderStream;
 
 import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
 import com.helger.annotation.concurrent.Immutable;
 import com.helger.annotation.style.ReturnsMutableCopy;
 import com.helger.base.CGlobal;
 import com.helger.base.codec.base64.Base64;
 import com.helger.base.codec.base64.Base64InputStream;
 import com.helger.base.codec.base64.Base64OutputStream;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.stream.HasInputStream;
+import com.helger.base.io.stream.NonClosingOutputStream;
 import com.helger.base.string.StringHelper;
 import com.helger.base.string.StringRemove;
 import com.helger.base.timing.StopWatch;
@@ -55,13 +61,19 @@ import com.helger.io.file.FileIOError;
 import com.helger.io.file.FileOperationManager;
 import com.helger.io.file.FilenameHelper;
 import com.helger.io.file.LoggingFileOperationCallback;
+import com.helger.mail.datasource.ByteArrayDataSource;
+import com.helger.mail.datasource.IExtendedDataSource;
+import com.helger.mail.datasource.InputStreamProviderDataSource;
 import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.processor.receiver.AS2InvalidMessageException;
+import com.helger.phase2.util.http.HTTPHelper;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.util.SharedFileInputStream;
 
 @Immutable
 public final class AS2IOHelper
@@ -328,6 +340,44 @@ public final class AS2IOHelper
     throw new MessagingException ("Unknown Content-Transfer-Encoding '" + sEncoding + "'");
   }
 
+  /**
+   * Write the passed MIME body part with all header lines and the content transfer encoded
+   * content. This is exactly the data the MIC is calculated on (with headers) and the data that is
+   * signed or encrypted by the streaming methods of the crypto helper.
+   *
+   * @param aPart
+   *        The MIME body part to write. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. The stream is not closed.
+   * @throws IOException
+   *         In case writing fails
+   * @throws MessagingException
+   *         In case of a MIME error
+   * @since 6.0.1
+   */
+  public static void writeMimeBodyPart (@Nonnull final MimeBodyPart aPart,
+                                        @Nonnull @WillNotClose final OutputStream aOS) throws IOException,
+                                                                                       MessagingException
+  {
+    ValueEnforcer.notNull (aPart, "Part");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    final Enumeration <String> aHeaderLines = aPart.getAllHeaderLines ();
+    while (aHeaderLines.hasMoreElements ())
+    {
+      aOS.write (getAllAsciiBytes (aHeaderLines.nextElement ()));
+      aOS.write (EOL_BYTES);
+    }
+    aOS.write (EOL_BYTES);
+
+    // Closing the encoding stream must not close the target stream
+    try (final OutputStream aEncodedOS = getContentTransferEncodingAwareOutputStream (new NonClosingOutputStream (aOS),
+                                                                                      aPart.getEncoding ()))
+    {
+      aPart.getDataHandler ().writeTo (aEncodedOS);
+    }
+  }
+
   @Nonnull
   public static InputStream getContentTransferEncodingAwareInputStream (@Nonnull final InputStream aIS,
                                                                         @Nullable final String sEncoding) throws MessagingException
@@ -360,4 +410,44 @@ public final class AS2IOHelper
 
     throw new MessagingException ("Unknown Content-Transfer-Encoding '" + sEncoding + "'");
   }
+
+  /**
+   * Create a data source for the content of the passed file. Files up to
+   * {@link HTTPHelper#getMaxInMemoryPayloadSize()} bytes are read into memory. Larger files are not
+   * read into memory but streamed from the file system every time the content is needed. The file
+   * is opened immediately and stays open until the passed resource helper is closed. The content is
+   * no longer readable afterwards.
+   *
+   * @param aFile
+   *        The file to read. May not be <code>null</code>.
+   * @param sContentType
+   *        The content type of the data source. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper that closes the opened file. May not be <code>null</code>.
+   * @return The data source and never <code>null</code>.
+   * @throws IOException
+   *         If the file cannot be read
+   * @since 6.0.1
+   */
+  @Nonnull
+  public static IExtendedDataSource getFileDataSource (@Nonnull final File aFile,
+                                                       @Nonnull final String sContentType,
+                                                       @Nonnull final AS2ResourceHelper aResHelper) throws IOException
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    ValueEnforcer.notNull (sContentType, "ContentType");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    if (aFile.length () <= HTTPHelper.getMaxInMemoryPayloadSize ())
+    {
+      final byte [] aData = Files.readAllBytes (aFile.toPath ());
+      return new ByteArrayDataSource (aData, sContentType, aFile.getName ());
+    }
+
+    final SharedFileInputStream aSharedIS = new SharedFileInputStream (aFile);
+    aResHelper.addCloseable (aSharedIS);
+    return new InputStreamProviderDataSource (HasInputStream.multiple ( () -> aSharedIS.newStream (0, -1)),
+                                              aFile.getName (),
+                                              sContentType);
+  }
 }
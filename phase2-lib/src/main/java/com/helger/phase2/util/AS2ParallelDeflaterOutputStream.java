@@ -0,0 +1,345 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillClose;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.concurrent.BasicThreadFactory;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * An {@link OutputStream} that creates a zlib stream (RFC 1950) like
+ * {@link java.util.zip.DeflaterOutputStream} but compresses blocks of the input in parallel. Each
+ * block is compressed independently and terminated with a sync flush, so that all blocks can be
+ * concatenated to a single valid deflate stream. The Adler-32 checksum of the uncompressed data is
+ * calculated in the writing thread. Compared to a sequential compression the compression ratio is
+ * slightly lower, because no dictionary is shared between the blocks.<br>
+ * All streams share a single pool with at most one daemon thread per available processor. The number
+ * of blocks kept in memory is limited to twice the number of threads of the stream.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class AS2ParallelDeflaterOutputStream extends OutputStream
+{
+  private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+  /** The maximum number of compression threads of all streams together */
+  private static final int MAX_THREADS = Runtime.getRuntime ().availableProcessors ();
+  private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+  // Created on first use only
+  private static final class ExecutorHolder
+  {
+    static final ExecutorService EXECUTOR = _createExecutor ();
+  }
+
+  private final OutputStream m_aOS;
+  private final int m_nLevel;
+  private final int m_nStrategy;
+  private final int m_nThreads;
+  private final int m_nBlockSize;
+  private final Adler32 m_aChecksum = new Adler32 ();
+  private final Deque <Future <byte []>> m_aPendingBlocks = new ArrayDeque <> ();
+  private byte [] m_aBlock;
+  private int m_nBlockLen = 0;
+  private boolean m_bHeaderWritten = false;
+  private boolean m_bClosed = false;
+
+  /**
+   * Constructor
+   *
+   * @param aOS
+   *        The output stream to write the zlib stream to. May not be <code>null</code>. It is
+   *        closed when this stream is closed.
+   * @param nLevel
+   *        The compression level from 0 to 9 or -1 for the default level.
+   * @param nStrategy
+   *        The {@link Deflater} strategy to use.
+   * @param nThreads
+   *        The maximum number of blocks of this stream compressed in parallel. Values larger than
+   *        the number of available processors are reduced. Must be &gt; 0.
+   * @param nBlockSize
+   *        The size of the uncompressed blocks in bytes. Must be &gt; 0.
+   */
+  public AS2ParallelDeflaterOutputStream (@Nonnull @WillClose final OutputStream aOS,
+                                          final int nLevel,
+                                          final int nStrategy,
+                                          @Nonnegative final int nThreads,
+                                          @Nonnegative final int nBlockSize)
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.isBetweenInclusive (nLevel, "Level", Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION);
+    ValueEnforcer.isGT0 (nThreads, "Threads");
+    ValueEnforcer.isGT0 (nBlockSize, "BlockSize");
+    m_aOS = aOS;
+    m_nLevel = nLevel;
+    m_nStrategy = nStrategy;
+    m_nThreads = Math.min (nThreads, MAX_THREADS);
+    m_nBlockSize = nBlockSize;
+    m_aBlock = new byte [nBlockSize];
+  }
+
+  @Nonnull
+  private static ExecutorService _createExecutor ()
+  {
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (MAX_THREADS,
+                                                           MAX_THREADS,
+                                                           IDLE_THREAD_KEEP_ALIVE_SECONDS,
+                                                           TimeUnit.SECONDS,
+                                                           new LinkedBlockingQueue <> (),
+                                                           BasicThreadFactory.builder ()
+                                                                             .namingPattern ("AS2ParallelDeflater-%d")
+                                                                             .daemon (true)
+                                                                             .build ());
+    // Don't keep threads when nothing is compressed
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  /**
+   * Compress a single block into raw deflate data, that ends on a byte boundary.
+   */
+  @Nonnull
+  private static byte [] _compressBlock (@Nonnull final byte [] aBlock,
+                                         final int nLen,
+                                         final boolean bLast,
+                                         final int nLevel,
+                                         final int nStrategy)
+  {
+    final Deflater aDeflater = new Deflater (nLevel, true);
+    try
+    {
+      aDeflater.setStrategy (nStrategy);
+      aDeflater.setInput (aBlock, 0, nLen);
+
+      final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (nLen / 2 + 64);
+      final byte [] aBuf = new byte [OUTPUT_BUFFER_SIZE];
+      if (bLast)
+      {
+        aDeflater.finish ();
+        while (!aDeflater.finished ())
+        {
+          final int nCompressed = aDeflater.deflate (aBuf);
+          aBAOS.write (aBuf, 0, nCompressed);
+        }
+      }
+      else
+      {
+        // A sync flush ends the block on a byte boundary so it can be concatenated
+        int nCompressed;
+        do
+        {
+          nCompressed = aDeflater.deflate (aBuf, 0, aBuf.length, Deflater.SYNC_FLUSH);
+          aBAOS.write (aBuf, 0, nCompressed);
+        } while (nCompressed == aBuf.length);
+      }
+      return aBAOS.toByteArray ();
+    }
+    finally
+    {
+      aDeflater.end ();
+    }
+  }
+
+  private void _ensureOpen () throws IOException
+  {
+    if (m_bClosed)
+      throw new IOException ("Stream is already closed");
+  }
+
+  private void _writeHeaderIfNeeded () throws IOException
+  {
+    if (!m_bHeaderWritten)
+    {
+      // CMF: deflate with 32K window; FLG: compression level hint with a valid check sum
+      final int nFlags;
+      if (m_nLevel == Deflater.DEFAULT_COMPRESSION || m_nLevel == 6)
+        nFlags = 0x9c;
+      else
+        if (m_nLevel <= 1)
+          nFlags = 0x01;
+        else
+          if (m_nLevel <= 5)
+            nFlags = 0x5e;
+          else
+            nFlags = 0xda;
+      m_aOS.write (0x78);
+      m_aOS.write (nFlags);
+      m_bHeaderWritten = true;
+    }
+  }
+
+  private void _writeNextBlock () throws IOException
+  {
+    final Future <byte []> aFuture = m_aPendingBlocks.removeFirst ();
+    try
+    {
+      final byte [] aCompressed = aFuture.get ();
+      _writeHeaderIfNeeded ();
+      m_aOS.write (aCompressed);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new InterruptedIOException ("Interrupted while waiting for a compressed block");
+    }
+    catch (final ExecutionException ex)
+    {
+      throw new IOException ("Failed to compress block", ex.getCause ());
+    }
+  }
+
+  private void _submitBlock (final boolean bLast) throws IOException
+  {
+    final byte [] aBlock = m_aBlock;
+    final int nLen = m_nBlockLen;
+    m_aChecksum.update (aBlock, 0, nLen);
+
+    if (bLast && m_aPendingBlocks.isEmpty ())
+    {
+      // Everything fits into a single block - no need for another thread
+      m_aPendingBlocks.add (CompletableFuture.completedFuture (_compressBlock (aBlock,
+                                                                               nLen,
+                                                                               true,
+                                                                               m_nLevel,
+                                                                               m_nStrategy)));
+    }
+    else
+    {
+      m_aPendingBlocks.add (ExecutorHolder.EXECUTOR.submit ( () -> _compressBlock (aBlock,
+                                                                                  nLen,
+                                                                                  bLast,
+                                                                                  m_nLevel,
+                                                                                  m_nStrategy)));
+    }
+
+    if (!bLast)
+    {
+      m_aBlock = new byte [m_nBlockSize];
+      m_nBlockLen = 0;
+    }
+
+    // Limit the memory consumption
+    while (m_aPendingBlocks.size () > m_nThreads * 2)
+      _writeNextBlock ();
+  }
+
+  @Override
+  public void write (final int b) throws IOException
+  {
+    _ensureOpen ();
+    m_aBlock[m_nBlockLen++] = (byte) b;
+    if (m_nBlockLen == m_nBlockSize)
+      _submitBlock (false);
+  }
+
+  @Override
+  public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+    _ensureOpen ();
+
+    int nRealOfs = nOfs;
+    int nRest = nLen;
+    while (nRest > 0)
+    {
+      final int nCopy = Math.min (nRest, m_nBlockSize - m_nBlockLen);
+      System.arraycopy (aBuf, nRealOfs, m_aBlock, m_nBlockLen, nCopy);
+      m_nBlockLen += nCopy;
+      nRealOfs += nCopy;
+      nRest -= nCopy;
+      if (m_nBlockLen == m_nBlockSize)
+        _submitBlock (false);
+    }
+  }
+
+  @Override
+  public void flush () throws IOException
+  {
+    _ensureOpen ();
+    // Write all blocks that are already compressed, without waiting
+    while (!m_aPendingBlocks.isEmpty () && m_aPendingBlocks.peekFirst ().isDone ())
+      _writeNextBlock ();
+    m_aOS.flush ();
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    if (m_bClosed)
+      return;
+    m_bClosed = true;
+
+    try
+    {
+      _submitBlock (true);
+      while (!m_aPendingBlocks.isEmpty ())
+        _writeNextBlock ();
+
+      // Adler-32 checksum in network byte order
+      final long nChecksum = m_aChecksum.getValue ();
+      m_aOS.write ((int) (nChecksum >>> 24) & 0xff);
+      m_aOS.write ((int) (nChecksum >>> 16) & 0xff);
+      m_aOS.write ((int) (nChecksum >>> 8) & 0xff);
+      m_aOS.write ((int) nChecksum & 0xff);
+    }
+    finally
+    {
+      // In case of an error, don't waste the shared threads
+      for (final Future <byte []> aFuture : m_aPendingBlocks)
+        aFuture.cancel (true);
+      m_aPendingBlocks.clear ();
+      m_aOS.close ();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.concurrent.Immutable;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Thread related helper methods. The library is compiled for Java 17, so Java 21 virtual threads
+ * are only accessible via reflection.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@Immutable
+public final class AS2ThreadHelper
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS2ThreadHelper.class);
+
+  private static final ThreadFactory VIRTUAL_THREAD_FACTORY;
+
+  static
+  {
+    ThreadFactory aFactory = null;
+    try
+    {
+      // Thread.ofVirtual ().factory ()
+      final Object aBuilder = Thread.class.getMethod ("ofVirtual").invoke (null);
+      final Method aFactoryMethod = Class.forName ("java.lang.Thread$Builder").getMethod ("factory");
+      aFactory = (ThreadFactory) aFactoryMethod.invoke (aBuilder);
+    }
+    catch (final Exception | LinkageError ex)
+    {
+      // Java < 21 or preview features not enabled
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Virtual threads are not supported by this Java runtime: " + ex.getMessage ());
+    }
+    VIRTUAL_THREAD_FACTORY = aFactory;
+  }
+
+  private AS2ThreadHelper ()
+  {}
+
+  /**
+   * @return <code>true</code> if the current Java runtime supports virtual threads (Java 21+),
+   *         <code>false</code> if not.
+   */
+  public static boolean isVirtualThreadSupported ()
+  {
+    return VIRTUAL_THREAD_FACTORY != null;
+  }
+
+  /**
+   * @return A {@link ThreadFactory} creating virtual threads or <code>null</code> if the current
+   *         Java runtime does not support virtual threads.
+   * @see #isVirtualThreadSupported()
+   */
+  @Nullable
+  public static ThreadFactory getVirtualThreadFactory ()
+  {
+    return VIRTUAL_THREAD_FACTORY;
+  }
+}
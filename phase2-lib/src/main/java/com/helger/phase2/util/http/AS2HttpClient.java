@@ -32,6 +32,7 @@
  */
 package com.helger.phase2.util.http;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -64,6 +65,7 @@ import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.io.entity.FileEntity;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
@@ -75,7 +77,9 @@ import com.helger.annotation.WillClose;
 import com.helger.annotation.style.ReturnsMutableCopy;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.io.stream.CountingInputStream;
+import com.helger.base.io.stream.CountingOutputStream;
 import com.helger.base.io.stream.StreamHelper;
+import com.helger.base.numeric.mutable.MutableLong;
 import com.helger.http.CHttp;
 import com.helger.http.EHttpMethod;
 import com.helger.http.header.HttpHeaderMap;
@@ -294,17 +298,119 @@ public class AS2HttpClient
       };
       // Use a temporary file to get the Content length
       final HttpEntity aEntity = aResHelper.createRepeatableHttpEntity (aISE);
-      m_aRequestBuilder.setEntity (aEntity);
-      final ClassicHttpRequest aHttpUriRequest = m_aRequestBuilder.build ();
-
-      if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("Performing HttpRequest to '" + aHttpUriRequest.toString () + "'");
-
-      m_aCloseableHttpResponse = m_aCloseableHttpClient.execute (aHttpUriRequest);
+      _execute (aEntity);
       return aCIS.getBytesRead ();
     }
   }
 
+  /**
+   * Send the content of the passed file as is. As the file length is known and the file can be read
+   * more than once, no additional temporary file is needed.
+   *
+   * @param aFileToSend
+   *        The file to send. May not be <code>null</code>.
+   * @param aOutgoingDumper
+   *        Optional outgoing dumper
+   * @return bytes sent. Must be &ge; 0.
+   * @throws IOException
+   *         In case of error
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public long send (@Nonnull final File aFileToSend, @Nullable final IHTTPOutgoingDumper aOutgoingDumper) throws IOException
+  {
+    ValueEnforcer.notNull (aFileToSend, "FileToSend");
+
+    final FileEntity aEntity = new FileEntity (aFileToSend, (ContentType) null)
+    {
+      @Override
+      public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+      {
+        if (aOutgoingDumper == null)
+          super.writeTo (aOS);
+        else
+          try (final OutputStream aDebugOS = aOutgoingDumper.getDumpOS (aOS))
+          {
+            super.writeTo (aDebugOS);
+          }
+      }
+    };
+    _execute (aEntity);
+    return aEntity.getContentLength ();
+  }
+
+  /**
+   * Send a payload that is created on the fly while it is sent. As the length of the payload is
+   * not known in advance, chunked transfer encoding is used. This also means that the request
+   * cannot be repeated.
+   *
+   * @param aPayloadWriter
+   *        The payload writer. May not be <code>null</code>.
+   * @param aOutgoingDumper
+   *        Optional outgoing dumper
+   * @return bytes sent. Must be &ge; 0.
+   * @throws IOException
+   *         In case of error
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public long send (@Nonnull final IAS2OutgoingPayloadWriter aPayloadWriter,
+                    @Nullable final IHTTPOutgoingDumper aOutgoingDumper) throws IOException
+  {
+    ValueEnforcer.notNull (aPayloadWriter, "PayloadWriter");
+
+    final MutableLong aBytesSent = new MutableLong (0);
+    final AbstractHttpEntity aEntity = new AbstractHttpEntity ((ContentType) null, null, true)
+    {
+      public void close ()
+      {
+        // empty
+      }
+
+      @Override
+      public InputStream getContent () throws IOException
+      {
+        // Only writeTo should be used from the outside
+        throw new UnsupportedOperationException ();
+      }
+
+      public long getContentLength ()
+      {
+        return -1L;
+      }
+
+      public boolean isStreaming ()
+      {
+        return true;
+      }
+
+      @Override
+      public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+      {
+        try (final OutputStream aDebugOS = aOutgoingDumper != null ? aOutgoingDumper.getDumpOS (aOS) : aOS;
+             final CountingOutputStream aCOS = new CountingOutputStream (aDebugOS))
+        {
+          aPayloadWriter.writePayload (aCOS);
+          aCOS.flush ();
+          aBytesSent.set (aCOS.getBytesWritten ());
+        }
+      }
+    };
+    _execute (aEntity);
+    return aBytesSent.longValue ();
+  }
+
+  private void _execute (@Nonnull final HttpEntity aEntity) throws IOException
+  {
+    m_aRequestBuilder.setEntity (aEntity);
+    final ClassicHttpRequest aHttpUriRequest = m_aRequestBuilder.build ();
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Performing HttpRequest to '" + aHttpUriRequest.toString () + "'");
+
+    m_aCloseableHttpResponse = m_aCloseableHttpClient.execute (aHttpUriRequest);
+  }
+
   /**
    * Get InputStream
    *
@@ -36,10 +36,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.Enumeration;
-import java.util.StringTokenizer;
 
-import com.helger.annotation.Nonempty;
 import com.helger.annotation.WillNotClose;
 import com.helger.annotation.concurrent.Immutable;
 import com.helger.base.enforce.ValueEnforcer;
@@ -49,9 +46,7 @@ import com.helger.base.io.stream.StreamHelper;
 import com.helger.http.header.HttpHeaderMap;
 
 import jakarta.annotation.Nonnull;
-import jakarta.mail.Header;
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.InternetHeaders;
 
 /**
  * Implementation of {@link IAS2HttpRequestDataProvider} based on a {@link Socket}
@@ -70,88 +65,49 @@ public class AS2HttpRequestDataProviderInputStream implements IAS2HttpRequestDat
   private final HttpHeaderMap m_aHttpHeaders = new HttpHeaderMap ();
 
   /**
-   * Read the first line of the HTTP request InputStream and parse out HTTP method (e.g. "GET" or
-   * "POST"), request URL (e.g "/as2") and HTTP version (e.g. "HTTP/1.1")
+   * Constructor
    *
    * @param aIS
-   *        Stream to read the first line from
-   * @return An array with 3 elements, containing method, URL and HTTP version
+   *        InputStream to read from. May not be <code>null</code>.
    * @throws IOException
-   *         In case of IO error
+   *         If reading from the Socket fails
+   * @throws MessagingException
+   *         If reading the HTTP headers failed
    */
-  @Nonnull
-  @Nonempty
-  private static String [] _readRequestInfo (@Nonnull final InputStream aIS) throws IOException
+  public AS2HttpRequestDataProviderInputStream (@Nonnull @WillNotClose final InputStream aIS) throws IOException,
+                                                                                              MessagingException
   {
-    int nByteBuf = aIS.read ();
-    final StringBuilder aSB = new StringBuilder ();
-    while (nByteBuf != -1 && nByteBuf != '\r')
-    {
-      aSB.append ((char) nByteBuf);
-      nByteBuf = aIS.read ();
-    }
-    if (nByteBuf != -1)
-    {
-      // read in the \n following the "\r"
-      aIS.read ();
-    }
-
-    final StringTokenizer aTokens = new StringTokenizer (aSB.toString (), " ");
-    final int nTokenCount = aTokens.countTokens ();
-    if (nTokenCount >= 3)
-    {
-      // Return all tokens
-      final String [] aRequestParts = new String [nTokenCount];
-      for (int i = 0; i < nTokenCount; i++)
-        aRequestParts[i] = aTokens.nextToken ();
-      return aRequestParts;
-    }
-
-    if (nTokenCount == 2)
-    {
-      // Default the request URL to "/"
-      final String [] aRequestParts = new String [3];
-      aRequestParts[0] = aTokens.nextToken ();
-      aRequestParts[1] = "/";
-      aRequestParts[2] = aTokens.nextToken ();
-      return aRequestParts;
-    }
-    throw new IOException ("Invalid HTTP Request (" + aSB.toString () + ")");
+    this (aIS, new AS2HttpRequestHeaderParser ());
   }
 
   /**
    * Constructor
    *
    * @param aIS
-   *        InputStream to read from. May not be <code>null</code>.
+   *        InputStream to read from. Should be buffered. May not be <code>null</code>.
+   * @param aHeaderParser
+   *        The parser for the HTTP request line and headers. It may be reused for all requests of a
+   *        connection. May not be <code>null</code>.
    * @throws IOException
-   *         If reading from the Socket fails
+   *         If reading from the Socket fails or the HTTP request line or headers are invalid
    * @throws MessagingException
    *         If reading the HTTP headers failed
+   * @since 6.0.1
    */
-  public AS2HttpRequestDataProviderInputStream (@Nonnull @WillNotClose final InputStream aIS) throws IOException,
-                                                                                              MessagingException
+  public AS2HttpRequestDataProviderInputStream (@Nonnull @WillNotClose final InputStream aIS,
+                                                @Nonnull final AS2HttpRequestHeaderParser aHeaderParser) throws IOException,
+                                                                                                          MessagingException
   {
     ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aHeaderParser, "HeaderParser");
 
     m_aIS = aIS;
 
-    // Read the HTTP meta data first line
-    final String [] aRequest = _readRequestInfo (m_aIS);
+    // Read the HTTP request line and the HTTP headers in one pass
+    final String [] aRequest = aHeaderParser.readRequest (m_aIS, m_aHttpHeaders);
     m_sHttpRequestMethod = aRequest[0];
     m_sHttpRequestUrl = aRequest[1];
     m_sHttpRequestVersion = aRequest[2];
-
-    // Read the HTTP headers next
-    // Parse all HTTP headers from stream
-    final InternetHeaders aHeaders = new InternetHeaders (m_aIS);
-    // Convert to header map
-    final Enumeration <Header> aEnum = aHeaders.getAllHeaders ();
-    while (aEnum.hasMoreElements ())
-    {
-      final Header aHeader = aEnum.nextElement ();
-      m_aHttpHeaders.addHeader (aHeader.getName (), aHeader.getValue ());
-    }
   }
 
   /**
@@ -168,6 +124,12 @@ public class AS2HttpRequestDataProviderInputStream implements IAS2HttpRequestDat
   {
     // Use "NonClosing" internally to that the returned stream is easily
     // discovered as "buffered"
+    if (StreamHelper.isBuffered (m_aIS))
+    {
+      // Don't buffer again, as this would read ahead into the next request on a persistent
+      // connection
+      return new NonClosingInputStream (m_aIS);
+    }
     return StreamHelper.getBuffered (new NonClosingInputStream (m_aIS));
   }
 
@@ -0,0 +1,318 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.CGlobal;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.http.header.HttpHeaderMap;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Single pass parser for the HTTP request line and the HTTP request headers. All lines are collected
+ * in a byte buffer that is reused for all requests parsed with the same instance, and the headers
+ * are added directly to an {@link HttpHeaderMap}. The total size of the request line and the headers
+ * as well as the number of headers are limited.<br>
+ * The stream is read byte by byte, so that nothing after the headers is consumed. It should
+ * therefore be buffered.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class AS2HttpRequestHeaderParser
+{
+  /** Default maximum size of the request line and the headers: 64 KB */
+  public static final int DEFAULT_MAX_HEADER_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  /** Default maximum number of headers: 100 */
+  public static final int DEFAULT_MAX_HEADER_COUNT = 100;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS2HttpRequestHeaderParser.class);
+  private static final int INITIAL_LINE_BUFFER_SIZE = 256;
+
+  private final int m_nMaxHeaderSize;
+  private final int m_nMaxHeaderCount;
+  private byte [] m_aLineBuf = new byte [INITIAL_LINE_BUFFER_SIZE];
+  private int m_nLineLen = 0;
+  private int m_nBytesRead = 0;
+
+  public AS2HttpRequestHeaderParser ()
+  {
+    this (DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_HEADER_COUNT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nMaxHeaderSize
+   *        The maximum number of bytes of the request line and all headers including the line
+   *        endings. Must be &gt; 0.
+   * @param nMaxHeaderCount
+   *        The maximum number of headers. Must be &gt; 0.
+   */
+  public AS2HttpRequestHeaderParser (@Nonnegative final int nMaxHeaderSize, @Nonnegative final int nMaxHeaderCount)
+  {
+    ValueEnforcer.isGT0 (nMaxHeaderSize, "MaxHeaderSize");
+    ValueEnforcer.isGT0 (nMaxHeaderCount, "MaxHeaderCount");
+    m_nMaxHeaderSize = nMaxHeaderSize;
+    m_nMaxHeaderCount = nMaxHeaderCount;
+  }
+
+  /**
+   * @return The maximum number of bytes of the request line and all headers. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxHeaderSize ()
+  {
+    return m_nMaxHeaderSize;
+  }
+
+  /**
+   * @return The maximum number of headers. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxHeaderCount ()
+  {
+    return m_nMaxHeaderCount;
+  }
+
+  /**
+   * Read the next line into the line buffer. The line ending (CR LF or LF only) is not part of the
+   * line.
+   *
+   * @return <code>false</code> if EOF was reached before any byte was read
+   */
+  private boolean _readLine (@Nonnull final InputStream aIS) throws IOException
+  {
+    m_nLineLen = 0;
+    int b = aIS.read ();
+    if (b < 0)
+      return false;
+
+    while (true)
+    {
+      if (++m_nBytesRead > m_nMaxHeaderSize)
+        throw new IOException ("HTTP request headers exceed the maximum size of " + m_nMaxHeaderSize + " bytes");
+      if (b == '\n')
+        break;
+
+      if (m_nLineLen == m_aLineBuf.length)
+        m_aLineBuf = Arrays.copyOf (m_aLineBuf, Math.min (m_aLineBuf.length * 2, m_nMaxHeaderSize));
+      m_aLineBuf[m_nLineLen++] = (byte) b;
+
+      b = aIS.read ();
+      if (b < 0)
+        break;
+    }
+
+    if (m_nLineLen > 0 && m_aLineBuf[m_nLineLen - 1] == '\r')
+      m_nLineLen--;
+    return true;
+  }
+
+  private static boolean _isWhitespace (final byte b)
+  {
+    return b == ' ' || b == '\t';
+  }
+
+  @Nonnull
+  private String _getString (final int nStart, final int nEnd)
+  {
+    // HTTP headers are ISO-8859-1
+    return new String (m_aLineBuf, nStart, nEnd - nStart, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Split the request line in the line buffer at spaces.
+   *
+   * @return An array with at least 3 elements, containing method, URL and HTTP version
+   */
+  @Nonnull
+  @Nonempty
+  private String [] _parseRequestLine () throws IOException
+  {
+    int nTokenCount = 0;
+    for (int i = 0; i < m_nLineLen; ++i)
+      if (m_aLineBuf[i] != ' ' && (i == 0 || m_aLineBuf[i - 1] == ' '))
+        nTokenCount++;
+
+    if (nTokenCount < 2)
+      throw new IOException ("Invalid HTTP Request (" + _getString (0, m_nLineLen) + ")");
+
+    // Default the request URL to "/" if only method and version are present
+    final String [] ret = new String [Math.max (nTokenCount, 3)];
+    int nIndex = 0;
+    int nStart = -1;
+    for (int i = 0; i <= m_nLineLen; ++i)
+    {
+      final boolean bSpace = i == m_nLineLen || m_aLineBuf[i] == ' ';
+      if (bSpace)
+      {
+        if (nStart >= 0)
+        {
+          if (nTokenCount == 2 && nIndex == 1)
+            ret[nIndex++] = "/";
+          ret[nIndex++] = _getString (nStart, i);
+          nStart = -1;
+        }
+      }
+      else
+        if (nStart < 0)
+          nStart = i;
+    }
+    return ret;
+  }
+
+  private void _addHeader (@Nonnull final HttpHeaderMap aTargetHeaders,
+                           @Nonnull final String sName,
+                           @Nonnull final String sValue,
+                           final int nHeaderCount) throws IOException
+  {
+    if (nHeaderCount > m_nMaxHeaderCount)
+      throw new IOException ("HTTP request contains more than the maximum number of " + m_nMaxHeaderCount + " headers");
+    aTargetHeaders.addHeader (sName, sValue);
+  }
+
+  /**
+   * Read the HTTP request line and all HTTP headers up to and including the empty line that
+   * separates them from the body. Empty lines before the request line are ignored - e.g. the CRLF
+   * after a chunked body of the previous request on a persistent connection. Obsolete line folding
+   * is supported.
+   *
+   * @param aIS
+   *        The stream to read from. Should be buffered. May not be <code>null</code>.
+   * @param aTargetHeaders
+   *        The header map to add the read headers to. May not be <code>null</code>.
+   * @return An array with at least 3 elements, containing method (e.g. "POST"), request URL (e.g
+   *         "/as2") and HTTP version (e.g. "HTTP/1.1")
+   * @throws IOException
+   *         In case of IO error, if the request line is invalid or if one of the limits is exceeded
+   */
+  @Nonnull
+  @Nonempty
+  public String [] readRequest (@Nonnull @WillNotClose final InputStream aIS,
+                                @Nonnull final HttpHeaderMap aTargetHeaders) throws IOException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aTargetHeaders, "TargetHeaders");
+
+    m_nBytesRead = 0;
+
+    // Request line
+    boolean bHasLine;
+    do
+    {
+      bHasLine = _readLine (aIS);
+    } while (bHasLine && m_nLineLen == 0);
+    if (!bHasLine)
+      throw new IOException ("Invalid HTTP Request ()");
+    final String [] ret = _parseRequestLine ();
+
+    // Headers
+    int nHeaderCount = 0;
+    String sPendingName = null;
+    String sPendingValue = null;
+    while (_readLine (aIS) && m_nLineLen > 0)
+    {
+      if (_isWhitespace (m_aLineBuf[0]))
+      {
+        // Continuation of the previous header
+        if (sPendingName == null)
+          continue;
+
+        int nStart = 1;
+        int nEnd = m_nLineLen;
+        while (nStart < nEnd && _isWhitespace (m_aLineBuf[nStart]))
+          nStart++;
+        while (nEnd > nStart && _isWhitespace (m_aLineBuf[nEnd - 1]))
+          nEnd--;
+        if (nEnd > nStart)
+          sPendingValue = sPendingValue.isEmpty () ? _getString (nStart, nEnd)
+                                                   : sPendingValue + ' ' + _getString (nStart, nEnd);
+        continue;
+      }
+
+      if (sPendingName != null)
+        _addHeader (aTargetHeaders, sPendingName, sPendingValue, ++nHeaderCount);
+
+      int nColon = 0;
+      while (nColon < m_nLineLen && m_aLineBuf[nColon] != ':')
+        nColon++;
+      if (nColon == m_nLineLen)
+      {
+        LOGGER.warn ("Ignoring invalid HTTP header line '" + _getString (0, m_nLineLen) + "'");
+        sPendingName = null;
+        continue;
+      }
+
+      int nNameEnd = nColon;
+      while (nNameEnd > 0 && _isWhitespace (m_aLineBuf[nNameEnd - 1]))
+        nNameEnd--;
+      int nValueStart = nColon + 1;
+      int nValueEnd = m_nLineLen;
+      while (nValueStart < nValueEnd && _isWhitespace (m_aLineBuf[nValueStart]))
+        nValueStart++;
+      while (nValueEnd > nValueStart && _isWhitespace (m_aLineBuf[nValueEnd - 1]))
+        nValueEnd--;
+
+      sPendingName = _getString (0, nNameEnd);
+      sPendingValue = _getString (nValueStart, nValueEnd);
+    }
+
+    if (sPendingName != null)
+      _addHeader (aTargetHeaders, sPendingName, sPendingValue, ++nHeaderCount);
+
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxHeaderSize", m_nMaxHeaderSize)
+                                       .append ("MaxHeaderCount", m_nMaxHeaderCount)
+                                       .getToString ();
+  }
+}
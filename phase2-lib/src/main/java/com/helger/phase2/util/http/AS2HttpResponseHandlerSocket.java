@@ -41,8 +41,11 @@ import com.helger.annotation.WillNotClose;
 import com.helger.annotation.style.OverrideOnDemand;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.io.iface.IWriteToStream;
+import com.helger.base.io.stream.NonClosingOutputStream;
 import com.helger.base.io.stream.StreamHelper;
+import com.helger.base.state.ETriState;
 import com.helger.http.CHttp;
+import com.helger.http.CHttpHeader;
 import com.helger.http.EHttpVersion;
 import com.helger.http.header.HttpHeaderMap;
 
@@ -58,6 +61,8 @@ public class AS2HttpResponseHandlerSocket implements IAS2HttpResponseHandler
 {
   private final Socket m_aSocket;
   private final boolean m_bQuoteHeaderValues;
+  private ETriState m_eKeepAlive = ETriState.UNDEFINED;
+  private boolean m_bResponseSent = false;
 
   public AS2HttpResponseHandlerSocket (@Nonnull final Socket aSocket, final boolean bQuoteHeaderValues)
   {
@@ -83,6 +88,45 @@ public class AS2HttpResponseHandlerSocket implements IAS2HttpResponseHandler
     return m_bQuoteHeaderValues;
   }
 
+  /**
+   * @return {@link ETriState#TRUE} if the connection is kept open after the response was sent and a
+   *         <code>Connection: keep-alive</code> header is emitted, {@link ETriState#FALSE} if a
+   *         <code>Connection: close</code> header is emitted and {@link ETriState#UNDEFINED} if no
+   *         <code>Connection</code> header is emitted at all. The default is
+   *         {@link ETriState#UNDEFINED}. In all cases but {@link ETriState#TRUE} the socket output
+   *         stream is closed after the response was sent.
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final ETriState getKeepAlive ()
+  {
+    return m_eKeepAlive;
+  }
+
+  /**
+   * @param eKeepAlive
+   *        The keep-alive state to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @see #getKeepAlive()
+   * @since 6.0.1
+   */
+  @Nonnull
+  public final AS2HttpResponseHandlerSocket setKeepAlive (@Nonnull final ETriState eKeepAlive)
+  {
+    m_eKeepAlive = ValueEnforcer.notNull (eKeepAlive, "KeepAlive");
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if {@link #sendHttpResponse(int, HttpHeaderMap, IWriteToStream)} was
+   *         called at least once, <code>false</code> otherwise.
+   * @since 6.0.1
+   */
+  public final boolean isResponseSent ()
+  {
+    return m_bResponseSent;
+  }
+
   /**
    * @return The HTTP version to use. May not be <code>null</code>.
    */
@@ -108,7 +152,12 @@ public class AS2HttpResponseHandlerSocket implements IAS2HttpResponseHandler
     ValueEnforcer.notNull (aHeaders, "Headers");
     ValueEnforcer.notNull (aData, "Data");
 
-    try (final OutputStream aOS = createOutputStream ())
+    m_bResponseSent = true;
+
+    // In case of keep-alive the socket must stay open
+    final boolean bKeepAlive = m_eKeepAlive.isTrue ();
+    try (final OutputStream aOS = bKeepAlive ? new NonClosingOutputStream (createOutputStream ())
+                                             : createOutputStream ())
     {
       // Send HTTP version and response code
       final String sHttpStatusLine = getHTTPVersion ().getName () +
@@ -120,7 +169,14 @@ public class AS2HttpResponseHandlerSocket implements IAS2HttpResponseHandler
       aOS.write (sHttpStatusLine.getBytes (CHttp.HTTP_CHARSET));
 
       // Add response headers (unify header lines anyway)
-      for (final String sHeaderLine : aHeaders.getAllHeaderLines (true, m_bQuoteHeaderValues))
+      HttpHeaderMap aRealHeaders = aHeaders;
+      if (m_eKeepAlive.isDefined ())
+      {
+        // Don't modify the passed headers
+        aRealHeaders = aHeaders.getClone ();
+        aRealHeaders.setHeader (CHttpHeader.CONNECTION, bKeepAlive ? "keep-alive" : "close");
+      }
+      for (final String sHeaderLine : aRealHeaders.getAllHeaderLines (true, m_bQuoteHeaderValues))
         aOS.write ((sHeaderLine + CHttp.EOL).getBytes (CHttp.HTTP_CHARSET));
 
       // Empty line as separator
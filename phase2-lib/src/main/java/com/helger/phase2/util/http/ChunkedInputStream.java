@@ -32,6 +32,7 @@
  */
 package com.helger.phase2.util.http;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -40,19 +41,45 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.annotation.WillCloseWhenClosed;
 import com.helger.base.io.stream.WrappedInputStream;
+import com.helger.base.string.StringHex;
 
 import jakarta.annotation.Nonnull;
 
 /**
  * Stream to read a chunked body stream. Input stream should be at the beginning of a chunk, i.e. at
  * the body beginning (after the end of headers marker). The resulting stream reads the data through
- * the chunks.
+ * the chunks.<br>
+ * If the underlying stream supports mark/reset, it is read in blocks into a reusable buffer, from
+ * which the chunk headers are parsed and small chunks are copied. When the end of the chunked body is
+ * reached, the underlying stream is positioned exactly after it, so that a following request on a
+ * persistent connection is not consumed. Otherwise the chunk headers are read byte by byte. Large
+ * chunks are always copied directly from the underlying stream.
  *
  * @author Ziv Harpaz
  */
 public class ChunkedInputStream extends WrappedInputStream
 {
+  /**
+   * The maximum length of a single chunk header or trailer line in bytes.
+   *
+   * @since 6.0.1
+   */
+  public static final int MAX_LINE_LENGTH = 4096;
+
   private static final Logger LOGGER = LoggerFactory.getLogger (ChunkedInputStream.class);
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_DEBUG_BYTES = 128;
+
+  /**
+   * Read ahead buffer - only used if the underlying stream supports mark/reset
+   */
+  private final byte [] m_aBuf;
+  private int m_nBufPos = 0;
+  private int m_nBufLimit = 0;
+  /**
+   * The first bytes of the current chunk size line - for debugging only
+   */
+  private final byte [] m_aDebugBuf = new byte [MAX_DEBUG_BYTES];
   /**
    * Number of bytes left in current chunk
    */
@@ -62,42 +89,230 @@ public class ChunkedInputStream extends WrappedInputStream
   public ChunkedInputStream (@Nonnull @WillCloseWhenClosed final InputStream aIS)
   {
     super (aIS);
+    m_aBuf = aIS.markSupported () ? new byte [BUFFER_SIZE] : null;
   }
 
-  @Override
-  public final int read () throws IOException
+  private int _readByte () throws IOException
   {
-    if (m_nLeft < 0)
+    if (m_nBufPos < m_nBufLimit)
+      return m_aBuf[m_nBufPos++] & 0xff;
+
+    final InputStream aIS = getWrappedInputStream ();
+    if (m_aBuf == null)
+      return aIS.read ();
+
+    // Remember the position, so that we can go back to the end of the chunked body
+    aIS.mark (BUFFER_SIZE);
+    final int nRead = aIS.read (m_aBuf, 0, BUFFER_SIZE);
+    if (nRead <= 0)
       return -1;
+    m_nBufPos = 1;
+    m_nBufLimit = nRead;
+    return m_aBuf[0] & 0xff;
+  }
+
+  private static void _checkLineLength (final int nBytesRead) throws IOException
+  {
+    if (nBytesRead > MAX_LINE_LENGTH)
+      throw new IOException ("HTTP chunk header line exceeds the maximum length of " + MAX_LINE_LENGTH + " bytes");
+  }
+
+  /**
+   * Skip up to (and including) the next newline.
+   *
+   * @return The number of bytes skipped, excluding CR LF. -1 if EOF was reached before any byte was
+   *         read.
+   */
+  private int _skipLine () throws IOException
+  {
+    int nBytesRead = 0;
+    int nLineLen = 0;
+    for (;;)
+    {
+      final int b = _readByte ();
+      if (b < 0)
+        return nBytesRead > 0 ? nLineLen : -1;
+      nBytesRead++;
+      _checkLineLength (nBytesRead);
+      if (b == '\n')
+        return nLineLen;
+      if (b != '\r')
+        nLineLen++;
+    }
+  }
+
+  @Nonnull
+  private static String _debugByte (final int n)
+  {
+    if (n >= 0x20 && n <= 0x7e)
+      return "'" + Character.toString ((char) n) + "'";
+    return "0x" + StringHex.getHexStringLeadingZero (n & 0xff, 2);
+  }
 
-    if (m_nLeft == 0)
+  /**
+   * Read the chunk size line (including the newline ending it). Uses the same lenient rules as
+   * {@link HTTPHelper#readChunkLen(InputStream)}: chunk extensions after ';' are ignored and
+   * unsupported characters are skipped with a warning.
+   *
+   * @return Chunk length.
+   * @throws IOException
+   *         In case of a read error or if the chunk length exceeds {@link Integer#MAX_VALUE}
+   */
+  private int _readChunkLen () throws IOException
+  {
+    int nRes = 0;
+    boolean bHeadersStarted = false;
+    boolean bWarningEmitted = false;
+    int nBytesRead = 0;
+    for (;;)
     {
-      final InputStream aIS = getWrappedInputStream ();
-      if (m_bAfterFirstChunk)
+      int b = _readByte ();
+      if (b < 0)
       {
-        // read the CRLF after chunk data
-        HTTPHelper.readTillNextLine (aIS);
+        // We reached the end of the input but got at least one char
+        if (nBytesRead > 0)
+          break;
+        throw new EOFException ("EOF while reading HTTP chunk length");
       }
+
+      if (nBytesRead < MAX_DEBUG_BYTES)
+        m_aDebugBuf[nBytesRead] = (byte) b;
+      nBytesRead++;
+      _checkLineLength (nBytesRead);
+
+      if (b == '\n')
+        break;
+      if (bHeadersStarted || b == '\r')
+        continue;
+
+      if (b >= 'a' && b <= 'f')
+        b -= ('a' - 10);
       else
+        if (b >= 'A' && b <= 'F')
+          b -= ('A' - 10);
+        else
+          if (b >= '0' && b <= '9')
+            b -= '0';
+          else
+            if (b == ';')
+            {
+              // Afterwards, any char may appear until \n
+              bHeadersStarted = true;
+              continue;
+            }
+            else
+            {
+              // Unsupported char
+              if (!bWarningEmitted)
+              {
+                LOGGER.warn ("Found unsupported byte " +
+                             _debugByte (b) +
+                             " when trying to read HTTP chunk length." +
+                             " This will most likely lead to an error processing the incoming AS2 message.");
+                bWarningEmitted = true;
+              }
+              continue;
+            }
+      final long nNewRes = (nRes * 16L) + b;
+      if (nNewRes > Integer.MAX_VALUE)
+        throw new IOException ("The HTTP chunk length exceeds the maximum of " + Integer.MAX_VALUE + " bytes");
+      nRes = (int) nNewRes;
+    }
+
+    if (bWarningEmitted)
+    {
+      final int nDebugLen = Math.min (nBytesRead, MAX_DEBUG_BYTES);
+      // Maximum per byte: ", 0xff" - 6 chars
+      final StringBuilder aSB = new StringBuilder (nDebugLen * 6);
+      for (int i = 0; i < nDebugLen; ++i)
       {
-        m_bAfterFirstChunk = true;
+        if (aSB.length () > 0)
+          aSB.append (", ");
+        aSB.append (_debugByte (m_aDebugBuf[i]));
       }
+      LOGGER.warn ("An incoming AS2 message with HTTP Chunked Encoding had issues reading the 'chunk length'." +
+                   " A total of " +
+                   nBytesRead +
+                   " bytes were read, the determined chunk length is " +
+                   nRes +
+                   ". Processing of the message might fail. " +
+                   (nDebugLen < nBytesRead ? "Partial" : "Full") +
+                   " debug info: " +
+                   aSB.toString ());
+    }
+    return nRes;
+  }
+
+  /**
+   * Move to the next chunk.
+   *
+   * @return <code>true</code> if a chunk with data is available, <code>false</code> if the end of
+   *         the chunked body was reached.
+   */
+  private boolean _nextChunk () throws IOException
+  {
+    if (m_bAfterFirstChunk)
+    {
+      // read the CRLF after chunk data
+      if (_skipLine () < 0)
+        throw new EOFException ("EOF while reading until next newline character");
+    }
+    else
+    {
+      m_bAfterFirstChunk = true;
+    }
+
+    m_nLeft = _readChunkLen ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Read chunk size: " + m_nLeft);
+
+    // check for end of data
+    if (m_nLeft <= 0)
+    {
+      // No more chunks means EOF
+      m_nLeft = -1;
 
-      m_nLeft = HTTPHelper.readChunkLen (aIS);
-      if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("Read chunk size: " + m_nLeft);
+      // Skip the optional trailer headers up to the final empty line
+      while (_skipLine () > 0)
+      {}
 
-      // check for end of data
-      if (m_nLeft <= 0)
+      // Give back what was read ahead
+      if (m_nBufPos < m_nBufLimit)
       {
-        // No more chunks means EOF
-        m_nLeft = -1;
-        // mark end of stream
-        return -1;
+        final InputStream aIS = getWrappedInputStream ();
+        aIS.reset ();
+        aIS.skipNBytes (m_nBufPos);
+        m_nBufPos = m_nBufLimit = 0;
       }
+      return false;
     }
-    m_nLeft--;
-    return super.read ();
+    return true;
+  }
+
+  private void _prematureEOF ()
+  {
+    LOGGER.warn ("Unexpected EOF in HTTP chunk data with " + m_nLeft + " bytes missing");
+    m_nLeft = -1;
+  }
+
+  @Override
+  public final int read () throws IOException
+  {
+    if (m_nLeft < 0)
+      return -1;
+
+    if (m_nLeft == 0 && !_nextChunk ())
+    {
+      // mark end of stream
+      return -1;
+    }
+
+    final int ret = _readByte ();
+    if (ret < 0)
+      _prematureEOF ();
+    else
+      m_nLeft--;
+    return ret;
   }
 
   @Override
@@ -107,41 +322,86 @@ public class ChunkedInputStream extends WrappedInputStream
       return -1;
 
     int nReadCount = 0;
-    int nRealOffset = nOffset;
     while (nLength > nReadCount)
     {
-      if (m_nLeft == 0)
+      if (m_nLeft == 0 && !_nextChunk ())
       {
-        final InputStream aIS = getWrappedInputStream ();
-        if (m_bAfterFirstChunk)
+        // mark end of stream
+        return nReadCount > 0 ? nReadCount : -1;
+      }
+
+      final int nMax = Math.min (nLength - nReadCount, m_nLeft);
+      final int ret;
+      if (m_nBufPos < m_nBufLimit)
+      {
+        // Copy from read ahead buffer
+        ret = Math.min (nMax, m_nBufLimit - m_nBufPos);
+        System.arraycopy (m_aBuf, m_nBufPos, aBuf, nOffset + nReadCount, ret);
+        m_nBufPos += ret;
+      }
+      else
+        if (m_aBuf != null && nMax < BUFFER_SIZE)
         {
-          // read the CRLF after chunk data
-          HTTPHelper.readTillNextLine (aIS);
+          // Small chunk - read ahead to include the next chunk header
+          final int b = _readByte ();
+          if (b < 0)
+            ret = -1;
+          else
+          {
+            aBuf[nOffset + nReadCount] = (byte) b;
+            ret = 1;
+          }
         }
         else
         {
-          m_bAfterFirstChunk = true;
+          // Bulk copy directly from the underlying stream
+          ret = super.read (aBuf, nOffset + nReadCount, nMax);
         }
 
-        m_nLeft = HTTPHelper.readChunkLen (aIS);
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Read chunk size: " + m_nLeft);
-
-        // check for end of data
-        if (m_nLeft <= 0)
-        {
-          // No more chunks means EOF
-          m_nLeft = -1;
-          // mark end of stream
-          return nReadCount > 0 ? nReadCount : -1;
-        }
+      if (ret < 0)
+      {
+        _prematureEOF ();
+        return nReadCount > 0 ? nReadCount : -1;
       }
-
-      final int ret = super.read (aBuf, nRealOffset, Math.min (nLength - nReadCount, m_nLeft));
-      nRealOffset += ret;
       m_nLeft -= ret;
       nReadCount += ret;
     }
     return nReadCount;
   }
+
+  @Override
+  public int available () throws IOException
+  {
+    if (m_nLeft <= 0)
+      return 0;
+    return Math.min ((m_nBufLimit - m_nBufPos) + super.available (), m_nLeft);
+  }
+
+  @Override
+  public long skip (final long n) throws IOException
+  {
+    // Must go through the chunk structure
+    long nSkipped = 0;
+    while (nSkipped < n && read () >= 0)
+      nSkipped++;
+    return nSkipped;
+  }
+
+  @Override
+  public boolean markSupported ()
+  {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark (final int nReadLimit)
+  {
+    // Not supported
+  }
+
+  @Override
+  public synchronized void reset () throws IOException
+  {
+    throw new IOException ("mark/reset not supported");
+  }
 }
@@ -0,0 +1,144 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillCloseWhenClosed;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.stream.WrappedInputStream;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Stream to read a body with a known <code>Content-Length</code>. Exactly the provided number of
+ * bytes is read from the underlying stream, so that nothing after the body is consumed. If the
+ * underlying stream ends early, an {@link EOFException} is thrown.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+public class ContentLengthInputStream extends WrappedInputStream
+{
+  private final long m_nContentLength;
+  private long m_nLeft;
+
+  public ContentLengthInputStream (@Nonnull @WillCloseWhenClosed final InputStream aIS,
+                                   @Nonnegative final long nContentLength)
+  {
+    super (aIS);
+    ValueEnforcer.isGE0 (nContentLength, "ContentLength");
+    m_nContentLength = nContentLength;
+    m_nLeft = nContentLength;
+  }
+
+  /**
+   * @return The total number of bytes this stream delivers.
+   */
+  @Nonnegative
+  public final long getContentLength ()
+  {
+    return m_nContentLength;
+  }
+
+  /**
+   * @return The number of bytes not yet read.
+   */
+  @Nonnegative
+  public final long getRemaining ()
+  {
+    return m_nLeft;
+  }
+
+  @Nonnull
+  private EOFException _createEOF ()
+  {
+    return new EOFException ("Unexpected end of stream after " +
+                             (m_nContentLength - m_nLeft) +
+                             " of " +
+                             m_nContentLength +
+                             " bytes");
+  }
+
+  @Override
+  public final int read () throws IOException
+  {
+    if (m_nLeft <= 0)
+      return -1;
+
+    final int ret = super.read ();
+    if (ret < 0)
+      throw _createEOF ();
+    m_nLeft--;
+    return ret;
+  }
+
+  @Override
+  public final int read (@Nonnull final byte [] aBuf, final int nOffset, final int nLength) throws IOException
+  {
+    if (m_nLeft <= 0)
+      return -1;
+    if (nLength == 0)
+      return 0;
+
+    final int ret = super.read (aBuf, nOffset, (int) Math.min (nLength, m_nLeft));
+    if (ret < 0)
+      throw _createEOF ();
+    m_nLeft -= ret;
+    return ret;
+  }
+
+  @Override
+  public final long skip (final long n) throws IOException
+  {
+    final long ret = super.skip (Math.min (n, m_nLeft));
+    if (ret > 0)
+      m_nLeft -= ret;
+    return ret;
+  }
+
+  @Override
+  public final int available () throws IOException
+  {
+    return (int) Math.min (super.available (), m_nLeft);
+  }
+
+  @Override
+  public boolean markSupported ()
+  {
+    return false;
+  }
+}
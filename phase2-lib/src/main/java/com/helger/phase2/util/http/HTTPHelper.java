@@ -37,7 +37,12 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Locale;
 import java.util.function.Supplier;
 
 import org.slf4j.Logger;
@@ -48,11 +53,13 @@ import com.helger.annotation.WillNotClose;
 import com.helger.annotation.concurrent.GuardedBy;
 import com.helger.annotation.concurrent.ThreadSafe;
 import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.base.CGlobal;
 import com.helger.base.codec.IByteArrayCodec;
 import com.helger.base.codec.IdentityCodec;
 import com.helger.base.concurrent.SimpleReadWriteLock;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.HasInputStream;
 import com.helger.base.string.StringHelper;
 import com.helger.base.string.StringHex;
 import com.helger.base.string.StringParser;
@@ -66,7 +73,12 @@ import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mail.cte.IContentTransferEncoding;
 import com.helger.mail.datasource.ByteArrayDataSource;
 import com.helger.mail.datasource.IExtendedDataSource;
-import com.helger.mail.datasource.InputStreamDataSource;
+import com.helger.mail.datasource.InputStreamProviderDataSource;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.crypto.MIC;
+import com.helger.phase2.disposition.DispositionOptions;
+import com.helger.phase2.exception.AS2Exception;
 import com.helger.phase2.message.IMessage;
 import com.helger.phase2.util.AS2Helper;
 import com.helger.phase2.util.AS2HttpHelper;
@@ -78,6 +90,7 @@ import jakarta.activation.DataSource;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.ContentType;
 
 /**
  * HTTP utility methods.
@@ -101,12 +114,39 @@ public final class HTTPHelper
    * provided)
    */
   public static final String MA_HTTP_ORIGINAL_CONTENT_LENGTH = "HTTP_ORIGINAL_CONTENT_LENGTH";
+  /**
+   * The MIC of the received body, calculated while the body was read. Only present if the
+   * <code>Disposition-Notification-Options</code> header contains a supported MIC algorithm.
+   *
+   * @since 6.0.1
+   */
+  public static final String MA_HTTP_RECEIVED_MIC = "HTTP_RECEIVED_MIC";
+  /**
+   * <code>true</code> if the MIME headers are part of {@link #MA_HTTP_RECEIVED_MIC}.
+   *
+   * @since 6.0.1
+   */
+  public static final String MA_HTTP_RECEIVED_MIC_INCLUDES_HEADERS = "HTTP_RECEIVED_MIC_INCLUDES_HEADERS";
+
+  /**
+   * The default maximum size of a request body with a <code>Content-Length</code>, that is read into
+   * memory. Larger bodies are spooled to a temporary file.
+   *
+   * @since 6.0.1
+   */
+  public static final long DEFAULT_MAX_IN_MEMORY_PAYLOAD_SIZE = 10 * CGlobal.BYTES_PER_MEGABYTE;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (HTTPHelper.class);
+  /** The upper limit for payloads in memory, as Java byte arrays are limited to 2GB */
+  private static final long MAX_BYTE_ARRAY_SIZE = Integer.MAX_VALUE - CGlobal.BYTES_PER_MEGABYTE;
+
+  private static final byte [] EOL_BYTES = AS2IOHelper.getAllAsciiBytes (CHttp.EOL);
 
   private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
   @GuardedBy ("RW_LOCK")
   private static Supplier <? extends IHTTPIncomingDumper> s_aHTTPIncomingDumperFactory = () -> null;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nMaxInMemoryPayloadSize = DEFAULT_MAX_IN_MEMORY_PAYLOAD_SIZE;
 
   static
   {
@@ -126,11 +166,50 @@ public final class HTTPHelper
       AS2IOHelper.getFileOperationManager ().createDirIfNotExisting (aDumpDirectory);
       setHTTPIncomingDumperFactory ( () -> new HTTPIncomingDumperDirectoryBased (aDumpDirectory));
     }
+
+    // Since v6.0.1
+    final String sMaxInMemoryPayloadSize = SystemProperties.getPropertyValueOrNull ("AS2.maxInMemoryPayloadSize");
+    if (StringHelper.isNotEmpty (sMaxInMemoryPayloadSize))
+    {
+      final long nMaxInMemoryPayloadSize = StringParser.parseLong (sMaxInMemoryPayloadSize, -1);
+      if (nMaxInMemoryPayloadSize >= 0)
+        setMaxInMemoryPayloadSize (nMaxInMemoryPayloadSize);
+      else
+        LOGGER.warn ("Ignoring invalid value of system property `AS2.maxInMemoryPayloadSize`: '" +
+                     sMaxInMemoryPayloadSize +
+                     "'");
+    }
   }
 
   private HTTPHelper ()
   {}
 
+  @Nullable
+  private static ECryptoAlgorithmSign _getRequestedMICAlgorithm (@Nonnull final IMessage aMsg)
+  {
+    final String sDispositionOptions = aMsg.getHeader (CHttpHeader.DISPOSITION_NOTIFICATION_OPTIONS);
+    if (StringHelper.isEmpty (sDispositionOptions))
+      return null;
+    try
+    {
+      return DispositionOptions.createFromString (sDispositionOptions).getFirstMICAlg ();
+    }
+    catch (final AS2Exception ex)
+    {
+      // Reported later on
+      return null;
+    }
+  }
+
+  private static boolean _isSMIMEContentType (@Nullable final String sContentType)
+  {
+    final ContentType aContentType = AS2HttpHelper.parseContentType (sContentType);
+    if (aContentType == null)
+      return false;
+    final String sBaseType = aContentType.getBaseType ().toLowerCase (Locale.US);
+    return sBaseType.equals ("multipart/signed") || sBaseType.equals ("application/pkcs7-mime");
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static ICommonsList <String> getAllHTTPHeaderLines (@Nonnull final HttpHeaderMap aHeaders)
@@ -173,6 +252,94 @@ public final class HTTPHelper
     RW_LOCK.writeLocked ( () -> s_aHTTPIncomingDumperFactory = aHttpDumperFactory);
   }
 
+  /**
+   * @return The maximum size in bytes of a request body with a <code>Content-Length</code> that is
+   *         read into memory. Larger bodies are spooled to a temporary file while being read.
+   *         Always &ge; 0.
+   * @since 6.0.1
+   */
+  @Nonnegative
+  public static long getMaxInMemoryPayloadSize ()
+  {
+    return RW_LOCK.readLockedLong ( () -> s_nMaxInMemoryPayloadSize);
+  }
+
+  /**
+   * Set the maximum size in bytes of a request body with a <code>Content-Length</code> that is read
+   * into memory. Larger bodies are spooled to a temporary file while being read. This can also be
+   * configured with the system property <code>AS2.maxInMemoryPayloadSize</code>. The same limit is
+   * used for outgoing payloads from files and streams.
+   *
+   * @param nMaxInMemoryPayloadSize
+   *        The maximum number of bytes to keep in memory. Must be &ge; 0. Use 0 to always spool to
+   *        a temporary file. Values close to or above 2GB are capped, as larger byte arrays cannot
+   *        be created.
+   * @since 6.0.1
+   */
+  public static void setMaxInMemoryPayloadSize (@Nonnegative final long nMaxInMemoryPayloadSize)
+  {
+    ValueEnforcer.isGE0 (nMaxInMemoryPayloadSize, "MaxInMemoryPayloadSize");
+    final long nRealSize = Math.min (nMaxInMemoryPayloadSize, MAX_BYTE_ARRAY_SIZE);
+    RW_LOCK.writeLocked ( () -> s_nMaxInMemoryPayloadSize = nRealSize);
+  }
+
+  /**
+   * Create a data source on a spooled request body. Every call to <code>getInputStream</code>
+   * returns a new stream from the beginning of the temporary file, so that the body can be read
+   * more than once (e.g. for MIC calculation and storage).
+   */
+  @Nonnull
+  private static IExtendedDataSource _createSpooledDataSource (@Nonnull final TempSharedFileInputStream aSharedIS,
+                                                               @Nonnull final IMessage aMsg,
+                                                               @Nullable final String sContentType)
+  {
+    return new InputStreamProviderDataSource (HasInputStream.multiple ( () -> aSharedIS.newStream (0, -1)),
+                                              aMsg.getAS2From () == null ? "" : aMsg.getAS2From (),
+                                              sContentType);
+  }
+
+  /**
+   * Create the digest to calculate the MIC of the received body while reading it. This only works
+   * for the {@link BCCryptoHelper}, because other crypto helpers may calculate the MIC differently.
+   *
+   * @return <code>null</code> if no MIC can be calculated while reading.
+   */
+  @Nullable
+  private static MessageDigest _createReceivedMICDigest (@Nonnull final ECryptoAlgorithmSign eMICAlg,
+                                                         @Nonnull final String sReceivedContentType,
+                                                         final boolean bIncludeHeaders)
+  {
+    if (!(AS2Helper.getCryptoHelper () instanceof final BCCryptoHelper aCryptoHelper))
+      return null;
+
+    try
+    {
+      final MessageDigest ret = MessageDigest.getInstance (eMICAlg.getOID ().getId (),
+                                                           aCryptoHelper.getSecurityProviderName ());
+      if (bIncludeHeaders)
+      {
+        // The received MIME body part only has the Content-Type header - see
+        // AS2ReceiverHandler.handleIncomingMessage
+        ret.update (AS2IOHelper.getAllAsciiBytes (CHttpHeader.CONTENT_TYPE + ": " + sReceivedContentType));
+        ret.update (EOL_BYTES);
+        ret.update (EOL_BYTES);
+      }
+      return ret;
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      LOGGER.warn ("Failed to create MIC digest for " + eMICAlg + " - calculating it later", ex);
+      return null;
+    }
+  }
+
+  @Nonnull
+  private static InputStream _getMICAwareInputStream (@Nonnull final InputStream aIS,
+                                                      @Nullable final MessageDigest aMICDigest)
+  {
+    return aMICDigest == null ? aIS : new DigestInputStream (aIS, aMICDigest);
+  }
+
   /**
    * Read headers and payload from the passed input stream provider. For large file support, return
    * {@link DataSource}. If is on, data is not read.
@@ -215,13 +382,23 @@ public final class HTTPHelper
     // Put received data in a MIME body part
     final String sReceivedContentType = AS2HttpHelper.getCleanContentType (aMsg.getHeader (CHttpHeader.CONTENT_TYPE));
 
+    // Calculate the MIC while reading, if the sender requested one. The
+    // partnership is not yet known, so the headers are included if the content
+    // type indicates a signed, encrypted or compressed message. This matches
+    // AS2Helper.isIncludeHeadersInMICOnReception for consistent partnerships.
+    final ECryptoAlgorithmSign eMICAlg = _getRequestedMICAlgorithm (aMsg);
+    final boolean bMICIncludeHeaders = _isSMIMEContentType (sReceivedContentType);
+    final MessageDigest aMICDigest = eMICAlg == null || sReceivedContentType == null ? null
+                                                                                     : _createReceivedMICDigest (eMICAlg,
+                                                                                                                 sReceivedContentType,
+                                                                                                                 bMICIncludeHeaders);
+
     final byte [] aBytePayload;
     final IExtendedDataSource aPayload;
     final String sContentLength = aMsg.getHeader (CHttpHeader.CONTENT_LENGTH);
     if (sContentLength == null)
     {
       // No "Content-Length" header present
-      final InputStream aRealIS;
       final String sTransferEncoding = aMsg.getHeader (CHttpHeader.TRANSFER_ENCODING);
       if (sTransferEncoding != null)
       {
@@ -238,11 +415,12 @@ public final class HTTPHelper
                           (bHandleChunkedEncodingHere ? "in here as chunked encoding" : "as already processed"));
 
           @WillNotClose
-          final TempSharedFileInputStream aSharedIS = TempSharedFileInputStream.getTempSharedFileInputStream (bHandleChunkedEncodingHere ? new ChunkedInputStream (aIS)
-                                                                                                                                         : aIS,
+          final TempSharedFileInputStream aSharedIS = TempSharedFileInputStream.getTempSharedFileInputStream (_getMICAwareInputStream (bHandleChunkedEncodingHere ? new ChunkedInputStream (aIS)
+                                                                                                                                                                              : aIS,
+                                                                                                                                                   aMICDigest),
                                                                                                               aMsg.getMessageID ());
-          aRealIS = aSharedIS;
           aMsg.setTempSharedFileInputStream (aSharedIS);
+          aPayload = _createSpooledDataSource (aSharedIS, aMsg, sReceivedContentType);
         }
         else
         {
@@ -258,38 +436,58 @@ public final class HTTPHelper
         throw new IOException ("Content-Length is missing and no Transfer-Encoding is specified");
       }
 
-      // Content-length present, or chunked encoding
+      // chunked encoding
       aBytePayload = null;
-      aPayload = new InputStreamDataSource (aRealIS,
-                                            aMsg.getAS2From () == null ? "" : aMsg.getAS2From (),
-                                            sReceivedContentType,
-                                            true);
     }
     else
     {
       // content-length exists
       // Read the message body - no Content-Transfer-Encoding handling
       // Retrieve the message content
-      // FIXME if a value > 2GB comes in, this will fail!!
       final long nContentLength = StringParser.parseLong (sContentLength, -1);
-      if (nContentLength < 0 || nContentLength > Integer.MAX_VALUE)
+      if (nContentLength < 0)
       {
-        // Invalid content length (no int or too big)
+        // Invalid content length (no number or negative)
         sendSimpleHTTPResponse (aResponseHandler, CHttp.HTTP_LENGTH_REQUIRED);
-        throw new IOException ("Content-Length '" +
-                               sContentLength +
-                               "' is invalid. Only values between 0 and " +
-                               Integer.MAX_VALUE +
-                               " are allowed.");
+        throw new IOException ("Content-Length '" + sContentLength + "' is invalid.");
       }
-      aBytePayload = new byte [(int) nContentLength];
 
-      // Closes the original InputStream and that is okay
-      try (final DataInputStream aDataIS = new DataInputStream (aIS))
+      if (nContentLength <= getMaxInMemoryPayloadSize ())
+      {
+        aBytePayload = new byte [(int) nContentLength];
+
+        // Closes the original InputStream and that is okay
+        try (final DataInputStream aDataIS = new DataInputStream (_getMICAwareInputStream (aIS, aMICDigest)))
+        {
+          aDataIS.readFully (aBytePayload);
+        }
+        aPayload = new ByteArrayDataSource (aBytePayload, sReceivedContentType, null);
+      }
+      else
       {
-        aDataIS.readFully (aBytePayload);
+        // Large body - spool it to a temporary file while reading, instead of keeping it in memory
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Spooling HTTP request body of " + nContentLength + " bytes to a temporary file");
+
+        @WillNotClose
+        final TempSharedFileInputStream aSharedIS = TempSharedFileInputStream.getTempSharedFileInputStream (_getMICAwareInputStream (new ContentLengthInputStream (aIS,
+                                                                                                                                                                          nContentLength),
+                                                                                                                                 aMICDigest),
+                                                                                                            aMsg.getMessageID ());
+        aMsg.setTempSharedFileInputStream (aSharedIS);
+        aBytePayload = null;
+        aPayload = _createSpooledDataSource (aSharedIS, aMsg, sReceivedContentType);
       }
-      aPayload = new ByteArrayDataSource (aBytePayload, sReceivedContentType, null);
+    }
+
+    if (aMICDigest != null)
+    {
+      // The body was read completely
+      final MIC aReceivedMIC = new MIC (aMICDigest.digest (), eMICAlg);
+      aMsg.attrs ().putIn (MA_HTTP_RECEIVED_MIC, aReceivedMIC.getAsAS2String ());
+      aMsg.attrs ().putIn (MA_HTTP_RECEIVED_MIC_INCLUDES_HEADERS, bMICIncludeHeaders);
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Calculated MIC while reading the HTTP body: " + aReceivedMIC.getAsAS2String ());
     }
 
     // Dump on demand
@@ -333,21 +531,39 @@ public final class HTTPHelper
       {
         // Decode data if necessary
         final IByteArrayCodec aCodec = aCTE.createCodec ();
-
-        // TODO: Handle decoding when large file support is on
-        if (!(aCodec instanceof IdentityCodec <?>) && aPayload instanceof final ByteArrayDataSource aBADS)
+        if (!(aCodec instanceof IdentityCodec <?>))
         {
-          byte [] aActualBytes = aBADS.directGetBytes ();
-          // Remember original length before continuing
-          final int nOriginalContentLength = aActualBytes.length;
-
           LOGGER.info ("Incoming message uses Content-Transfer-Encoding '" + sContentTransferEncoding + "' - decoding");
-          aActualBytes = aCodec.getDecoded (aActualBytes);
-          aPayload = new ByteArrayDataSource (aActualBytes, aPayload.getContentType (), aPayload.getName ());
+
+          // Remember original length before continuing
+          if (aPayload instanceof final ByteArrayDataSource aBADS)
+            aMsg.attrs ().putIn (MA_HTTP_ORIGINAL_CONTENT_LENGTH, aBADS.directGetBytes ().length);
+
+          // Decode while reading - works for in-memory and spooled payloads
+          // and never holds the encoded and the decoded data at the same time
+          final DataSource aEncodedPayload = aPayload;
+          final String sCTEID = aCTE.getID ();
+          aPayload = new InputStreamProviderDataSource (HasInputStream.multiple ( () -> {
+            try
+            {
+              return AS2IOHelper.getContentTransferEncodingAwareInputStream (aEncodedPayload.getInputStream (), sCTEID);
+            }
+            catch (final IOException ex)
+            {
+              throw new UncheckedIOException (ex);
+            }
+            catch (final MessagingException ex)
+            {
+              throw new IllegalStateException ("Failed to decode Content-Transfer-Encoding '" + sCTEID + "'", ex);
+            }
+          }), StringHelper.getNotNull (aEncodedPayload.getName ()), aEncodedPayload.getContentType ());
 
           // Remember that we potentially did something
           aMsg.attrs ().putIn (MA_HTTP_ORIGINAL_CONTENT_TRANSFER_ENCODING, sContentTransferEncoding);
-          aMsg.attrs ().putIn (MA_HTTP_ORIGINAL_CONTENT_LENGTH, nOriginalContentLength);
+
+          // The MIC calculated while reading covers the encoded data
+          aMsg.attrs ().remove (MA_HTTP_RECEIVED_MIC);
+          aMsg.attrs ().remove (MA_HTTP_RECEIVED_MIC_INCLUDES_HEADERS);
         }
       }
     }
@@ -368,6 +584,28 @@ public final class HTTPHelper
    */
   public static void sendSimpleHTTPResponse (@Nonnull final IAS2HttpResponseHandler aResponseHandler,
                                              @Nonnegative final int nResponseCode) throws IOException
+  {
+    sendSimpleHTTPResponse (aResponseHandler, nResponseCode, new HttpHeaderMap ());
+  }
+
+  /**
+   * Send a simple HTTP response that only contains the HTTP status code and the respective
+   * descriptive text, using the provided headers.
+   *
+   * @param aResponseHandler
+   *        The response handler to be used.
+   * @param nResponseCode
+   *        The HTTP response code to use.
+   * @param aHeaders
+   *        The HTTP headers to send. May not be <code>null</code>. The <code>Content-Length</code>
+   *        header is set by this method.
+   * @throws IOException
+   *         In case sending fails for whatever reason
+   * @since 6.0.1
+   */
+  public static void sendSimpleHTTPResponse (@Nonnull final IAS2HttpResponseHandler aResponseHandler,
+                                             @Nonnegative final int nResponseCode,
+                                             @Nonnull final HttpHeaderMap aHeaders) throws IOException
   {
     try (final NonBlockingByteArrayOutputStream aData = new NonBlockingByteArrayOutputStream ())
     {
@@ -376,8 +614,9 @@ public final class HTTPHelper
                                CHttp.getHttpResponseMessage (nResponseCode) +
                                CHttp.EOL;
       aData.write (sHTTPLine.getBytes (CHttp.HTTP_CHARSET));
+      aHeaders.setContentLength (aData.size ());
 
-      aResponseHandler.sendHttpResponse (nResponseCode, new HttpHeaderMap (), aData);
+      aResponseHandler.sendHttpResponse (nResponseCode, aHeaders, aData);
     }
   }
 
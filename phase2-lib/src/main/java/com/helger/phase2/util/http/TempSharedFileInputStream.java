@@ -37,6 +37,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -128,7 +129,7 @@ public class TempSharedFileInputStream extends SharedFileInputStream
    *        name to use in the temporary file to link it to the delivered message. May be null
    * @return The created {@link File}
    * @throws IOException
-   *         in case of IO error
+   *         in case of IO error, e.g. if the input stream ends prematurely
    */
   @Nonnull
   protected static File storeContentToTempFile (@Nonnull @WillClose final InputStream aIS, @Nonnull final String sName)
@@ -140,6 +141,7 @@ public class TempSharedFileInputStream extends SharedFileInputStream
                                                                                                          : "tmp");
     final File aDestFile = Files.createTempFile ("AS2TempSharedFileIS", sSuffix).toFile ();
 
+    final AtomicReference <IOException> aCopyError = new AtomicReference <> ();
     try (final FileOutputStream aOS = new FileOutputStream (aDestFile))
     {
       final MutableLong aCount = new MutableLong (0);
@@ -149,11 +151,20 @@ public class TempSharedFileInputStream extends SharedFileInputStream
                   .to (aOS)
                   .closeTo (false)
                   .copyByteCount (aCount)
+                  .exceptionCallback (aCopyError::set)
                   .build ();
       // Avoid logging in tests
       if (aCount.longValue () > 1024L)
         LOGGER.info (aCount.longValue () + " bytes copied to " + aDestFile.getAbsolutePath ());
     }
+
+    final IOException aError = aCopyError.get ();
+    if (aError != null)
+    {
+      // E.g. a truncated body - don't keep partial content
+      AS2IOHelper.getFileOperationManager ().deleteFileIfExisting (aDestFile);
+      throw aError;
+    }
     return aDestFile;
   }
 
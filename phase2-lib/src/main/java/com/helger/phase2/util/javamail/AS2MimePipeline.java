@@ -0,0 +1,414 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.javamail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Enumeration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.CGlobal;
+import com.helger.base.concurrent.BasicThreadFactory;
+import com.helger.base.concurrent.BasicThreadFactoryBuilder;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.http.CHttpHeader;
+import com.helger.phase2.util.AS2ThreadHelper;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.annotation.Nonnull;
+import jakarta.mail.Header;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * A pipeline of MIME body part transformations (like compress, sign and encrypt), where each stage
+ * is a stream transformer. All stages but the last one run on their own thread (a virtual thread if
+ * supported) and are connected to the next stage via a bounded pipe. The last stage writes directly
+ * to the target stream on the calling thread. So e.g. the transmission of a message can start while
+ * later bytes are still being compressed, signed and encrypted.<br>
+ * Each stage receives its input as a {@link MimeBodyPart}, whose content can only be read once.
+ * Each stage must write the raw (not transfer encoded) content of its output, which is described by
+ * the headers provided when adding the stage.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class AS2MimePipeline
+{
+  /** The default size of the pipe buffer between two stages */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+
+  /**
+   * A single transformation stage.
+   */
+  @FunctionalInterface
+  public interface IStageWriter
+  {
+    /**
+     * Transform the input and write the raw result content.
+     *
+     * @param aInput
+     *        The input MIME body part. Never <code>null</code>.
+     * @param aOS
+     *        The output stream to write to. Never <code>null</code>. Must not be closed.
+     * @throws Exception
+     *         In case of error
+     */
+    void writeTo (@Nonnull MimeBodyPart aInput, @Nonnull @WillNotClose OutputStream aOS) throws Exception;
+  }
+
+  private static final class Stage
+  {
+    private final String m_sName;
+    private final InternetHeaders m_aHeaders;
+    private final IStageWriter m_aWriter;
+
+    Stage (@Nonnull final String sName, @Nonnull final InternetHeaders aHeaders, @Nonnull final IStageWriter aWriter)
+    {
+      m_sName = sName;
+      m_aHeaders = aHeaders;
+      m_aWriter = aWriter;
+    }
+  }
+
+  /**
+   * The pipe between two stages. If the writing stage fails, the reading stage receives an
+   * {@link IOException} instead of a premature end of stream.
+   */
+  private static final class StagePipe extends PipedInputStream
+  {
+    private final String m_sStageName;
+    private final AtomicReference <Exception> m_aError = new AtomicReference <> ();
+
+    StagePipe (@Nonnull final String sStageName, @Nonnull final PipedOutputStream aSrc, final int nBufferSize)
+                                                                                                              throws IOException
+    {
+      super (aSrc, nBufferSize);
+      m_sStageName = sStageName;
+    }
+
+    void setError (@Nonnull final Exception ex)
+    {
+      m_aError.compareAndSet (null, ex);
+    }
+
+    private void _checkError () throws IOException
+    {
+      final Exception ex = m_aError.get ();
+      if (ex != null)
+        throw new IOException ("Pipeline stage '" + m_sStageName + "' failed", ex);
+    }
+
+    @Override
+    public synchronized int read () throws IOException
+    {
+      final int ret = super.read ();
+      if (ret < 0)
+        _checkError ();
+      return ret;
+    }
+
+    @Override
+    public synchronized int read (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      final int ret = super.read (aBuf, nOfs, nLen);
+      if (ret < 0)
+        _checkError ();
+      return ret;
+    }
+  }
+
+  /**
+   * A data source that can be read exactly once.
+   */
+  private static final class StageDataSource implements DataSource
+  {
+    private final String m_sName;
+    private final String m_sContentType;
+    private final AtomicBoolean m_aConsumed = new AtomicBoolean (false);
+    private final InputStream m_aIS;
+
+    StageDataSource (@Nonnull final String sName, @Nonnull final String sContentType, @Nonnull final InputStream aIS)
+    {
+      m_sName = sName;
+      m_sContentType = sContentType;
+      m_aIS = aIS;
+    }
+
+    public String getName ()
+    {
+      return m_sName;
+    }
+
+    public String getContentType ()
+    {
+      return m_sContentType;
+    }
+
+    public InputStream getInputStream () throws IOException
+    {
+      if (!m_aConsumed.compareAndSet (false, true))
+        throw new IOException ("The output of pipeline stage '" + m_sName + "' can only be read once");
+      return m_aIS;
+    }
+
+    public OutputStream getOutputStream () throws IOException
+    {
+      throw new UnsupportedOperationException ();
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS2MimePipeline.class);
+  private static final ThreadFactory THREAD_FACTORY;
+
+  static
+  {
+    final BasicThreadFactoryBuilder aTFBuilder = BasicThreadFactory.builder ()
+                                                                   .namingPattern ("AS2MimePipeline-%d")
+                                                                   .daemon (true);
+    if (AS2ThreadHelper.isVirtualThreadSupported ())
+      aTFBuilder.wrappedFactory (AS2ThreadHelper.getVirtualThreadFactory ());
+    THREAD_FACTORY = aTFBuilder.build ();
+  }
+
+  private final MimeBodyPart m_aSrcPart;
+  private final int m_nBufferSize;
+  private final ICommonsList <Stage> m_aStages = new CommonsArrayList <> ();
+
+  /**
+   * Constructor
+   *
+   * @param aSrcPart
+   *        The source MIME body part that is the input of the first stage. May not be
+   *        <code>null</code>.
+   * @param nBufferSize
+   *        The size of the pipe buffer between two stages in bytes. Must be &gt; 0.
+   */
+  public AS2MimePipeline (@Nonnull final MimeBodyPart aSrcPart, @Nonnegative final int nBufferSize)
+  {
+    ValueEnforcer.notNull (aSrcPart, "SrcPart");
+    ValueEnforcer.isGT0 (nBufferSize, "BufferSize");
+    m_aSrcPart = aSrcPart;
+    m_nBufferSize = nBufferSize;
+  }
+
+  /**
+   * Add a new stage at the end of the pipeline.
+   *
+   * @param sName
+   *        The stage name for logging and thread naming. May neither be <code>null</code> nor
+   *        empty.
+   * @param aOutputHeaders
+   *        The MIME headers describing the output of the stage. Must contain at least the
+   *        "Content-Type" header. May not be <code>null</code>.
+   * @param aWriter
+   *        The stage writer. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public AS2MimePipeline addStage (@Nonnull @Nonempty final String sName,
+                                   @Nonnull final InternetHeaders aOutputHeaders,
+                                   @Nonnull final IStageWriter aWriter)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    ValueEnforcer.notNull (aOutputHeaders, "OutputHeaders");
+    ValueEnforcer.notNull (aOutputHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null), "OutputHeaders.ContentType");
+    ValueEnforcer.notNull (aWriter, "Writer");
+    m_aStages.add (new Stage (sName, aOutputHeaders, aWriter));
+    return this;
+  }
+
+  /**
+   * @return The source MIME body part that is the input of the first stage. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public MimeBodyPart getSourcePart ()
+  {
+    return m_aSrcPart;
+  }
+
+  /**
+   * @return The number of contained stages. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getStageCount ()
+  {
+    return m_aStages.size ();
+  }
+
+  /**
+   * @return The Content-Type of the pipeline output. This is the Content-Type of the last stage or
+   *         the one of the source part if no stage is present.
+   * @throws MessagingException
+   *         In case the Content-Type of the source part cannot be determined
+   */
+  @Nonnull
+  public String getContentType () throws MessagingException
+  {
+    final Stage aLastStage = m_aStages.getLastOrNull ();
+    return aLastStage != null ? aLastStage.m_aHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null)
+                              : m_aSrcPart.getContentType ();
+  }
+
+  @Nonnull
+  private static MimeBodyPart _createStageOutputPart (@Nonnull final Stage aStage, @Nonnull final InputStream aIS)
+                                                                                                                 throws MessagingException
+  {
+    final String sContentType = aStage.m_aHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null);
+    final MimeBodyPart ret = new MimeBodyPart ();
+    ret.setDataHandler (new DataHandler (new StageDataSource (aStage.m_sName, sContentType, aIS)));
+    // Must be set after the data handler - keep the order of the headers
+    final Enumeration <Header> aHeaders = aStage.m_aHeaders.getAllHeaders ();
+    while (aHeaders.hasMoreElements ())
+    {
+      final Header aHeader = aHeaders.nextElement ();
+      ret.addHeader (aHeader.getName (), aHeader.getValue ());
+    }
+    return ret;
+  }
+
+  /**
+   * Run all stages and write the raw content of the last stage to the provided output stream. This
+   * method can only be called once.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. The stream is not closed.
+   * @throws IOException
+   *         In case writing fails or if any stage fails
+   */
+  public void writeTo (@Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    final Stage aLastStage = m_aStages.getLastOrNull ();
+    if (aLastStage == null)
+    {
+      // Nothing to transform
+      try
+      {
+        m_aSrcPart.getDataHandler ().writeTo (aOS);
+      }
+      catch (final MessagingException ex)
+      {
+        throw new IOException ("Failed to write the source part", ex);
+      }
+      return;
+    }
+
+    final ICommonsList <Thread> aThreads = new CommonsArrayList <> ();
+    final ICommonsList <StagePipe> aPipes = new CommonsArrayList <> ();
+    try
+    {
+      MimeBodyPart aInput = m_aSrcPart;
+      for (final Stage aStage : m_aStages)
+      {
+        if (aStage == aLastStage)
+          break;
+
+        final PipedOutputStream aPOS = new PipedOutputStream ();
+        final StagePipe aPipe = new StagePipe (aStage.m_sName, aPOS, m_nBufferSize);
+        aPipes.add (aPipe);
+
+        final MimeBodyPart aStageInput = aInput;
+        final Thread aThread = THREAD_FACTORY.newThread ( () -> {
+          try
+          {
+            aStage.m_aWriter.writeTo (aStageInput, aPOS);
+          }
+          catch (final Exception ex)
+          {
+            // Remember the error before the stream is closed
+            aPipe.setError (ex);
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug ("Pipeline stage '" + aStage.m_sName + "' failed", ex);
+          }
+          finally
+          {
+            StreamHelper.close (aPOS);
+          }
+        });
+        aThreads.add (aThread);
+        aThread.start ();
+
+        aInput = _createStageOutputPart (aStage, aPipe);
+      }
+
+      // The last stage runs in the current thread
+      aLastStage.m_aWriter.writeTo (aInput, aOS);
+      aOS.flush ();
+    }
+    catch (final IOException ex)
+    {
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      throw new IOException ("Pipeline stage '" + aLastStage.m_sName + "' failed", ex);
+    }
+    finally
+    {
+      // Unblock all writers, in case the reading side stopped early
+      for (final StagePipe aPipe : aPipes)
+        StreamHelper.close (aPipe);
+
+      for (final Thread aThread : aThreads)
+        try
+        {
+          aThread.join ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.javamail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.http.CHttpHeader;
+import com.helger.io.file.FileHelper;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ResourceHelper;
+
+import jakarta.activation.DataHandler;
+import jakarta.annotation.Nonnull;
+import jakarta.mail.Header;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * A {@link MimeBodyPart} whose (already decoded) content is stored in a spool file. The file is
+ * usually a temporary file of an {@link AS2ResourceHelper}, so it is deleted when the resource
+ * helper is closed. Senders can use the file directly for transmission, without
+ * copying the content again.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+public class AS2SpooledMimeBodyPart extends MimeBodyPart
+{
+  private final File m_aSpoolFile;
+
+  /**
+   * @param aSpoolFile
+   *        The file containing the content. May not be <code>null</code>.
+   * @param sContentType
+   *        The Content-Type of the content. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper that closes the spool file handle. May not be <code>null</code>.
+   * @throws IOException
+   *         If the spool file cannot be read
+   * @throws MessagingException
+   *         If setting the content fails
+   */
+  public AS2SpooledMimeBodyPart (@Nonnull final File aSpoolFile,
+                                 @Nonnull final String sContentType,
+                                 @Nonnull final AS2ResourceHelper aResHelper) throws IOException, MessagingException
+  {
+    ValueEnforcer.notNull (aSpoolFile, "SpoolFile");
+    ValueEnforcer.notNull (sContentType, "ContentType");
+    m_aSpoolFile = aSpoolFile;
+    setDataHandler (new DataHandler (AS2IOHelper.getFileDataSource (aSpoolFile, sContentType, aResHelper)));
+    // Must be set after the data handler
+    setHeader (CHttpHeader.CONTENT_TYPE, sContentType);
+  }
+
+  /**
+   * @return The spool file containing the content as passed in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final File getSpoolFile ()
+  {
+    return m_aSpoolFile;
+  }
+
+  /**
+   * Create a copy of the passed MIME body part, whose content is stored in a new temporary file of
+   * the passed resource helper. All headers are copied as well. This is needed if the source part
+   * depends on resources that are released before the copy is used.
+   *
+   * @param aSrcPart
+   *        The MIME body part to copy. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper that owns the spool file of the copy. May not be <code>null</code>.
+   * @return The copy and never <code>null</code>. It is valid until the resource helper is closed.
+   * @throws IOException
+   *         If the content cannot be copied
+   * @throws MessagingException
+   *         If the source part cannot be read
+   */
+  @Nonnull
+  public static AS2SpooledMimeBodyPart createCopy (@Nonnull final MimeBodyPart aSrcPart,
+                                                   @Nonnull final AS2ResourceHelper aResHelper) throws IOException,
+                                                                                                MessagingException
+  {
+    ValueEnforcer.notNull (aSrcPart, "SrcPart");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    // Store the decoded content - the Content-Transfer-Encoding header is copied below
+    final File aSpoolFile = aResHelper.createTempFile ();
+    try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile))
+    {
+      aSrcPart.getDataHandler ().writeTo (aOS);
+    }
+
+    final AS2SpooledMimeBodyPart ret = new AS2SpooledMimeBodyPart (aSpoolFile, aSrcPart.getContentType (), aResHelper);
+    final Enumeration <Header> aHeaders = aSrcPart.getAllHeaders ();
+    while (aHeaders.hasMoreElements ())
+    {
+      final Header aHeader = aHeaders.nextElement ();
+      if (!aHeader.getName ().equalsIgnoreCase (CHttpHeader.CONTENT_TYPE))
+        ret.addHeader (aHeader.getName (), aHeader.getValue ());
+    }
+    return ret;
+  }
+}
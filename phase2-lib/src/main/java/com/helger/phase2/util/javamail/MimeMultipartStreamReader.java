@@ -0,0 +1,292 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.javamail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Reads the body of a MIME multipart entity part by part from a stream, without parsing or
+ * buffering the parts. The raw bytes of each part (headers and content) are copied exactly as
+ * received, which makes it possible to calculate digests over the parts while they are streamed
+ * somewhere else. Delimiters may be preceded by CR LF or by LF only.
+ *
+ * @author Philip Helger
+ * @since 6.0.1
+ */
+@NotThreadSafe
+public class MimeMultipartStreamReader
+{
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream m_aIS;
+  // "\n--" + boundary
+  private final byte [] m_aDelimiter;
+  private final byte [] m_aBuf;
+  private int m_nPos = 0;
+  private int m_nLimit = 0;
+  private boolean m_bLastPartRead = false;
+
+  /**
+   * Constructor
+   *
+   * @param aIS
+   *        The stream with the multipart body (without the headers of the multipart entity itself).
+   *        May not be <code>null</code>.
+   * @param sBoundary
+   *        The boundary as taken from the Content-Type. May neither be <code>null</code> nor empty.
+   */
+  public MimeMultipartStreamReader (@Nonnull @WillNotClose final InputStream aIS, @Nonnull @Nonempty final String sBoundary)
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notEmpty (sBoundary, "Boundary");
+    m_aIS = aIS;
+    m_aDelimiter = ("\n--" + sBoundary).getBytes (StandardCharsets.ISO_8859_1);
+    m_aBuf = new byte [Math.max (BUFFER_SIZE, m_aDelimiter.length * 2)];
+  }
+
+  /**
+   * Make sure that at least the provided number of bytes is available in the buffer.
+   *
+   * @return <code>false</code> if EOF was reached before
+   */
+  private boolean _ensure (@Nonnegative final int nBytes) throws IOException
+  {
+    if (m_nLimit - m_nPos >= nBytes)
+      return true;
+
+    // Compact
+    final int nAvailable = m_nLimit - m_nPos;
+    System.arraycopy (m_aBuf, m_nPos, m_aBuf, 0, nAvailable);
+    m_nPos = 0;
+    m_nLimit = nAvailable;
+
+    while (m_nLimit < nBytes)
+    {
+      final int nRead = m_aIS.read (m_aBuf, m_nLimit, m_aBuf.length - m_nLimit);
+      if (nRead < 0)
+        return false;
+      m_nLimit += nRead;
+    }
+    return true;
+  }
+
+  private boolean _isDelimiterAt (final int nIndex)
+  {
+    for (int i = 0; i < m_aDelimiter.length; ++i)
+      if (m_aBuf[nIndex + i] != m_aDelimiter[i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Skip the rest of the delimiter line and remember if it was the close delimiter.
+   */
+  private void _readDelimiterLineEnd () throws IOException
+  {
+    if (!_ensure (2))
+      throw new EOFException ("Unexpected end of MIME multipart after a delimiter");
+    if (m_aBuf[m_nPos] == '-' && m_aBuf[m_nPos + 1] == '-')
+      m_bLastPartRead = true;
+
+    // Skip transport padding up to and including the line end
+    while (true)
+    {
+      if (!_ensure (1))
+      {
+        if (m_bLastPartRead)
+          return;
+        throw new EOFException ("Unexpected end of MIME multipart after a delimiter");
+      }
+      if (m_aBuf[m_nPos++] == '\n')
+        return;
+    }
+  }
+
+  /**
+   * Check if the delimiter ends at the provided index - i.e. it is followed by "--", by transport
+   * padding, by a line end or by the end of the stream. Otherwise the boundary is only the prefix
+   * of a content line.
+   */
+  private boolean _isDelimiterEnd (final int nIndex)
+  {
+    if (nIndex >= m_nLimit)
+      return true;
+    final byte b = m_aBuf[nIndex];
+    if (b == '-')
+      return nIndex + 1 < m_nLimit && m_aBuf[nIndex + 1] == '-';
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  /**
+   * Copy everything up to the next delimiter. The line end before the delimiter belongs to the
+   * delimiter and is not copied.
+   */
+  private void _copyToDelimiter (@Nullable final OutputStream aOS, final long nMaxBytes) throws IOException
+  {
+    final int nDelimLen = m_aDelimiter.length;
+    long nCopied = 0;
+    while (true)
+    {
+      // Two more bytes to check the end of the delimiter
+      final boolean bMore = _ensure (nDelimLen + 3);
+      if (!bMore && m_nLimit - m_nPos < nDelimLen)
+        throw new EOFException ("Unexpected end of MIME multipart - missing delimiter");
+
+      final int nLastStart = bMore ? m_nLimit - nDelimLen - 2 : m_nLimit - nDelimLen;
+      for (int i = m_nPos; i <= nLastStart; ++i)
+        if (m_aBuf[i] == '\n' && _isDelimiterAt (i) && _isDelimiterEnd (i + nDelimLen))
+        {
+          int nEnd = i;
+          if (nEnd > m_nPos && m_aBuf[nEnd - 1] == '\r')
+            nEnd--;
+          nCopied += nEnd - m_nPos;
+          if (nCopied > nMaxBytes)
+            throw new IOException ("MIME part exceeds the maximum size of " + nMaxBytes + " bytes");
+          if (aOS != null)
+            aOS.write (m_aBuf, m_nPos, nEnd - m_nPos);
+          m_nPos = i + nDelimLen;
+          return;
+        }
+
+      if (!bMore)
+        throw new EOFException ("Unexpected end of MIME multipart - missing delimiter");
+
+      // Not found - keep everything that may be the beginning of a delimiter including the CR
+      nCopied += nLastStart - m_nPos;
+      if (nCopied > nMaxBytes)
+        throw new IOException ("MIME part exceeds the maximum size of " + nMaxBytes + " bytes");
+      if (aOS != null)
+        aOS.write (m_aBuf, m_nPos, nLastStart - m_nPos);
+      m_nPos = nLastStart;
+    }
+  }
+
+  /**
+   * Skip everything up to and including the first delimiter line. Must be called exactly once
+   * before the first part is read.
+   *
+   * @throws IOException
+   *         In case of read error or if no delimiter is found
+   */
+  public void skipPreamble () throws IOException
+  {
+    // The body may start directly with the delimiter, without the preceding line end
+    final int nFirstLen = m_aDelimiter.length - 1;
+    boolean bAtStart = _ensure (nFirstLen);
+    if (bAtStart)
+      for (int i = 0; i < nFirstLen; ++i)
+        if (m_aBuf[m_nPos + i] != m_aDelimiter[i + 1])
+        {
+          bAtStart = false;
+          break;
+        }
+    if (bAtStart)
+      m_nPos += nFirstLen;
+    else
+      _copyToDelimiter (null, Long.MAX_VALUE);
+    _readDelimiterLineEnd ();
+  }
+
+  /**
+   * @return <code>true</code> if the close delimiter was read, so that no more parts are available.
+   */
+  public boolean isLastPartRead ()
+  {
+    return m_bLastPartRead;
+  }
+
+  /**
+   * Copy the raw bytes (headers and content) of the next part to the provided stream.
+   *
+   * @param aOS
+   *        The stream to write to. May be <code>null</code> to skip the part.
+   * @throws IOException
+   *         In case of read or write error or if the stream ends before the next delimiter
+   */
+  public void copyNextPart (@Nullable @WillNotClose final OutputStream aOS) throws IOException
+  {
+    if (m_bLastPartRead)
+      throw new IOException ("The MIME multipart contains no more parts");
+    _copyToDelimiter (aOS, Long.MAX_VALUE);
+    _readDelimiterLineEnd ();
+  }
+
+  /**
+   * Read the raw bytes (headers and content) of the next part into memory.
+   *
+   * @param nMaxBytes
+   *        The maximum number of bytes the part may have.
+   * @return The bytes of the part. Never <code>null</code>.
+   * @throws IOException
+   *         In case of read error or if the part is too large
+   */
+  @Nonnull
+  public byte [] readNextPart (@Nonnegative final int nMaxBytes) throws IOException
+  {
+    if (m_bLastPartRead)
+      throw new IOException ("The MIME multipart contains no more parts");
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      _copyToDelimiter (aBAOS, nMaxBytes);
+      _readDelimiterLineEnd ();
+      return aBAOS.toByteArray ();
+    }
+  }
+
+  /**
+   * Read everything after the close delimiter until the end of the stream.
+   *
+   * @throws IOException
+   *         In case of read error
+   */
+  public void skipEpilogue () throws IOException
+  {
+    m_nPos = m_nLimit;
+    while (m_aIS.read (m_aBuf, 0, m_aBuf.length) >= 0)
+    {}
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.junit.Test;
+
+import com.helger.phase2.util.cert.AS2KeyStoreHelper;
+
+/**
+ * Test class for class {@link AS2CertificateInfoCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2CertificateInfoCacheTest
+{
+  @Test
+  public void testBasic () throws Exception
+  {
+    final X509Certificate aCert = AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer");
+    assertNotNull (aCert);
+
+    AS2CertificateInfoCache.clear ();
+    final AS2CertificateInfo aInfo = AS2CertificateInfoCache.getCertificateInfo (aCert);
+    assertNotNull (aInfo);
+    assertSame (aCert, aInfo.getCertificate ());
+    assertEquals (aCert.getNotAfter (), aInfo.getNotAfter ());
+    assertEquals (aCert.getNotBefore ().getTime (), aInfo.getNotBeforeMillis ());
+    assertEquals (64, aInfo.getFingerprintSHA256Hex ().length ());
+    assertFalse (aInfo.isExpired ());
+    assertTrue (aInfo.isExpiredAt (aInfo.getNotAfterMillis () + 1));
+    aInfo.checkValidity ();
+
+    // Cached by certificate object - the fingerprint cache is not touched
+    final long nCertHits = AS2CertificateInfoCache.getCertificateCache ().getHitCount ();
+    final long nHits = AS2CertificateInfoCache.getCache ().getHitCount ();
+    final long nMisses = AS2CertificateInfoCache.getCache ().getMissCount ();
+    assertSame (aInfo, AS2CertificateInfoCache.getCertificateInfo (aCert));
+    assertEquals (nCertHits + 1, AS2CertificateInfoCache.getCertificateCache ().getHitCount ());
+    assertEquals (nHits, AS2CertificateInfoCache.getCache ().getHitCount ());
+    assertEquals (nMisses, AS2CertificateInfoCache.getCache ().getMissCount ());
+
+    // Same certificate via holder - no conversion needed
+    final X509CertificateHolder aHolder = new X509CertificateHolder (aCert.getEncoded ());
+    assertSame (aInfo, AS2CertificateInfoCache.getCertificateInfo (aHolder, null));
+    assertEquals (nHits + 1, AS2CertificateInfoCache.getCache ().getHitCount ());
+
+    // A different security provider is a different entry
+    final AS2CertificateInfo aInfoSUN = AS2CertificateInfoCache.getCertificateInfo (aHolder, "SUN");
+    assertTrue (aInfoSUN != aInfo);
+    assertTrue (aInfo.isSameCertificate (aInfoSUN));
+    assertSame (aInfoSUN, AS2CertificateInfoCache.getCertificateInfo (aHolder, "SUN"));
+
+    // After clearing, a new but equivalent object is created
+    AS2CertificateInfoCache.clear ();
+    final AS2CertificateInfo aInfo2 = AS2CertificateInfoCache.getCertificateInfo (aHolder, null);
+    assertTrue (aInfo2 != aInfo);
+    assertTrue (aInfo.isSameCertificate (aInfo2));
+    assertEquals (aCert, aInfo2.getCertificate ());
+  }
+}
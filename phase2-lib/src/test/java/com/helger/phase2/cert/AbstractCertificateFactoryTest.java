@@ -0,0 +1,149 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+
+import com.helger.phase2.util.cert.AS2KeyStoreHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+/**
+ * Test class for class {@link AbstractCertificateFactory}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractCertificateFactoryTest
+{
+  private static final String PATH = "src/test/resources/external/mendelson/key3.pfx";
+
+  @Test
+  public void testPrivateKeyIndex () throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ())
+                                       .getKeyStore ();
+    final PredefinedCertificateFactory aCF = new PredefinedCertificateFactory (aKS);
+    aCF.setPassword ("test");
+    aCF.reinitKeyStore ();
+    assertTrue (aCF.getKeyStoreSnapshot ().isComplete ());
+    assertEquals (1, aCF.getKeyStoreSnapshot ().getCertificateCount ());
+    assertEquals (1, aCF.getKeyStoreSnapshot ().getPrivateKeyCount ());
+
+    final X509Certificate aCert = aCF.getCertificate ("key3");
+    final PrivateKey aKey = aCF.getPrivateKey (aCert);
+    assertNotNull (aKey);
+    // Unwrapped key is cached
+    assertSame (aKey, aCF.getPrivateKey (aCert));
+
+    // Adding a certificate rebuilds the index
+    final X509Certificate aOtherCert = AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer");
+    aCF.addCertificate ("key4", aOtherCert, false);
+    assertEquals (2, aCF.getKeyStoreSnapshot ().getCertificateCount ());
+    assertEquals (aOtherCert, aCF.getCertificate ("key4"));
+    assertEquals (aKey, aCF.getPrivateKey (aCert));
+    try
+    {
+      aCF.getPrivateKey (aOtherCert);
+      fail ();
+    }
+    catch (final AS2KeyNotFoundException ex)
+    {
+      // expected - no key for this certificate
+    }
+
+    // Removing the certificate removes the key as well
+    aCF.removeCertificate ("key3");
+    try
+    {
+      aCF.getPrivateKey (aCert);
+      fail ();
+    }
+    catch (final AS2KeyNotFoundException ex)
+    {
+      // expected
+    }
+
+    aCF.clearCertificates ();
+    assertEquals (0, aCF.getCertificates ().size ());
+  }
+
+  @Test
+  public void testSnapshotIsCreatedOnDemand () throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ())
+                                       .getKeyStore ();
+    final PredefinedCertificateFactory aCF = new PredefinedCertificateFactory (aKS);
+    aCF.setPassword ("test");
+    aCF.reinitKeyStore ();
+    final AS2KeyStoreSnapshot aSnapshot = aCF.getKeyStoreSnapshot ();
+    assertSame (aSnapshot, aCF.getKeyStoreSnapshot ());
+
+    // Many modifications only create a single new snapshot
+    final X509Certificate aOtherCert = AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer");
+    for (int i = 0; i < 50; ++i)
+      aCF.addCertificate ("bulk" + i, aOtherCert, false);
+    final AS2KeyStoreSnapshot aBulkSnapshot = aCF.getKeyStoreSnapshot ();
+    assertNotSame (aSnapshot, aBulkSnapshot);
+    assertSame (aBulkSnapshot, aCF.getKeyStoreSnapshot ());
+    assertEquals (51, aBulkSnapshot.getCertificateCount ());
+    assertEquals (1, aBulkSnapshot.getPrivateKeyCount ());
+  }
+
+  @Test
+  public void testGetKeyStoreInvalidatesSnapshot () throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ())
+                                       .getKeyStore ();
+    final PredefinedCertificateFactory aCF = new PredefinedCertificateFactory (aKS);
+    aCF.setPassword ("test");
+    aCF.reinitKeyStore ();
+    assertTrue (aCF.getCertificates ().containsKey ("key3"));
+
+    // Modify the key store directly
+    aCF.getKeyStore ().deleteEntry ("key3");
+    assertFalse (aCF.getCertificates ().containsKey ("key3"));
+    assertEquals (0, aCF.getKeyStoreSnapshot ().getCertificateCount ());
+  }
+}
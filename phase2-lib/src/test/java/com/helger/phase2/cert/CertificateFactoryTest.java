@@ -0,0 +1,231 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+
+import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.processor.DefaultMessageProcessor;
+import com.helger.phase2.session.AS2Session;
+import com.helger.phase2.util.cert.AS2KeyStoreHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link CertificateFactory}.
+ *
+ * @author Philip Helger
+ */
+public final class CertificateFactoryTest
+{
+  private static final String SOURCE_PATH = "src/test/resources/external/mendelson/key3.pfx";
+  private static final long WATCH_TIMEOUT_MILLIS = 20_000;
+
+  @Nonnull
+  private static File _createKeyStoreFile (@Nonnull final String sName) throws Exception
+  {
+    final File aFile = new File ("target/test-keystores/" + sName);
+    Files.createDirectories (aFile.getParentFile ().toPath ());
+    Files.copy (new File (SOURCE_PATH).toPath (), aFile.toPath (), StandardCopyOption.REPLACE_EXISTING);
+    return aFile;
+  }
+
+  @Nonnull
+  private static CertificateFactory _createFactory (@Nonnull final File aFile) throws Exception
+  {
+    final CertificateFactory aCF = new CertificateFactory ();
+    aCF.setFilename (aFile.getPath ());
+    aCF.setPassword ("test");
+    aCF.reinitKeyStore ();
+    return aCF;
+  }
+
+  private static boolean _waitForReload (@Nonnull final CertificateFactory aCF) throws InterruptedException
+  {
+    final long nEnd = System.currentTimeMillis () + WATCH_TIMEOUT_MILLIS;
+    while (aCF.getReloadCount () == 0 && System.currentTimeMillis () < nEnd)
+      Thread.sleep (50);
+    return aCF.getReloadCount () > 0;
+  }
+
+  @Test
+  public void testReloadKeyStore () throws Exception
+  {
+    final File aFile = new File ("target/test-keystores/certificate-factory-reload.p12");
+    Files.createDirectories (aFile.getParentFile ().toPath ());
+    Files.copy (new File ("src/test/resources/external/mendelson/key3.pfx").toPath (),
+                aFile.toPath (),
+                StandardCopyOption.REPLACE_EXISTING);
+
+    final CertificateFactory aCF = new CertificateFactory ();
+    aCF.setFilename (aFile.getPath ());
+    aCF.setPassword ("test");
+    aCF.setSaveChangesToFile (false);
+    aCF.reinitKeyStore ();
+    // The key entry and the certificate of the issuer
+    assertEquals (2, aCF.getEntryCount ());
+    assertEquals (0, aCF.getReloadCount ());
+    assertEquals (0, aCF.getLastReloadMillis ());
+
+    final X509Certificate aCert = aCF.getCertificate ("key3");
+    final AS2KeyStoreSnapshot aSnapshot = aCF.getKeyStoreSnapshot ();
+
+    // Valid reload
+    aCF.reloadKeyStore ();
+    assertEquals (1, aCF.getReloadCount ());
+    assertEquals (0, aCF.getReloadFailureCount ());
+    assertTrue (aCF.getLastReloadMillis () > 0);
+    assertEquals (2, aCF.getEntryCount ());
+    assertNotSame (aSnapshot, aCF.getKeyStoreSnapshot ());
+    assertEquals (aCert, aCF.getCertificate ("key3"));
+
+    // Invalid file - previous key store stays in use
+    final AS2KeyStoreSnapshot aValidSnapshot = aCF.getKeyStoreSnapshot ();
+    Files.writeString (aFile.toPath (), "no keystore", StandardCharsets.ISO_8859_1);
+    try
+    {
+      aCF.reloadKeyStore ();
+      fail ();
+    }
+    catch (final AS2Exception ex)
+    {
+      // expected
+    }
+    assertEquals (1, aCF.getReloadCount ());
+    assertEquals (1, aCF.getReloadFailureCount ());
+    assertSame (aValidSnapshot, aCF.getKeyStoreSnapshot ());
+    assertEquals (aCert, aCF.getCertificate ("key3"));
+  }
+
+  @Test
+  public void testKeyStoreWatcherReloadsChangedFile () throws Exception
+  {
+    final File aFile = _createKeyStoreFile ("certificate-factory-watch.p12");
+    final CertificateFactory aCF = _createFactory (aFile);
+    aCF.setSaveChangesToFile (false);
+    assertEquals (2, aCF.getEntryCount ());
+
+    aCF.startKeyStoreWatcher ();
+    try
+    {
+      assertTrue (aCF.isKeyStoreWatcherRunning ());
+
+      // Change the file from the outside
+      final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, SOURCE_PATH, "test".toCharArray ())
+                                         .getKeyStore ();
+      aKS.setCertificateEntry ("key4",
+                               AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer"));
+      try (final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ())
+      {
+        aKS.store (aBAOS, "test".toCharArray ());
+        Files.write (aFile.toPath (), aBAOS.toByteArray ());
+      }
+
+      assertTrue ("Key store was not reloaded within " + WATCH_TIMEOUT_MILLIS + " ms", _waitForReload (aCF));
+      assertEquals (3, aCF.getEntryCount ());
+    }
+    finally
+    {
+      aCF.stopKeyStoreWatcher ();
+    }
+    assertFalse (aCF.isKeyStoreWatcherRunning ());
+  }
+
+  @Test
+  public void testKeyStoreWatcherIgnoresOwnChanges () throws Exception
+  {
+    final File aFile = _createKeyStoreFile ("certificate-factory-watch-own.p12");
+    final CertificateFactory aCF = _createFactory (aFile);
+    aCF.setSaveChangesToFile (true);
+
+    aCF.startKeyStoreWatcher ();
+    try
+    {
+      // Saved to the file
+      aCF.addCertificate ("key4",
+                          AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer"),
+                          false);
+      assertEquals (3, aCF.getEntryCount ());
+
+      // Longer than the reload delay
+      Thread.sleep (1_500);
+      assertEquals (0, aCF.getReloadCount ());
+      assertEquals (0, aCF.getReloadFailureCount ());
+    }
+    finally
+    {
+      aCF.stopKeyStoreWatcher ();
+    }
+  }
+
+  @Test
+  public void testStopActiveModulesStopsKeyStoreWatcher () throws Exception
+  {
+    final File aFile = _createKeyStoreFile ("certificate-factory-watch-stop.p12");
+    final AS2Session aSession = new AS2Session ();
+    final CertificateFactory aCF = new CertificateFactory ();
+    aCF.setFilename (aFile.getPath ());
+    aCF.setPassword ("test");
+    aCF.setReloadOnChange (true);
+    aCF.initDynamicComponent (aSession, null);
+    aSession.setCertificateFactory (aCF);
+    assertTrue (aCF.isKeyStoreWatcherRunning ());
+
+    final DefaultMessageProcessor aProcessor = new DefaultMessageProcessor ();
+    aProcessor.initDynamicComponent (aSession, null);
+    aSession.setMessageProcessor (aProcessor);
+
+    // Application shutdown
+    aProcessor.stopActiveModules ();
+    assertFalse (aCF.isKeyStoreWatcherRunning ());
+    for (final Thread aThread : Thread.getAllStackTraces ().keySet ())
+      assertFalse (aThread.getName ().equals ("AS2KeyStoreWatcher") && aThread.isAlive ());
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.cert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+
+import com.helger.io.file.FileHelper;
+import com.helger.phase2.util.AS2Helper;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.security.keystore.EKeyStoreType;
+
+/**
+ * Test class for class {@link DirectoryCertificateFactory}.
+ *
+ * @author Philip Helger
+ */
+public final class DirectoryCertificateFactoryTest
+{
+  @Test
+  public void testAddGetRemove () throws Exception
+  {
+    final File aDir = new File ("target/test-certdir");
+    AS2IOHelper.getFileOperationManager ().deleteDirRecursiveIfExisting (aDir);
+
+    final KeyStore aKS;
+    try (final InputStream aIS = FileHelper.getInputStream (new File ("src/test/resources/external/mendelson/key3.pfx")))
+    {
+      aKS = AS2Helper.getCryptoHelper ().loadKeyStore (EKeyStoreType.PKCS12, aIS, "test".toCharArray ());
+    }
+    final X509Certificate aCert = (X509Certificate) aKS.getCertificate ("key3");
+    final PrivateKey aKey = (PrivateKey) aKS.getKey ("key3", "test".toCharArray ());
+
+    final DirectoryCertificateFactory aCF = new DirectoryCertificateFactory ();
+    aCF.setDirectory (aDir.getPath ());
+    aCF.setPassword ("test");
+    aCF.reloadPrivateKeys ();
+    assertTrue (aCF.getCertificates ().isEmpty ());
+
+    // Alias with characters that are not allowed in filenames
+    aCF.addCertificate ("partner/a:b", aCert, false);
+    aCF.addPrivateKey ("partner/a:b", aKey, "test");
+    try
+    {
+      aCF.addCertificate ("partner/a:b", aCert, false);
+      fail ();
+    }
+    catch (final AS2CertificateExistsException ex)
+    {
+      // expected
+    }
+    assertEquals (aCert, aCF.getCertificate ("partner/a:b"));
+    assertEquals (1, aCF.getCertificates ().size ());
+
+    // A new instance reads lazily from disk
+    final DirectoryCertificateFactory aCF2 = new DirectoryCertificateFactory ();
+    aCF2.setDirectory (aDir.getPath ());
+    aCF2.setPassword ("test");
+    aCF2.reloadPrivateKeys ();
+    assertEquals (0, aCF2.getCache ().size ());
+    assertEquals (aCert, aCF2.getCertificate ("partner/a:b"));
+    assertEquals (1, aCF2.getCache ().size ());
+    assertNotNull (aCF2.getPrivateKey (aCert));
+
+    aCF2.removeCertificate ("partner/a:b");
+    assertTrue (aCF2.getCertificates ().isEmpty ());
+    try
+    {
+      aCF2.getCertificate ("partner/a:b");
+      fail ();
+    }
+    catch (final AS2CertificateNotFoundException ex)
+    {
+      // expected
+    }
+    try
+    {
+      aCF2.getPrivateKey (aCert);
+      fail ();
+    }
+    catch (final AS2KeyNotFoundException ex)
+    {
+      // expected
+    }
+  }
+}
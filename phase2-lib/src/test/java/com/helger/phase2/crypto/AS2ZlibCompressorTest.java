@@ -0,0 +1,110 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.bouncycastle.cms.CMSCompressedDataParser;
+import org.bouncycastle.cms.CMSCompressedDataStreamGenerator;
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.StreamHelper;
+
+/**
+ * Test class for class {@link AS2ZlibCompressor}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2ZlibCompressorTest
+{
+  private static void _testRoundTrip (final AS2CompressionSettings aSettings) throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 20_000; ++i)
+      aSB.append ("Line ").append (i).append ("\r\n");
+    final byte [] aData = aSB.toString ().getBytes (StandardCharsets.ISO_8859_1);
+
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    try (final OutputStream aOS = new CMSCompressedDataStreamGenerator ().open (aBAOS,
+                                                                               ECompressionType.ZLIB.createOutputCompressor (aSettings)))
+    {
+      aOS.write (aData);
+    }
+
+    final CMSCompressedDataParser aParser = new CMSCompressedDataParser (aBAOS.toByteArray ());
+    try (final InputStream aIS = aParser.getContent (ECompressionType.ZLIB.getInputExpanderProvider (aSettings))
+                                        .getContentStream ())
+    {
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aIS));
+    }
+  }
+
+  @Test
+  public void testDefault () throws Exception
+  {
+    _testRoundTrip (new AS2CompressionSettings ());
+  }
+
+  @Test
+  public void testCustom () throws Exception
+  {
+    for (final ECompressionStrategy eStrategy : ECompressionStrategy.values ())
+      _testRoundTrip (new AS2CompressionSettings ().setLevel (9)
+                                                   .setStrategy (eStrategy)
+                                                   .setCompressionBufferSize (1024)
+                                                   .setDecompressionBufferSize (100));
+  }
+
+  @Test
+  public void testParallel () throws Exception
+  {
+    _testRoundTrip (new AS2CompressionSettings ().setParallelThreads (3).setParallelBlockSize (10_000));
+    _testRoundTrip (new AS2CompressionSettings ().setLevel (1).setParallelThreads (1));
+  }
+
+  @Test
+  public void testExpanderProviderReuse ()
+  {
+    final AS2CompressionSettings aSettings = new AS2CompressionSettings ();
+    assertSame (AS2ZlibExpanderProvider.DEFAULT, ECompressionType.ZLIB.getInputExpanderProvider (aSettings));
+    aSettings.setDecompressionBufferSize (1234);
+    assertNotSame (AS2ZlibExpanderProvider.DEFAULT, ECompressionType.ZLIB.getInputExpanderProvider (aSettings));
+  }
+}
@@ -51,8 +51,12 @@ import org.slf4j.LoggerFactory;
 import com.helger.base.debug.GlobalDebug;
 import com.helger.base.exception.InitializationException;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.collection.commons.ICommonsOrderedMap;
 import com.helger.http.CHttpHeader;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.cert.AS2CertificateInfoCache;
 import com.helger.phase2.util.AS2Helper;
 import com.helger.phase2.util.AS2HttpHelper;
 import com.helger.phase2.util.AS2ResourceHelper;
@@ -101,6 +105,32 @@ public final class BCCryptoHelperTest
       }
   }
 
+  @Test
+  public void testCalculateMICs () throws Exception
+  {
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText ("Hello world");
+
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final ICommonsList <ECryptoAlgorithmSign> aAlgos = new CommonsArrayList <> (ECryptoAlgorithmSign.values ());
+    // Duplicates and null are ignored
+    aAlgos.add (ECryptoAlgorithmSign.DIGEST_SHA_256);
+    aAlgos.add (null);
+
+    for (int nIncludeHeaders = 0; nIncludeHeaders < 2; ++nIncludeHeaders)
+    {
+      final boolean bIncludeHeaders = nIncludeHeaders == 1;
+      final ICommonsOrderedMap <ECryptoAlgorithmSign, MIC> aMICs = aCryptoHelper.calculateMICs (aPart,
+                                                                                                 aAlgos,
+                                                                                                 bIncludeHeaders);
+      assertEquals (ECryptoAlgorithmSign.values ().length, aMICs.size ());
+      for (final ECryptoAlgorithmSign eAlgo : ECryptoAlgorithmSign.values ())
+        assertEquals (aCryptoHelper.calculateMIC (aPart, eAlgo, bIncludeHeaders), aMICs.get (eAlgo));
+    }
+
+    assertTrue (aCryptoHelper.calculateMICs (aPart, new CommonsArrayList <> (), true).isEmpty ());
+  }
+
   @Test
   public void testSignWithAllAlgorithms () throws Exception
   {
@@ -151,6 +181,82 @@ public final class BCCryptoHelperTest
     }
   }
 
+  @Test
+  public void testSignAndVerifyUseCaches () throws Exception
+  {
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText ("Hello world");
+
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final X509Certificate aCert = (X509Certificate) PKE.getCertificate ();
+    AS2CertificateInfoCache.clear ();
+    final long nFingerprintMisses = AS2CertificateInfoCache.getCache ().getMissCount ();
+    try (AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      for (int i = 0; i < 3; ++i)
+      {
+        final MimeBodyPart aSigned = aCryptoHelper.sign (aPart,
+                                                         aCert,
+                                                         PKE.getPrivateKey (),
+                                                         ECryptoAlgorithmSign.DIGEST_SHA_256,
+                                                         true,
+                                                         false,
+                                                         false,
+                                                         EContentTransferEncoding.BASE64);
+        aCryptoHelper.verify (aSigned, aCert, false, false, null, aResHelper);
+      }
+    }
+
+    // Only the first call creates the objects
+    assertEquals (1, aCryptoHelper.getSignedAttributeCache ().getMissCount ());
+    assertEquals (2, aCryptoHelper.getSignedAttributeCache ().getHitCount ());
+    assertEquals (1, aCryptoHelper.getCertStoreCache ().getMissCount ());
+    assertEquals (2, aCryptoHelper.getCertStoreCache ().getHitCount ());
+    assertEquals (1, aCryptoHelper.getVerifierCache ().getMissCount ());
+    assertEquals (2, aCryptoHelper.getVerifierCache ().getHitCount ());
+    assertEquals (1, aCryptoHelper.getDigestCalculatorProviderCache ().size ());
+    // The fingerprint of the certificate was calculated only once
+    assertEquals (nFingerprintMisses + 1, AS2CertificateInfoCache.getCache ().getMissCount ());
+
+    aCryptoHelper.clearCaches ();
+    assertEquals (0, aCryptoHelper.getVerifierCache ().size ());
+  }
+
+  @Test
+  public void testSignStreamingWithAllAlgorithms () throws Exception
+  {
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final X509Certificate aCert = (X509Certificate) PKE.getCertificate ();
+    try (AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      for (final EContentTransferEncoding eCTE : EContentTransferEncoding.values ())
+        for (final ECryptoAlgorithmSign eAlgo : ECryptoAlgorithmSign.values ())
+        {
+          final MimeBodyPart aPart = new MimeBodyPart ();
+          aPart.setText ("Hello world");
+
+          final MimeBodyPart aSigned = aCryptoHelper.signStreaming (aPart,
+                                                                    aCert,
+                                                                    PKE.getPrivateKey (),
+                                                                    eAlgo,
+                                                                    true,
+                                                                    eAlgo.isRFC3851Algorithm (),
+                                                                    false,
+                                                                    eCTE,
+                                                                    aResHelper);
+          assertNotNull (aSigned);
+
+          final String sExpectedStart = "multipart/signed; protocol=\"application/pkcs7-signature\"; micalg=" +
+                                        eAlgo.getMICAlgorithmID () +
+                                        "; \r\n\tboundary=\"----=_Part";
+          assertTrue (aSigned.getContentType ().startsWith (sExpectedStart));
+
+          // Verify with the regular parser
+          aCryptoHelper.verify (aSigned, aCert, false, true, null, aResHelper);
+        }
+    }
+  }
+
   @Test
   public void testSignWithAllCTEs () throws Exception
   {
@@ -369,6 +475,41 @@ public final class BCCryptoHelperTest
     }
   }
 
+  @Test
+  public void testEncryptStreamingAndDecrypt () throws Exception
+  {
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final X509Certificate aCert = (X509Certificate) PKE.getCertificate ();
+    try (AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      for (final ECryptoAlgorithmCrypt eAlgo : ECryptoAlgorithmCrypt.values ())
+      {
+        final MimeBodyPart aPart = new MimeBodyPart ();
+        aPart.setText ("Hello world");
+
+        final MimeBodyPart aEncrypted = aCryptoHelper.encryptStreaming (aPart,
+                                                                        aCert,
+                                                                        eAlgo,
+                                                                        EContentTransferEncoding.BASE64,
+                                                                        aResHelper);
+        assertNotNull (aEncrypted);
+        assertArrayEquals (new String [] { BCCryptoHelper.CONTENT_TYPE_ENVELOPED_DATA },
+                           aEncrypted.getHeader (CHttpHeader.CONTENT_TYPE));
+        assertArrayEquals (new String [] { "attachment; filename=\"smime.p7m\"" },
+                           aEncrypted.getHeader (CHttpHeader.CONTENT_DISPOSITION));
+        assertTrue (aCryptoHelper.isEncrypted (aEncrypted));
+
+        // Decrypt with the regular parser
+        final MimeBodyPart aDecrypted = aCryptoHelper.decrypt (aEncrypted,
+                                                               aCert,
+                                                               PKE.getPrivateKey (),
+                                                               false,
+                                                               aResHelper);
+        assertEquals ("Hello world", aDecrypted.getContent ());
+      }
+    }
+  }
+
   @Test
   public void testEncryptWithAllCTEs () throws Exception
   {
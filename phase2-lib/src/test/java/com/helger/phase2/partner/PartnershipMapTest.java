@@ -0,0 +1,169 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.partner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.typeconvert.collection.StringMap;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link PartnershipMap}.
+ *
+ * @author Philip Helger
+ */
+public final class PartnershipMapTest
+{
+  @Nonnull
+  private static Partnership _create (@Nonnull final String sName,
+                                      @Nonnull final String sSenderAS2ID,
+                                      @Nonnull final String sReceiverAS2ID)
+  {
+    final Partnership ret = new Partnership (sName);
+    ret.setSenderAS2ID (sSenderAS2ID);
+    ret.setReceiverAS2ID (sReceiverAS2ID);
+    ret.setSenderEmail (sSenderAS2ID + "@example.org");
+    ret.setReceiverEmail (sReceiverAS2ID + "@example.org");
+    return ret;
+  }
+
+  @Nonnull
+  private static StringMap _ids (@Nonnull final String sKey, @Nonnull final String sValue)
+  {
+    final StringMap ret = new StringMap ();
+    ret.putIn (sKey, sValue);
+    return ret;
+  }
+
+  @Test
+  public void testGetPartnershipByID ()
+  {
+    final PartnershipMap aMap = new PartnershipMap ();
+    final Partnership p1 = _create ("p1", "a", "b");
+    final Partnership p2 = _create ("p2", "a", "c");
+    final Partnership p3 = _create ("p3", "a", "b");
+    p3.setSenderX509Alias ("alias-a");
+    assertTrue (aMap.addPartnership (p1).isChanged ());
+    assertTrue (aMap.addPartnership (p2).isChanged ());
+    assertTrue (aMap.addPartnership (p3).isChanged ());
+
+    // By AS2 ID - the first match wins
+    assertSame (p1, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                             _ids (CPartnershipIDs.PID_AS2, "b")));
+    assertSame (p2, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                             _ids (CPartnershipIDs.PID_AS2, "c")));
+    assertNull (aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "b"),
+                                         _ids (CPartnershipIDs.PID_AS2, "a")));
+
+    // Additional IDs are verified on the candidates
+    final StringMap aSenderIDs = _ids (CPartnershipIDs.PID_AS2, "a");
+    aSenderIDs.putIn (CPartnershipIDs.PID_X509_ALIAS, "alias-a");
+    assertSame (p3, aMap.getPartnershipByID (aSenderIDs, _ids (CPartnershipIDs.PID_AS2, "b")));
+
+    // By email
+    assertSame (p2,
+                aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_EMAIL, "a@example.org"),
+                                         _ids (CPartnershipIDs.PID_EMAIL, "c@example.org")));
+
+    // Mixed IDs use the fallback
+    assertSame (p2,
+                aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                         _ids (CPartnershipIDs.PID_EMAIL, "c@example.org")));
+    assertNull (aMap.getPartnershipByID (new StringMap (), _ids (CPartnershipIDs.PID_AS2, "b")));
+
+    // Index is updated upon removal and overwrite
+    assertTrue (aMap.removePartnership (p1).isChanged ());
+    assertSame (p3, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                             _ids (CPartnershipIDs.PID_AS2, "b")));
+
+    final Partnership p2New = _create ("p2", "x", "y");
+    aMap.setPartnership (p2New);
+    assertNull (aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                         _ids (CPartnershipIDs.PID_AS2, "c")));
+    assertSame (p2New, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "x"),
+                                                _ids (CPartnershipIDs.PID_AS2, "y")));
+
+    final PartnershipMap aMap2 = new PartnershipMap ();
+    aMap2.setPartnerships (aMap);
+    assertSame (p2New, aMap2.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "x"),
+                                                 _ids (CPartnershipIDs.PID_AS2, "y")));
+  }
+
+  @Test
+  public void testGetPartnershipByIDModifiedInPlace ()
+  {
+    final PartnershipMap aMap = new PartnershipMap ();
+    final Partnership p1 = _create ("p1", "a", "b");
+    assertTrue (aMap.addPartnership (p1).isChanged ());
+
+    // Modify the IDs without updating the index
+    p1.setSenderAS2ID ("x");
+    p1.setReceiverAS2ID ("y");
+    assertSame (p1, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "x"),
+                                             _ids (CPartnershipIDs.PID_AS2, "y")));
+    assertNull (aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                         _ids (CPartnershipIDs.PID_AS2, "b")));
+  }
+
+  @Test
+  public void testIndexMaintenance ()
+  {
+    final PartnershipMap aMap = new PartnershipMap ();
+    final Partnership p1 = _create ("p1", "a", "b");
+    final Partnership p2 = _create ("p2", "a", "b");
+    assertTrue (aMap.addPartnership (p1).isChanged ());
+    assertTrue (aMap.addPartnership (p2).isChanged ());
+    // AS2 ID and email pair
+    assertEquals (2, aMap.getIndexedIDPairCount ());
+
+    // Overwriting keeps the position
+    final Partnership p1New = _create ("p1", "a", "b");
+    aMap.setPartnership (p1New);
+    assertSame (p1New, aMap.getPartnershipByID (_ids (CPartnershipIDs.PID_AS2, "a"),
+                                                _ids (CPartnershipIDs.PID_AS2, "b")));
+    assertEquals (2, aMap.getIndexedIDPairCount ());
+
+    // Removing a partnership modified in place leaves no stale index entries
+    p1New.setSenderAS2ID ("x");
+    p2.setSenderAS2ID ("y");
+    assertTrue (aMap.removePartnership (p1New).isChanged ());
+    assertTrue (aMap.removePartnership (p2).isChanged ());
+    assertEquals (0, aMap.getIndexedIDPairCount ());
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.receiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.helger.base.state.ESuccess;
+import com.helger.http.CHttp;
+import com.helger.http.CHttpHeader;
+import com.helger.phase2.exception.AS2Exception;
+import com.helger.phase2.processor.receiver.net.AbstractReceiverHandler;
+import com.helger.phase2.processor.receiver.net.INetModuleHandler;
+import com.helger.phase2.util.http.AS2HttpResponseHandlerSocket;
+import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.http.IAS2HttpRequestDataProvider;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link AbstractActiveNetModule}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractActiveNetModuleTest
+{
+  private static final String REQUEST = "POST /as2 HTTP/1.1\r\n" + "Content-Length: 5\r\n" + "\r\n" + "hello";
+  private static final int SO_TIMEOUT_MILLIS = 10_000;
+
+  /**
+   * A module answering every request with HTTP 200, after the optional gate was opened.
+   */
+  private static final class MockNetModule extends AbstractActiveNetModule
+  {
+    private final List <Integer> m_aClientPorts = new CopyOnWriteArrayList <> ();
+    private final CountDownLatch m_aEntered = new CountDownLatch (1);
+    private CountDownLatch m_aGate;
+
+    @Override
+    @Nonnull
+    public INetModuleHandler createHandler ()
+    {
+      return new AbstractReceiverHandler ()
+      {
+        @Override
+        protected ESuccess handleRequest (@Nonnull final AbstractActiveNetModule aOwner,
+                                          @Nonnull final Socket aSocket,
+                                          @Nonnull final IAS2HttpRequestDataProvider aRDP,
+                                          @Nonnull final AS2HttpResponseHandlerSocket aResponseHandler)
+        {
+          try
+          {
+            m_aClientPorts.add (Integer.valueOf (aSocket.getPort ()));
+            m_aEntered.countDown ();
+            if (m_aGate != null)
+              m_aGate.await (SO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+            final int nContentLength = Integer.parseInt (aRDP.getHttpHeaderMap ()
+                                                             .getFirstHeaderValue (CHttpHeader.CONTENT_LENGTH));
+            aRDP.getHttpInputStream ().readNBytes (nContentLength);
+            HTTPHelper.sendSimpleHTTPResponse (aResponseHandler, CHttp.HTTP_OK);
+            return ESuccess.SUCCESS;
+          }
+          catch (final IOException | InterruptedException ex)
+          {
+            return ESuccess.FAILURE;
+          }
+        }
+      };
+    }
+  }
+
+  private static int _getFreePort () throws IOException
+  {
+    try (final ServerSocket aSS = new ServerSocket (0))
+    {
+      return aSS.getLocalPort ();
+    }
+  }
+
+  @Nonnull
+  private static Socket _connect (final int nPort) throws IOException
+  {
+    final Socket ret = new Socket (InetAddress.getLoopbackAddress (), nPort);
+    ret.setSoTimeout (SO_TIMEOUT_MILLIS);
+    return ret;
+  }
+
+  @Nonnull
+  private static String _readLine (@Nonnull final InputStream aIS) throws IOException
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    int n;
+    while ((n = aIS.read ()) != '\n')
+    {
+      if (n < 0)
+        throw new EOFException ("Connection closed after '" + aBAOS.toString (StandardCharsets.ISO_8859_1) + "'");
+      if (n != '\r')
+        aBAOS.write (n);
+    }
+    return aBAOS.toString (StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Read a complete HTTP response including the body.
+   *
+   * @return The status line and all header lines in lower case, separated by newlines.
+   */
+  @Nonnull
+  private static String _readResponse (@Nonnull final InputStream aIS) throws IOException
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    int nContentLength = 0;
+    String sLine;
+    while (!(sLine = _readLine (aIS)).isEmpty ())
+    {
+      final String sLC = sLine.toLowerCase (Locale.ROOT);
+      if (sLC.startsWith ("content-length:"))
+        nContentLength = Integer.parseInt (sLC.substring ("content-length:".length ()).trim ());
+      aSB.append (sLC).append ('\n');
+    }
+    if (aIS.readNBytes (nContentLength).length != nContentLength)
+      throw new EOFException ("Response body is incomplete");
+    return aSB.toString ();
+  }
+
+  private static void _send (@Nonnull final Socket aSocket, @Nonnull final String sRequest) throws IOException
+  {
+    final OutputStream aOS = aSocket.getOutputStream ();
+    aOS.write (sRequest.getBytes (StandardCharsets.ISO_8859_1));
+    aOS.flush ();
+  }
+
+  private static void _testKeepAliveReusesConnection (final boolean bNio) throws IOException, AS2Exception
+  {
+    final MockNetModule aModule = new MockNetModule ();
+    aModule.setPort (_getFreePort ());
+    aModule.setNio (bNio);
+    aModule.setKeepAlive (true);
+    aModule.setMaxConnections (2);
+    aModule.doStart ();
+    try (final Socket aSocket = _connect (aModule.getPort ()))
+    {
+      final InputStream aIS = aSocket.getInputStream ();
+      for (int i = 0; i < 3; ++i)
+      {
+        _send (aSocket, REQUEST);
+        final String sResponse = _readResponse (aIS);
+        assertTrue (sResponse, sResponse.startsWith ("http/1.1 200 "));
+        assertTrue (sResponse, sResponse.contains ("\nconnection: keep-alive\n"));
+      }
+
+      // All requests were received on the same connection
+      final Integer aClientPort = Integer.valueOf (aSocket.getLocalPort ());
+      assertEquals (List.of (aClientPort, aClientPort, aClientPort), aModule.m_aClientPorts);
+    }
+    finally
+    {
+      aModule.doStop ();
+    }
+  }
+
+  @Test
+  public void testKeepAliveReusesConnection () throws Exception
+  {
+    _testKeepAliveReusesConnection (false);
+  }
+
+  @Test
+  public void testKeepAliveReusesConnectionNio () throws Exception
+  {
+    _testKeepAliveReusesConnection (true);
+  }
+
+  @Test
+  public void testServiceUnavailableWhenSaturated () throws Exception
+  {
+    final MockNetModule aModule = new MockNetModule ();
+    aModule.setPort (_getFreePort ());
+    aModule.setMaxConnections (1);
+    aModule.setConnectionQueueSize (0);
+    aModule.setConnectionRejectPolicy (EConnectionRejectPolicy.SERVICE_UNAVAILABLE);
+    aModule.setConnectionRetryAfter (7);
+    aModule.m_aGate = new CountDownLatch (1);
+    aModule.doStart ();
+    try (final Socket aBusy = _connect (aModule.getPort ()))
+    {
+      // Occupy the only worker
+      _send (aBusy, REQUEST);
+      assertTrue (aModule.m_aEntered.await (SO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+      try (final Socket aRejected = _connect (aModule.getPort ()))
+      {
+        // The request is drained by the server, so that the response is not lost by a reset
+        _send (aRejected, REQUEST);
+        final String sRejected = _readResponse (aRejected.getInputStream ());
+        assertTrue (sRejected, sRejected.startsWith ("http/1.1 503 "));
+        assertTrue (sRejected, sRejected.contains ("\nretry-after: 7\n"));
+        assertTrue (sRejected, sRejected.contains ("\nconnection: close\n"));
+        // The server half-closed the connection after the response
+        assertEquals (-1, aRejected.getInputStream ().read ());
+      }
+      assertEquals (1, aModule.getRejectedConnectionCount ());
+
+      // The busy connection is still served
+      aModule.m_aGate.countDown ();
+      final String sBusy = _readResponse (aBusy.getInputStream ());
+      assertTrue (sBusy, sBusy.startsWith ("http/1.1 200 "));
+    }
+    finally
+    {
+      aModule.doStop ();
+    }
+  }
+
+  @Test
+  public void testNioHeaderReadTimeout () throws Exception
+  {
+    final MockNetModule aModule = new MockNetModule ();
+    aModule.setPort (_getFreePort ());
+    aModule.setNio (true);
+    aModule.setNioHeaderTimeout (300);
+    aModule.doStart ();
+    try (final Socket aSocket = _connect (aModule.getPort ()))
+    {
+      // Never complete the headers
+      _send (aSocket, "POST /as2 HTTP/1.1\r\nContent-Length: 5\r\n");
+
+      final long nStart = System.currentTimeMillis ();
+      final String sResponse = _readResponse (aSocket.getInputStream ());
+      final long nDuration = System.currentTimeMillis () - nStart;
+      assertTrue (sResponse, sResponse.startsWith ("http/1.1 408 "));
+      assertEquals (-1, aSocket.getInputStream ().read ());
+      // Timeout plus the check interval of the acceptor
+      assertTrue ("Took " + nDuration + " ms", nDuration < 5_000);
+      // The request never reached a worker
+      assertTrue (aModule.m_aClientPorts.isEmpty ());
+    }
+    finally
+    {
+      aModule.doStop ();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.receiver.net;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.base.wrapper.Wrapper;
+import com.helger.phase2.processor.receiver.AS2ReceiverModule;
+import com.helger.phase2.processor.receiver.AbstractActiveNetModule;
+
+/**
+ * Test class for class {@link AbstractReceiverHandler}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractReceiverHandlerTest
+{
+  private static final String REQUEST = "POST /as2 HTTP/1.1\r\n" + "Content-Length: 5\r\n" + "\r\n" + "hello";
+
+  @Test
+  public void testLegacyHandlerReceivesCompleteRequest () throws IOException
+  {
+    final Wrapper <String> aRead = new Wrapper <> ();
+    // A handler that only overrides the method that existed before handleRequest
+    final AbstractReceiverHandler aHandler = new AbstractReceiverHandler ()
+    {
+      @Override
+      public void handle (final AbstractActiveNetModule aOwner, final Socket aSocket)
+      {
+        try
+        {
+          aRead.set (new String (StreamHelper.getAllBytes (aSocket.getInputStream ()), StandardCharsets.ISO_8859_1));
+        }
+        catch (final IOException ex)
+        {
+          throw new IllegalStateException (ex);
+        }
+      }
+    };
+
+    try (final Socket aSocket = new Socket ())
+    {
+      final InputStream aIS = new NonBlockingByteArrayInputStream (REQUEST.getBytes (StandardCharsets.ISO_8859_1));
+      aHandler.handle (new AS2ReceiverModule (), aSocket, aIS);
+    }
+    final String sRead = aRead.get ();
+    assertTrue (sRead, sRead.startsWith ("POST /as2 HTTP/1.1\r\n"));
+    assertTrue (sRead, sRead.toLowerCase (Locale.ROOT).contains ("\r\ncontent-length: 5\r\n"));
+    assertTrue (sRead, sRead.endsWith ("\r\n\r\nhello"));
+  }
+
+  @Test (expected = UnsupportedOperationException.class)
+  public void testHandlerWithoutAnyOverride () throws IOException
+  {
+    final AbstractReceiverHandler aHandler = new AbstractReceiverHandler ()
+    {};
+
+    try (final Socket aSocket = new Socket ())
+    {
+      final InputStream aIS = new NonBlockingByteArrayInputStream (REQUEST.getBytes (StandardCharsets.ISO_8859_1));
+      aHandler.handle (new AS2ReceiverModule (), aSocket, aIS);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.processor.resender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.collection.commons.CommonsHashMap;
+import com.helger.collection.commons.ICommonsMap;
+import com.helger.phase2.message.AS2Message;
+import com.helger.phase2.processor.sender.IProcessorSenderModule;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.phase2.util.http.HTTPHelper;
+import com.helger.phase2.util.javamail.AS2SpooledMimeBodyPart;
+
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * Test class for class {@link InMemoryResenderModule}.
+ *
+ * @author Philip Helger
+ */
+public final class InMemoryResenderModuleTest
+{
+  @Test
+  public void testMessageDataOutlivesSourceResources () throws Exception
+  {
+    final String sContent = "Hello resender";
+    final File aFile = Files.createTempFile ("phase2-resend-", ".txt").toFile ();
+    final long nOld = HTTPHelper.getMaxInMemoryPayloadSize ();
+    // Force streaming from the file
+    HTTPHelper.setMaxInMemoryPayloadSize (0);
+    try
+    {
+      Files.write (aFile.toPath (), sContent.getBytes (StandardCharsets.ISO_8859_1));
+
+      final InMemoryResenderModule aModule = new InMemoryResenderModule ();
+      final AS2Message aMsg = new AS2Message ();
+      try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+      {
+        final MimeBodyPart aBody = new MimeBodyPart ();
+        aBody.setDataHandler (AS2IOHelper.getFileDataSource (aFile, "text/plain", aResHelper).getAsDataHandler ());
+        aBody.setHeader ("Content-Type", "text/plain");
+        aMsg.setData (aBody);
+
+        final ICommonsMap <String, Object> aOptions = new CommonsHashMap <> ();
+        aOptions.put (IProcessorResenderModule.OPTION_RESEND_ACTION, IProcessorSenderModule.DO_SEND);
+        aOptions.put (IProcessorResenderModule.OPTION_RETRIES, "1");
+        aModule.handle (IProcessorResenderModule.DO_RESEND, aMsg, aOptions);
+      }
+      // The source file is closed and deleted, like a polled file that is moved away
+      assertTrue (aFile.delete ());
+
+      assertEquals (1, aModule.getResendItemCount ());
+      final ResendItem aItem = aModule.getAllResendItems ().getFirstOrNull ();
+      assertNotNull (aItem.getResourceHelper ());
+      final AS2SpooledMimeBodyPart aCopy = (AS2SpooledMimeBodyPart) aItem.getMessage ().getData ();
+      assertEquals ("text/plain", aCopy.getContentType ());
+      assertEquals (sContent,
+                    StreamHelper.getAllBytesAsString (aCopy.getInputStream (), StandardCharsets.ISO_8859_1));
+      assertTrue (aCopy.getSpoolFile ().exists ());
+
+      // Removing the item releases the copy
+      aModule.removeAllResendItems ();
+      assertEquals (0, aModule.getResendItemCount ());
+      assertFalse (aCopy.getSpoolFile ().exists ());
+    }
+    finally
+    {
+      HTTPHelper.setMaxInMemoryPayloadSize (nOld);
+      aFile.delete ();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.supplementary.main;
+
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.cert.X509Certificate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.base.timing.StopWatch;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+import jakarta.annotation.Nonnull;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * Manual micro benchmark for signing and verifying small messages (like MDNs) with and without the
+ * caches of {@link BCCryptoHelper}. Each variant is warmed up before measuring.
+ *
+ * @author Philip Helger
+ */
+public final class MainBenchmarkBCCryptoHelperCaches
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainBenchmarkBCCryptoHelperCaches.class);
+
+  private static final String PATH = "src/test/resources/external/mendelson/key3.pfx";
+  private static final int WARMUP_RUNS = 500;
+  private static final int RUNS = 2_000;
+
+  private static void _signAndVerify (@Nonnull final BCCryptoHelper aCryptoHelper,
+                                      @Nonnull final MimeBodyPart aPart,
+                                      @Nonnull final PrivateKeyEntry aPKE,
+                                      final boolean bClearCaches) throws Exception
+  {
+    if (bClearCaches)
+      aCryptoHelper.clearCaches ();
+
+    final X509Certificate aCert = (X509Certificate) aPKE.getCertificate ();
+    final MimeBodyPart aSigned = aCryptoHelper.sign (aPart,
+                                                     aCert,
+                                                     aPKE.getPrivateKey (),
+                                                     ECryptoAlgorithmSign.DIGEST_SHA_256,
+                                                     true,
+                                                     false,
+                                                     false,
+                                                     EContentTransferEncoding.BASE64);
+    try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      aCryptoHelper.verify (aSigned, aCert, false, false, null, aResHelper);
+    }
+  }
+
+  private static void _run (@Nonnull final String sName,
+                            @Nonnull final MimeBodyPart aPart,
+                            @Nonnull final PrivateKeyEntry aPKE,
+                            final boolean bClearCaches) throws Exception
+  {
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    for (int i = 0; i < WARMUP_RUNS; ++i)
+      _signAndVerify (aCryptoHelper, aPart, aPKE, bClearCaches);
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < RUNS; ++i)
+      _signAndVerify (aCryptoHelper, aPart, aPKE, bClearCaches);
+    aSW.stop ();
+    LOGGER.info ("  " +
+                 sName +
+                 ": " +
+                 (aSW.getNanos () / RUNS / 1000) +
+                 " us per sign and verify; verifier cache hits=" +
+                 aCryptoHelper.getVerifierCache ().getHitCount () +
+                 ", misses=" +
+                 aCryptoHelper.getVerifierCache ().getMissCount ());
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ()).getKeyStore ();
+    final PrivateKeyEntry aPKE = KeyStoreHelper.loadPrivateKey (aKS, PATH, "key3", "test".toCharArray ()).getKeyEntry ();
+
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText ("Hello world");
+
+    _run ("without caches", aPart, aPKE, true);
+    _run ("with caches", aPart, aPKE, false);
+  }
+}
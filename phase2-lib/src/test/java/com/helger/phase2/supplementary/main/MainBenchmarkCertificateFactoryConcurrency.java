@@ -0,0 +1,145 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.supplementary.main;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.phase2.cert.AbstractCertificateFactory;
+import com.helger.phase2.cert.PredefinedCertificateFactory;
+import com.helger.phase2.util.cert.AS2KeyStoreHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Manual multi-threaded benchmark for the certificate and private key lookups of
+ * {@link AbstractCertificateFactory}, compared to direct {@link KeyStore} access. The throughput is
+ * measured for an increasing number of threads, up to twice the number of available processors.
+ *
+ * @author Philip Helger
+ */
+public final class MainBenchmarkCertificateFactoryConcurrency
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainBenchmarkCertificateFactoryConcurrency.class);
+
+  private static final String PATH = "src/test/resources/external/mendelson/key3.pfx";
+  private static final char [] PASSWORD = "test".toCharArray ();
+  private static final long WARMUP_MILLIS = 1_000;
+  private static final long MEASURE_MILLIS = 3_000;
+
+  @FunctionalInterface
+  private interface ILookup
+  {
+    void lookup () throws Exception;
+  }
+
+  private static long _runThreads (final int nThreads,
+                                   @Nonnull final ILookup aLookup,
+                                   final long nMillis) throws InterruptedException
+  {
+    final LongAdder aOps = new LongAdder ();
+    final CountDownLatch aStart = new CountDownLatch (1);
+    final ICommonsList <Thread> aThreads = new CommonsArrayList <> (nThreads);
+    final long nEnd = System.currentTimeMillis () + nMillis;
+    for (int i = 0; i < nThreads; ++i)
+    {
+      final Thread aThread = new Thread ( () -> {
+        try
+        {
+          aStart.await ();
+          while (System.currentTimeMillis () < nEnd)
+          {
+            aLookup.lookup ();
+            aOps.increment ();
+          }
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.error ("Lookup failed", ex);
+        }
+      });
+      aThreads.add (aThread);
+      aThread.start ();
+    }
+    aStart.countDown ();
+    for (final Thread aThread : aThreads)
+      aThread.join ();
+    return aOps.sum ();
+  }
+
+  private static void _run (@Nonnull final String sName, @Nonnull final ILookup aLookup) throws InterruptedException
+  {
+    LOGGER.info (sName);
+    final int nMaxThreads = Runtime.getRuntime ().availableProcessors () * 2;
+    for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2)
+    {
+      _runThreads (nThreads, aLookup, WARMUP_MILLIS);
+      final long nOps = _runThreads (nThreads, aLookup, MEASURE_MILLIS);
+      LOGGER.info (String.format ("  %3d thread(s): %,14d lookups/s",
+                                  Integer.valueOf (nThreads),
+                                  Long.valueOf (nOps * 1000 / MEASURE_MILLIS)));
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, PASSWORD).getKeyStore ();
+    final PredefinedCertificateFactory aCF = new PredefinedCertificateFactory (aKS);
+    aCF.setPassword (new String (PASSWORD));
+    aCF.reinitKeyStore ();
+    aCF.addCertificate ("key4",
+                        AS2KeyStoreHelper.readX509Certificate ("src/test/resources/external/mendelson/key4.cer"),
+                        false);
+
+    final X509Certificate aCert = aCF.getCertificate ("key3");
+
+    _run ("Direct key store access (certificate and key)", () -> {
+      if (aKS.getCertificate ("key3") == null || !(aKS.getKey ("key3", PASSWORD) instanceof PrivateKey))
+        throw new IllegalStateException ();
+    });
+    _run ("Certificate factory (certificate and key)", () -> {
+      if (aCF.getCertificate ("key3") == null || aCF.getPrivateKey (aCert) == null)
+        throw new IllegalStateException ();
+    });
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.supplementary.main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.base.io.nonblocking.NonBlockingBufferedInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.timing.StopWatch;
+import com.helger.phase2.util.http.ChunkedInputStream;
+import com.helger.phase2.util.http.HTTPHelper;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Manual micro benchmark comparing {@link ChunkedInputStream} with the previous byte-by-byte
+ * decoding based on {@link HTTPHelper#readChunkLen(InputStream)} and
+ * {@link HTTPHelper#readTillNextLine(InputStream)}. Each variant is warmed up before measuring.
+ *
+ * @author Philip Helger
+ */
+public final class MainBenchmarkChunkedInputStream
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainBenchmarkChunkedInputStream.class);
+
+  private static final int PAYLOAD_SIZE = 16 * 1024 * 1024;
+  private static final int WARMUP_RUNS = 5;
+  private static final int RUNS = 10;
+
+  @FunctionalInterface
+  private interface IDecoder
+  {
+    long decode (@Nonnull InputStream aIS, @Nonnull byte [] aBuf) throws IOException;
+  }
+
+  @Nonnull
+  private static byte [] _createChunked (@Nonnull final byte [] aData, final int nChunkSize)
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (aData.length * 2))
+    {
+      for (int i = 0; i < aData.length; i += nChunkSize)
+      {
+        final int nLen = Math.min (nChunkSize, aData.length - i);
+        aBAOS.write ((Integer.toHexString (nLen) + "\r\n").getBytes (StandardCharsets.ISO_8859_1));
+        aBAOS.write (aData, i, nLen);
+        aBAOS.write ('\r');
+        aBAOS.write ('\n');
+      }
+      aBAOS.write ("0\r\n\r\n".getBytes (StandardCharsets.ISO_8859_1));
+      return aBAOS.toByteArray ();
+    }
+  }
+
+  /**
+   * The previous implementation: per chunk header a byte wise read.
+   */
+  private static long _decodeLegacy (@Nonnull final InputStream aIS, @Nonnull final byte [] aBuf) throws IOException
+  {
+    long nTotal = 0;
+    boolean bAfterFirstChunk = false;
+    while (true)
+    {
+      if (bAfterFirstChunk)
+        HTTPHelper.readTillNextLine (aIS);
+      bAfterFirstChunk = true;
+      int nLeft = HTTPHelper.readChunkLen (aIS);
+      if (nLeft <= 0)
+        return nTotal;
+      while (nLeft > 0)
+      {
+        final int nRead = aIS.read (aBuf, 0, Math.min (aBuf.length, nLeft));
+        if (nRead < 0)
+          return nTotal;
+        nLeft -= nRead;
+        nTotal += nRead;
+      }
+    }
+  }
+
+  private static long _decodeNew (@Nonnull final InputStream aIS, @Nonnull final byte [] aBuf) throws IOException
+  {
+    long nTotal = 0;
+    try (final ChunkedInputStream aCIS = new ChunkedInputStream (aIS))
+    {
+      int nRead;
+      while ((nRead = aCIS.read (aBuf, 0, aBuf.length)) >= 0)
+        nTotal += nRead;
+    }
+    return nTotal;
+  }
+
+  private static void _run (@Nonnull final String sName,
+                            @Nonnull final IDecoder aDecoder,
+                            @Nonnull final byte [] aChunked) throws IOException
+  {
+    final byte [] aBuf = new byte [16 * 1024];
+    for (int i = 0; i < WARMUP_RUNS; ++i)
+      aDecoder.decode (new NonBlockingBufferedInputStream (new NonBlockingByteArrayInputStream (aChunked)), aBuf);
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    long nTotal = 0;
+    for (int i = 0; i < RUNS; ++i)
+      nTotal += aDecoder.decode (new NonBlockingBufferedInputStream (new NonBlockingByteArrayInputStream (aChunked)),
+                                 aBuf);
+    aSW.stop ();
+    if (nTotal != (long) PAYLOAD_SIZE * RUNS)
+      throw new IllegalStateException (sName + " decoded " + nTotal + " bytes");
+    LOGGER.info ("  " + sName + ": " + (aSW.getMillis () / RUNS) + " ms per " + (PAYLOAD_SIZE / 1024 / 1024) + " MB");
+  }
+
+  public static void main (final String [] args) throws IOException
+  {
+    final byte [] aData = new byte [PAYLOAD_SIZE];
+    ThreadLocalRandom.current ().nextBytes (aData);
+
+    for (final int nChunkSize : new int [] { 16, 256, 4096, 65536 })
+    {
+      final byte [] aChunked = _createChunked (aData, nChunkSize);
+      LOGGER.info ("Chunk size " + nChunkSize + ":");
+      _run ("legacy", MainBenchmarkChunkedInputStream::_decodeLegacy, aChunked);
+      _run ("ChunkedInputStream", MainBenchmarkChunkedInputStream::_decodeNew, aChunked);
+    }
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.supplementary.main;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.cert.X509Certificate;
+import java.time.OffsetDateTime;
+import java.util.Locale;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.http.CHttpHeader;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.crypto.AS2CompressionSettings;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECompressionType;
+import com.helger.phase2.crypto.ECryptoAlgorithmCrypt;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.processor.sender.AS2SenderModule;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * Manual benchmark for the crypto hot paths: {@link BCCryptoHelper#calculateMIC},
+ * {@link BCCryptoHelper#sign}, {@link BCCryptoHelper#verify}, {@link BCCryptoHelper#encrypt},
+ * {@link BCCryptoHelper#decrypt} and {@link AS2SenderModule#compressMimeBodyPart}. All operations
+ * are executed for all payload sizes and all signing or crypting algorithms. Each measurement is
+ * warmed up before measuring, and is repeated until a minimum duration is reached.<br>
+ * The results are written as JSON, so that they can be compared between releases.<br>
+ * Arguments (all optional):
+ * <ol>
+ * <li>The JSON result file. Defaults to
+ * <code>target/benchmark/crypto-hotpaths.json</code></li>
+ * <li>The maximum payload size in bytes. Defaults to 100 MB.</li>
+ * </ol>
+ * Note: for the largest payloads use e.g. <code>-Xmx2g</code>.
+ *
+ * @author Philip Helger
+ */
+public final class MainBenchmarkCryptoHotPaths
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainBenchmarkCryptoHotPaths.class);
+
+  private static final String PATH = "src/test/resources/external/mendelson/key3.pfx";
+  private static final int [] PAYLOAD_SIZES = { 1024,
+                                                10 * 1024,
+                                                100 * 1024,
+                                                1024 * 1024,
+                                                10 * 1024 * 1024,
+                                                100 * 1024 * 1024 };
+  private static final long WARMUP_NANOS = 500_000_000L;
+  private static final long MEASURE_NANOS = 1_000_000_000L;
+  private static final int MIN_RUNS = 3;
+  private static final EContentTransferEncoding CTE = EContentTransferEncoding.AS2_DEFAULT;
+
+  @FunctionalInterface
+  private interface IOperation
+  {
+    void run () throws Exception;
+  }
+
+  private static final class Result
+  {
+    private final String m_sOperation;
+    private final String m_sAlgorithm;
+    private final int m_nPayloadSize;
+    private final int m_nRuns;
+    private final long m_nNanosPerOp;
+    private final String m_sError;
+
+    Result (@Nonnull final String sOperation,
+            @Nonnull final String sAlgorithm,
+            final int nPayloadSize,
+            final int nRuns,
+            final long nNanosPerOp,
+            @Nullable final String sError)
+    {
+      m_sOperation = sOperation;
+      m_sAlgorithm = sAlgorithm;
+      m_nPayloadSize = nPayloadSize;
+      m_nRuns = nRuns;
+      m_nNanosPerOp = nNanosPerOp;
+      m_sError = sError;
+    }
+
+    double getMBPerSecond ()
+    {
+      return m_nNanosPerOp <= 0 ? 0 : m_nPayloadSize / (1024d * 1024d) / (m_nNanosPerOp / 1_000_000_000d);
+    }
+  }
+
+  private final ICommonsList <Result> m_aResults = new CommonsArrayList <> ();
+
+  @Nonnull
+  private static String _jsonString (@Nullable final String s)
+  {
+    if (s == null)
+      return "null";
+    final StringBuilder aSB = new StringBuilder (s.length () + 2).append ('"');
+    for (final char c : s.toCharArray ())
+    {
+      if (c == '"' || c == '\\')
+        aSB.append ('\\').append (c);
+      else
+        if (c < 0x20)
+          aSB.append (String.format ("\\u%04x", Integer.valueOf (c)));
+        else
+          aSB.append (c);
+    }
+    return aSB.append ('"').toString ();
+  }
+
+  private void _measure (@Nonnull final String sOperation,
+                         @Nonnull final String sAlgorithm,
+                         final int nPayloadSize,
+                         @Nonnull final IOperation aOperation)
+  {
+    Result aResult;
+    try
+    {
+      // Warm up
+      final long nWarmupEnd = System.nanoTime () + WARMUP_NANOS;
+      do
+      {
+        aOperation.run ();
+      } while (System.nanoTime () < nWarmupEnd);
+
+      // Measure
+      final long nStart = System.nanoTime ();
+      long nNow;
+      int nRuns = 0;
+      do
+      {
+        aOperation.run ();
+        nRuns++;
+        nNow = System.nanoTime ();
+      } while (nRuns < MIN_RUNS || nNow - nStart < MEASURE_NANOS);
+      aResult = new Result (sOperation, sAlgorithm, nPayloadSize, nRuns, (nNow - nStart) / nRuns, null);
+      LOGGER.info (String.format ("%-10s %-22s %,12d bytes: %,14d ns/op %10.2f MB/s",
+                                  sOperation,
+                                  sAlgorithm,
+                                  Integer.valueOf (nPayloadSize),
+                                  Long.valueOf (aResult.m_nNanosPerOp),
+                                  Double.valueOf (aResult.getMBPerSecond ())));
+    }
+    catch (final Exception ex)
+    {
+      aResult = new Result (sOperation, sAlgorithm, nPayloadSize, 0, -1, ex.getClass ().getName () + ": " + ex.getMessage ());
+      LOGGER.warn (sOperation + " " + sAlgorithm + " " + nPayloadSize + " bytes failed: " + aResult.m_sError);
+    }
+    m_aResults.add (aResult);
+  }
+
+  @Nonnull
+  private static byte [] _createPayload (final int nSize)
+  {
+    // Text like payload with line breaks, so that compression has something to do
+    final Random aRandom = new Random (nSize);
+    final byte [] ret = new byte [nSize];
+    for (int i = 0; i < nSize; ++i)
+      ret[i] = (i % 80) == 78 ? (byte) '\r' : (i % 80) == 79 ? (byte) '\n' : (byte) ('A' + aRandom.nextInt (26));
+    return ret;
+  }
+
+  @Nonnull
+  private static MimeBodyPart _createPart (@Nonnull final byte [] aPayload) throws Exception
+  {
+    final InternetHeaders aHeaders = new InternetHeaders ();
+    aHeaders.addHeader (CHttpHeader.CONTENT_TYPE, "application/octet-stream");
+    aHeaders.addHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, CTE.getID ());
+    return new MimeBodyPart (aHeaders, aPayload);
+  }
+
+  /**
+   * The S/MIME generators work lazily, so the result must be written to do the actual work.
+   */
+  private static void _writeFully (@Nonnull final MimeBodyPart aPart) throws Exception
+  {
+    aPart.writeTo (OutputStream.nullOutputStream ());
+  }
+
+  @Nonnull
+  private static MimeBodyPart _reparse (@Nonnull final MimeBodyPart aPart) throws Exception
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aPart.writeTo (aBAOS);
+      return new MimeBodyPart (new NonBlockingByteArrayInputStream (aBAOS.toByteArray ()));
+    }
+  }
+
+  private void _runAll (final int nMaxPayloadSize) throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ()).getKeyStore ();
+    final PrivateKeyEntry aPKE = KeyStoreHelper.loadPrivateKey (aKS, PATH, "key3", "test".toCharArray ()).getKeyEntry ();
+    final X509Certificate aCert = (X509Certificate) aPKE.getCertificate ();
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+
+    for (final int nPayloadSize : PAYLOAD_SIZES)
+    {
+      if (nPayloadSize > nMaxPayloadSize)
+        break;
+
+      final MimeBodyPart aPart = _createPart (_createPayload (nPayloadSize));
+
+      for (final ECryptoAlgorithmSign eAlgo : ECryptoAlgorithmSign.values ())
+      {
+        _measure ("mic", eAlgo.getID (), nPayloadSize, () -> aCryptoHelper.calculateMIC (aPart, eAlgo, true));
+        _measure ("sign",
+                  eAlgo.getID (),
+                  nPayloadSize,
+                  () -> _writeFully (aCryptoHelper.sign (aPart,
+                                                         aCert,
+                                                         aPKE.getPrivateKey (),
+                                                         eAlgo,
+                                                         true,
+                                                         false,
+                                                         false,
+                                                         CTE)));
+
+        final MimeBodyPart aSigned;
+        try
+        {
+          aSigned = _reparse (aCryptoHelper.sign (aPart, aCert, aPKE.getPrivateKey (), eAlgo, true, false, false, CTE));
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.warn ("Failed to sign with " + eAlgo.getID () + " - skipping verification");
+          continue;
+        }
+        _measure ("verify", eAlgo.getID (), nPayloadSize, () -> {
+          try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+          {
+            aCryptoHelper.verify (aSigned, aCert, false, false, null, aResHelper);
+          }
+        });
+      }
+
+      for (final ECryptoAlgorithmCrypt eAlgo : ECryptoAlgorithmCrypt.values ())
+      {
+        _measure ("encrypt",
+                  eAlgo.getID (),
+                  nPayloadSize,
+                  () -> _writeFully (aCryptoHelper.encrypt (aPart, aCert, eAlgo, CTE)));
+
+        final MimeBodyPart aEncrypted;
+        try
+        {
+          aEncrypted = _reparse (aCryptoHelper.encrypt (aPart, aCert, eAlgo, CTE));
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.warn ("Failed to encrypt with " + eAlgo.getID () + " - skipping decryption");
+          continue;
+        }
+        _measure ("decrypt", eAlgo.getID (), nPayloadSize, () -> {
+          try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+          {
+            aCryptoHelper.decrypt (aEncrypted, aCert, aPKE.getPrivateKey (), false, aResHelper);
+          }
+        });
+      }
+
+      for (final ECompressionType eType : ECompressionType.values ())
+      {
+        _measure ("compress",
+                  eType.getID (),
+                  nPayloadSize,
+                  () -> _writeFully (AS2SenderModule.compressMimeBodyPart (aPart, eType, CTE)));
+        final AS2CompressionSettings aParallel = new AS2CompressionSettings ().setParallelThreads (Runtime.getRuntime ()
+                                                                                                          .availableProcessors ());
+        _measure ("compress",
+                  eType.getID () + "-parallel",
+                  nPayloadSize,
+                  () -> _writeFully (AS2SenderModule.compressMimeBodyPart (aPart, eType, aParallel, CTE)));
+      }
+    }
+  }
+
+  @Nonnull
+  private String _getAsJson ()
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append ("{\n");
+    aSB.append ("  \"benchmark\": ").append (_jsonString ("crypto-hotpaths")).append (",\n");
+    aSB.append ("  \"timestamp\": ").append (_jsonString (OffsetDateTime.now ().toString ())).append (",\n");
+    aSB.append ("  \"javaVersion\": ").append (_jsonString (System.getProperty ("java.version"))).append (",\n");
+    aSB.append ("  \"availableProcessors\": ").append (Runtime.getRuntime ().availableProcessors ()).append (",\n");
+    aSB.append ("  \"results\": [");
+    boolean bFirst = true;
+    for (final Result aResult : m_aResults)
+    {
+      aSB.append (bFirst ? "\n" : ",\n");
+      bFirst = false;
+      aSB.append ("    { \"operation\": ")
+         .append (_jsonString (aResult.m_sOperation))
+         .append (", \"algorithm\": ")
+         .append (_jsonString (aResult.m_sAlgorithm))
+         .append (", \"payloadSize\": ")
+         .append (aResult.m_nPayloadSize);
+      if (aResult.m_sError != null)
+        aSB.append (", \"error\": ").append (_jsonString (aResult.m_sError));
+      else
+        aSB.append (", \"runs\": ")
+           .append (aResult.m_nRuns)
+           .append (", \"nanosPerOp\": ")
+           .append (aResult.m_nNanosPerOp)
+           .append (", \"mbPerSecond\": ")
+           .append (String.format (Locale.ROOT, "%.3f", Double.valueOf (aResult.getMBPerSecond ())));
+      aSB.append (" }");
+    }
+    aSB.append ("\n  ]\n}\n");
+    return aSB.toString ();
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final File aResultFile = new File (args.length > 0 ? args[0] : "target/benchmark/crypto-hotpaths.json");
+    final int nMaxPayloadSize = args.length > 1 ? Integer.parseInt (args[1]) : Integer.MAX_VALUE;
+
+    final MainBenchmarkCryptoHotPaths aBenchmark = new MainBenchmarkCryptoHotPaths ();
+    aBenchmark._runAll (nMaxPayloadSize);
+
+    final File aParent = aResultFile.getAbsoluteFile ().getParentFile ();
+    if (aParent != null)
+      Files.createDirectories (aParent.toPath ());
+    Files.writeString (aResultFile.toPath (), aBenchmark._getAsJson (), StandardCharsets.UTF_8);
+    LOGGER.info ("Wrote " + aBenchmark.m_aResults.size () + " results to " + aResultFile.getAbsolutePath ());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.supplementary.main;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.base.CGlobal;
+import com.helger.base.timing.StopWatch;
+import com.helger.io.file.FileHelper;
+import com.helger.phase2.cert.PredefinedCertificateFactory;
+import com.helger.phase2.client.AS2Client;
+import com.helger.phase2.client.AS2ClientRequest;
+import com.helger.phase2.client.AS2ClientResponse;
+import com.helger.phase2.client.AS2ClientSettings;
+import com.helger.phase2.partner.SelfFillingPartnershipFactory;
+import com.helger.phase2.processor.DefaultMessageProcessor;
+import com.helger.phase2.processor.receiver.AS2ReceiverModule;
+import com.helger.phase2.processor.storage.MessageFileModule;
+import com.helger.phase2.session.AS2Session;
+import com.helger.phase2.util.AS2IOHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.typeconvert.collection.StringMap;
+
+/**
+ * Send a large synthetic payload (3 GB by default) to a receiver module on localhost and check
+ * that the stored file has the right size. Run with a small heap (e.g. <code>-Xmx256m</code>) to
+ * verify that the payload is streamed. The first argument can be used to provide the payload size
+ * in MB.
+ *
+ * @author Philip Helger
+ */
+public final class MainSendLargePayloadLoopback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainSendLargePayloadLoopback.class);
+  private static final int PORT = 10_080;
+
+  /**
+   * Endless pseudo payload of a fixed length, so that the data never needs to be in memory.
+   */
+  private static final class SyntheticInputStream extends InputStream
+  {
+    private long m_nLeft;
+
+    SyntheticInputStream (final long nLength)
+    {
+      m_nLeft = nLength;
+    }
+
+    @Override
+    public int read ()
+    {
+      if (m_nLeft <= 0)
+        return -1;
+      m_nLeft--;
+      return 'A' + (int) (m_nLeft % 26);
+    }
+
+    @Override
+    public int read (final byte [] aBuf, final int nOfs, final int nLen)
+    {
+      if (m_nLeft <= 0)
+        return -1;
+      final int nRealLen = (int) Math.min (nLen, m_nLeft);
+      for (int i = 0; i < nRealLen; ++i)
+      {
+        m_nLeft--;
+        aBuf[nOfs + i] = (byte) ('A' + (int) (m_nLeft % 26));
+      }
+      return nRealLen;
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final long nPayloadSize = (args.length > 0 ? Long.parseLong (args[0]) : 3 * 1024L) * CGlobal.BYTES_PER_MEGABYTE;
+    final File aStoreDir = Files.createTempDirectory ("as2-large").toFile ();
+    final File aKeyStoreFile = new File ("src/test/resources/localhost/certs.p12");
+
+    // Receiver
+    final AS2Session aSession = new AS2Session ();
+    final KeyStore aKeyStore = KeyStore.getInstance ("PKCS12");
+    try (final InputStream aIS = FileHelper.getInputStream (aKeyStoreFile))
+    {
+      aKeyStore.load (aIS, "test".toCharArray ());
+    }
+    final PredefinedCertificateFactory aCertFactory = new PredefinedCertificateFactory (aKeyStore);
+    aCertFactory.initDynamicComponent (aSession, null);
+    aCertFactory.setPassword ("test");
+    aSession.setCertificateFactory (aCertFactory);
+    aSession.setPartnershipFactory (new SelfFillingPartnershipFactory ());
+
+    final DefaultMessageProcessor aProcessor = new DefaultMessageProcessor ();
+    final MessageFileModule aStorage = new MessageFileModule ();
+    final StringMap aStorageOptions = new StringMap ();
+    aStorageOptions.putIn (MessageFileModule.ATTR_FILENAME, new File (aStoreDir, "large-$msg.sender.as2_id$").getAbsolutePath ());
+    aStorageOptions.putIn (MessageFileModule.ATTR_PROTOCOL, "as2");
+    aStorage.initDynamicComponent (aSession, aStorageOptions);
+    aProcessor.addModule (aStorage);
+    aSession.setMessageProcessor (aProcessor);
+
+    final AS2ReceiverModule aReceiver = new AS2ReceiverModule ();
+    final StringMap aReceiverOptions = new StringMap ();
+    aReceiverOptions.putIn (AS2ReceiverModule.ATTR_PORT, PORT);
+    aReceiver.initDynamicComponent (aSession, aReceiverOptions);
+    aReceiver.start ();
+
+    try
+    {
+      // Sender
+      final AS2ClientSettings aSettings = new AS2ClientSettings ();
+      aSettings.setKeyStore (EKeyStoreType.PKCS12, aKeyStoreFile, "test");
+      aSettings.setSenderData ("mycompanyAS2", "phax.phase2@helger.com", "openas2a_alias");
+      aSettings.setReceiverData ("openas2b_alias", "openas2b_alias", "http://localhost:" + PORT + "/as2");
+      aSettings.setPartnershipName (aSettings.getSenderAS2ID () + "_" + aSettings.getReceiverAS2ID ());
+      aSettings.setEncryptAndSign (null, null);
+      aSettings.setMDNRequested (false);
+      aSettings.setRetryCount (0);
+      aSettings.setConnectTimeout (Timeout.ofSeconds (10));
+      aSettings.setResponseTimeout (Timeout.ofMinutes (30));
+
+      try (final AS2ClientRequest aRequest = new AS2ClientRequest ("Large AS2 test message"))
+      {
+        aRequest.setData (new SyntheticInputStream (nPayloadSize));
+
+        final StopWatch aSW = StopWatch.createdStarted ();
+        final AS2ClientResponse aResponse = new AS2Client ().sendSynchronous (aSettings, aRequest);
+        aSW.stop ();
+        if (aResponse.hasException ())
+          LOGGER.error (aResponse.getAsString ());
+        LOGGER.info ("Sent " + AS2IOHelper.getTransferRate (nPayloadSize, aSW));
+      }
+    }
+    finally
+    {
+      aReceiver.stop ();
+    }
+
+    final File [] aStored = aStoreDir.listFiles ();
+    if (aStored == null || aStored.length != 1)
+      LOGGER.error ("Expected exactly one stored file in " + aStoreDir.getAbsolutePath ());
+    else
+    {
+      final long nStoredSize = aStored[0].length ();
+      if (nStoredSize == nPayloadSize)
+        LOGGER.info ("Stored " + nStoredSize + " bytes - size matches");
+      else
+        LOGGER.error ("Stored " + nStoredSize + " bytes but sent " + nPayloadSize + " bytes");
+      AS2IOHelper.getFileOperationManager ().deleteFile (aStored[0]);
+    }
+    AS2IOHelper.getFileOperationManager ().deleteDir (aStoreDir);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link AS2BoundedCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2BoundedCacheTest
+{
+  @Test
+  public void testBasic ()
+  {
+    final AS2BoundedCache <String, String> aCache = new AS2BoundedCache <> ("test", 2);
+    assertEquals ("test", aCache.getName ());
+    assertEquals (2, aCache.getMaxSize ());
+    assertEquals (0, aCache.size ());
+
+    final String sA = aCache.getOrCreate ("a", k -> k + "1");
+    assertEquals ("a1", sA);
+    assertSame (sA, aCache.getOrCreate ("a", k -> k + "2"));
+    assertEquals (1, aCache.getMissCount ());
+    assertEquals (1, aCache.getHitCount ());
+
+    aCache.getOrCreate ("b", k -> k + "1");
+    // Access "a" so that "b" is the least recently used
+    assertEquals ("a1", aCache.get ("a"));
+    aCache.getOrCreate ("c", k -> k + "1");
+    assertEquals (2, aCache.size ());
+    assertEquals (1, aCache.getEvictionCount ());
+    assertNull (aCache.get ("b"));
+    assertEquals ("a1", aCache.get ("a"));
+    assertEquals ("c1", aCache.get ("c"));
+
+    assertEquals ("c1", aCache.remove ("c"));
+    assertNull (aCache.remove ("c"));
+    aCache.clear ();
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test (expected = IOException.class)
+  public void testCreatorException () throws IOException
+  {
+    final AS2BoundedCache <String, String> aCache = new AS2BoundedCache <> ("test", 2);
+    aCache.getOrCreate ("a", k -> {
+      throw new IOException ("Failed");
+    });
+  }
+
+  @Test
+  public void testConcurrentAccess () throws Exception
+  {
+    final AS2BoundedCache <Integer, String> aCache = new AS2BoundedCache <> ("test", 10);
+    final ExecutorService aES = Executors.newFixedThreadPool (8);
+    final List <Future <?>> aFutures = new ArrayList <> ();
+    for (int i = 0; i < 8; ++i)
+    {
+      final int nOffset = i;
+      aFutures.add (aES.submit ( () -> {
+        for (int j = 0; j < 10_000; ++j)
+        {
+          final Integer aKey = Integer.valueOf ((j * (nOffset + 1)) % 20);
+          assertEquals (aKey.toString (), aCache.getOrCreate (aKey, Object::toString));
+        }
+      }));
+    }
+    // Propagate assertion errors
+    for (final Future <?> aFuture : aFutures)
+      aFuture.get ();
+    aES.shutdown ();
+    assertTrue (aCache.size () <= 10);
+    assertEquals (80_000, aCache.getHitCount () + aCache.getMissCount ());
+  }
+
+  @Test
+  public void testBatchEviction ()
+  {
+    final AS2BoundedCache <Integer, String> aCache = new AS2BoundedCache <> ("test", 100);
+    for (int i = 0; i < 100; ++i)
+      aCache.put (Integer.valueOf (i), Integer.toString (i));
+    assertEquals (100, aCache.size ());
+    // Access the oldest entry, so that it is not evicted
+    assertEquals ("0", aCache.get (Integer.valueOf (0)));
+
+    // Exceeding the maximum evicts 10% of the entries at once
+    aCache.put (Integer.valueOf (100), "100");
+    assertEquals (90, aCache.size ());
+    assertEquals (11, aCache.getEvictionCount ());
+    assertEquals ("0", aCache.get (Integer.valueOf (0)));
+    assertNull (aCache.get (Integer.valueOf (1)));
+    assertNull (aCache.get (Integer.valueOf (11)));
+    assertEquals ("12", aCache.get (Integer.valueOf (12)));
+    assertEquals ("100", aCache.get (Integer.valueOf (100)));
+
+    // No further eviction until the maximum is exceeded again
+    for (int i = 101; i < 111; ++i)
+      aCache.put (Integer.valueOf (i), Integer.toString (i));
+    assertEquals (100, aCache.size ());
+    assertEquals (11, aCache.getEvictionCount ());
+  }
+}
@@ -32,11 +32,23 @@
  */
 package com.helger.phase2.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.junit.Test;
 
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.mail.datasource.IExtendedDataSource;
+import com.helger.phase2.util.http.HTTPHelper;
+
 /**
  * Test class for class {@link AS2IOHelper}.
  *
@@ -80,4 +92,46 @@ public final class AS2IOHelperTest
     assertEquals ("z:/com1", AS2IOHelper.getSafeFileAndFolderName ("z:\\com1"));
     assertEquals ("z:/_com2", AS2IOHelper.getSafeFileAndFolderName ("z:\\com2"));
   }
+
+  @Test
+  public void testGetFileDataSourceClosedByResourceHelper () throws IOException
+  {
+    final byte [] aData = "Large payload".getBytes (StandardCharsets.ISO_8859_1);
+    final long nOldMax = HTTPHelper.getMaxInMemoryPayloadSize ();
+    // Force streaming from the file
+    HTTPHelper.setMaxInMemoryPayloadSize (0);
+    try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      final File aFile = aResHelper.createTempFile ();
+      Files.write (aFile.toPath (), aData);
+
+      final IExtendedDataSource aDS;
+      try (final AS2ResourceHelper aFileResHelper = new AS2ResourceHelper ())
+      {
+        aDS = AS2IOHelper.getFileDataSource (aFile, "application/octet-stream", aFileResHelper);
+        assertEquals (1, aFileResHelper.getAllCloseables ().size ());
+        // Can be read multiple times
+        for (int i = 0; i < 2; ++i)
+          try (final InputStream aIS = aDS.getInputStream ())
+          {
+            assertArrayEquals (aData, StreamHelper.getAllBytes (aIS));
+          }
+      }
+
+      // The file handle is closed now
+      try (final InputStream aIS = aDS.getInputStream ())
+      {
+        StreamHelper.getAllBytes (aIS);
+        fail ();
+      }
+      catch (final IOException | RuntimeException ex)
+      {
+        // Expected
+      }
+    }
+    finally
+    {
+      HTTPHelper.setMaxInMemoryPayloadSize (nOldMax);
+    }
+  }
 }
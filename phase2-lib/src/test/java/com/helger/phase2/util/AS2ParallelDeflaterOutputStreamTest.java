@@ -0,0 +1,135 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.StreamHelper;
+
+/**
+ * Test class for class {@link AS2ParallelDeflaterOutputStream}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2ParallelDeflaterOutputStreamTest
+{
+  private static byte [] _compress (final byte [] aData, final int nLevel, final int nThreads, final int nBlockSize)
+                                                                                                                   throws Exception
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    try (final AS2ParallelDeflaterOutputStream aOS = new AS2ParallelDeflaterOutputStream (aBAOS,
+                                                                                          nLevel,
+                                                                                          Deflater.DEFAULT_STRATEGY,
+                                                                                          nThreads,
+                                                                                          nBlockSize))
+    {
+      // Write in odd chunks
+      int nOfs = 0;
+      while (nOfs < aData.length)
+      {
+        final int nLen = Math.min (777, aData.length - nOfs);
+        aOS.write (aData, nOfs, nLen);
+        nOfs += nLen;
+      }
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  private static byte [] _decompress (final byte [] aCompressed) throws Exception
+  {
+    try (final InputStream aIS = new InflaterInputStream (new NonBlockingByteArrayInputStream (aCompressed)))
+    {
+      return StreamHelper.getAllBytes (aIS);
+    }
+  }
+
+  @Test
+  public void testRoundTrip () throws Exception
+  {
+    final Random aRandom = new Random (42);
+    final byte [] aData = new byte [500_003];
+    for (int i = 0; i < aData.length; ++i)
+      aData[i] = (byte) ('a' + aRandom.nextInt (8));
+
+    for (final int nLevel : new int [] { Deflater.DEFAULT_COMPRESSION, 0, 1, 5, 9 })
+      for (final int nThreads : new int [] { 1, 4 })
+        for (final int nBlockSize : new int [] { 1000, 64 * 1024, 1024 * 1024 })
+          assertArrayEquals (aData, _decompress (_compress (aData, nLevel, nThreads, nBlockSize)));
+  }
+
+  @Test
+  public void testEmpty () throws Exception
+  {
+    final byte [] aData = new byte [0];
+    assertArrayEquals (aData, _decompress (_compress (aData, Deflater.DEFAULT_COMPRESSION, 2, 1024)));
+  }
+
+  @Test
+  public void testExactBlockSize () throws Exception
+  {
+    final byte [] aData = new byte [4096];
+    for (int i = 0; i < aData.length; ++i)
+      aData[i] = (byte) i;
+    assertArrayEquals (aData, _decompress (_compress (aData, Deflater.BEST_SPEED, 2, 1024)));
+  }
+
+  @Test
+  public void testThreadsAreShared () throws Exception
+  {
+    final byte [] aData = new byte [200_000];
+    for (int i = 0; i < aData.length; ++i)
+      aData[i] = (byte) (i % 13);
+
+    // Many streams with more threads than processors
+    for (int i = 0; i < 20; ++i)
+      assertArrayEquals (aData, _decompress (_compress (aData, Deflater.BEST_SPEED, 64, 1000)));
+
+    final int nDeflaterThreads = (int) Thread.getAllStackTraces ()
+                                             .keySet ()
+                                             .stream ()
+                                             .filter (x -> x.getName ().startsWith ("AS2ParallelDeflater-"))
+                                             .count ();
+    assertTrue ("Found " + nDeflaterThreads + " threads",
+                nDeflaterThreads <= Runtime.getRuntime ().availableProcessors ());
+  }
+}
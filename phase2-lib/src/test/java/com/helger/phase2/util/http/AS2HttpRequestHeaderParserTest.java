@@ -0,0 +1,122 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.http.header.HttpHeaderMap;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link AS2HttpRequestHeaderParser}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2HttpRequestHeaderParserTest
+{
+  @Nonnull
+  private static InputStream _is (@Nonnull final String s)
+  {
+    return new NonBlockingByteArrayInputStream (s.getBytes (StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  public void testBasic () throws IOException
+  {
+    final AS2HttpRequestHeaderParser aParser = new AS2HttpRequestHeaderParser ();
+    final InputStream aIS = _is ("\r\nPOST /as2  HTTP/1.1\r\n" +
+                                 "Content-Type: text/plain\r\n" +
+                                 "X-Multi:a\r\n" +
+                                 "X-Multi : b \r\n" +
+                                 "X-Folded: line1\r\n" +
+                                 "\tline2\n" +
+                                 "\r\n" +
+                                 "BODY");
+    final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+    assertArrayEquals (new String [] { "POST", "/as2", "HTTP/1.1" }, aParser.readRequest (aIS, aHeaders));
+    assertEquals ("text/plain", aHeaders.getFirstHeaderValue ("Content-Type"));
+    assertEquals (2, aHeaders.getAllHeaderValues ("X-Multi").size ());
+    assertEquals ("b", aHeaders.getAllHeaderValues ("X-Multi").get (1));
+    assertEquals ("line1 line2", aHeaders.getFirstHeaderValue ("X-Folded"));
+
+    // The body was not consumed
+    assertEquals ("BODY", StreamHelper.getAllBytesAsString (aIS, StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  public void testReuse () throws IOException
+  {
+    final AS2HttpRequestHeaderParser aParser = new AS2HttpRequestHeaderParser ();
+    final InputStream aIS = _is ("GET HTTP/1.0\r\nA: 1\r\n\r\nPOST /x HTTP/1.1\r\nB: 2\r\n\r\n");
+
+    HttpHeaderMap aHeaders = new HttpHeaderMap ();
+    // URL defaults to "/"
+    assertArrayEquals (new String [] { "GET", "/", "HTTP/1.0" }, aParser.readRequest (aIS, aHeaders));
+    assertEquals ("1", aHeaders.getFirstHeaderValue ("A"));
+
+    aHeaders = new HttpHeaderMap ();
+    assertArrayEquals (new String [] { "POST", "/x", "HTTP/1.1" }, aParser.readRequest (aIS, aHeaders));
+    assertEquals ("2", aHeaders.getFirstHeaderValue ("B"));
+  }
+
+  @Test
+  public void testInvalid ()
+  {
+    final AS2HttpRequestHeaderParser aParser = new AS2HttpRequestHeaderParser (100, 2);
+    for (final String s : new String [] { "",
+                                          "\r\n\r\n",
+                                          "POST\r\n\r\n",
+                                          "POST / HTTP/1.1\r\nX: " + "a".repeat (100) + "\r\n\r\n",
+                                          "POST / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\n\r\n" })
+      try
+      {
+        aParser.readRequest (_is (s), new HttpHeaderMap ());
+        fail ("An IOException should have been thrown for '" + s + "'");
+      }
+      catch (final IOException ex)
+      {
+        // expected
+      }
+  }
+}
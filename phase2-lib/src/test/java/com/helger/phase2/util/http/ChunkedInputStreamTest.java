@@ -32,18 +32,27 @@
  */
 package com.helger.phase2.util.http;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.Test;
 
 import com.helger.base.CGlobal;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.NonClosingInputStream;
+import com.helger.base.io.stream.StreamHelper;
+
+import jakarta.annotation.Nonnull;
 
 /**
  * Test class for class {@link ChunkedInputStream}.
@@ -196,11 +205,116 @@ public final class ChunkedInputStreamTest
   @Test
   public void testReadBrokenChunk2 () throws Exception
   {
+    // The digits of the line are too many for a valid chunk length
     try (final InputStream empty = new NonBlockingByteArrayInputStream ("Filename: 2022-06-29-14-47-02-1409.txt\r\n\r\nLorem ipsum dolor sit amet".getBytes ());
          final ChunkedInputStream cIS = new ChunkedInputStream (empty))
     {
-      final int ret = cIS.read ();
-      assertEquals ('\r', ret);
+      cIS.read ();
+      fail ("An IOException should have been thrown");
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+
+  @Nonnull
+  private static byte [] _createChunked (@Nonnull final byte [] aData, final int nChunkSize)
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      for (int i = 0; i < aData.length; i += nChunkSize)
+      {
+        final int nLen = Math.min (nChunkSize, aData.length - i);
+        aBAOS.write (Integer.toHexString (nLen).getBytes (StandardCharsets.ISO_8859_1));
+        aBAOS.write (i % 2 == 0 ? "\r\n".getBytes (StandardCharsets.ISO_8859_1)
+                                : ";name=value\r\n".getBytes (StandardCharsets.ISO_8859_1));
+        aBAOS.write (aData, i, nLen);
+        aBAOS.write ("\r\n".getBytes (StandardCharsets.ISO_8859_1));
+      }
+      aBAOS.write ("0\r\nTrailer: x\r\n\r\n".getBytes (StandardCharsets.ISO_8859_1));
+      return aBAOS.toByteArray ();
+    }
+  }
+
+  @Test
+  public void testManyChunks () throws IOException
+  {
+    final byte [] aData = new byte [100_000];
+    ThreadLocalRandom.current ().nextBytes (aData);
+    for (final int nChunkSize : new int [] { 1, 7, 100, 4096, 100_000 })
+    {
+      final byte [] aChunked = _createChunked (aData, nChunkSize);
+      // With mark support
+      try (final ChunkedInputStream cIS = new ChunkedInputStream (new NonBlockingByteArrayInputStream (aChunked)))
+      {
+        assertArrayEquals (aData, StreamHelper.getAllBytes (cIS));
+      }
+      // Without mark support
+      try (final ChunkedInputStream cIS = new ChunkedInputStream (new FilterInputStream (new NonBlockingByteArrayInputStream (aChunked))
+      {
+        @Override
+        public boolean markSupported ()
+        {
+          return false;
+        }
+      }))
+      {
+        assertArrayEquals (aData, StreamHelper.getAllBytes (cIS));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamPositionAfterEnd () throws IOException
+  {
+    // The next request on a persistent connection must not be consumed
+    final byte [] aSrc = "3\r\nabc\r\n0\r\nTrailer: x\r\n\r\nPOST".getBytes (StandardCharsets.ISO_8859_1);
+    final InputStream aIS = new NonBlockingByteArrayInputStream (aSrc);
+    try (final ChunkedInputStream cIS = new ChunkedInputStream (new NonClosingInputStream (aIS)))
+    {
+      assertEquals ("abc", StreamHelper.getAllBytesAsString (cIS, StandardCharsets.ISO_8859_1));
+    }
+    assertEquals ("POST", StreamHelper.getAllBytesAsString (aIS, StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  public void testTooLongChunkHeader ()
+  {
+    final byte [] aSrc = new byte [ChunkedInputStream.MAX_LINE_LENGTH + 10];
+    Arrays.fill (aSrc, (byte) '1');
+    try (final ChunkedInputStream cIS = new ChunkedInputStream (new NonBlockingByteArrayInputStream (aSrc)))
+    {
+      cIS.read ();
+      fail ("An IOException should have been thrown");
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testChunkLengthOverflow () throws Exception
+  {
+    // The largest supported chunk length
+    try (final InputStream aIS = new NonBlockingByteArrayInputStream ("7fffffff\r\nabc".getBytes (StandardCharsets.ISO_8859_1));
+         final ChunkedInputStream cIS = new ChunkedInputStream (aIS))
+    {
+      assertEquals ('a', cIS.read ());
     }
+
+    // Would wrap to a negative value
+    for (final String sSrc : new String [] { "80000000\r\nabc", "ffffffffffff\r\nabc", "100000000\r\nabc" })
+      try (final InputStream aIS = new NonBlockingByteArrayInputStream (sSrc.getBytes (StandardCharsets.ISO_8859_1));
+           final ChunkedInputStream cIS = new ChunkedInputStream (aIS))
+      {
+        cIS.read ();
+        fail ("Chunk length of '" + sSrc + "' should have been rejected");
+      }
+      catch (final IOException ex)
+      {
+        // expected
+      }
   }
 }
@@ -0,0 +1,108 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.stream.StreamHelper;
+
+/**
+ * Test class for class {@link ContentLengthInputStream}.
+ *
+ * @author Philip Helger
+ */
+public final class ContentLengthInputStreamTest
+{
+  @Test
+  public void testReadExactLength () throws Exception
+  {
+    try (final InputStream aIS = new NonBlockingByteArrayInputStream ("12345NEXT".getBytes (StandardCharsets.US_ASCII));
+         final ContentLengthInputStream aCLIS = new ContentLengthInputStream (aIS, 5))
+    {
+      assertEquals ("12345", StreamHelper.getAllBytesAsString (aCLIS, StandardCharsets.US_ASCII));
+      assertEquals (0, aCLIS.getRemaining ());
+      assertEquals (-1, aCLIS.read ());
+
+      // The data after the body was not consumed
+      assertEquals ('N', aIS.read ());
+    }
+  }
+
+  @Test
+  public void testReadEmpty () throws Exception
+  {
+    try (final InputStream aIS = new NonBlockingByteArrayInputStream ("abc".getBytes (StandardCharsets.US_ASCII));
+         final ContentLengthInputStream aCLIS = new ContentLengthInputStream (aIS, 0))
+    {
+      assertEquals (-1, aCLIS.read ());
+      assertEquals (-1, aCLIS.read (new byte [10], 0, 10));
+    }
+  }
+
+  @Test
+  public void testReadSingleBytes () throws Exception
+  {
+    try (final InputStream aIS = new NonBlockingByteArrayInputStream ("abc".getBytes (StandardCharsets.US_ASCII));
+         final ContentLengthInputStream aCLIS = new ContentLengthInputStream (aIS, 2))
+    {
+      assertEquals ('a', aCLIS.read ());
+      assertEquals ('b', aCLIS.read ());
+      assertEquals (-1, aCLIS.read ());
+    }
+  }
+
+  @Test
+  public void testPrematureEnd () throws Exception
+  {
+    try (final InputStream aIS = new NonBlockingByteArrayInputStream ("123".getBytes (StandardCharsets.US_ASCII));
+         final ContentLengthInputStream aCLIS = new ContentLengthInputStream (aIS, 5))
+    {
+      final byte [] aBuf = new byte [10];
+      assertEquals (3, aCLIS.read (aBuf, 0, aBuf.length));
+      aCLIS.read (aBuf, 0, aBuf.length);
+      fail ("An EOFException should have been thrown");
+    }
+    catch (final EOFException ex)
+    {
+      // expected
+    }
+  }
+}
@@ -32,14 +32,19 @@
  */
 package com.helger.phase2.util.http;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.Before;
@@ -49,10 +54,21 @@ import com.helger.base.CGlobal;
 import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
 import com.helger.base.io.stream.StreamHelper;
 import com.helger.base.io.stream.StringInputStream;
+import com.helger.http.CHttpHeader;
+import com.helger.mail.datasource.ByteArrayDataSource;
 import com.helger.mail.datasource.IExtendedDataSource;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.crypto.MIC;
 import com.helger.phase2.message.AS2Message;
+import com.helger.phase2.util.AS2Helper;
+import com.helger.phase2.util.AS2HttpHelper;
 import com.helger.phase2.util.dump.IHTTPIncomingDumper;
 
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.annotation.Nonnull;
+import jakarta.mail.internet.MimeBodyPart;
+
 public final class HTTPHelperTest
 {
   private String m_sRegularMessageBody;
@@ -273,6 +289,186 @@ public final class HTTPHelperTest
     assertEquals (m_sRegularMessageBody, sReadPayload);
   }
 
+  @Test
+  public void testReadHttpRequestRegularMessageSpooled () throws Exception
+  {
+    final long nOld = HTTPHelper.getMaxInMemoryPayloadSize ();
+    HTTPHelper.setMaxInMemoryPayloadSize (0);
+    final AS2Message aMsg = new AS2Message ();
+    try
+    {
+      final IAS2HttpRequestDataProvider aMockProvider = AS2HttpRequestDataProviderInputStream.createForUtf8 (m_sRegularMessage);
+      final IExtendedDataSource aDS = HTTPHelper.readHttpRequest (aMockProvider, MOCK_RH, aMsg, INCOMING_DUMPER);
+      assertNotNull (aDS);
+      assertFalse (aDS instanceof ByteArrayDataSource);
+      assertNotNull (aMsg.getTempSharedFileInputStream ());
+
+      final String sReadPayload = StreamHelper.getAllBytesAsString (aDS.getInputStream (), StandardCharsets.US_ASCII);
+      assertEquals (m_sRegularMessageBody, sReadPayload);
+    }
+    finally
+    {
+      HTTPHelper.setMaxInMemoryPayloadSize (nOld);
+      if (aMsg.getTempSharedFileInputStream () != null)
+        aMsg.getTempSharedFileInputStream ().closeAndDelete ();
+    }
+  }
+
+  @Test
+  public void testReadHttpRequestSpooledReturnsFreshStreams () throws Exception
+  {
+    final long nOld = HTTPHelper.getMaxInMemoryPayloadSize ();
+    HTTPHelper.setMaxInMemoryPayloadSize (0);
+    final AS2Message aMsg = new AS2Message ();
+    try
+    {
+      final IAS2HttpRequestDataProvider aMockProvider = AS2HttpRequestDataProviderInputStream.createForUtf8 (m_sRegularMessage);
+      final IExtendedDataSource aDS = HTTPHelper.readHttpRequest (aMockProvider, MOCK_RH, aMsg, INCOMING_DUMPER);
+      assertNotNull (aMsg.getTempSharedFileInputStream ());
+
+      // Partially read the first stream
+      final InputStream aIS1 = aDS.getInputStream ();
+      final byte [] aFirstBytes = new byte [10];
+      assertEquals (10, aIS1.read (aFirstBytes));
+
+      // Each call starts from the beginning again
+      try (final InputStream aIS2 = aDS.getInputStream ())
+      {
+        assertTrue (aIS1 != aIS2);
+        assertEquals (m_sRegularMessageBody, StreamHelper.getAllBytesAsString (aIS2, StandardCharsets.US_ASCII));
+      }
+      assertEquals (m_sRegularMessageBody.substring (10),
+                    StreamHelper.getAllBytesAsString (aIS1, StandardCharsets.US_ASCII));
+    }
+    finally
+    {
+      HTTPHelper.setMaxInMemoryPayloadSize (nOld);
+      if (aMsg.getTempSharedFileInputStream () != null)
+        aMsg.getTempSharedFileInputStream ().closeAndDelete ();
+    }
+  }
+
+  @Test
+  public void testReadHttpRequestContentLengthAboveIntegerMax () throws Exception
+  {
+    // The declared length does not fit into a byte array - it must be spooled and not be cast to
+    // int. The body is shorter than declared, so reading ends prematurely.
+    final long nContentLength = Integer.MAX_VALUE + 10L;
+    final String sMessage = m_sRegularMessage.replace ("Content-Length: 2814\r\n",
+                                                       "Content-Length: " + nContentLength + "\r\n");
+    assertTrue (sMessage.contains (Long.toString (nContentLength)));
+
+    final AS2Message aMsg = new AS2Message ();
+    try
+    {
+      final IAS2HttpRequestDataProvider aMockProvider = AS2HttpRequestDataProviderInputStream.createForUtf8 (sMessage);
+      HTTPHelper.readHttpRequest (aMockProvider, MOCK_RH, aMsg, INCOMING_DUMPER);
+      fail ();
+    }
+    catch (final EOFException ex)
+    {
+      // Thrown by the spooling ContentLengthInputStream
+      assertTrue (ex.getMessage (), ex.getMessage ().contains ("of " + nContentLength + " bytes"));
+    }
+    finally
+    {
+      if (aMsg.getTempSharedFileInputStream () != null)
+        aMsg.getTempSharedFileInputStream ().closeAndDelete ();
+    }
+  }
+
+  @Test
+  public void testReadHttpRequestCalculatesMIC () throws Exception
+  {
+    final long nOld = HTTPHelper.getMaxInMemoryPayloadSize ();
+    // In memory, spooled to a temporary file and chunked
+    for (final long nMaxInMemory : new long [] { nOld, 0, -1 })
+    {
+      if (nMaxInMemory >= 0)
+        HTTPHelper.setMaxInMemoryPayloadSize (nMaxInMemory);
+      final AS2Message aMsg = new AS2Message ();
+      try
+      {
+        final IAS2HttpRequestDataProvider aMockProvider = AS2HttpRequestDataProviderInputStream.createForUtf8 (nMaxInMemory >= 0 ? m_sRegularMessage
+                                                                                                                                : m_sChunkedMessage);
+        final IExtendedDataSource aDS = HTTPHelper.readHttpRequest (aMockProvider, MOCK_RH, aMsg, INCOMING_DUMPER);
+        assertNotNull (aDS);
+
+        // Signed content - the headers are included
+        assertTrue (aMsg.attrs ().getAsBoolean (HTTPHelper.MA_HTTP_RECEIVED_MIC_INCLUDES_HEADERS));
+        final MIC aReceivedMIC = AS2Helper.getReceivedMICIfMatching (aMsg, ECryptoAlgorithmSign.DIGEST_SHA_384, true);
+        assertNotNull (aReceivedMIC);
+        assertNull (AS2Helper.getReceivedMICIfMatching (aMsg, ECryptoAlgorithmSign.DIGEST_SHA_256, true));
+        assertNull (AS2Helper.getReceivedMICIfMatching (aMsg, ECryptoAlgorithmSign.DIGEST_SHA_384, false));
+
+        // Same as reading the data again
+        final MimeBodyPart aReceivedPart = new MimeBodyPart ();
+        aReceivedPart.setDataHandler (new DataHandler (aDS));
+        aReceivedPart.setHeader (CHttpHeader.CONTENT_TYPE,
+                                 AS2HttpHelper.getCleanContentType (aMsg.getHeader (CHttpHeader.CONTENT_TYPE)));
+        final MIC aExpectedMIC = AS2Helper.getCryptoHelper ()
+                                          .calculateMIC (aReceivedPart, ECryptoAlgorithmSign.DIGEST_SHA_384, true);
+        assertEquals (aExpectedMIC, aReceivedMIC);
+      }
+      finally
+      {
+        HTTPHelper.setMaxInMemoryPayloadSize (nOld);
+        if (aMsg.getTempSharedFileInputStream () != null)
+          aMsg.getTempSharedFileInputStream ().closeAndDelete ();
+      }
+    }
+  }
+
+  @Nonnull
+  private static String _createBase64Message (@Nonnull final byte [] aPayload)
+  {
+    final String sBody = Base64.getMimeEncoder ().encodeToString (aPayload) + "\r\n";
+    return "POST /HttpReceiver HTTP/1.1\r\n" +
+           "Content-Type: application/octet-stream\r\n" +
+           "Message-ID: <base64-test@testsender_testreceiver>\r\n" +
+           "AS2-From: testsender\r\n" +
+           "AS2-To: testreceiver\r\n" +
+           "Content-Transfer-Encoding: base64\r\n" +
+           "Content-Length: " +
+           sBody.length () +
+           "\r\n" +
+           "\r\n" +
+           sBody;
+  }
+
+  @Test
+  public void testReadAndDecodeHttpRequestBase64 () throws Exception
+  {
+    final byte [] aPayload = new byte [100_000];
+    ThreadLocalRandom.current ().nextBytes (aPayload);
+    final String sMessage = _createBase64Message (aPayload);
+
+    final long nOld = HTTPHelper.getMaxInMemoryPayloadSize ();
+    // In memory and spooled to a temporary file
+    for (final long nMaxInMemory : new long [] { nOld, 0 })
+    {
+      HTTPHelper.setMaxInMemoryPayloadSize (nMaxInMemory);
+      final AS2Message aMsg = new AS2Message ();
+      try
+      {
+        final IAS2HttpRequestDataProvider aMockProvider = AS2HttpRequestDataProviderInputStream.createForUtf8 (sMessage);
+        final DataSource aDS = HTTPHelper.readAndDecodeHttpRequest (aMockProvider, MOCK_RH, aMsg, INCOMING_DUMPER);
+        assertNotNull (aDS);
+        assertEquals ("base64", aMsg.attrs ().getAsString (HTTPHelper.MA_HTTP_ORIGINAL_CONTENT_TRANSFER_ENCODING));
+
+        // Decoded content can be read more than once
+        assertArrayEquals (aPayload, StreamHelper.getAllBytes (aDS.getInputStream ()));
+        assertArrayEquals (aPayload, StreamHelper.getAllBytes (aDS.getInputStream ()));
+      }
+      finally
+      {
+        HTTPHelper.setMaxInMemoryPayloadSize (nOld);
+        if (aMsg.getTempSharedFileInputStream () != null)
+          aMsg.getTempSharedFileInputStream ().closeAndDelete ();
+      }
+    }
+  }
+
   @Test
   public void testReadHttpRequestStreamMessage () throws Exception
   {
@@ -34,7 +34,9 @@ package com.helger.phase2.util.http;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -84,6 +86,23 @@ public final class TempSharedFileInputStreamTest
     }
   }
 
+  @Test
+  public void testStoreContentToTempFileTruncated () throws Exception
+  {
+    final String inData = "123456";
+    // Declared length is larger than the available data
+    try (final InputStream is = new ContentLengthInputStream (new NonBlockingByteArrayInputStream (inData.getBytes (StandardCharsets.ISO_8859_1)),
+                                                              100))
+    {
+      TempSharedFileInputStream.storeContentToTempFile (is, "truncated");
+      fail ();
+    }
+    catch (final EOFException ex)
+    {
+      // expected
+    }
+  }
+
   @Test
   public void testFinalize () throws Exception
   {
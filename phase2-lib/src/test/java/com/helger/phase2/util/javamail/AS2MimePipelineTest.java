@@ -0,0 +1,276 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.javamail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.http.CHttpHeader;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase2.crypto.BCCryptoHelper;
+import com.helger.phase2.crypto.ECompressionType;
+import com.helger.phase2.crypto.ECryptoAlgorithmCrypt;
+import com.helger.phase2.crypto.ECryptoAlgorithmSign;
+import com.helger.phase2.processor.sender.AS2SenderModule;
+import com.helger.phase2.util.AS2ResourceHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * Test class for class {@link AS2MimePipeline}.
+ *
+ * @author Philip Helger
+ */
+public final class AS2MimePipelineTest
+{
+  private static final String PATH = "src/test/resources/external/mendelson/key3.pfx";
+  private static final KeyStore KS = KeyStoreHelper.loadKeyStore (EKeyStoreType.PKCS12, PATH, "test".toCharArray ())
+                                                   .getKeyStore ();
+  private static final PrivateKeyEntry PKE = KeyStoreHelper.loadPrivateKey (KS, PATH, "key3", "test".toCharArray ())
+                                                           .getKeyEntry ();
+
+  private static InternetHeaders _headers (final String sContentType)
+  {
+    final InternetHeaders ret = new InternetHeaders ();
+    ret.addHeader (CHttpHeader.CONTENT_TYPE, sContentType);
+    return ret;
+  }
+
+  private static String _readContent (final MimeBodyPart aPart) throws Exception
+  {
+    try (final InputStream aIS = aPart.getInputStream ())
+    {
+      return new String (StreamHelper.getAllBytes (aIS), StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  @Test
+  public void testNoStage () throws Exception
+  {
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText ("Hello world");
+
+    final AS2MimePipeline aPipeline = new AS2MimePipeline (aPart, AS2MimePipeline.DEFAULT_BUFFER_SIZE);
+    assertEquals (0, aPipeline.getStageCount ());
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aPipeline.writeTo (aBAOS);
+      assertEquals ("Hello world", aBAOS.getAsString (StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  @Test
+  public void testMultipleStages () throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 100_000; ++i)
+      aSB.append ((char) ('a' + i % 26));
+    final String sSrc = aSB.toString ();
+
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText (sSrc);
+
+    // Use a tiny buffer to ensure the stages block each other
+    final AS2MimePipeline aPipeline = new AS2MimePipeline (aPart, 16);
+    aPipeline.addStage ("upper", _headers ("text/upper"), (aInput, aOS) -> {
+      assertEquals ("text/plain", aInput.getDataHandler ().getContentType ().substring (0, 10));
+      aOS.write (_readContent (aInput).toUpperCase (Locale.ROOT).getBytes (StandardCharsets.ISO_8859_1));
+    });
+    aPipeline.addStage ("wrap", _headers ("text/wrapped"), (aInput, aOS) -> {
+      assertEquals ("text/upper", aInput.getContentType ());
+      aOS.write ('[');
+      aOS.write (_readContent (aInput).getBytes (StandardCharsets.ISO_8859_1));
+      aOS.write (']');
+    });
+    assertEquals (2, aPipeline.getStageCount ());
+    assertEquals ("text/wrapped", aPipeline.getContentType ());
+
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aPipeline.writeTo (aBAOS);
+      assertEquals ("[" + sSrc.toUpperCase (Locale.ROOT) + "]", aBAOS.getAsString (StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  @Test
+  public void testStageError () throws Exception
+  {
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setText ("Hello world");
+
+    final AS2MimePipeline aPipeline = new AS2MimePipeline (aPart, AS2MimePipeline.DEFAULT_BUFFER_SIZE);
+    aPipeline.addStage ("fail", _headers ("text/plain"), (aInput, aOS) -> {
+      aOS.write ('x');
+      throw new IllegalStateException ("Expected");
+    });
+    aPipeline.addStage ("copy", _headers ("text/plain"), (aInput, aOS) -> aOS.write (_readContent (aInput)
+                                                                                                 .getBytes (StandardCharsets.ISO_8859_1)));
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aPipeline.writeTo (aBAOS);
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSecurePipeline () throws Exception
+  {
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final X509Certificate aCert = (X509Certificate) PKE.getCertificate ();
+    try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      for (final boolean bCompressBeforeSign : new boolean [] { true, false })
+      {
+        final MimeBodyPart aPart = new MimeBodyPart ();
+        aPart.setText ("Hello world");
+
+        final AtomicReference <MimeBodyPart> aCompressedBP = new AtomicReference <> ();
+        final AS2MimePipeline aPipeline = AS2SenderModule.createSecurePipeline (aPart,
+                                                                                EContentTransferEncoding.BASE64,
+                                                                                ECompressionType.ZLIB,
+                                                                                null,
+                                                                                bCompressBeforeSign,
+                                                                                aCompressedBP::set,
+                                                                                ECryptoAlgorithmSign.DIGEST_SHA_256,
+                                                                                aCert,
+                                                                                PKE.getPrivateKey (),
+                                                                                true,
+                                                                                false,
+                                                                                false,
+                                                                                ECryptoAlgorithmCrypt.CRYPT_AES128_CBC,
+                                                                                aCert,
+                                                                                "",
+                                                                                aResHelper);
+        if (bCompressBeforeSign)
+        {
+          // Compressed once upfront - the same part is the source of the MIC and the signature
+          assertEquals (2, aPipeline.getStageCount ());
+          assertTrue (aCompressedBP.get () instanceof AS2SpooledMimeBodyPart);
+          assertTrue (aCryptoHelper.isCompressed (aCompressedBP.get ().getContentType ()));
+          assertSame (aCompressedBP.get (), aPipeline.getSourcePart ());
+        }
+        else
+        {
+          assertEquals (3, aPipeline.getStageCount ());
+          assertNull (aCompressedBP.get ());
+          assertSame (aPart, aPipeline.getSourcePart ());
+        }
+        assertEquals (BCCryptoHelper.CONTENT_TYPE_ENVELOPED_DATA, aPipeline.getContentType ());
+
+        final MimeBodyPart aEncrypted;
+        try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+        {
+          aPipeline.writeTo (aBAOS);
+          aEncrypted = new MimeBodyPart (new InternetHeaders (), aBAOS.toByteArray ());
+          aEncrypted.setHeader (CHttpHeader.CONTENT_TYPE, aPipeline.getContentType ());
+        }
+        assertTrue (aCryptoHelper.isEncrypted (aEncrypted));
+
+        final MimeBodyPart aDecrypted = aCryptoHelper.decrypt (aEncrypted,
+                                                               aCert,
+                                                               PKE.getPrivateKey (),
+                                                               false,
+                                                               aResHelper);
+        assertNotNull (aDecrypted);
+        if (bCompressBeforeSign)
+          assertTrue (aCryptoHelper.isSigned (aDecrypted));
+        else
+          assertTrue (aCryptoHelper.isCompressed (aDecrypted.getContentType ()));
+      }
+    }
+  }
+
+  @Test
+  public void testSecurePipelineCompressBeforeSignWithoutCallback () throws Exception
+  {
+    final BCCryptoHelper aCryptoHelper = new BCCryptoHelper ();
+    final X509Certificate aCert = (X509Certificate) PKE.getCertificate ();
+    try (final AS2ResourceHelper aResHelper = new AS2ResourceHelper ())
+    {
+      final MimeBodyPart aPart = new MimeBodyPart ();
+      aPart.setText ("Hello world");
+
+      // The source part stays untouched, e.g. for resending
+      final AS2MimePipeline aPipeline = AS2SenderModule.createSecurePipeline (aPart,
+                                                                              EContentTransferEncoding.BASE64,
+                                                                              ECompressionType.ZLIB,
+                                                                              null,
+                                                                              true,
+                                                                              null,
+                                                                              ECryptoAlgorithmSign.DIGEST_SHA_256,
+                                                                              aCert,
+                                                                              PKE.getPrivateKey (),
+                                                                              true,
+                                                                              false,
+                                                                              false,
+                                                                              null,
+                                                                              null,
+                                                                              "",
+                                                                              aResHelper);
+      assertEquals (1, aPipeline.getStageCount ());
+      assertTrue (aPipeline.getSourcePart () instanceof AS2SpooledMimeBodyPart);
+      assertTrue (aCryptoHelper.isCompressed (aPipeline.getSourcePart ().getContentType ()));
+      assertEquals ("Hello world", _readContent (aPart));
+
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aPipeline.writeTo (aBAOS);
+        assertTrue (aBAOS.size () > 0);
+      }
+    }
+  }
+}
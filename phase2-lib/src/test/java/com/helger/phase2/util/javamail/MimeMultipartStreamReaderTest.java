@@ -0,0 +1,127 @@
+/*
+ * The FreeBSD Copyright
+ * Copyright 1994-2008 The FreeBSD Project. All rights reserved.
+ * Copyright (C) 2013-2025 Philip Helger philip[at]helger[dot]com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *    1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE FREEBSD PROJECT ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.helger.phase2.util.javamail;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.base.io.nonblocking.NonBlockingByteArrayInputStream;
+import com.helger.base.io.nonblocking.NonBlockingByteArrayOutputStream;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link MimeMultipartStreamReader}.
+ *
+ * @author Philip Helger
+ */
+public final class MimeMultipartStreamReaderTest
+{
+  @Nonnull
+  private static MimeMultipartStreamReader _create (@Nonnull final String s) throws IOException
+  {
+    final MimeMultipartStreamReader ret = new MimeMultipartStreamReader (new NonBlockingByteArrayInputStream (s.getBytes (StandardCharsets.ISO_8859_1)),
+                                                                         "bnd");
+    ret.skipPreamble ();
+    return ret;
+  }
+
+  @Nonnull
+  private static String _copyNextPart (@Nonnull final MimeMultipartStreamReader aReader) throws IOException
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aReader.copyNextPart (aBAOS);
+      return aBAOS.getAsString (StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  @Test
+  public void testBasic () throws IOException
+  {
+    final MimeMultipartStreamReader aReader = _create ("preamble\r\n--bnd\r\nH: 1\r\n\r\nhello\r\n--bnd  \r\nH: 2\r\n\r\nsig\r\n--bnd--\r\nepilogue");
+    assertEquals ("H: 1\r\n\r\nhello", _copyNextPart (aReader));
+    assertFalse (aReader.isLastPartRead ());
+    assertArrayEquals ("H: 2\r\n\r\nsig".getBytes (StandardCharsets.ISO_8859_1), aReader.readNextPart (100));
+    assertTrue (aReader.isLastPartRead ());
+    aReader.skipEpilogue ();
+  }
+
+  @Test
+  public void testLFOnlyAndBoundaryPrefixInContent () throws IOException
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 200_000; i++)
+      aSB.append ((char) ('a' + i % 26));
+    // Not a delimiter, because the boundary continues
+    aSB.append ("\r\n--bnd-not");
+    final String sContent = "H: 1\n\n" + aSB.toString ();
+
+    final MimeMultipartStreamReader aReader = _create ("--bnd\n" + sContent + "\n--bnd\nX\n--bnd--");
+    assertEquals (sContent, _copyNextPart (aReader));
+    assertFalse (aReader.isLastPartRead ());
+    assertArrayEquals (new byte [] { 'X' }, aReader.readNextPart (100));
+    assertTrue (aReader.isLastPartRead ());
+  }
+
+  @Test
+  public void testEmptyPart () throws IOException
+  {
+    final MimeMultipartStreamReader aReader = _create ("--bnd\r\n\r\n--bnd--");
+    assertEquals ("", _copyNextPart (aReader));
+    assertTrue (aReader.isLastPartRead ());
+  }
+
+  @Test
+  public void testMaxBytes () throws IOException
+  {
+    final MimeMultipartStreamReader aReader = _create ("--bnd\r\n0123456789\r\n--bnd--");
+    try
+    {
+      aReader.readNextPart (5);
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+}
@@ -205,13 +205,8 @@ public abstract class AbstractAS2ReceiveBaseXServletHandler implements IXServlet
     final AS2OutputStreamCreatorHttpServletResponse aResponseHandler = new AS2OutputStreamCreatorHttpServletResponse (aHttpResponse,
                                                                                                                       bQuoteHeaderValues);
 
-    // Read the S/MIME content in a byte array - memory!
     // Chunked encoding was already handled, so read "as-is"
-    final long nContentLength = aHttpRequest.getContentLengthLong ();
-    if (nContentLength > Integer.MAX_VALUE)
-      throw new IllegalStateException ("Currently only payload with up to 2GB can be handled! This request has " +
-                                       nContentLength +
-                                       " bytes.");
+    // Large payloads are spooled to a temporary file by HTTPHelper
 
     // Open it once, and close it at the end
     try (final ServletInputStream aRequestIS = aHttpRequest.getInputStream ())